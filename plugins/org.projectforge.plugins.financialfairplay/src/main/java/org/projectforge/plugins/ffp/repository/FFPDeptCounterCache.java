@@ -30,8 +30,8 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Access to ffp event.
@@ -45,9 +45,12 @@ public class FFPDeptCounterCache extends AbstractCache {
   @Autowired
   private FFPDebtDao ffpDebtDao;
 
-  private Map<Integer, Integer> openFromDebts = new HashMap<>();
+  /**
+   * Filled lazily by concurrent readers and replaced as a whole by {@link #refresh()}.
+   */
+  private volatile Map<Integer, Integer> openFromDebts = new ConcurrentHashMap<>();
 
-  private Map<Integer, Integer> openToDebts = new HashMap<>();
+  private volatile Map<Integer, Integer> openToDebts = new ConcurrentHashMap<>();
 
   public Integer getOpenDebts(PFUserDO user)
   {
@@ -58,10 +61,11 @@ public class FFPDeptCounterCache extends AbstractCache {
     if (user == null)
       return 0;
     checkRefresh();
-    Integer val = openFromDebts.get(user.getId());
+    final Map<Integer, Integer> debts = openFromDebts;
+    Integer val = debts.get(user.getId());
     if (val == null) {
       val = ffpDebtDao.getOpenFromDebts(user);
-      openFromDebts.put(user.getId(), val);
+      debts.put(user.getId(), val);
     }
     return val;
   }
@@ -70,10 +74,11 @@ public class FFPDeptCounterCache extends AbstractCache {
     if (user == null)
       return 0;
     checkRefresh();
-    Integer val = openToDebts.get(user.getId());
+    final Map<Integer, Integer> debts = openToDebts;
+    Integer val = debts.get(user.getId());
     if (val == null) {
       val = ffpDebtDao.getOpenToDebts(user);
-      openToDebts.put(user.getId(), val);
+      debts.put(user.getId(), val);
     }
     return val;
   }
@@ -84,8 +89,8 @@ public class FFPDeptCounterCache extends AbstractCache {
   @Override
   protected void refresh() {
     log.info("Initializing FFDeptCounterCache ...");
-    openFromDebts.clear();
-    openToDebts.clear();
+    openFromDebts = new ConcurrentHashMap<>();
+    openToDebts = new ConcurrentHashMap<>();
     log.info("Initializing of FFDeptCounterCache done.");
   }
 }
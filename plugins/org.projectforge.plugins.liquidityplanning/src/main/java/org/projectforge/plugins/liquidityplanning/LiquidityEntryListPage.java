@@ -228,11 +228,11 @@ public class LiquidityEntryListPage
         final LiquidityForecastCashFlow cashFlow = new LiquidityForecastCashFlow(forecast);
         cashFlow.addAsExcelSheet(this, getString("plugins.liquidityplanning.forecast.cashflow"));
         final ExportSheet sheet = addSheet(getString("filter.all"));
-        addList(sheet, forecast.getEntries());
+        addList(sheet, forecast.getEntries().iterator());
         sheet.getPoiSheet().setAutoFilter(org.apache.poi.ss.util.CellRangeAddress.valueOf("A1:F1"));
-        invoicesExport.addDebitorInvoicesSheet(this, getString("fibu.rechnungen"), forecast.getInvoices());
+        invoicesExport.addDebitorInvoicesSheet(this, getString("fibu.rechnungen"), forecast.getInvoices().iterator());
         invoicesExport.addCreditorInvoicesSheet(this, getString("fibu.eingangsrechnungen"),
-            forecast.getCreditorInvoices());
+            forecast.getCreditorInvoices().iterator());
       }
     };
   }
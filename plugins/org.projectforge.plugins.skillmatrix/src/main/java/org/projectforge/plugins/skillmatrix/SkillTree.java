@@ -58,12 +58,12 @@ public class SkillTree extends AbstractCache implements Serializable
   /**
    * For faster searching of entries.
    */
-  private Map<Integer, SkillNode> skillMap;
+  private volatile Map<Integer, SkillNode> skillMap;
 
   /**
    * The root node of all skills. The only node with parent null.
    */
-  private SkillNode root = null;
+  private volatile SkillNode root = null;
 
   /**
    * Time of last modification in milliseconds from 1970-01-01.
@@ -254,7 +254,8 @@ public class SkillTree extends AbstractCache implements Serializable
   {
     log.info("Initializing skill tree ...");
     SkillNode newRoot = null;
-    skillMap = new HashMap<>();
+    // Build the new tree in local variables, readers use the old tree until it's published:
+    final Map<Integer, SkillNode> newSkillMap = new HashMap<>();
     final List<SkillDO> skillList = emgrFactory.runRoTrans(emgr -> {
       return emgr.select(SkillDO.class, "SELECT s FROM SkillDO s");
     });
@@ -263,7 +264,7 @@ public class SkillTree extends AbstractCache implements Serializable
     for (final SkillDO skill : skillList) {
       node = new SkillNode();
       node.setSkill(skill);
-      skillMap.put(node.getId(), node);
+      newSkillMap.put(node.getId(), node);
       if (node.isRootNode()) {
         if (newRoot != null) {
           log.error("Duplicate root node found: " + newRoot.getId() + " and " + node.getId());
@@ -280,18 +281,17 @@ public class SkillTree extends AbstractCache implements Serializable
     if (newRoot == null) {
       log.error("OUPS, no skill found (ProjectForge database not initialized?) OK, initialize it ...");
       newRoot = createRootNode();
-      skillMap.put(newRoot.getId(), newRoot);
+      newSkillMap.put(newRoot.getId(), newRoot);
     }
-    this.root = newRoot;
     if (log.isDebugEnabled()) {
       log.debug("Creating tree for " + skillList.size() + " skills ...");
     }
     for (final SkillDO skill : skillList) {
       SkillNode parentNode = null;
-      node = skillMap.get(skill.getId());
+      node = newSkillMap.get(skill.getId());
       final Integer parentId = skill.getParentId();
       if (parentId != null) {
-        parentNode = skillMap.get(parentId);
+        parentNode = newSkillMap.get(parentId);
       }
       // log.debug("Processing node: " + node.getId() + ", parent: " + parentId);
       if (parentNode != null) {
@@ -303,6 +303,8 @@ public class SkillTree extends AbstractCache implements Serializable
       }
     }
 
+    this.skillMap = newSkillMap;
+    this.root = newRoot;
     if (log.isDebugEnabled()) {
       log.error(this.root.toString());
     }
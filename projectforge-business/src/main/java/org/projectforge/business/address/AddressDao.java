@@ -74,6 +74,9 @@ public class AddressDao extends BaseDao<AddressDO> {
   @Autowired
   private AddressbookCache addressbookCache;
 
+  @Autowired
+  private AddressPhoneNumberIndex addressPhoneNumberIndex;
+
   @Autowired
   private UserRightService userRights;
 
@@ -249,13 +252,26 @@ public class AddressDao extends BaseDao<AddressDO> {
     queryFilter.add(QueryFilter.isIn("addressbookList.id", abIdList));
   }
 
+  /**
+   * @return true, if the given user has select access to the addresses of the given address book.
+   */
+  public boolean hasAddressbookSelectAccess(final PFUserDO user, final AddressbookDO addressbook) {
+    final AddressbookRight addressbookRight = getAddressbookRight();
+    return addressbookRight.checkGlobal(addressbook) || addressbookRight.getAccessType(addressbook, user.getId()).hasAnyAccess();
+  }
+
+  private AddressbookRight getAddressbookRight() {
+    if (addressbookRight == null) {
+      addressbookRight = (AddressbookRight) userRights.getRight(UserRightId.MISC_ADDRESSBOOK);
+    }
+    return addressbookRight;
+  }
+
   @Override
   public boolean hasAccess(final PFUserDO user, final AddressDO obj, final AddressDO oldObj,
                            final OperationType operationType,
                            final boolean throwException) {
-    if (addressbookRight == null) {
-      addressbookRight = (AddressbookRight) userRights.getRight(UserRightId.MISC_ADDRESSBOOK);
-    }
+    final AddressbookRight addressbookRight = getAddressbookRight();
     if (obj == null || obj.getAddressbookList() == null) {
       //Nothing to check, should not happen, but does
       return true;
@@ -263,7 +279,7 @@ public class AddressDao extends BaseDao<AddressDO> {
     switch (operationType) {
       case SELECT:
         for (AddressbookDO ab : obj.getAddressbookList()) {
-          if (addressbookRight.checkGlobal(ab) || addressbookRight.getAccessType(ab, user.getId()).hasAnyAccess()) {
+          if (hasAddressbookSelectAccess(user, ab)) {
             return true;
           }
         }
@@ -598,13 +614,16 @@ public class AddressDao extends BaseDao<AddressDO> {
   public String internalPhoneLookUp(String phoneNumber) {
     final String searchNumber = NumberHelper.extractPhonenumber(phoneNumber);
     log.info("number=" + phoneNumber + ", searchNumber=" + searchNumber);
-    final BaseSearchFilter filter = new BaseSearchFilter();
-    filter.setSearchString("*" + searchNumber + "*");
-    final QueryFilter queryFilter = new QueryFilter(filter);
-    // Use internal get list method for avoiding access checking (no user is logged-in):
-    List<AddressDO> resultList = internalGetList(queryFilter);
+    final List<AddressDO> resultList = new ArrayList<>();
+    for (final Integer id : addressPhoneNumberIndex.findAddressIds(phoneNumber)) {
+      // Use internal get method for avoiding access checking (no user is logged-in):
+      final AddressDO address = internalGetById(id);
+      if (address != null && !address.isDeleted()) {
+        resultList.add(address);
+      }
+    }
     final StringBuffer buf = new StringBuffer();
-    if (resultList != null && resultList.size() >= 1) {
+    if (resultList.size() >= 1) {
       AddressDO result = resultList.get(0);
       if (resultList.size() > 1) {
         // More than one result, therefore find the newest one:
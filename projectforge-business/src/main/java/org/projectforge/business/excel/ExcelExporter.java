@@ -29,6 +29,7 @@ import org.projectforge.common.props.PropUtils;
 import org.projectforge.common.props.PropertyType;
 
 import java.lang.reflect.Field;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -42,7 +43,16 @@ public class ExcelExporter
 
   public ExcelExporter(final String filename)
   {
-    this.workBook = new ExportWorkbook();
+    this(filename, new ExportWorkbook());
+  }
+
+  /**
+   * @param workbook e. g. a streaming workbook for large exports.
+   * @see ExportWorkbook#createStreamingWorkbook()
+   */
+  public ExcelExporter(final String filename, final ExportWorkbook workbook)
+  {
+    this.workBook = workbook;
     this.workBook.setFilename(filename);
   }
 
@@ -66,10 +76,27 @@ public class ExcelExporter
       log.info("Nothing to export for sheet '" + sheet.getName() + "'.");
       return sheet;
     }
+    return addList(sheet, list.iterator());
+  }
+
+  /**
+   * The entries are processed one by one, so the iterator may fetch the entries lazily (e. g. scrolling through a
+   * result set) and together with a streaming workbook the entries are never held in memory all together.
+   *
+   * @param iterator The columns are built of the type of the first entry.
+   */
+  public <T> ExportSheet addList(final ExportSheet sheet, final Iterator<T> iterator)
+  {
+    if (iterator == null || !iterator.hasNext()) {
+      // Nothing to export.
+      log.info("Nothing to export for sheet '" + sheet.getName() + "'.");
+      return sheet;
+    }
     final ContentProvider sheetProvider = sheet.getContentProvider();
     sheet.createFreezePane(0, 1);
 
-    final Class<?> classType = list.get(0).getClass();
+    final T first = iterator.next();
+    final Class<?> classType = first.getClass();
     final Field[] fields = PropUtils.getPropertyInfoFields(classType);
     List<ExportColumn> cols = new LinkedList<>();
     for (final Field field : fields) {
@@ -85,24 +112,29 @@ public class ExcelExporter
     cols = onBeforeSettingColumns(sheetProvider, cols);
     // column property names
     sheet.setColumns(cols);
-    for (final Object entry : list) {
-      final PropertyMapping mapping = new PropertyMapping();
-      for (final Field field : fields) {
-        final PropertyInfo propInfo = field.getAnnotation(PropertyInfo.class);
-        if (propInfo == null) {
-          // Shouldn't occur.
-          continue;
-        }
-        field.setAccessible(true);
-        addMapping(mapping, entry, field);
-      }
-      addMappings(mapping, entry);
-      sheet.addRow(mapping.getMapping(), 0);
+    addEntry(sheet, fields, first);
+    while (iterator.hasNext()) {
+      addEntry(sheet, fields, iterator.next());
     }
-
     return sheet;
   }
 
+  private void addEntry(final ExportSheet sheet, final Field[] fields, final Object entry)
+  {
+    final PropertyMapping mapping = new PropertyMapping();
+    for (final Field field : fields) {
+      final PropertyInfo propInfo = field.getAnnotation(PropertyInfo.class);
+      if (propInfo == null) {
+        // Shouldn't occur.
+        continue;
+      }
+      field.setAccessible(true);
+      addMapping(mapping, entry, field);
+    }
+    addMappings(mapping, entry);
+    sheet.addRow(mapping.getMapping(), 0);
+  }
+
   /**
    * You may manipulate the order or content of the columns here. Called by {@link #addList(ExportSheet, List)}.
    *
@@ -25,7 +25,9 @@ package org.projectforge.business.excel;
 
 import org.apache.poi.ss.usermodel.*;
 import org.apache.poi.ss.util.CellRangeAddress;
+import org.apache.poi.xssf.streaming.SXSSFSheet;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
@@ -60,6 +62,21 @@ public class ExportSheet
 
   private CellStyle cellStyle;
 
+  /**
+   * Streaming workbooks only: number of rows held in memory (0 for non-streaming workbooks).
+   */
+  private int rowAccessWindow;
+
+  /**
+   * Streaming workbooks only: number of rows already written. These rows are removed from {@link #rows}.
+   */
+  private int flushedRows;
+
+  /**
+   * Streaming workbooks only: max col of the head row, needed by {@link #setAutoFilter()} after flushing.
+   */
+  private int headRowMaxCol = -1;
+
   public ExportSheet(final ContentProvider contentProvider, final String name, final Sheet poiSheet)
   {
     this.contentProvider = contentProvider;
@@ -151,12 +168,39 @@ public class ExportSheet
 
   public ExportRow addRow()
   {
+    if (rowAccessWindow > 0 && rows.size() >= 2 * rowAccessWindow) {
+      flushRows(rows.size() - rowAccessWindow);
+    }
     final Row poiRow = poiSheet.createRow(rowCounter);
     final ExportRow row = new ExportRow(contentProvider, this, poiRow, rowCounter++);
     this.rows.add(row);
     return row;
   }
 
+  /**
+   * Styles the oldest rows and writes them (streaming workbooks only). The rows are expected to be complete.
+   */
+  private void flushRows(final int count)
+  {
+    final List<ExportRow> flushed = rows.subList(0, count);
+    if (contentProvider != null) {
+      for (final ExportRow row : flushed) {
+        row.updateStyles(contentProvider);
+      }
+    }
+    if (flushedRows == 0) {
+      headRowMaxCol = flushed.get(0).getMaxCol();
+    }
+    try {
+      ((SXSSFSheet) poiSheet).flushRows(rows.size() - count);
+    } catch (final IOException ex) {
+      log.error("Exception encountered while flushing rows of sheet '" + name + "': " + ex, ex);
+      throw new RuntimeException(ex);
+    }
+    flushed.clear();
+    flushedRows += count;
+  }
+
   public ExportRow addRow(final Object... values)
   {
     final ExportRow row = addRow();
@@ -205,9 +249,15 @@ public class ExportSheet
     return name;
   }
 
+  /**
+   * @throws IllegalStateException if the row was already written (streaming workbooks only).
+   */
   public ExportRow getRow(final int row)
   {
-    return this.rows.get(row);
+    if (row < flushedRows) {
+      throw new IllegalStateException("Row " + row + " of sheet '" + name + "' was already written (streaming workbook).");
+    }
+    return this.rows.get(row - flushedRows);
   }
 
   /**
@@ -218,11 +268,19 @@ public class ExportSheet
     return rowCounter;
   }
 
+  /**
+   * @return All rows or, for streaming workbooks, the rows not yet written.
+   */
   public List<ExportRow> getRows()
   {
     return rows;
   }
 
+  void setRowAccessWindow(final int rowAccessWindow)
+  {
+    this.rowAccessWindow = rowAccessWindow;
+  }
+
   /**
    * For filling the table via beans.
    *
@@ -319,8 +377,7 @@ public class ExportSheet
   public ExportSheet setAutoFilter()
   {
     final int headingRow = 0;
-    final ExportRow row = getRow(headingRow);
-    final int lastCol = row.getMaxCol();
+    final int lastCol = flushedRows > 0 ? headRowMaxCol : getRow(headingRow).getMaxCol();
     final CellRangeAddress range = new CellRangeAddress(headingRow, headingRow, 0, lastCol);
     getPoiSheet().setAutoFilter(range);
     return this;
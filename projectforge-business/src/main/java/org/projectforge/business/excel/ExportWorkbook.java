@@ -26,6 +26,7 @@ package org.projectforge.business.excel;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.poi.hssf.usermodel.HSSFWorkbook;
 import org.apache.poi.ss.usermodel.*;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 
 import java.io.*;
 import java.util.ArrayList;
@@ -37,8 +38,23 @@ public class ExportWorkbook
 {
   private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(ExportWorkbook.class);
 
+  /**
+   * Number of rows per sheet held in memory by streaming workbooks (at least, twice the number at most).
+   */
+  public static final int DEFAULT_ROW_ACCESS_WINDOW = 500;
+
   private Workbook poiWorkbook;
 
+  /**
+   * 0 for non-streaming workbooks.
+   */
+  private int rowAccessWindow;
+
+  /**
+   * Cell styles shared by all sheets and content providers of this workbook (number of cell styles is limited).
+   */
+  private final Map<CellFormat, CellStyle> cellStyles = new HashMap<>();
+
   private List<ExportSheet> sheets;
 
   private ContentProvider contentProvider;
@@ -52,9 +68,39 @@ public class ExportWorkbook
   private final Map<String, Short> dataFormats = new HashMap<>();
 
   public ExportWorkbook()
+  {
+    this(new HSSFWorkbook(), 0);
+  }
+
+  private ExportWorkbook(final Workbook poiWorkbook, final int rowAccessWindow)
   {
     sheets = new ArrayList<>();
-    poiWorkbook = new HSSFWorkbook();
+    this.poiWorkbook = poiWorkbook;
+    this.rowAccessWindow = rowAccessWindow;
+  }
+
+  /**
+   * Creates a streaming workbook (xlsx): only the last rows of each sheet are held in memory, older rows are styled and
+   * written to temporary files. Therefore rows have to be filled in order and already written rows can't be accessed
+   * anymore.
+   *
+   * @see #DEFAULT_ROW_ACCESS_WINDOW
+   */
+  public static ExportWorkbook createStreamingWorkbook()
+  {
+    return createStreamingWorkbook(DEFAULT_ROW_ACCESS_WINDOW);
+  }
+
+  /**
+   * @param rowAccessWindow Number of rows per sheet held in memory.
+   * @see #createStreamingWorkbook()
+   */
+  public static ExportWorkbook createStreamingWorkbook(final int rowAccessWindow)
+  {
+    // Rows are flushed by ExportSheet after styling them:
+    final SXSSFWorkbook sxssfWorkbook = new SXSSFWorkbook(-1);
+    sxssfWorkbook.setCompressTempFiles(true);
+    return new ExportWorkbook(sxssfWorkbook, rowAccessWindow);
   }
 
   public ExportWorkbook(final File excelFile) throws FileNotFoundException, IOException
@@ -145,9 +191,37 @@ public class ExportWorkbook
       }
     } finally {
       out.close();
+      dispose();
     }
   }
 
+  /**
+   * Deletes the temporary files of streaming workbooks. Called by {@link #write(OutputStream)}, callers not writing
+   * the workbook (e. g. on errors) should call this in a finally block. Calling it more than once is harmless.
+   */
+  public void dispose()
+  {
+    if (poiWorkbook instanceof SXSSFWorkbook) {
+      ((SXSSFWorkbook) poiWorkbook).dispose();
+    }
+  }
+
+  /**
+   * @return true, if this workbook was created by {@link #createStreamingWorkbook()}.
+   */
+  public boolean isStreaming()
+  {
+    return rowAccessWindow > 0;
+  }
+
+  /**
+   * @return "xlsx" for streaming workbooks, otherwise "xls".
+   */
+  public String getFileExtension()
+  {
+    return isStreaming() ? "xlsx" : "xls";
+  }
+
   public byte[] getAsByteArray()
   {
     final ByteArrayOutputStream baos = new ByteArrayOutputStream();
@@ -183,6 +257,7 @@ public class ExportWorkbook
       cp = ExportConfig.getInstance().createNewContentProvider(this);
     }
     final ExportSheet sheet = new ExportSheet(cp, name, poiSheet);
+    sheet.setRowAccessWindow(rowAccessWindow);
     sheets.add(sheet);
     return sheet;
   }
@@ -247,6 +322,14 @@ public class ExportWorkbook
     return poiWorkbook.createCellStyle();
   }
 
+  /**
+   * @return The cell styles shared by all content providers of this workbook.
+   */
+  Map<CellFormat, CellStyle> getCellStyles()
+  {
+    return cellStyles;
+  }
+
   public Font createFont()
   {
     return poiWorkbook.createFont();
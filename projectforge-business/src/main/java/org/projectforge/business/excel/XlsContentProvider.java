@@ -80,7 +80,10 @@ public class XlsContentProvider implements ContentProvider
 
   static protected Font FONT_RED_BOLD;
 
-  protected Map<CellFormat, CellStyle> reusableCellFormats = new HashMap<>();
+  /**
+   * Shared by all content providers of the workbook.
+   */
+  protected Map<CellFormat, CellStyle> reusableCellFormats;
 
   protected ExportWorkbook workbook;
 
@@ -105,6 +108,7 @@ public class XlsContentProvider implements ContentProvider
   {
     this.exportContext = exportContext;
     this.workbook = workbook;
+    this.reusableCellFormats = workbook.getCellStyles();
     createFonts();
     defaultFormatMap.put(Integer.class, new CellFormat("#,##0", HorizontalAlignment.RIGHT.getCode()));
     defaultFormatMap.put(Number.class, new CellFormat("#,###.######", HorizontalAlignment.RIGHT.getCode()));
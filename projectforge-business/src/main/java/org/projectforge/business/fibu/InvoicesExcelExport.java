@@ -30,6 +30,7 @@ import org.projectforge.export.MyExcelExporter;
 
 import java.lang.reflect.Field;
 import java.util.Collection;
+import java.util.Iterator;
 
 public class InvoicesExcelExport
 {
@@ -38,6 +39,14 @@ public class InvoicesExcelExport
   }
 
   public void addDebitorInvoicesSheet(final MyExcelExporter exporter, final String title, final Collection<RechnungDO> list)
+  {
+    addDebitorInvoicesSheet(exporter, title, list.iterator());
+  }
+
+  /**
+   * The invoices are processed one by one, see {@link ExcelExporter#addList(ExportSheet, Iterator)}.
+   */
+  public void addDebitorInvoicesSheet(final MyExcelExporter exporter, final String title, final Iterator<RechnungDO> iterator)
   {
     final ExportSheet sheet = exporter.addSheet(title);
     sheet.createFreezePane(0, 1);
@@ -55,7 +64,8 @@ public class InvoicesExcelExport
     // column property names
     sheet.setColumns(cols);
     final PropertyMapping mapping = new PropertyMapping();
-    for (final RechnungDO entry : list) {
+    while (iterator.hasNext()) {
+      final RechnungDO entry = iterator.next();
       entry.recalculate();
       mapping.add("datum", entry.getDatum());
       mapping.add("faelligkeit", entry.getFaelligkeit());
@@ -68,6 +78,15 @@ public class InvoicesExcelExport
   }
 
   public void addCreditorInvoicesSheet(final MyExcelExporter exporter, final String title, final Collection<EingangsrechnungDO> list)
+  {
+    addCreditorInvoicesSheet(exporter, title, list.iterator());
+  }
+
+  /**
+   * The invoices are processed one by one, see {@link ExcelExporter#addList(ExportSheet, Iterator)}.
+   */
+  public void addCreditorInvoicesSheet(final MyExcelExporter exporter, final String title,
+      final Iterator<EingangsrechnungDO> iterator)
   {
     final ExportSheet sheet = exporter.addSheet(title);
     sheet.createFreezePane(0, 1);
@@ -84,7 +103,8 @@ public class InvoicesExcelExport
     // column property names
     sheet.setColumns(cols);
     final PropertyMapping mapping = new PropertyMapping();
-    for (final EingangsrechnungDO entry : list) {
+    while (iterator.hasNext()) {
+      final EingangsrechnungDO entry = iterator.next();
       entry.recalculate();
       mapping.add("datum", entry.getDatum());
       mapping.add("faelligkeit", entry.getFaelligkeit());
@@ -120,6 +120,8 @@ public class LdapConnector implements ConfigurationListener
     } else {
       env = createEnv(null, null);
     }
+    // Reuse the connections of the manager user (e. g. for synchronizing all users and groups):
+    env.put("com.sun.jndi.ldap.connect.pool", "true");
     try {
       final LdapContext ctx = new InitialLdapContext(env, null);
       return ctx;
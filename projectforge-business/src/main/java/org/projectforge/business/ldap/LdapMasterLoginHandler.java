@@ -32,6 +32,8 @@ import org.projectforge.framework.persistence.user.entities.PFUserDO;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import javax.naming.NamingException;
+import javax.naming.directory.DirContext;
 import java.util.*;
 
 /**
@@ -60,8 +62,22 @@ public class LdapMasterLoginHandler extends LdapLoginHandler
 {
   private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(LdapMasterLoginHandler.class);
 
+  /**
+   * Changes committed while the user group cache was loaded may have an older last update timestamp than the start of
+   * the synchronization. Therefore objects modified within this overlap before the last synchronization are checked again.
+   */
+  private static final long WATERMARK_OVERLAP_MILLIS = 5 * 60 * 1000;
+
   private boolean refreshInProgress;
 
+  /**
+   * Start time of the last successful synchronization. Only users and groups modified since then are written to LDAP.
+   * -1 forces a full reconciliation.
+   */
+  private long lastSuccessfulSync = -1;
+
+  private volatile boolean fullSyncRequested;
+
   @Autowired
   private GroupDOConverter groupDOConverter;
 
@@ -133,13 +149,16 @@ public class LdapMasterLoginHandler extends LdapLoginHandler
   }
 
   /**
-   * Refreshes the LDAP.
+   * Refreshes the LDAP: all users and groups modified since the last successful synchronization are written through.
+   * The first synchronization after start-up and any synchronization after {@link #requestFullSynchronization()} are
+   * full reconciliations of all users and groups.
    *
    * @see org.projectforge.business.login.LoginHandler#afterUserGroupCacheRefresh(java.util.List, java.util.List)
    */
   @Override
   public void afterUserGroupCacheRefresh(final Collection<PFUserDO> users, final Collection<GroupDO> groups)
   {
+    final long syncStart = System.currentTimeMillis();
     new Thread()
     {
       @Override
@@ -148,7 +167,7 @@ public class LdapMasterLoginHandler extends LdapLoginHandler
         synchronized (LdapMasterLoginHandler.this) {
           try {
             refreshInProgress = true;
-            updateLdap(users, groups);
+            updateLdap(users, groups, syncStart);
           } finally {
             refreshInProgress = false;
           }
@@ -157,6 +176,15 @@ public class LdapMasterLoginHandler extends LdapLoginHandler
     }.start();
   }
 
+  /**
+   * The next synchronization (on next refresh of the user group cache) will compare all users and groups with the
+   * LDAP entries instead of the modified ones only.
+   */
+  public void requestFullSynchronization()
+  {
+    fullSyncRequested = true;
+  }
+
   /**
    * @return true if currently a cache refresh is running, otherwise false.
    */
@@ -165,157 +193,264 @@ public class LdapMasterLoginHandler extends LdapLoginHandler
     return refreshInProgress;
   }
 
-  private void updateLdap(final Collection<PFUserDO> users, final Collection<GroupDO> groups)
+  private void updateLdap(final Collection<PFUserDO> users, final Collection<GroupDO> groups, final long syncStart)
   {
-    new LdapTemplate(ldapConnector)
-    {
-      @Override
-      protected Object call() throws Exception
+    final boolean fullSync = fullSyncRequested || lastSuccessfulSync < 0;
+    fullSyncRequested = false;
+    final Collection<PFUserDO> modifiedUsers;
+    final Collection<GroupDO> modifiedGroups;
+    if (fullSync) {
+      modifiedUsers = users;
+      modifiedGroups = groups;
+    } else {
+      final long watermark = lastSuccessfulSync - WATERMARK_OVERLAP_MILLIS;
+      modifiedUsers = getModifiedUsers(users, watermark);
+      modifiedGroups = getModifiedGroups(groups, modifiedUsers, watermark);
+      if (modifiedUsers.isEmpty() && modifiedGroups.isEmpty()) {
+        log.info("LDAP is up-to-date, no modified users or groups since last synchronization.");
+        lastSuccessfulSync = syncStart;
+        return;
+      }
+    }
+    boolean success = false;
+    try {
+      final Integer errors = (Integer) new LdapTemplate(ldapConnector)
       {
-        log.info("Updating LDAP...");
-        // First, get set of all ldap entries:
-        final List<LdapUser> ldapUsers = getAllLdapUsers(ctx);
-        final List<LdapUser> updatedLdapUsers = new ArrayList<>();
-        int error = 0, unmodified = 0, created = 0, updated = 0, deleted = 0, renamed = 0;
-        final boolean sambaConfigured = ldapConfig.getSambaAccountsConfig() != null;
-        for (final PFUserDO user : users) {
-          final LdapUser updatedLdapUser = pfUserDOConverter.convert(user);
-          try {
-            final LdapUser ldapUser = getLdapUser(ldapUsers, user);
-            if (ldapUser == null) {
-              updatedLdapUser.setOrganizationalUnit(userBase);
-              if (!user.isDeleted() && !user.getLocalUser()) {
-                // Do not add deleted or local users.
-                // TODO: if (ldapConfig.isSupportPosixAccounts() == true &&) {
-                // updatedLdapUser.addObjectClass(LdapUserDao.OBJECT_CLASS_POSIX_ACCOUNT);
-                // }
-                ldapUserDao.create(ctx, userBase, updatedLdapUser);
-                created++;
-              }
+        @Override
+        protected Object call() throws Exception
+        {
+          return updateLdap(ctx, modifiedUsers, modifiedGroups, fullSync);
+        }
+      }.excecute();
+      success = errors != null && errors == 0;
+    } finally {
+      if (success) {
+        lastSuccessfulSync = syncStart;
+      } else if (fullSync) {
+        // Retry the reconciliation with the next synchronization.
+        fullSyncRequested = true;
+      }
+    }
+  }
+
+  /**
+   * @return The number of errors.
+   */
+  private int updateLdap(final DirContext ctx, final Collection<PFUserDO> users, final Collection<GroupDO> groups,
+      final boolean fullSync) throws NamingException
+  {
+    log.info((fullSync ? "Full" : "Delta") + " update of LDAP (" + users.size() + " users, " + groups.size() + " groups)...");
+    // First, get set of all ldap entries:
+    final List<LdapUser> ldapUsers = getAllLdapUsers(ctx);
+    final Map<String, LdapUser> ldapUsersByUid = new HashMap<>();
+    final Map<String, LdapUser> ldapUsersByEmployeeNumber = new HashMap<>();
+    for (final LdapUser ldapUser : ldapUsers) {
+      if (ldapUser.getUid() != null) {
+        ldapUsersByUid.putIfAbsent(ldapUser.getUid(), ldapUser);
+      }
+      if (ldapUser.getEmployeeNumber() != null) {
+        ldapUsersByEmployeeNumber.putIfAbsent(ldapUser.getEmployeeNumber(), ldapUser);
+      }
+    }
+    final List<LdapUser> updatedLdapUsers = new ArrayList<>();
+    int errors = 0;
+    int error = 0, unmodified = 0, created = 0, updated = 0, deleted = 0, renamed = 0;
+    final boolean sambaConfigured = ldapConfig.getSambaAccountsConfig() != null;
+    for (final PFUserDO user : users) {
+      final LdapUser updatedLdapUser = pfUserDOConverter.convert(user);
+      try {
+        final LdapUser ldapUser = getLdapUser(ldapUsersByUid, ldapUsersByEmployeeNumber, user);
+        if (ldapUser == null) {
+          updatedLdapUser.setOrganizationalUnit(userBase);
+          if (!user.isDeleted() && !user.getLocalUser()) {
+            // Do not add deleted or local users.
+            // TODO: if (ldapConfig.isSupportPosixAccounts() == true &&) {
+            // updatedLdapUser.addObjectClass(LdapUserDao.OBJECT_CLASS_POSIX_ACCOUNT);
+            // }
+            ldapUserDao.create(ctx, userBase, updatedLdapUser);
+            created++;
+          }
+        } else {
+          // Need to set organizational unit for detecting the change of deactivated flag. The updateLdapUser needs the organizational
+          // unit of the original ldap object:
+          updatedLdapUser.setOrganizationalUnit(ldapUser.getOrganizationalUnit());
+          // Otherwise the NT password will be deleted in copy function below:
+          updatedLdapUser.setSambaNTPassword(ldapUser.getSambaNTPassword());
+          if (user.isDeleted() || user.getLocalUser()) {
+            // Deleted and local users shouldn't be synchronized with LDAP:
+            ldapUserDao.delete(ctx, updatedLdapUser);
+            deleted++;
+          } else {
+            final boolean modified = pfUserDOConverter.copyUserFields(updatedLdapUser, ldapUser);
+            if (!StringUtils.equals(updatedLdapUser.getUid(), ldapUser.getUid())) {
+              // uid (dn) changed.
+              ldapUserDao.rename(ctx, updatedLdapUser, ldapUser);
+              renamed++;
+            }
+            if (modified) {
+              updatedLdapUser.setObjectClasses(ldapUser.getObjectClasses());
+              ldapUserDao.update(ctx, userBase, updatedLdapUser);
+              updated++;
             } else {
-              // Need to set organizational unit for detecting the change of deactivated flag. The updateLdapUser needs the organizational
-              // unit of the original ldap object:
-              updatedLdapUser.setOrganizationalUnit(ldapUser.getOrganizationalUnit());
-              // Otherwise the NT password will be deleted in copy function below:
-              updatedLdapUser.setSambaNTPassword(ldapUser.getSambaNTPassword());
-              if (user.isDeleted() || user.getLocalUser()) {
-                // Deleted and local users shouldn't be synchronized with LDAP:
-                ldapUserDao.delete(ctx, updatedLdapUser);
-                deleted++;
-              } else {
-                final boolean modified = pfUserDOConverter.copyUserFields(updatedLdapUser, ldapUser);
-                if (!StringUtils.equals(updatedLdapUser.getUid(), ldapUser.getUid())) {
-                  // uid (dn) changed.
-                  ldapUserDao.rename(ctx, updatedLdapUser, ldapUser);
-                  renamed++;
-                }
-                if (modified) {
-                  updatedLdapUser.setObjectClasses(ldapUser.getObjectClasses());
-                  ldapUserDao.update(ctx, userBase, updatedLdapUser);
-                  updated++;
-                } else {
-                  unmodified++;
-                }
-                boolean passwordsGiven = false;
-                if (ldapUser.isPasswordGiven()) {
-                  // If the user has a Samba SID then the Samba NT password mustn't be blank:
-                  if (!sambaConfigured
-                      || ldapUser.getSambaSIDNumber() == null
-                      || StringUtils.isNotBlank(ldapUser.getSambaNTPassword())) {
-                    passwordsGiven = true;
-                  }
-                }
-                // It's ok if there is no SambaNTPassword. The user has to set it manually.
-                if (passwordsGiven) {
-                  if (updatedLdapUser.isDeactivated()) {
-                    log.warn("User password for deactivated user is set: " + ldapUser);
-                    ldapUserDao.deactivateUser(ctx, updatedLdapUser);
-                  }
-                }
+              unmodified++;
+            }
+            boolean passwordsGiven = false;
+            if (ldapUser.isPasswordGiven()) {
+              // If the user has a Samba SID then the Samba NT password mustn't be blank:
+              if (!sambaConfigured
+                  || ldapUser.getSambaSIDNumber() == null
+                  || StringUtils.isNotBlank(ldapUser.getSambaNTPassword())) {
+                passwordsGiven = true;
+              }
+            }
+            // It's ok if there is no SambaNTPassword. The user has to set it manually.
+            if (passwordsGiven) {
+              if (updatedLdapUser.isDeactivated()) {
+                log.warn("User password for deactivated user is set: " + ldapUser);
+                ldapUserDao.deactivateUser(ctx, updatedLdapUser);
               }
             }
-            ldapUserDao.buildDn(userBase, updatedLdapUser);
-            updatedLdapUsers.add(updatedLdapUser);
-          } catch (final Exception ex) {
-            ldapUserDao.buildDn(userBase, updatedLdapUser);
-            updatedLdapUsers.add(updatedLdapUser);
-            log.error("Error while proceeding user '" + user.getUsername() + "'. Continuing with next user.", ex);
-            error++;
           }
         }
+        ldapUserDao.buildDn(userBase, updatedLdapUser);
+        updatedLdapUsers.add(updatedLdapUser);
+      } catch (final Exception ex) {
+        ldapUserDao.buildDn(userBase, updatedLdapUser);
+        updatedLdapUsers.add(updatedLdapUser);
+        log.error("Error while proceeding user '" + user.getUsername() + "'. Continuing with next user.", ex);
+        error++;
+      }
+    }
 
-        log.info("Update of LDAP users: "
-            + (error > 0 ? "*** " + error + " errors ***, " : "")
-            + unmodified
-            + " unmodified, "
-            + created
-            + " created, "
-            + updated
-            + " updated, "
-            + renamed
-            + " renamed, "
-            + deleted
-            + " deleted.");
-        // Now get all groups:
-        final List<LdapGroup> ldapGroups = getAllLdapGroups(ctx);
-        final Map<Integer, LdapUser> ldapUserMap = getUserMap(updatedLdapUsers);
-        error = unmodified = created = updated = renamed = deleted = 0;
-        for (final GroupDO group : groups) {
-          try {
-            final LdapGroup updatedLdapGroup = groupDOConverter.convert(group, baseDN, ldapUserMap);
-            final LdapGroup ldapGroup = getLdapGroup(ldapGroups, group);
-            if (ldapGroup == null) {
-              updatedLdapGroup.setOrganizationalUnit(groupBase);
-              if (!group.isDeleted() && !group.getLocalGroup()) {
-                // Do not add deleted or local groups.
-                setMembers(updatedLdapGroup, group.getAssignedUsers(), ldapUserMap);
-                ldapGroupDao.create(ctx, groupBase, updatedLdapGroup);
-                created++;
-              }
+    log.info("Update of LDAP users: "
+        + (error > 0 ? "*** " + error + " errors ***, " : "")
+        + unmodified
+        + " unmodified, "
+        + created
+        + " created, "
+        + updated
+        + " updated, "
+        + renamed
+        + " renamed, "
+        + deleted
+        + " deleted.");
+    errors += error;
+    // Now get all groups:
+    final Map<String, LdapGroup> ldapGroups = new HashMap<>();
+    for (final LdapGroup ldapGroup : getAllLdapGroups(ctx)) {
+      if (ldapGroup.getBusinessCategory() != null) {
+        ldapGroups.putIfAbsent(ldapGroup.getBusinessCategory(), ldapGroup);
+      }
+    }
+    final Map<Integer, LdapUser> ldapUserMap = new HashMap<>();
+    if (!fullSync) {
+      // Group members not modified since last synchronization are taken from the ldap entries:
+      for (final LdapUser ldapUser : ldapUsers) {
+        final Integer id = PFUserDOConverter.getId(ldapUser);
+        if (id != null) {
+          ldapUserMap.put(id, ldapUser);
+        }
+      }
+    }
+    ldapUserMap.putAll(getUserMap(updatedLdapUsers));
+    error = unmodified = created = updated = renamed = deleted = 0;
+    for (final GroupDO group : groups) {
+      try {
+        final LdapGroup updatedLdapGroup = groupDOConverter.convert(group, baseDN, ldapUserMap);
+        final LdapGroup ldapGroup = ldapGroups.get(groupDOConverter.buildBusinessCategory(group));
+        if (ldapGroup == null) {
+          updatedLdapGroup.setOrganizationalUnit(groupBase);
+          if (!group.isDeleted() && !group.getLocalGroup()) {
+            // Do not add deleted or local groups.
+            setMembers(updatedLdapGroup, group.getAssignedUsers(), ldapUserMap);
+            ldapGroupDao.create(ctx, groupBase, updatedLdapGroup);
+            created++;
+          }
+        } else {
+          updatedLdapGroup.setOrganizationalUnit(ldapGroup.getOrganizationalUnit());
+          if (group.isDeleted() || group.getLocalGroup()) {
+            // Deleted and local users shouldn't be synchronized with LDAP:
+            ldapGroupDao.delete(ctx, updatedLdapGroup);
+            deleted++;
+          } else {
+            final boolean modified = groupDOConverter.copyGroupFields(updatedLdapGroup, ldapGroup);
+            if (modified) {
+              updatedLdapGroup.setObjectClasses(ldapGroup.getObjectClasses());
+              setMembers(updatedLdapGroup, group.getAssignedUsers(), ldapUserMap);
+              ldapGroupDao.update(ctx, groupBase, updatedLdapGroup);
+              updated++;
             } else {
-              updatedLdapGroup.setOrganizationalUnit(ldapGroup.getOrganizationalUnit());
-              if (group.isDeleted() || group.getLocalGroup()) {
-                // Deleted and local users shouldn't be synchronized with LDAP:
-                ldapGroupDao.delete(ctx, updatedLdapGroup);
-                deleted++;
-              } else {
-                final boolean modified = groupDOConverter.copyGroupFields(updatedLdapGroup, ldapGroup);
-                if (modified) {
-                  updatedLdapGroup.setObjectClasses(ldapGroup.getObjectClasses());
-                  setMembers(updatedLdapGroup, group.getAssignedUsers(), ldapUserMap);
-                  ldapGroupDao.update(ctx, groupBase, updatedLdapGroup);
-                  updated++;
-                } else {
-                  unmodified++;
-                }
-                if (!StringUtils.equals(updatedLdapGroup.getCommonName(), ldapGroup.getCommonName())) {
-                  // CommonName (cn) and therefor dn changed.
-                  ldapGroupDao.rename(ctx, updatedLdapGroup, ldapGroup);
-                  renamed++;
-                }
-              }
+              unmodified++;
+            }
+            if (!StringUtils.equals(updatedLdapGroup.getCommonName(), ldapGroup.getCommonName())) {
+              // CommonName (cn) and therefor dn changed.
+              ldapGroupDao.rename(ctx, updatedLdapGroup, ldapGroup);
+              renamed++;
             }
-          } catch (final Exception ex) {
-            log.error("Error while proceeding group '" + group.getName() + "'. Continuing with next group.", ex);
-            error++;
           }
         }
-        log.info("Update of LDAP groups: "
-            + (error > 0 ? "*** " + error + " errors ***, " : "")
-            + unmodified
-            + " unmodified, "
-            + created
-            + " created, "
-            + updated
-            + " updated, "
-            + renamed
-            + " renamed, "
-            + deleted
-            + " deleted.");
-        log.info("LDAP update done.");
-        return null;
+      } catch (final Exception ex) {
+        log.error("Error while proceeding group '" + group.getName() + "'. Continuing with next group.", ex);
+        error++;
+      }
+    }
+    log.info("Update of LDAP groups: "
+        + (error > 0 ? "*** " + error + " errors ***, " : "")
+        + unmodified
+        + " unmodified, "
+        + created
+        + " created, "
+        + updated
+        + " updated, "
+        + renamed
+        + " renamed, "
+        + deleted
+        + " deleted.");
+    errors += error;
+    log.info("LDAP update done.");
+    return errors;
+  }
+
+  /**
+   * @return All users modified since the given watermark (including deleted and deactivated ones).
+   */
+  static List<PFUserDO> getModifiedUsers(final Collection<PFUserDO> users, final long watermark)
+  {
+    final List<PFUserDO> result = new ArrayList<>();
+    for (final PFUserDO user : users) {
+      if (isModifiedSince(user.getLastUpdate(), watermark)) {
+        result.add(user);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * @return All groups modified since the given watermark and all groups with modified assigned users (members are
+   * identified by their dn, which changes e. g. on renaming or deactivating users).
+   */
+  static List<GroupDO> getModifiedGroups(final Collection<GroupDO> groups, final Collection<PFUserDO> modifiedUsers,
+      final long watermark)
+  {
+    final Set<Integer> modifiedUserIds = new HashSet<>();
+    for (final PFUserDO user : modifiedUsers) {
+      modifiedUserIds.add(user.getId());
+    }
+    final List<GroupDO> result = new ArrayList<>();
+    for (final GroupDO group : groups) {
+      if (isModifiedSince(group.getLastUpdate(), watermark)) {
+        result.add(group);
+      } else if (group.getAssignedUsers() != null
+          && group.getAssignedUsers().stream().anyMatch(user -> modifiedUserIds.contains(user.getId()))) {
+        result.add(group);
       }
-    }.excecute();
+    }
+    return result;
+  }
+
+  private static boolean isModifiedSince(final Date lastUpdate, final long watermark)
+  {
+    return lastUpdate == null || lastUpdate.getTime() >= watermark;
   }
 
   /**
@@ -422,24 +557,14 @@ public class LdapMasterLoginHandler extends LdapLoginHandler
     return map;
   }
 
-  private LdapUser getLdapUser(final List<LdapUser> ldapUsers, final PFUserDO user)
+  private LdapUser getLdapUser(final Map<String, LdapUser> ldapUsersByUid,
+      final Map<String, LdapUser> ldapUsersByEmployeeNumber, final PFUserDO user)
   {
-    for (final LdapUser ldapUser : ldapUsers) {
-      if (StringUtils.equals(ldapUser.getUid(), user.getUsername())
-          || StringUtils.equals(ldapUser.getEmployeeNumber(), PFUserDOConverter.buildEmployeeNumber(user))) {
-        return ldapUser;
-      }
-    }
-    return null;
-  }
-
-  private LdapGroup getLdapGroup(final List<LdapGroup> ldapGroups, final GroupDO group)
-  {
-    for (final LdapGroup ldapGroup : ldapGroups) {
-      if (StringUtils.equals(ldapGroup.getBusinessCategory(), groupDOConverter.buildBusinessCategory(group))) {
-        return ldapGroup;
-      }
+    final LdapUser ldapUser = user.getUsername() != null ? ldapUsersByUid.get(user.getUsername()) : null;
+    if (ldapUser != null) {
+      return ldapUser;
     }
-    return null;
+    final String employeeNumber = PFUserDOConverter.buildEmployeeNumber(user);
+    return employeeNumber != null ? ldapUsersByEmployeeNumber.get(employeeNumber) : null;
   }
 }
@@ -198,26 +198,29 @@ public class TenantRegistryMap extends AbstractCache {
   @Override
   protected void refresh() {
     log.info("Refreshing " + TenantRegistry.class.getName() + "...");
-    final Iterator<Map.Entry<Integer, TenantRegistry>> it = tenantRegistryMap.entrySet().iterator();
-    boolean defaultTenantFound = false;
-    while (it.hasNext()) {
-      final Map.Entry<Integer, TenantRegistry> entry = it.next();
-      final TenantRegistry registry = entry.getValue();
-      if (registry.getTenant().isDefault()) {
-        if (defaultTenantFound) {
-          log.error("Oups, multiple default tenants found: " + registry.getTenant() + ", defaultTenantId=" + defaultTenantId);
-        } else {
-          defaultTenantId = registry.getTenant().getId();
-          defaultTenantFound = true;
+    // The registry map is guarded by this (the cache calls refresh() under this monitor as well):
+    synchronized (this) {
+      final Iterator<Map.Entry<Integer, TenantRegistry>> it = tenantRegistryMap.entrySet().iterator();
+      boolean defaultTenantFound = false;
+      while (it.hasNext()) {
+        final Map.Entry<Integer, TenantRegistry> entry = it.next();
+        final TenantRegistry registry = entry.getValue();
+        if (registry.getTenant().isDefault()) {
+          if (defaultTenantFound) {
+            log.error("Oups, multiple default tenants found: " + registry.getTenant() + ", defaultTenantId=" + defaultTenantId);
+          } else {
+            defaultTenantId = registry.getTenant().getId();
+            defaultTenantFound = true;
+          }
+        }
+        if (registry.isOutdated()) {
+          final TenantDO tenant = registry.getTenant();
+          log.info("Detaching caches of tenant '"
+                  + (tenant != null ? tenant.getShortName() : "null")
+                  + "' with id "
+                  + (tenant != null ? tenant.getId() : "null"));
+          it.remove();
         }
-      }
-      if (registry.isOutdated()) {
-        final TenantDO tenant = registry.getTenant();
-        log.info("Detaching caches of tenant '"
-                + (tenant != null ? tenant.getShortName() : "null")
-                + "' with id "
-                + (tenant != null ? tenant.getId() : "null"));
-        it.remove();
       }
     }
     log.info("Refreshing of " + TenantRegistry.class.getName() + " done.");
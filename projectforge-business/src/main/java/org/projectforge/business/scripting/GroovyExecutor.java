@@ -25,11 +25,13 @@ package org.projectforge.business.scripting;
 
 import groovy.lang.Binding;
 import groovy.lang.GroovyClassLoader;
+import groovy.lang.GroovySystem;
 import groovy.lang.Script;
 import groovy.lang.Writable;
 import groovy.text.SimpleTemplateEngine;
 import groovy.text.Template;
 import groovy.text.TemplateEngine;
+import kotlin.Unit;
 import org.apache.commons.lang3.StringUtils;
 import org.codehaus.groovy.control.CompilationFailedException;
 import org.projectforge.business.refactoring.RefactoringService;
@@ -52,19 +54,46 @@ public class GroovyExecutor
 {
   private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(GroovyExecutor.class);
 
+  /**
+   * Compiled scripts are shared by all executors, because executors are also created without Spring.
+   */
+  private static final CompiledScriptCache<CompiledScript> scriptCache = new CompiledScriptCache<>("groovy-scripts", 100,
+      compiled -> {
+        compiled.dispose();
+        return Unit.INSTANCE;
+      });
+
+  private static final CompiledScriptCache<CompiledTemplate> templateCache = new CompiledScriptCache<>("groovy-templates", 100,
+      compiled -> {
+        compiled.dispose();
+        return Unit.INSTANCE;
+      });
+
   @Autowired
   private RefactoringService refService;
 
+  /**
+   * Removes the compiled script from the cache (if cached), e. g. after modifying the script.
+   */
+  public static void removeFromCache(final String script)
+  {
+    if (script != null) {
+      scriptCache.remove(script);
+    }
+  }
+
   public ScriptExecutionResult execute(final String script, final Map<String, Object> variables)
   {
     if (script == null) {
       return new ScriptExecutionResult();
     }
-    final Script groovyObject = compileGroovy(script, true);
-    if (groovyObject == null) {
-      return new ScriptExecutionResult();
+    try (final CompiledScriptCache.Handle<CompiledScript> handle = acquire(null, script)) {
+      final Script groovyObject = createScript(null, handle, true);
+      if (groovyObject == null) {
+        return new ScriptExecutionResult();
+      }
+      return execute(groovyObject, variables);
     }
-    return execute(groovyObject, variables);
   }
 
   public ScriptExecutionResult execute(final ScriptExecutionResult result, final String script, final Map<String, Object> variables)
@@ -72,17 +101,34 @@ public class GroovyExecutor
     if (script == null) {
       return result;
     }
-    final Script groovyObject = compileGroovy(result, script, true);
-    if (groovyObject == null) {
-      return result;
+    // The compiled script is released after execution, so it may be disposed after eviction.
+    try (final CompiledScriptCache.Handle<CompiledScript> handle = acquire(result, script)) {
+      final Script groovyObject = createScript(result, handle, true);
+      if (groovyObject == null) {
+        return result;
+      }
+      return execute(result, groovyObject, variables);
     }
-    return execute(result, groovyObject, variables);
   }
 
+  /**
+   * The compiled template is cached.
+   */
   public String executeTemplate(final String template, final Map<String, Object> variables)
   {
     securityChecks(template);
-    return executeTemplate(new SimpleTemplateEngine(), template, variables);
+    if (template == null) {
+      return null;
+    }
+    try (final CompiledScriptCache.Handle<CompiledTemplate> handle = templateCache.acquire(template, () -> new CompiledTemplate(template))) {
+      if (handle == null) {
+        return null;
+      }
+      return executeTemplate(handle.getCompiled().template, template, variables);
+    } catch (final CompilationFailedException ex) {
+      log.error(ex.getMessage() + " while compiling template: " + template, ex);
+      return null;
+    }
   }
 
   public String executeTemplate(final TemplateEngine templateEngine, final String template,
@@ -93,7 +139,16 @@ public class GroovyExecutor
       return null;
     }
     try {
-      final Template templateObject = templateEngine.createTemplate(template);
+      return executeTemplate(templateEngine.createTemplate(template), template, variables);
+    } catch (final CompilationFailedException | IOException | ClassNotFoundException ex) {
+      log.error(ex.getMessage() + " while executing template: " + template, ex);
+    }
+    return null;
+  }
+
+  private String executeTemplate(final Template templateObject, final String template, final Map<String, Object> variables)
+  {
+    try {
       final Writable writable = templateObject.make(variables);
       final StringWriter writer = new StringWriter();
       writable.writeTo(writer);
@@ -102,7 +157,7 @@ public class GroovyExecutor
         log.debug(writer.toString());
       }
       return writer.toString();
-    } catch (final CompilationFailedException | IOException | ClassNotFoundException ex) {
+    } catch (final CompilationFailedException | IOException ex) {
       log.error(ex.getMessage() + " while executing template: " + template, ex);
     }
     return null;
@@ -119,44 +174,28 @@ public class GroovyExecutor
   }
 
   /**
+   * The returned script may be used for an unlimited time by the caller, so the compiled script isn't released and
+   * its class loader isn't closed explicitly (it's unloaded after garbage collection).
+   *
    * @param script
    * @param bindScriptResult If true then "scriptResult" from type GroovyResult is binded.
    * @return
    */
   public Script compileGroovy(final ScriptExecutionResult result, final String script, final boolean bindScriptResult)
   {
-    securityChecks(script);
-    final GroovyClassLoader gcl = new GroovyClassLoader()
-    {
-      @SuppressWarnings("rawtypes")
-      @Override
-      public Class loadClass(String name, boolean lookupScriptFiles, boolean preferClassOverScript, boolean resolve)
-          throws ClassNotFoundException, CompilationFailedException
-      {
-        Class loadClass = null;
-        try {
-          loadClass = super.loadClass(name, lookupScriptFiles, preferClassOverScript, resolve);
-        } catch (ClassNotFoundException e) {
-          if (name.startsWith("org.projectforge")) {
-            String refClassName = null;
-            String[] nameParts = name.split("\\.");
-            refClassName = refService.getNewPackageNameForClass(nameParts[nameParts.length - 1]);
-            if (refClassName != null) {
-              loadClass = super.loadClass(refClassName, lookupScriptFiles, preferClassOverScript, resolve);
-              if (loadClass == null) {
-                log.error("Error while resolving Class: " + name);
-                throw e;
-              }
-            }
-          }
-        }
-        return loadClass;
-      }
-    };
+    return createScript(result, acquire(result, script), bindScriptResult);
+  }
 
-    Class<?> groovyClass;
+  /**
+   * @return The compiled script (has to be released by the caller) or null, if the compilation failed.
+   */
+  private CompiledScriptCache.Handle<CompiledScript> acquire(final ScriptExecutionResult result, final String script)
+  {
+    securityChecks(script);
+    final long start = System.currentTimeMillis();
+    final CompiledScriptCache.Handle<CompiledScript> handle;
     try {
-      groovyClass = gcl.parseClass(script);
+      handle = scriptCache.acquire(script, () -> compile(script, refService));
     } catch (final CompilationFailedException ex) {
       log.info("Groovy-CompilationFailedException: " + ex.getMessage());
       if (result != null) {
@@ -164,6 +203,19 @@ public class GroovyExecutor
       }
       return null;
     }
+    if (handle != null && result != null) {
+      result.setCompileTimeMillis(handle.getFromCache() ? 0L : System.currentTimeMillis() - start);
+    }
+    return handle;
+  }
+
+  private Script createScript(final ScriptExecutionResult result, final CompiledScriptCache.Handle<CompiledScript> handle,
+      final boolean bindScriptResult)
+  {
+    if (handle == null) {
+      return null;
+    }
+    final Class<?> groovyClass = handle.getCompiled().scriptClass;
     Script groovyObject;
     try {
       groovyObject = (Script) groovyClass.newInstance();
@@ -182,6 +234,20 @@ public class GroovyExecutor
     return groovyObject;
   }
 
+  /**
+   * Each script gets its own class loader, which is closed after eviction from the cache.
+   */
+  private static CompiledScript compile(final String script, final RefactoringService refService)
+  {
+    final GroovyClassLoader gcl = new RefactoringClassLoader(refService);
+    try {
+      return new CompiledScript(gcl.parseClass(script), gcl);
+    } catch (final CompilationFailedException ex) {
+      close(gcl);
+      throw ex;
+    }
+  }
+
   public ScriptExecutionResult execute(final Script groovyScript)
   {
     return execute(groovyScript, null);
@@ -204,12 +270,17 @@ public class GroovyExecutor
       result = new ScriptExecutionResult();
     }
     Object res;
+    final long start = System.currentTimeMillis();
     try {
       res = groovyScript.run();
     } catch (final Exception ex) {
       log.info("Groovy-Execution-Exception: " + ex.getMessage(), ex);
-      return new ScriptExecutionResult(ex);
+      final ScriptExecutionResult exResult = new ScriptExecutionResult(ex);
+      exResult.setCompileTimeMillis(result.getCompileTimeMillis());
+      exResult.setExecutionTimeMillis(System.currentTimeMillis() - start);
+      return exResult;
     }
+    result.setExecutionTimeMillis(System.currentTimeMillis() - start);
     result.setResult(res);
     return result;
   }
@@ -228,4 +299,98 @@ public class GroovyExecutor
       }
     }
   }
+
+  private static void close(final GroovyClassLoader classLoader)
+  {
+    classLoader.clearCache();
+    try {
+      classLoader.close();
+    } catch (final IOException ex) {
+      log.warn("Error while closing class loader of compiled script: " + ex.getMessage(), ex);
+    }
+  }
+
+  private static class CompiledScript
+  {
+    private final Class<?> scriptClass;
+
+    private final GroovyClassLoader classLoader;
+
+    private CompiledScript(final Class<?> scriptClass, final GroovyClassLoader classLoader)
+    {
+      this.scriptClass = scriptClass;
+      this.classLoader = classLoader;
+    }
+
+    private void dispose()
+    {
+      GroovySystem.getMetaClassRegistry().removeMetaClass(scriptClass);
+      close(classLoader);
+    }
+  }
+
+  /**
+   * Resolves classes of ProjectForge moved to other packages. Static, so the cached scripts don't reference any
+   * executor.
+   */
+  private static class RefactoringClassLoader extends GroovyClassLoader
+  {
+    private final RefactoringService refService;
+
+    private RefactoringClassLoader(final RefactoringService refService)
+    {
+      this.refService = refService;
+    }
+
+    @SuppressWarnings("rawtypes")
+    @Override
+    public Class loadClass(String name, boolean lookupScriptFiles, boolean preferClassOverScript, boolean resolve)
+        throws ClassNotFoundException, CompilationFailedException
+    {
+      Class loadClass = null;
+      try {
+        loadClass = super.loadClass(name, lookupScriptFiles, preferClassOverScript, resolve);
+      } catch (ClassNotFoundException e) {
+        if (name.startsWith("org.projectforge")) {
+          String refClassName = null;
+          String[] nameParts = name.split("\\.");
+          refClassName = refService.getNewPackageNameForClass(nameParts[nameParts.length - 1]);
+          if (refClassName != null) {
+            loadClass = super.loadClass(refClassName, lookupScriptFiles, preferClassOverScript, resolve);
+            if (loadClass == null) {
+              log.error("Error while resolving Class: " + name);
+              throw e;
+            }
+          }
+        }
+      }
+      return loadClass;
+    }
+  }
+
+  private static class CompiledTemplate
+  {
+    private final Template template;
+
+    private final GroovyClassLoader classLoader;
+
+    private CompiledTemplate(final String template)
+    {
+      this.classLoader = new GroovyClassLoader(GroovyExecutor.class.getClassLoader());
+      try {
+        this.template = new SimpleTemplateEngine(classLoader).createTemplate(template);
+      } catch (final IOException | ClassNotFoundException ex) {
+        close(classLoader);
+        throw new CompilationFailedException(0, null, ex);
+      } catch (final CompilationFailedException ex) {
+        close(classLoader);
+        throw ex;
+      }
+    }
+
+    private void dispose()
+    {
+      close(classLoader);
+    }
+  }
 }
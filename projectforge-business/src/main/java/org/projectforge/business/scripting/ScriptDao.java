@@ -74,6 +74,7 @@ public class ScriptDao extends BaseDao<ScriptDO>
   protected void onChange(final ScriptDO obj, final ScriptDO dbObj)
   {
     if (!Arrays.equals(dbObj.getScript(), obj.getScript())) {
+      removeFromCache(dbObj);
       obj.setScriptBackup(dbObj.getScript());
       final String filename = ReplaceUtils.encodeFilename(dbObj.getName() + "_" + PFDateTime.now().getIsoStringSeconds() + ".groovy", true);
       final File backupDir = new File(ConfigXml.getInstance().getBackupDirectory(), "scripts");
@@ -130,16 +131,43 @@ public class ScriptDao extends BaseDao<ScriptDO>
 
     scriptVariables.put("i18n", new I18n());
 
-    String scriptContent = script.getScriptAsString();
     if (script.getType() == ScriptDO.ScriptType.KOTLIN) {
-      return KotlinScriptExecutor.execute(scriptContent, scriptVariables, script.getFile(), script.getFilename());
+      return KotlinScriptExecutor.execute(script.getScriptAsString(), scriptVariables, script.getFile(), script.getFilename());
     }
+    return groovyExecutor.execute(new ScriptExecutionResult(), getGroovyScript(script), scriptVariables);
+  }
+
+  @Override
+  protected void afterDelete(final ScriptDO obj)
+  {
+    removeFromCache(obj);
+  }
+
+  /**
+   * Compiled scripts are cached by their content, so the compiled code of a modified or deleted script isn't needed
+   * anymore.
+   */
+  private void removeFromCache(final ScriptDO script)
+  {
+    if (script.getScript() == null) {
+      return;
+    }
+    if (script.getType() == ScriptDO.ScriptType.KOTLIN) {
+      KotlinScriptExecutor.removeFromCache(script.getScriptAsString());
+    } else {
+      GroovyExecutor.removeFromCache(getGroovyScript(script));
+    }
+  }
+
+  private String getGroovyScript(final ScriptDO script)
+  {
+    String scriptContent = script.getScriptAsString();
     if (scriptContent.contains("import org.projectforge.export")) {
       // Package was renamed in version 5.2 and 6.13:
       scriptContent = scriptContent.replace("import org.projectforge.export",
           "import org.projectforge.export.*\nimport org.projectforge.business.excel");
     }
-    return groovyExecutor.execute(new ScriptExecutionResult(), scriptContent, scriptVariables);
+    return scriptContent;
   }
 
   /**
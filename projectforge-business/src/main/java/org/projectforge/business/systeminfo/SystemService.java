@@ -31,6 +31,7 @@ import org.projectforge.business.fibu.KontoCache;
 import org.projectforge.business.fibu.RechnungCache;
 import org.projectforge.business.fibu.kost.KostCache;
 import org.projectforge.business.jsonRest.RestCallService;
+import org.projectforge.business.ldap.LdapMasterLoginHandler;
 import org.projectforge.business.multitenancy.TenantRegistry;
 import org.projectforge.business.multitenancy.TenantRegistryMap;
 import org.projectforge.business.task.TaskDO;
@@ -72,6 +73,9 @@ public class SystemService {
   @Autowired
   private KostCache kostCache;
 
+  @Autowired
+  private LdapMasterLoginHandler ldapMasterLoginHandler;
+
   @Value("${projectforge.versioncheck.enable:true}")
   private boolean enableVersionCheck;
 
@@ -245,6 +249,7 @@ public class SystemService {
    */
   public String refreshCaches() {
     final TenantRegistry tenantRegistry = TenantRegistryMap.getInstance().getTenantRegistry();
+    ldapMasterLoginHandler.requestFullSynchronization(); // Only used, if LDAP master mode is configured.
     tenantRegistry.getUserGroupCache().forceReload();
     tenantRegistry.getTaskTree().forceReload();
     kontoCache.forceReload();
@@ -41,9 +41,12 @@ import org.slf4j.LoggerFactory;
 import java.io.Serializable;
 import java.math.BigDecimal;
 import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Represents a single task as part of the TaskTree. The data of a task node is stored in the database.
@@ -61,14 +64,20 @@ public class TaskNode implements IdObject<Integer>, Serializable {
   /**
    * Reference to the parent task node with the parentTaskID.
    */
-  TaskNode parent = null;
+  volatile TaskNode parent = null;
 
   ProjektDO projekt;
 
   /**
    * Total duration of all time sheets of this task (excluding the child tasks) in seconds.
    */
-  long totalDuration = 0;
+  final AtomicLong totalDuration = new AtomicLong();
+
+  /**
+   * Total duration of all time sheets of this task including all descendant tasks in seconds. Maintained incrementally
+   * by the task tree.
+   */
+  final AtomicLong subTreeDuration = new AtomicLong();
 
   /**
    * Sum of all ordered person days excluding descendant nodes. Ordered person days are defined by the sum of all
@@ -79,19 +88,33 @@ public class TaskNode implements IdObject<Integer>, Serializable {
   /**
    * References to all child nodes in an ArrayList from element typ TaskNode.
    */
-  List<TaskNode> children = null;
+  volatile List<TaskNode> children = null;
 
   /**
    * The data of this TaskNode.
    */
-  TaskDO task = null;
+  volatile TaskDO task = null;
 
   boolean bookableForTimesheets;
 
   /**
    * For every group with access to this node the permissions will be stored here.
    */
-  private final List<GroupTaskAccessDO> groupTaskAccessList = new ArrayList<>();
+  private final List<GroupTaskAccessDO> groupTaskAccessList = new CopyOnWriteArrayList<>();
+
+  /**
+   * Incremented on every invalidation of effective permissions, so a lookup computed concurrently with a change isn't
+   * stored.
+   */
+  private static final AtomicLong permissionGeneration = new AtomicLong();
+
+  private static final int OPERATION_TYPES = OperationType.values().length;
+
+  /**
+   * Effective permissions (inherited from ancestors or given explicitly) per group id: one bit per access type and
+   * operation type. Computed on first check and invalidated by the task tree on access changes and moves.
+   */
+  private final Map<Integer, Integer> effectivePermissions = new ConcurrentHashMap<>();
 
   public TaskNode() {
   }
@@ -259,10 +282,9 @@ public class TaskNode implements IdObject<Integer>, Serializable {
    * Returns all children of this task in an ArrayList with elements from type TaskNode.
    */
   public List<TaskNode> getChildren() {
-    if (this.children == null) {
-      this.children = new ArrayList<>();
-    }
-    return this.children;
+    final List<TaskNode> list = this.children;
+    // Don't assign a new list here, a concurrent addChild might be overwritten otherwise.
+    return list != null ? list : new ArrayList<>();
   }
 
   /**
@@ -354,10 +376,10 @@ public class TaskNode implements IdObject<Integer>, Serializable {
         log.error("Oups, cyclic reference detection: taskId = " + getId() + ", parentTaskId = " + parent.getId());
         return;
       }
-      if (this.children == null) {
-        this.children = new ArrayList<>();
-      }
-      this.children.add(child);
+      // Copy on write: concurrent readers of the task tree may iterate over the old list.
+      final List<TaskNode> list = this.children != null ? new ArrayList<>(this.children) : new ArrayList<>();
+      list.add(child);
+      this.children = list;
     }
   }
 
@@ -373,7 +395,9 @@ public class TaskNode implements IdObject<Integer>, Serializable {
       log.error("Oups, this node doesn't contain given child.");
     } else {
       log.debug("Removing child " + child.getTaskId() + " from parent " + this.getTaskId());
-      this.children.remove(child);
+      final List<TaskNode> list = new ArrayList<>(this.children);
+      list.remove(child);
+      this.children = list;
     }
   }
 
@@ -388,15 +412,73 @@ public class TaskNode implements IdObject<Integer>, Serializable {
    * @see OperationType
    */
   public boolean hasPermission(final Integer groupId, final AccessType accessType, final OperationType opType) {
+    return (getEffectivePermissions(groupId) & getPermissionBit(accessType, opType)) != 0;
+  }
+
+  private int getEffectivePermissions(final Integer groupId) {
+    final Integer bits = effectivePermissions.get(groupId);
+    if (bits != null) {
+      return bits;
+    }
+    final long generation = permissionGeneration.get();
+    final int result = computeEffectivePermissions(groupId);
+    if (permissionGeneration.get() == generation) {
+      effectivePermissions.put(groupId, result);
+      if (permissionGeneration.get() != generation) {
+        // Invalidated in the meantime, the value might be outdated.
+        effectivePermissions.remove(groupId);
+      }
+    }
+    return result;
+  }
+
+  private int computeEffectivePermissions(final Integer groupId) {
     final GroupTaskAccessDO groupAccess = getGroupTaskAccess(groupId);
     if (groupAccess == null) {
-      if (parent != null) {
-        return parent.isPermissionRecursive(groupId) && parent.hasPermission(groupId, accessType, opType);
+      if (parent != null && parent.isPermissionRecursive(groupId)) {
+        return parent.getEffectivePermissions(groupId);
+      }
+      // This is the root node or the parent's access isn't recursive.
+      return 0;
+    }
+    int bits = 0;
+    for (final AccessType accessType : AccessType.values()) {
+      for (final OperationType opType : OperationType.values()) {
+        if (groupAccess.hasPermission(accessType, opType)) {
+          bits |= getPermissionBit(accessType, opType);
+        }
+      }
+    }
+    return bits;
+  }
+
+  private static int getPermissionBit(final AccessType accessType, final OperationType opType) {
+    return 1 << (accessType.ordinal() * OPERATION_TYPES + opType.ordinal());
+  }
+
+  /**
+   * Clears the effective permissions of this node and all descendants. Should be called by TaskTree after access
+   * changes of this node or after moving this node.
+   *
+   * @param groupId The group to invalidate or null for all groups.
+   */
+  void invalidatePermissions(final Integer groupId) {
+    permissionGeneration.incrementAndGet();
+    invalidatePermissionsRecursive(groupId);
+  }
+
+  private void invalidatePermissionsRecursive(final Integer groupId) {
+    if (groupId != null) {
+      effectivePermissions.remove(groupId);
+    } else {
+      effectivePermissions.clear();
+    }
+    final List<TaskNode> list = this.children;
+    if (list != null) {
+      for (final TaskNode child : list) {
+        child.invalidatePermissionsRecursive(groupId);
       }
-      // This is the root node.
-      return false;
     }
-    return groupAccess.hasPermission(accessType, opType);
   }
 
   public boolean isPermissionRecursive(final Integer groupId) {
@@ -433,7 +515,13 @@ public class TaskNode implements IdObject<Integer>, Serializable {
       log.debug("Set explicit access, taskId = " + getTaskId() + ", groupId = " + groupTaskAccess.getGroupId());
     }
     synchronized (groupTaskAccessList) {
-      removeGroupTaskAccess(groupTaskAccess.getGroupId());
+      // Replaced in one step, so concurrent readers see either the old or the new access:
+      for (int i = 0; i < groupTaskAccessList.size(); i++) {
+        if (Objects.equals(groupTaskAccess.getGroupId(), groupTaskAccessList.get(i).getGroupId())) {
+          groupTaskAccessList.set(i, groupTaskAccess);
+          return;
+        }
+      }
       groupTaskAccessList.add(groupTaskAccess);
     }
   }
@@ -449,14 +537,7 @@ public class TaskNode implements IdObject<Integer>, Serializable {
     Validate.notNull(groupId);
     boolean result = false;
     synchronized (groupTaskAccessList) {
-      final Iterator<GroupTaskAccessDO> it = groupTaskAccessList.iterator();
-      while (it.hasNext()) {
-        final GroupTaskAccessDO access = it.next();
-        if (groupId.equals(access.getGroupId())) {
-          it.remove();
-          result = true;
-        }
-      }
+      result = groupTaskAccessList.removeIf(access -> groupId.equals(access.getGroupId()));
     }
     return result;
   }
@@ -468,17 +549,44 @@ public class TaskNode implements IdObject<Integer>, Serializable {
    * @return
    */
   public long getDuration(final TaskTree taskTree, final boolean recursive) {
-    if (totalDuration < 0) {
-      taskTree.readTotalDuration(this.getId());
-    }
-    if (!recursive || children == null) {
-      return totalDuration;
-    }
-    long duration = totalDuration;
-    for (final TaskNode child : children) {
-      duration += child.getDuration(taskTree, true);
+    return recursive ? subTreeDuration.get() : totalDuration.get();
+  }
+
+  /**
+   * @return A copy of this node without parent and children. Used by the task tree for publishing structural changes as
+   * a new snapshot.
+   */
+  TaskNode copyWithoutRelations() {
+    final TaskNode copy = new TaskNode();
+    copy.task = task;
+    copy.projekt = projekt;
+    copy.orderedPersonDays = orderedPersonDays;
+    copy.bookableForTimesheets = bookableForTimesheets;
+    copy.groupTaskAccessList.addAll(groupTaskAccessList);
+    copy.totalDuration.set(totalDuration.get());
+    copy.subTreeDuration.set(subTreeDuration.get());
+    return copy;
+  }
+
+  /**
+   * Adds the given duration (may be negative) to this task and to the sub tree durations of all ancestors.
+   *
+   * @param seconds
+   */
+  void addDuration(final long seconds) {
+    totalDuration.addAndGet(seconds);
+    addSubTreeDuration(seconds);
+  }
+
+  /**
+   * Adds the given duration (may be negative) to the sub tree durations of this task and all ancestors.
+   *
+   * @param seconds
+   */
+  void addSubTreeDuration(final long seconds) {
+    for (TaskNode node = this; node != null; node = node.parent) {
+      node.subTreeDuration.addAndGet(seconds);
     }
-    return duration;
   }
 
   @Override
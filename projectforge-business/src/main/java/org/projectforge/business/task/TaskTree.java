@@ -41,6 +41,7 @@ import org.projectforge.business.fibu.kost.KostCache;
 import org.projectforge.business.timesheet.TimesheetDO;
 import org.projectforge.business.timesheet.TimesheetDao;
 import org.projectforge.framework.access.AccessDao;
+import org.projectforge.framework.access.AccessType;
 import org.projectforge.framework.access.GroupTaskAccessDO;
 import org.projectforge.framework.access.OperationType;
 import org.projectforge.framework.cache.AbstractCache;
@@ -57,10 +58,18 @@ import java.io.Serializable;
 import java.io.StringWriter;
 import java.math.BigDecimal;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
 
 /**
  * Holds the complete task list in a tree. It will be initialized by the values read from the database. Any changes will
  * be written to this tree and to the database.
+ * <br/>
+ * Readers don't block: the root node and the task map are published as one snapshot through a volatile reference. A
+ * refresh builds a new tree in the background and swaps the snapshot afterwards. Structural changes (moved tasks) are
+ * applied to a copy of all nodes, which is published as a new snapshot, so readers never see a half-moved node. New
+ * nodes are added by copy-on-write of the task map and the children lists. Other modifications (task data, group task
+ * accesses, projects and durations) are single atomic updates of the nodes.
  *
  * @author Kai Reinhard (k.reinhard@micromata.de)
  */
@@ -94,17 +103,48 @@ public class TaskTree extends AbstractCache implements Serializable
   /**
    * Time of last modification in milliseconds from 1970-01-01.
    */
-  private long timeOfLastModification = 0;
+  private volatile long timeOfLastModification = 0;
 
   /**
-   * For faster searching of entries.
+   * The current snapshot (root node and task map), null if not yet initialized.
    */
-  private Map<Integer, TaskNode> taskMap;
+  private volatile TaskTreeData data;
 
   /**
-   * The root node of all tasks. The only node with parent null.
+   * Serializes all modifications of the tree (incremental updates and the swap after a refresh).
    */
-  private TaskNode root = null;
+  private final Object writeLock = new Object();
+
+  /**
+   * Incremental updates done while a refresh is running. They are replayed on the new tree before it's published.
+   * Null, if no refresh is running. Guarded by {@link #writeLock}.
+   */
+  private List<BiConsumer<TaskNode, Map<Integer, TaskNode>>> changesWhileRefreshing;
+
+  /**
+   * Tasks with modified durations while a refresh is running. Their durations are re-read after publishing the new
+   * tree, because the durations read by the refresh may or may not include these modifications. Guarded by
+   * {@link #writeLock}.
+   */
+  private Set<Integer> durationsChangedWhileRefreshing;
+
+  /**
+   * Maximum number of cached group combinations of {@link #getTaskIdsByPermission(Collection, AccessType, OperationType)}.
+   */
+  private static final int MAX_PERMISSION_CACHE_SIZE = 1000;
+
+  /**
+   * Task ids by permission per group combination, cleared by every modification of the hierarchy or of the group task
+   * accesses (see {@link #permissionVersion}).
+   */
+  private final Map<String, TaskIdsByPermission> permissionCache = new ConcurrentHashMap<>();
+
+  /**
+   * Incremented by every modification of the hierarchy or of the group task accesses.
+   */
+  private volatile long permissionVersion;
+
+  private final Object orderPositionLock = new Object();
 
   private Map<Integer, Set<AuftragsPositionVO>> orderPositionReferences;
 
@@ -113,15 +153,15 @@ public class TaskTree extends AbstractCache implements Serializable
   public TaskNode getRootTaskNode()
   {
     checkRefresh();
-    return this.root;
+    final TaskTreeData current = data;
+    return current != null ? current.root : null;
   }
 
   /**
    * Adds the given node as child of the given parent.
    */
-  private synchronized TaskNode addTaskNode(final TaskNode node, final TaskNode parent)
+  private TaskNode addTaskNode(final TaskNode node, final TaskNode parent)
   {
-    checkRefresh();
     if (parent != null) {
       node.setParent(parent);
       parent.addChild(node);
@@ -139,22 +179,32 @@ public class TaskTree extends AbstractCache implements Serializable
     checkRefresh();
     final TaskNode node = new TaskNode();
     node.setTask(task);
-    final TaskNode parent = getTaskNodeById(task.getParentTaskId());
-    if (parent != null) {
-      node.setParent(parent);
-    } else if (root == null) {
-      // this is the root node:
-      root = node;
-    } else if (!node.getId().equals(root.getId())) {
-      // This node is not the root node:
-      node.setParent(root);
-    }
-    taskMap.put(node.getId(), node);
     final TimesheetDO timesheet = new TimesheetDO();
     timesheet.setTask(task);
-    final boolean bookable = timesheetDao.checkTaskBookable(timesheet, null, OperationType.INSERT, false);
-    node.bookableForTimesheets = bookable;
-    return addTaskNode(node, parent);
+    node.bookableForTimesheets = timesheetDao.checkTaskBookable(timesheet, null, OperationType.INSERT, false);
+    synchronized (writeLock) {
+      final TaskTreeData current = data;
+      TaskNode root = current != null ? current.root : null;
+      final TaskNode parent = current != null && task.getParentTaskId() != null ? current.taskMap.get(task.getParentTaskId()) : null;
+      if (parent != null) {
+        node.setParent(parent);
+      } else if (root == null) {
+        // this is the root node:
+        root = node;
+      } else if (!node.getId().equals(root.getId())) {
+        // This node is not the root node:
+        node.setParent(root);
+      }
+      // Copy on write: readers of the current snapshot aren't affected.
+      final Map<Integer, TaskNode> taskMap = current != null ? new HashMap<>(current.taskMap) : new HashMap<>();
+      taskMap.put(node.getId(), node);
+      addTaskNode(node, parent);
+      data = new TaskTreeData(root, taskMap);
+      invalidatePermissionCache();
+      final boolean bookable = node.bookableForTimesheets;
+      recordChange((newRoot, newTaskMap) -> replayTask(newRoot, newTaskMap, task, bookable));
+      return node;
+    }
   }
 
   /**
@@ -195,8 +245,9 @@ public class TaskTree extends AbstractCache implements Serializable
       return null;
     }
     checkRefresh();
-    if (taskMap != null) {
-      return taskMap.get(id);
+    final TaskTreeData current = data;
+    if (current != null) {
+      return current.taskMap.get(id);
     }
     return null;
   }
@@ -232,11 +283,20 @@ public class TaskTree extends AbstractCache implements Serializable
 
   public void internalSetProject(final Integer taskId, final ProjektDO projekt)
   {
-    final TaskNode node = getTaskNodeById(taskId);
-    if (node == null) {
-      throw new InternalErrorException("Could not found task with id " + taskId + " in internalSetProject");
+    checkRefresh();
+    synchronized (writeLock) {
+      final TaskNode node = getCurrentTaskNode(taskId);
+      if (node == null) {
+        throw new InternalErrorException("Could not found task with id " + taskId + " in internalSetProject");
+      }
+      node.projekt = projekt;
+      recordChange((newRoot, newTaskMap) -> {
+        final TaskNode newNode = newTaskMap.get(taskId);
+        if (newNode != null) {
+          newNode.projekt = projekt;
+        }
+      });
     }
-    node.projekt = projekt;
   }
 
   /**
@@ -364,18 +424,39 @@ public class TaskTree extends AbstractCache implements Serializable
   }
 
   /**
-   * Should be called after modification of a time sheet assigned to the given task id.
+   * Should be called after modification of a time sheet assigned to the given task id, if the duration delta isn't
+   * known. Re-reads the duration of the given task from the data base.
    *
    * @param taskId
+   * @see #addDuration(Integer, long)
    */
   public void resetTotalDuration(final Integer taskId)
   {
-    final TaskNode node = getTaskNodeById(taskId);
-    if (node == null) {
-      log.error("Task id '" + taskId + "' not found.");
+    readTotalDuration(taskId);
+  }
+
+  /**
+   * Adds the given duration delta to the task and to the sub tree durations of all its ancestors. Should be called by
+   * TimesheetDao after inserting, updating, deleting or undeleting a time sheet.
+   *
+   * @param taskId
+   * @param seconds The delta in seconds, negative for removed time sheets.
+   */
+  public void addDuration(final Integer taskId, final long seconds)
+  {
+    if (seconds == 0) {
       return;
     }
-    node.totalDuration = -1;
+    checkRefresh();
+    synchronized (writeLock) {
+      final TaskNode node = getCurrentTaskNode(taskId);
+      if (node == null) {
+        log.error("Task id '" + taskId + "' not found.");
+        return;
+      }
+      node.addDuration(seconds);
+      recordDurationChange(taskId);
+    }
   }
 
   /**
@@ -388,23 +469,46 @@ public class TaskTree extends AbstractCache implements Serializable
     checkRefresh();
     Validate.notNull(task);
     Validate.notNull(task.getId());
-    final TaskNode node = getTaskNodeById(task.getId());
-    if (node == null) {
+    if (getTaskNodeById(task.getId()) == null) {
       return addTaskNode(task);
     }
-    node.setTask(task);
-    if (task.getParentTaskId() != null && !task.getParentTaskId().equals(node.getParent().getId())) {
-      if (log.isDebugEnabled()) {
-        log.debug("Task hierarchy was changed for task: " + task);
+    TaskNode node;
+    boolean moved = false;
+    synchronized (writeLock) {
+      final TaskTreeData current = data;
+      node = current.taskMap.get(task.getId());
+      if (task.getParentTaskId() != null && !task.getParentTaskId().equals(node.getParent().getId())) {
+        if (log.isDebugEnabled()) {
+          log.debug("Task hierarchy was changed for task: " + task);
+        }
+        // The move is done on a copy of the tree, published as a new snapshot afterwards:
+        final Map<Integer, TaskNode> taskMap = copyNodes(current.taskMap);
+        node = taskMap.get(task.getId());
+        node.setTask(task);
+        final TaskNode oldParent = node.getParent();
+        Validate.notNull(oldParent);
+        oldParent.removeChild(node);
+        // Move the durations of the sub tree to the new ancestors:
+        final long subTreeDuration = node.subTreeDuration.get();
+        oldParent.addSubTreeDuration(-subTreeDuration);
+        final TaskNode newParent = taskMap.get(task.getParentTaskId());
+        node.setParent(newParent);
+        newParent.addChild(node);
+        newParent.addSubTreeDuration(subTreeDuration);
+        // The copied nodes have no effective permissions cached yet.
+        data = new TaskTreeData(taskMap.get(current.root.getId()), taskMap);
+        invalidatePermissionCache();
+        moved = true;
+      } else {
+        node.setTask(task);
       }
-      final TaskNode oldParent = node.getParent();
-      Validate.notNull(oldParent);
-      oldParent.removeChild(node);
-      final TaskNode newParent = getTaskNodeById(task.getParentTaskId());
-      node.setParent(newParent);
-      newParent.addChild(node);
+      recordChange((newRoot, newTaskMap) -> replayTask(newRoot, newTaskMap, task, null));
+      updateTimeOfLastModification();
+    }
+    if (moved) {
+      // The ordered person days may have been re-calculated on the old snapshot during the copy:
+      refreshOrderPositionReferences();
     }
-    updateTimeOfLastModification();
     return node;
   }
 
@@ -417,9 +521,18 @@ public class TaskTree extends AbstractCache implements Serializable
   public void setGroupTaskAccess(final GroupTaskAccessDO groupTaskAccess)
   {
     checkRefresh();
-    final Integer taskId = groupTaskAccess.getTaskId();
-    final TaskNode node = taskMap.get(taskId);
-    node.setGroupTaskAccess(groupTaskAccess);
+    synchronized (writeLock) {
+      final TaskNode node = getCurrentTaskNode(groupTaskAccess.getTaskId());
+      node.setGroupTaskAccess(groupTaskAccess);
+      node.invalidatePermissions(groupTaskAccess.getGroupId());
+      invalidatePermissionCache();
+      recordChange((newRoot, newTaskMap) -> {
+        final TaskNode newNode = newTaskMap.get(groupTaskAccess.getTaskId());
+        if (newNode != null) {
+          newNode.setGroupTaskAccess(groupTaskAccess);
+        }
+      });
+    }
   }
 
   /**
@@ -431,9 +544,112 @@ public class TaskTree extends AbstractCache implements Serializable
   public void removeGroupTaskAccess(final GroupTaskAccessDO groupTaskAccess)
   {
     checkRefresh();
-    final Integer taskId = groupTaskAccess.getTaskId();
-    final TaskNode node = taskMap.get(taskId);
-    node.removeGroupTaskAccess(groupTaskAccess.getGroupId());
+    synchronized (writeLock) {
+      final TaskNode node = getCurrentTaskNode(groupTaskAccess.getTaskId());
+      node.removeGroupTaskAccess(groupTaskAccess.getGroupId());
+      node.invalidatePermissions(groupTaskAccess.getGroupId());
+      invalidatePermissionCache();
+      recordChange((newRoot, newTaskMap) -> {
+        final TaskNode newNode = newTaskMap.get(groupTaskAccess.getTaskId());
+        if (newNode != null) {
+          newNode.removeGroupTaskAccess(groupTaskAccess.getGroupId());
+        }
+      });
+    }
+  }
+
+  /**
+   * The ids of all tasks on which any of the given groups has the given permission and of all other tasks. The result
+   * is cached until the hierarchy or the group task accesses are modified.
+   *
+   * @param groupIds The groups of the user.
+   */
+  public TaskIdsByPermission getTaskIdsByPermission(final Collection<Integer> groupIds, final AccessType accessType,
+      final OperationType operationType)
+  {
+    checkRefresh();
+    final List<Integer> sortedGroupIds = new ArrayList<>(groupIds);
+    Collections.sort(sortedGroupIds);
+    final String key = accessType + ":" + operationType + ":" + sortedGroupIds;
+    TaskIdsByPermission result = permissionCache.get(key);
+    if (result != null) {
+      return result;
+    }
+    final long version = permissionVersion;
+    final TaskTreeData current = data;
+    final Set<Integer> granted = new HashSet<>();
+    final Set<Integer> denied = new HashSet<>();
+    if (current != null) {
+      for (final TaskNode node : current.taskMap.values()) {
+        boolean hasPermission = false;
+        for (final Integer groupId : sortedGroupIds) {
+          if (node.hasPermission(groupId, accessType, operationType)) {
+            hasPermission = true;
+            break;
+          }
+        }
+        (hasPermission ? granted : denied).add(node.getId());
+      }
+    }
+    result = new TaskIdsByPermission(granted, denied);
+    synchronized (writeLock) {
+      if (version == permissionVersion) {
+        // Not modified in the meantime:
+        if (permissionCache.size() >= MAX_PERMISSION_CACHE_SIZE) {
+          permissionCache.clear();
+        }
+        permissionCache.put(key, result);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * The node of the current snapshot. Must be called inside {@link #writeLock}, so the node isn't replaced by a
+   * structural change in the meantime.
+   */
+  private TaskNode getCurrentTaskNode(final Integer taskId)
+  {
+    final TaskTreeData current = data;
+    return current != null && taskId != null ? current.taskMap.get(taskId) : null;
+  }
+
+  /**
+   * Copies all nodes of the given task map including their parent and child relations. Must be called inside
+   * {@link #writeLock}.
+   *
+   * @return The copied nodes by id.
+   */
+  private static Map<Integer, TaskNode> copyNodes(final Map<Integer, TaskNode> taskMap)
+  {
+    final Map<Integer, TaskNode> copies = new HashMap<>(taskMap.size() * 4 / 3 + 1);
+    for (final TaskNode node : taskMap.values()) {
+      copies.put(node.getId(), node.copyWithoutRelations());
+    }
+    for (final TaskNode node : taskMap.values()) {
+      final TaskNode copy = copies.get(node.getId());
+      if (node.parent != null) {
+        copy.parent = copies.get(node.parent.getId());
+      }
+      final List<TaskNode> children = node.children;
+      if (children != null) {
+        final List<TaskNode> list = new ArrayList<>(children.size());
+        for (final TaskNode child : children) {
+          list.add(copies.get(child.getId()));
+        }
+        copy.children = list;
+      }
+    }
+    return copies;
+  }
+
+  /**
+   * Must be called inside the write lock.
+   */
+  private void invalidatePermissionCache()
+  {
+    ++permissionVersion;
+    permissionCache.clear();
   }
 
   public long getTimeOfLastModification()
@@ -444,12 +660,13 @@ public class TaskTree extends AbstractCache implements Serializable
   @Override
   public String toString()
   {
-    if (root == null) {
+    final TaskTreeData current = data;
+    if (current == null) {
       return "<empty/>";
     }
     final Document document = DocumentHelper.createDocument();
     final Element root = document.addElement("root");
-    this.root.addXMLElement(root);
+    current.root.addXMLElement(root);
     // Pretty print the document to System.out
     final StringWriter sw = new StringWriter();
     String result = "";
@@ -553,7 +770,7 @@ public class TaskTree extends AbstractCache implements Serializable
   public boolean isRootNode(final TaskDO task)
   {
     Validate.notNull(task);
-    if (root == null && task.getParentTaskId() == null) {
+    if (data == null && task.getParentTaskId() == null) {
       // First task, so it should be the root node.
       return true;
     }
@@ -562,7 +779,8 @@ public class TaskTree extends AbstractCache implements Serializable
       // Node has no id, so it can't be the root node.
       return false;
     }
-    return root.getId().equals(task.getId());
+    final TaskTreeData current = data;
+    return current != null && current.root.getId().equals(task.getId());
   }
 
   /**
@@ -571,7 +789,7 @@ public class TaskTree extends AbstractCache implements Serializable
    */
   public void refreshOrderPositionReferences()
   {
-    synchronized (this) {
+    synchronized (orderPositionLock) {
       this.orderPositionReferencesDirty = true;
     }
   }
@@ -587,11 +805,12 @@ public class TaskTree extends AbstractCache implements Serializable
 
   private Map<Integer, Set<AuftragsPositionVO>> getOrderPositionEntries()
   {
-    synchronized (this) {
+    synchronized (orderPositionLock) {
       if (this.orderPositionReferencesDirty) {
         this.orderPositionReferences = auftragDao.getTaskReferences();
-        if (this.orderPositionReferences != null) {
-          resetOrderPersonDays(this.root);
+        final TaskTreeData current = data;
+        if (this.orderPositionReferences != null && current != null) {
+          resetOrderPersonDays(current.root);
           for (final Map.Entry<Integer, Set<AuftragsPositionVO>> entry : this.orderPositionReferences.entrySet()) {
             final TaskNode node = getTaskNodeById(entry.getKey());
             node.orderedPersonDays = null;
@@ -785,22 +1004,19 @@ public class TaskTree extends AbstractCache implements Serializable
   }
 
   /**
-   * Reads the sum of all time sheet durations grouped by task id and set the total duration of found taskNodes.
+   * Reads the sum of all time sheet durations grouped by task id and set the total duration of found taskNodes. The
+   * sub tree durations of the ancestors are summed up as well.
    */
-  private void readTotalDurations()
+  private void readTotalDurations(final Map<Integer, TaskNode> taskMap)
   {
     final List<Object[]> list = taskDao.readTotalDurations();
     for (final Object[] res : list) {
       final Integer taskId = (Integer) res[1];
-      final TaskNode node = getTaskNodeById(taskId);
+      final TaskNode node = taskMap.get(taskId);
       if (node == null) {
         log.warn("Task not found: " + taskId);
       } else {
-        if (res[0] instanceof Integer) {
-          node.totalDuration = (Integer) res[0];
-        } else {
-          node.totalDuration = (Long) res[0];
-        }
+        node.addDuration(((Number) res[0]).longValue());
       }
     }
   }
@@ -811,11 +1027,15 @@ public class TaskTree extends AbstractCache implements Serializable
   public void readTotalDuration(final Integer taskId)
   {
     final long duration = taskDao.readTotalDuration(taskId);
-    final TaskNode node = getTaskNodeById(taskId);
-    if (node == null) {
-      log.warn("Task not found: " + taskId);
-    } else {
-      node.totalDuration = duration;
+    checkRefresh();
+    synchronized (writeLock) {
+      final TaskNode node = getCurrentTaskNode(taskId);
+      if (node == null) {
+        log.warn("Task not found: " + taskId);
+      } else {
+        node.addDuration(duration - node.totalDuration.get());
+        recordDurationChange(taskId);
+      }
     }
   }
 
@@ -824,10 +1044,24 @@ public class TaskTree extends AbstractCache implements Serializable
    */
   public void clear()
   {
-    this.root = null;
+    this.data = null;
     this.setExpired();
   }
 
+  /**
+   * Only the initial load blocks the callers. The tree is updated incrementally, so even after {@link #setExpired()}
+   * the new tree is built in the background and the callers proceed with the current snapshot until then.
+   */
+  @Override
+  protected void checkRefresh()
+  {
+    if (data != null && isRefreshRequired()) {
+      scheduleRefresh();
+      return;
+    }
+    super.checkRefresh();
+  }
+
   /**
    * All tasks from database will be read and cached into this TaskTree. Also all explicit group task access' will be
    * read from database and will be cached in this tree (implicit access' will be created too).<br/>
@@ -847,8 +1081,49 @@ public class TaskTree extends AbstractCache implements Serializable
       log.info(sth.toString());
       return;
     }
+    synchronized (writeLock) {
+      changesWhileRefreshing = new ArrayList<>();
+      durationsChangedWhileRefreshing = new HashSet<>();
+    }
+    final Set<Integer> durationsChanged;
+    try {
+      final Map<Integer, TaskNode> taskMap = new HashMap<>();
+      final TaskNode newRoot = loadTree(taskMap);
+      synchronized (writeLock) {
+        // Incremental updates done in the meantime aren't lost:
+        for (final BiConsumer<TaskNode, Map<Integer, TaskNode>> change : changesWhileRefreshing) {
+          change.accept(newRoot, taskMap);
+        }
+        durationsChanged = durationsChangedWhileRefreshing;
+        this.data = new TaskTreeData(newRoot, taskMap);
+        invalidatePermissionCache();
+        updateTimeOfLastModification();
+      }
+    } finally {
+      synchronized (writeLock) {
+        changesWhileRefreshing = null;
+        durationsChangedWhileRefreshing = null;
+      }
+    }
+    for (final Integer taskId : durationsChanged) {
+      readTotalDuration(taskId);
+    }
+    refreshOrderPositionReferences();
+    if (log.isDebugEnabled()) {
+      log.debug(this.toString());
+    }
+    log.info("Initializing task tree done.");
+  }
+
+  /**
+   * Reads all tasks, group task accesses, projects and durations from the data base and builds the tree.
+   *
+   * @param taskMap The map to fill with all task nodes.
+   * @return The root node.
+   */
+  private TaskNode loadTree(final Map<Integer, TaskNode> taskMap)
+  {
     TaskNode newRoot = null;
-    taskMap = new HashMap<>();
     final List<TaskDO> taskList;
     if (tenant != null) {
       taskList = taskDao.internalLoadAll(tenant);
@@ -891,7 +1166,6 @@ public class TaskTree extends AbstractCache implements Serializable
       newRoot.setTask(rootTask);
       taskMap.put(newRoot.getTaskId(), newRoot);
     }
-    this.root = newRoot;
     if (log.isDebugEnabled()) {
       log.debug("Creating tree for " + taskList.size() + " tasks ...");
     }
@@ -906,14 +1180,13 @@ public class TaskTree extends AbstractCache implements Serializable
       if (parentNode != null) {
         node.setParent(parentNode);
         parentNode.addChild(node);
-        updateTimeOfLastModification();
       } else {
         log.debug("Processing root node:" + node);
       }
     }
 
     if (log.isDebugEnabled()) {
-      log.debug(this.root.toString());
+      log.debug(newRoot.toString());
     }
 
     // Now read all explicit group task access' from the database:
@@ -940,11 +1213,7 @@ public class TaskTree extends AbstractCache implements Serializable
         }
       }
     }
-    if (log.isDebugEnabled()) {
-      log.debug(this.toString());
-    }
-    readTotalDurations();
-    refreshOrderPositionReferences();
+    readTotalDurations(taskMap);
     // Now update the status: bookable for time sheets:
     final TimesheetDO timesheet = new TimesheetDO();
     for (final TaskDO task : taskList) {
@@ -953,11 +1222,120 @@ public class TaskTree extends AbstractCache implements Serializable
       final boolean bookable = timesheetDao.checkTaskBookable(timesheet, null, OperationType.INSERT, false);
       node.bookableForTimesheets = bookable;
     }
-    log.info("Initializing task tree done.");
+    return newRoot;
+  }
+
+  /**
+   * Records the given incremental update for replaying it on the tree of a running refresh. Must be called inside
+   * {@link #writeLock}.
+   */
+  private void recordChange(final BiConsumer<TaskNode, Map<Integer, TaskNode>> change)
+  {
+    if (changesWhileRefreshing != null) {
+      changesWhileRefreshing.add(change);
+    }
+  }
+
+  /**
+   * Must be called inside {@link #writeLock}.
+   */
+  private void recordDurationChange(final Integer taskId)
+  {
+    if (durationsChangedWhileRefreshing != null) {
+      durationsChangedWhileRefreshing.add(taskId);
+    }
+  }
+
+  /**
+   * Adds or updates the given task in the tree of a running refresh. The task may already be loaded by the refresh.
+   *
+   * @param bookable The bookable status of a new node, or null, if the task was updated.
+   */
+  private void replayTask(final TaskNode root, final Map<Integer, TaskNode> taskMap, final TaskDO task,
+      final Boolean bookable)
+  {
+    final TaskNode parent = task.getParentTaskId() != null ? taskMap.get(task.getParentTaskId()) : null;
+    TaskNode node = taskMap.get(task.getId());
+    if (node == null) {
+      node = new TaskNode();
+      node.setTask(task);
+      node.bookableForTimesheets = bookable != null ? bookable : false;
+      taskMap.put(node.getId(), node);
+      if (parent != null) {
+        node.setParent(parent);
+        parent.addChild(node);
+      } else if (root != null && !node.getId().equals(root.getId())) {
+        node.setParent(root);
+      }
+      return;
+    }
+    node.setTask(task);
+    final TaskNode oldParent = node.getParent();
+    if (parent != null && oldParent != parent) {
+      final long subTreeDuration = node.subTreeDuration.get();
+      if (oldParent != null) {
+        oldParent.removeChild(node);
+        oldParent.addSubTreeDuration(-subTreeDuration);
+      }
+      node.setParent(parent);
+      parent.addChild(node);
+      parent.addSubTreeDuration(subTreeDuration);
+      node.invalidatePermissions(null);
+    }
   }
 
   private void updateTimeOfLastModification()
   {
     this.timeOfLastModification = new Date().getTime();
   }
+
+  /**
+   * Ids of the tasks with and without a permission.
+   *
+   * @see #getTaskIdsByPermission(Collection, AccessType, OperationType)
+   */
+  public static class TaskIdsByPermission
+  {
+    private final Set<Integer> granted;
+
+    private final Set<Integer> denied;
+
+    private TaskIdsByPermission(final Set<Integer> granted, final Set<Integer> denied)
+    {
+      this.granted = Collections.unmodifiableSet(granted);
+      this.denied = Collections.unmodifiableSet(denied);
+    }
+
+    public Set<Integer> getGranted()
+    {
+      return granted;
+    }
+
+    public Set<Integer> getDenied()
+    {
+      return denied;
+    }
+  }
+
+  /**
+   * Snapshot of the tree. Will be replaced as a whole by a refresh, by moving tasks and by adding new nodes.
+   */
+  private static class TaskTreeData
+  {
+    /**
+     * The root node of all tasks. The only node with parent null.
+     */
+    private final TaskNode root;
+
+    /**
+     * For faster searching of entries.
+     */
+    private final Map<Integer, TaskNode> taskMap;
+
+    private TaskTreeData(final TaskNode root, final Map<Integer, TaskNode> taskMap)
+    {
+      this.root = root;
+      this.taskMap = Collections.unmodifiableMap(taskMap);
+    }
+  }
 }
@@ -23,6 +23,7 @@
 
 package org.projectforge.business.teamcal.admin;
 
+import org.projectforge.business.common.DataobjectAccessType;
 import org.projectforge.business.teamcal.admin.model.TeamCalDO;
 import org.projectforge.business.teamcal.admin.right.TeamCalRight;
 import org.projectforge.business.user.UserRightId;
@@ -121,6 +122,23 @@ public class TeamCalCache extends AbstractCache
     return set;
   }
 
+  /**
+   * @return Ids of all calendars (deleted ones included) the given user may see the events of (as owner or with full,
+   * read-only or minimal access).
+   * @see org.projectforge.business.teamcal.event.right.TeamEventRight#hasSelectAccess(PFUserDO, org.projectforge.business.teamcal.event.model.TeamEventDO)
+   */
+  public Set<Integer> getCalendarIdsWithEventSelectAccess(final PFUserDO user)
+  {
+    checkRefresh();
+    final Set<Integer> set = new HashSet<>();
+    for (final TeamCalDO cal : calendarMap.values()) {
+      if (teamCalRight.getAccessType(cal, user.getId()) != DataobjectAccessType.NONE) {
+        set.add(cal.getId());
+      }
+    }
+    return set;
+  }
+
   public Collection<TeamCalDO> getCalendars(final Collection<Integer> calIds)
   {
     final Set<TeamCalDO> set = new TreeSet<>(new TeamCalsComparator());
@@ -23,9 +23,7 @@
 
 package org.projectforge.business.teamcal.event;
 
-import net.fortuna.ical4j.model.DateList;
 import net.fortuna.ical4j.model.Recur;
-import net.fortuna.ical4j.model.parameter.Value;
 import net.fortuna.ical4j.model.property.RRule;
 import org.apache.commons.collections.CollectionUtils;
 import org.apache.commons.lang3.StringUtils;
@@ -42,12 +40,14 @@ import org.projectforge.business.teamcal.event.model.TeamEventAttendeeDO;
 import org.projectforge.business.teamcal.event.model.TeamEventDO;
 import org.projectforge.business.teamcal.externalsubscription.TeamEventExternalSubscriptionCache;
 import org.projectforge.business.user.UserRightId;
-import org.projectforge.framework.calendar.ICal4JUtils;
+import org.projectforge.framework.access.OperationType;
 import org.projectforge.framework.i18n.UserException;
 import org.projectforge.framework.persistence.api.*;
+import org.projectforge.framework.persistence.api.impl.DBPredicate;
 import org.projectforge.framework.persistence.history.DisplayHistoryEntry;
 import org.projectforge.framework.persistence.jpa.PfEmgrFactory;
 import org.projectforge.framework.persistence.user.api.ThreadLocalUserContext;
+import org.projectforge.framework.persistence.user.entities.PFUserDO;
 import org.projectforge.framework.time.DateHelper;
 import org.projectforge.framework.time.PFDateTime;
 import org.projectforge.framework.time.PFDateTimeUtils;
@@ -55,9 +55,11 @@ import org.slf4j.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Repository;
 
+import javax.annotation.PostConstruct;
 import javax.persistence.NoResultException;
 import javax.persistence.NonUniqueResultException;
-import javax.persistence.TypedQuery;
+import java.time.Instant;
+import java.time.ZoneId;
 import java.util.*;
 
 /**
@@ -106,9 +108,25 @@ public class TeamEventDao extends BaseDao<TeamEventDO> {
   @Autowired
   private TenantService tenantService;
 
+  @Autowired
+  private TeamEventRecurrenceCache recurrenceCache;
+
+  /**
+   * Locations of the events, partitioned by calendar.
+   */
+  private final AutocompletionIndex<TeamEventDO> locationIndex;
+
   public TeamEventDao() {
     super(TeamEventDO.class);
     userRightId = UserRightId.PLUGIN_CALENDAR_EVENT;
+    supportAfterUpdate = true;
+    locationIndex = new AutocompletionIndex<>(this, "location", "calendar.id", TeamEventDO::getCalendarId, 365, 10000);
+    register(locationIndex);
+  }
+
+  @PostConstruct
+  private void init() {
+    register(recurrenceCache);
   }
 
   @Override
@@ -223,6 +241,32 @@ public class TeamEventDao extends BaseDao<TeamEventDO> {
     }
   }
 
+  /**
+   * An event moved to another calendar is announced to the listeners as deleted from its previous calendar (e. g. for
+   * invalidating the feeds of the previous calendar).
+   */
+  @Override
+  protected void afterUpdate(final TeamEventDO obj, final TeamEventDO dbObj) {
+    super.afterUpdate(obj, dbObj);
+    if (dbObj != null && !dbObj.isDeleted() && !Objects.equals(obj.getCalendarId(), dbObj.getCalendarId())) {
+      callObjectChangedListeners(dbObj, OperationType.DELETE);
+    }
+  }
+
+  /**
+   * Only the fields needed by the listeners in {@link #afterUpdate(TeamEventDO, TeamEventDO)}.
+   */
+  @Override
+  protected TeamEventDO getBackupObject(final TeamEventDO dbObj) {
+    final TeamEventDO backupObj = new TeamEventDO();
+    backupObj.setId(dbObj.getId());
+    backupObj.setTenant(dbObj.getTenant());
+    backupObj.setCalendar(dbObj.getCalendar());
+    backupObj.setLocation(dbObj.getLocation());
+    backupObj.setDeleted(dbObj.isDeleted());
+    return backupObj;
+  }
+
   @Override
   protected void onChange(final TeamEventDO obj, final TeamEventDO dbObj) {
     handleSeriesUpdates(obj);
@@ -497,7 +541,6 @@ public class TeamEventDao extends BaseDao<TeamEventDO> {
    *
    * @param searchString
    */
-  @SuppressWarnings("unchecked")
   public List<String> getLocationAutocompletion(final String searchString, final TeamCalDO[] calendars) {
     if (calendars == null || calendars.length == 0) {
       return null;
@@ -506,19 +549,11 @@ public class TeamEventDao extends BaseDao<TeamEventDO> {
       return null;
     }
     checkLoggedInUserSelectAccess();
-    final String s = "select distinct location from "
-            + clazz.getSimpleName()
-            + " t where deleted=false and t.calendar.id in :cals and lastUpdate > :lastUpdate and lower(t.location) like :location order by t.location";
-    final TypedQuery<String> query = em.createQuery(s, String.class);
-    final List<Integer> calIds = new ArrayList(calendars.length);
-    for (int i = 0; i < calendars.length; i++) {
-      calIds.add(calendars[i].getId());
+    final List<Integer> calIds = new ArrayList<>(calendars.length);
+    for (final TeamCalDO calendar : calendars) {
+      calIds.add(calendar.getId());
     }
-    query.setParameter("cals", calIds);
-    PFDateTime dateTime = PFDateTime.now().minusYears(1);
-    query.setParameter("lastUpdate", dateTime.getUtilDate());
-    query.setParameter("location", "%" + StringUtils.lowerCase(searchString) + "%");
-    return query.getResultList();
+    return locationIndex.getAutocompletion(searchString, calIds);
   }
 
   private void addEventsToList(final TeamEventFilter teamEventFilter, final List<TeamEventDO> result,
@@ -622,6 +657,15 @@ public class TeamEventDao extends BaseDao<TeamEventDO> {
     return queryFilter;
   }
 
+  /**
+   * Restricts the query to the events of all calendars the user has select access to (owner, full, read-only or minimal
+   * access).
+   */
+  @Override
+  public DBPredicate getSelectAccessPredicate(final PFUserDO loggedInUser, final boolean superAdmin) {
+    return QueryFilter.isIn("calendar.id", teamCalCache.getCalendarIdsWithEventSelectAccess(loggedInUser));
+  }
+
   /**
    * Gets history entries of super and adds all history entries of the TeamEventAttendeeDO children.
    */
@@ -703,80 +747,25 @@ public class TeamEventDao extends BaseDao<TeamEventDO> {
       // Shouldn't happen:
       return null;
     }
-    final java.util.TimeZone timeZone4Calc = timeZone;
-    final String eventStartDateString = event.getAllDay()
-            ? DateHelper.formatIsoDate(event.getStartDate(), timeZone) : DateHelper
-            .formatIsoTimestamp(event.getStartDate(), DateHelper.UTC);
-    java.util.Date eventStartDate = event.getStartDate();
-    if (log.isDebugEnabled()) {
-      log.debug("---------- startDate=" + DateHelper.formatIsoTimestamp(eventStartDate, timeZone) + ", timeZone="
-              + timeZone.getID());
-    }
-    net.fortuna.ical4j.model.TimeZone ical4jTimeZone;
-    try {
-      ical4jTimeZone = ICal4JUtils.getTimeZone(timeZone4Calc);
-    } catch (final Exception e) {
-      log.error("Error getting timezone from ical4j.");
-      ical4jTimeZone = ICal4JUtils.getUserTimeZone();
-    }
-
-    final net.fortuna.ical4j.model.DateTime ical4jStartDate = new net.fortuna.ical4j.model.DateTime(startDate);
-    ical4jStartDate.setTimeZone(ical4jTimeZone);
-    final net.fortuna.ical4j.model.DateTime ical4jEndDate = new net.fortuna.ical4j.model.DateTime(endDate);
-    ical4jEndDate.setTimeZone(ICal4JUtils.getTimeZone(timeZone4Calc));
-    final net.fortuna.ical4j.model.DateTime seedDate = new net.fortuna.ical4j.model.DateTime(eventStartDate);
-    seedDate.setTimeZone(ICal4JUtils.getTimeZone(timeZone4Calc));
-
-    // get ex dates of event
-    final List<Date> exDates = ICal4JUtils.parseCSVDatesAsJavaUtilDates(event.getRecurrenceExDate(), DateHelper.UTC);
-
-    // get events in time range
-    final DateList dateList = recur.getDates(seedDate, ical4jStartDate, ical4jEndDate, Value.DATE_TIME);
-
-    // remove ex range values
-    final Collection<ICalendarEvent> col = new ArrayList<>();
-    if (dateList != null) {
-      OuterLoop:
-      for (final Object obj : dateList) {
-        final net.fortuna.ical4j.model.DateTime dateTime = (net.fortuna.ical4j.model.DateTime) obj;
-        final String isoDateString = event.getAllDay() ? DateHelper.formatIsoDate(dateTime, timeZone)
-                : DateHelper.formatIsoTimestamp(dateTime, DateHelper.UTC);
-        if (exDates != null && exDates.size() > 0) {
-          for (Date exDate : exDates) {
-            if (!event.getAllDay()) {
-              Date recurDateJavaUtil = new Date(dateTime.getTime());
-              if (recurDateJavaUtil.equals(exDate)) {
-                if (log.isDebugEnabled()) {
-                  log.debug("= ex-dates equals: " + isoDateString + " == " + exDate);
-                }
-                // this date is part of ex dates, so don't use it.
-                continue OuterLoop;
-              }
-            } else {
-              // Allday event.
-              final String isoExDateString = DateHelper.formatIsoDate(exDate, DateHelper.UTC);
-              if (isoDateString.equals(isoExDateString)) {
-                if (log.isDebugEnabled()) {
-                  log.debug(String.format("= ex-dates equals: %s == %s", isoDateString, isoExDateString));
-                }
-                // this date is part of ex dates, so don't use it.
-                continue OuterLoop;
-              }
-            }
-            if (log.isDebugEnabled()) {
-              log.debug("ex-dates not equals: " + isoDateString + " != " + exDate);
-            }
-          }
-        }
-        if (isoDateString.equals(eventStartDateString)) {
-          // Put event itself to the list.
-          col.add(event);
-        } else {
-          // Now we need this event as date with the user's time-zone.
-          final PFDateTime date = PFDateTime.from(dateTime.getTime(), timeZone.toZoneId(), null, PFDateTime.NumberFormat.EPOCH_MILLIS);
-          final TeamRecurrenceEvent recurEvent = new TeamRecurrenceEvent(event, date);
-          col.add(recurEvent);
-        }
+    final long[] occurrences = recurrenceCache != null
+            ? recurrenceCache.getOccurrences(event, recur, startDate, endDate, timeZone)
+            : TeamEventRecurrenceCache.expand(event, recur, startDate, endDate, timeZone, TeamEventRecurrenceCache.parseExDates(event));
+    final ZoneId zoneId = timeZone.toZoneId();
+    final long eventStart = event.getStartDate().getTime();
+    final long eventStartDay = Instant.ofEpochMilli(eventStart).atZone(zoneId).toLocalDate().toEpochDay();
+    final Collection<ICalendarEvent> col = new ArrayList<>(occurrences.length);
+    for (final long occurrence : occurrences) {
+      final boolean isEventItself = event.getAllDay()
+              ? Instant.ofEpochMilli(occurrence).atZone(zoneId).toLocalDate().toEpochDay() == eventStartDay
+              : occurrence == eventStart;
+      if (isEventItself) {
+        // Put event itself to the list.
+        col.add(event);
+      } else {
+        // Now we need this event as date with the user's time-zone.
+        final PFDateTime date = PFDateTime.from(occurrence, zoneId, null, PFDateTime.NumberFormat.EPOCH_MILLIS);
+        final TeamRecurrenceEvent recurEvent = new TeamRecurrenceEvent(event, date);
+        col.add(recurEvent);
       }
     }
     if (log.isDebugEnabled()) {
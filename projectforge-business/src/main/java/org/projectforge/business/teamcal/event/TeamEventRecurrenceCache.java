@@ -0,0 +1,219 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2020 Micromata GmbH, Germany (www.micromata.com)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+
+package org.projectforge.business.teamcal.event;
+
+import net.fortuna.ical4j.model.DateList;
+import net.fortuna.ical4j.model.Recur;
+import net.fortuna.ical4j.model.parameter.Value;
+import org.projectforge.business.teamcal.event.model.TeamEventDO;
+import org.projectforge.framework.access.OperationType;
+import org.projectforge.framework.calendar.ICal4JUtils;
+import org.projectforge.framework.persistence.api.BaseDOChangedListener;
+import org.projectforge.framework.time.DateHelper;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Caches the expanded occurrences (start dates) of recurring team events by month, so month views of calendars with many
+ * series (e. g. daily stand-ups) don't need to roll out every series on every request. Entries are bound to the last
+ * update of an event and removed on every modification (including deletion) of an event. The least recently used
+ * events are evicted, if more than {@link #MAX_EVENTS} events are cached.
+ */
+@Component
+public class TeamEventRecurrenceCache implements BaseDOChangedListener<TeamEventDO> {
+  private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(TeamEventRecurrenceCache.class);
+
+  /**
+   * The buckets of an event are cleared if more months (and time zones) are cached.
+   */
+  private static final int MAX_BUCKETS_PER_EVENT = 60;
+
+  private static final int MAX_EVENTS = 1000;
+
+  private final Map<Integer, Entry> cache = Collections.synchronizedMap(new LinkedHashMap<Integer, Entry>(16, 0.75f, true) {
+    @Override
+    protected boolean removeEldestEntry(final Map.Entry<Integer, TeamEventRecurrenceCache.Entry> eldest) {
+      return size() > MAX_EVENTS;
+    }
+  });
+
+  /**
+   * @return Start dates (epoch millis) of all occurrences of the given recurring event starting between start and end
+   * date (both inclusive), excluding the ex dates. Sorted ascending.
+   */
+  public long[] getOccurrences(final TeamEventDO event, final Recur recur, final Date startDate, final Date endDate,
+                               final TimeZone timeZone) {
+    final Integer id = event.getId();
+    final Date lastUpdate = event.getLastUpdate();
+    if (id == null || id <= 0 || lastUpdate == null) {
+      // Not persisted events and events of external subscriptions (negative ids) aren't cached:
+      return expand(event, recur, startDate, endDate, timeZone, parseExDates(event));
+    }
+    Entry entry = cache.get(id);
+    if (entry == null || entry.lastUpdate != lastUpdate.getTime() || entry.allDay != event.getAllDay()) {
+      entry = new Entry(lastUpdate.getTime(), event.getAllDay(), parseExDates(event));
+      cache.put(id, entry);
+    }
+    final ZoneId zoneId = timeZone.toZoneId();
+    final long start = startDate.getTime();
+    final long end = endDate.getTime();
+    long[] result = new long[0];
+    ZonedDateTime bucketStart = Instant.ofEpochMilli(start).atZone(zoneId).withDayOfMonth(1).truncatedTo(ChronoUnit.DAYS);
+    while (bucketStart.toInstant().toEpochMilli() <= end) {
+      final ZonedDateTime nextBucketStart = bucketStart.plusMonths(1);
+      final long[] occurrences = getBucket(entry, event, recur, bucketStart, nextBucketStart, timeZone);
+      result = append(result, occurrences, start, end);
+      bucketStart = nextBucketStart;
+    }
+    return result;
+  }
+
+  private long[] getBucket(final Entry entry, final TeamEventDO event, final Recur recur,
+                           final ZonedDateTime bucketStart, final ZonedDateTime nextBucketStart, final TimeZone timeZone) {
+    final String key = timeZone.getID() + ":" + bucketStart.toLocalDate();
+    long[] occurrences = entry.buckets.get(key);
+    if (occurrences == null) {
+      if (entry.buckets.size() >= MAX_BUCKETS_PER_EVENT) {
+        entry.buckets.clear();
+      }
+      occurrences = expand(event, recur, Date.from(bucketStart.toInstant()),
+              new Date(nextBucketStart.toInstant().toEpochMilli() - 1), timeZone, entry.exDates);
+      entry.buckets.put(key, occurrences);
+    }
+    return occurrences;
+  }
+
+  /**
+   * Removes all cached occurrences of the changed (inserted, updated, deleted or undeleted) event.
+   */
+  @Override
+  public void afterSaveOrModifify(final TeamEventDO changedObject, final OperationType operationType) {
+    if (changedObject.getId() != null) {
+      cache.remove(changedObject.getId());
+    }
+  }
+
+  /**
+   * Rolls out the given recurrence between start and end date (both inclusive) without any caching.
+   *
+   * @param exDates Sorted ex dates, see {@link #parseExDates(TeamEventDO)}.
+   * @return Sorted start dates (epoch millis) of the occurrences, ex dates excluded.
+   */
+  static long[] expand(final TeamEventDO event, final Recur recur, final Date startDate, final Date endDate,
+                       final TimeZone timeZone, final long[] exDates) {
+    net.fortuna.ical4j.model.TimeZone ical4jTimeZone;
+    try {
+      ical4jTimeZone = ICal4JUtils.getTimeZone(timeZone);
+    } catch (final Exception e) {
+      log.error("Error getting timezone from ical4j.");
+      ical4jTimeZone = ICal4JUtils.getUserTimeZone();
+    }
+    final net.fortuna.ical4j.model.DateTime ical4jStartDate = new net.fortuna.ical4j.model.DateTime(startDate);
+    ical4jStartDate.setTimeZone(ical4jTimeZone);
+    final net.fortuna.ical4j.model.DateTime ical4jEndDate = new net.fortuna.ical4j.model.DateTime(endDate);
+    ical4jEndDate.setTimeZone(ical4jTimeZone);
+    final net.fortuna.ical4j.model.DateTime seedDate = new net.fortuna.ical4j.model.DateTime(event.getStartDate());
+    seedDate.setTimeZone(ical4jTimeZone);
+
+    final DateList dateList = recur.getDates(seedDate, ical4jStartDate, ical4jEndDate, Value.DATE_TIME);
+    if (dateList == null || dateList.isEmpty()) {
+      return new long[0];
+    }
+    final ZoneId zoneId = timeZone.toZoneId();
+    final long[] result = new long[dateList.size()];
+    int size = 0;
+    for (final Object obj : dateList) {
+      final long millis = ((net.fortuna.ical4j.model.DateTime) obj).getTime();
+      // All day ex dates are compared by their day (ex dates in UTC, occurrences in the given time zone).
+      final long exDateKey = event.getAllDay() ? Instant.ofEpochMilli(millis).atZone(zoneId).toLocalDate().toEpochDay() : millis;
+      if (exDates.length > 0 && Arrays.binarySearch(exDates, exDateKey) >= 0) {
+        // this date is part of ex dates, so don't use it.
+        continue;
+      }
+      result[size++] = millis;
+    }
+    final long[] occurrences = Arrays.copyOf(result, size);
+    Arrays.sort(occurrences);
+    return occurrences;
+  }
+
+  /**
+   * @return The sorted ex dates of the given event: epoch millis or, for all day events, the epoch days (UTC).
+   */
+  static long[] parseExDates(final TeamEventDO event) {
+    final List<Date> exDates = ICal4JUtils.parseCSVDatesAsJavaUtilDates(event.getRecurrenceExDate(), DateHelper.UTC);
+    if (exDates == null || exDates.isEmpty()) {
+      return new long[0];
+    }
+    final long[] result = new long[exDates.size()];
+    int i = 0;
+    for (final Date exDate : exDates) {
+      result[i++] = event.getAllDay()
+              ? Instant.ofEpochMilli(exDate.getTime()).atZone(ZoneId.of("UTC")).toLocalDate().toEpochDay()
+              : exDate.getTime();
+    }
+    Arrays.sort(result);
+    return result;
+  }
+
+  private static long[] append(final long[] result, final long[] occurrences, final long start, final long end) {
+    int from = 0;
+    while (from < occurrences.length && occurrences[from] < start) {
+      ++from;
+    }
+    int to = occurrences.length;
+    while (to > from && occurrences[to - 1] > end) {
+      --to;
+    }
+    if (from >= to) {
+      return result;
+    }
+    final long[] newResult = Arrays.copyOf(result, result.length + to - from);
+    System.arraycopy(occurrences, from, newResult, result.length, to - from);
+    return newResult;
+  }
+
+  private static class Entry {
+    private final long lastUpdate;
+
+    private final boolean allDay;
+
+    private final long[] exDates;
+
+    private final Map<String, long[]> buckets = new ConcurrentHashMap<>();
+
+    private Entry(final long lastUpdate, final boolean allDay, final long[] exDates) {
+      this.lastUpdate = lastUpdate;
+      this.allDay = allDay;
+      this.exDates = exDates;
+    }
+  }
+}
@@ -28,12 +28,17 @@ import org.projectforge.business.teamcal.event.model.TeamEventDO;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
-import java.util.Objects;
+import java.util.Map;
 
 /**
  * Own abstraction of a RangeMap. You can add TeamEvents and access them through their start and end date.
+ * <p>
+ * After adding, the events are indexed once: sorted by start date with a max-end segment tree on top (for finding
+ * long lasting events without scanning the whole history) and by uid.
  *
  * @author Johannes Unterstein (j.unterstein@micromata.de)
  */
@@ -47,75 +52,70 @@ public class SubscriptionHolder implements Serializable {
 
   private final List<TeamEventDO> eventList;
 
-  private boolean sorted;
+  private volatile Index index;
 
   public SubscriptionHolder() {
     eventList = new ArrayList<>();
-    sorted = false;
   }
 
-  public void clear() {
+  public synchronized void clear() {
     eventList.clear();
-    sorted = false;
+    index = null;
   }
 
-  public void add(final TeamEventDO value) {
+  public synchronized void add(final TeamEventDO value) {
     eventList.add(value);
-    sorted = false;
+    index = null;
   }
 
+  /**
+   * Sorts the events by start date and builds the index, if not yet done.
+   */
   public void sort() {
-    // the following comparator compares by startDate
-    final Comparator<TeamEventDO> comparator = new Comparator<TeamEventDO>() {
-      @Override
-      public int compare(final TeamEventDO o1, final TeamEventDO o2) {
-        if ((o1 == null || o1.getStartDate() == null) && (o2 == null || o2.getStartDate() == null)) {
-          return 0;
-        }
-        if (o1 == null || o1.getStartDate() == null) {
-          return -1;
-        }
-        if (o2 == null || o2.getStartDate() == null) {
-          return 1;
+    getIndex();
+  }
+
+  private Index getIndex() {
+    Index result = index;
+    if (result == null) {
+      // building the index should by synchronized
+      synchronized (this) {
+        result = index;
+        if (result == null) {
+          result = new Index(eventList);
+          index = result;
         }
-        // at this point, no NPE could occur
-        return o1.getStartDate().compareTo(o2.getStartDate());
       }
-    };
-    eventList.sort(comparator);
-    sorted = true;
+    }
+    return result;
   }
 
   public TeamEventDO getEvent(final String uid) {
-    for (final TeamEventDO teamEventDO : eventList) {
-      if (teamEventDO.getUid() != null && Objects.equals(uid, teamEventDO.getUid()))
-        return teamEventDO;
+    if (uid == null) {
+      return null;
     }
-    return null;
+    return getIndex().eventsByUid.get(uid);
   }
 
   public List<TeamEventDO> getResultList(final Long startTime, final Long endTime, final boolean minimalAccess) {
-    // sorting should by synchronized
-    synchronized (this) {
-      if (!sorted) {
-        sort();
-      }
-    }
+    final Index idx = getIndex();
+    // Following period extension is needed due to all day events which are stored in UTC (see matches).
+    final long extendedStartTime = startTime - ONE_DAY;
+    // all our events are sorted, events starting after the end date aren't part of the result:
+    final int end = idx.upperBound(endTime);
+    // events starting within the (extended) period match always:
+    final int begin = Math.min(idx.lowerBound(extendedStartTime), end);
     final List<TeamEventDO> result = new ArrayList<>();
-    for (final TeamEventDO teamEventDo : eventList) {
-      // all our events are sorted, if we find a event which starts
-      // after the end date, we can break this iteration
-      if (teamEventDo.getStartDate().getTime() > endTime) {
-        break;
-      }
-      if (matches(teamEventDo, startTime, endTime)) {
-        if (minimalAccess) {
-          result.add(teamEventDo.createMinimalCopy());
-        } else {
-          result.add(teamEventDo);
-        }
+    // events starting before the period match, if they end within or after the period:
+    idx.collectEndingAfter(1, 0, idx.leafCount, begin, extendedStartTime, result);
+    for (int i = begin; i < end; i++) {
+      if (matches(idx.events[i], startTime, endTime)) {
+        result.add(idx.events[i]);
       }
     }
+    if (minimalAccess) {
+      result.replaceAll(TeamEventDO::createMinimalCopy);
+    }
     // and return
     return result;
   }
@@ -137,10 +137,8 @@ public class SubscriptionHolder implements Serializable {
     // // get events whose duration overlap with chosen duration.
     // (Restrictions.and(Restrictions.le("startDate", startDate), Restrictions.ge("endDate", endDate)))));
 
-    final Long eventStartTime = teamEventDo.getStartDate() != null ? teamEventDo.getStartDate().getTime()
-            : TeamEventDao.MIN_DATE_1800;
-    final Long eventEndTime = teamEventDo.getEndDate() != null ? teamEventDo.getEndDate().getTime()
-            : TeamEventDao.MAX_DATE_3000;
+    final long eventStartTime = getStartTime(teamEventDo);
+    final long eventEndTime = getEndTime(teamEventDo);
     if (between(eventStartTime, startTime, endTime) || between(eventEndTime, startTime, endTime)) {
       return true;
     }
@@ -150,7 +148,112 @@ public class SubscriptionHolder implements Serializable {
     return false;
   }
 
-  private boolean between(final Long searchTime, final Long startTime, final Long endTime) {
+  private boolean between(final long searchTime, final long startTime, final long endTime) {
     return searchTime >= startTime && searchTime <= endTime;
   }
+
+  private static long getStartTime(final TeamEventDO event) {
+    return event.getStartDate() != null ? event.getStartDate().getTime() : TeamEventDao.MIN_DATE_1800;
+  }
+
+  private static long getEndTime(final TeamEventDO event) {
+    return event.getEndDate() != null ? event.getEndDate().getTime() : TeamEventDao.MAX_DATE_3000;
+  }
+
+  /**
+   * Immutable index of the events, rebuilt after modifications.
+   */
+  private static class Index implements Serializable {
+    private static final long serialVersionUID = -4283412312589218467L;
+
+    /**
+     * Events sorted by start date.
+     */
+    private final TeamEventDO[] events;
+
+    private final long[] startTimes;
+
+    /**
+     * Segment tree (1-based, leaves at leafCount + i) holding the maximum end time of the events of each sub range.
+     */
+    private final long[] maxEndTimes;
+
+    private final int leafCount;
+
+    private final Map<String, TeamEventDO> eventsByUid;
+
+    private Index(final List<TeamEventDO> eventList) {
+      events = eventList.toArray(new TeamEventDO[0]);
+      // the following comparator compares by startDate
+      Arrays.sort(events, Comparator.comparingLong(SubscriptionHolder::getStartTime));
+      startTimes = new long[events.length];
+      leafCount = events.length <= 1 ? 1 : Integer.highestOneBit(events.length - 1) << 1;
+      maxEndTimes = new long[2 * leafCount];
+      Arrays.fill(maxEndTimes, Long.MIN_VALUE);
+      eventsByUid = new HashMap<>();
+      for (int i = 0; i < events.length; i++) {
+        final TeamEventDO event = events[i];
+        startTimes[i] = getStartTime(event);
+        maxEndTimes[leafCount + i] = getEndTime(event);
+        if (event.getUid() != null) {
+          eventsByUid.putIfAbsent(event.getUid(), event);
+        }
+      }
+      for (int node = leafCount - 1; node >= 1; node--) {
+        maxEndTimes[node] = Math.max(maxEndTimes[2 * node], maxEndTimes[2 * node + 1]);
+      }
+    }
+
+    /**
+     * Adds all events with index lower than limit and end time not before minEndTime in the order of their start
+     * times. Sub trees without any event ending late enough are skipped.
+     *
+     * @param node The node of the segment tree covering the events from (inclusive) to to (exclusive).
+     */
+    private void collectEndingAfter(final int node, final int from, final int to, final int limit,
+                                    final long minEndTime, final List<TeamEventDO> result) {
+      if (from >= limit || maxEndTimes[node] < minEndTime) {
+        return;
+      }
+      if (to - from == 1) {
+        result.add(events[from]);
+        return;
+      }
+      final int mid = (from + to) >>> 1;
+      collectEndingAfter(2 * node, from, mid, limit, minEndTime, result);
+      collectEndingAfter(2 * node + 1, mid, to, limit, minEndTime, result);
+    }
+
+    /**
+     * @return The index of the first event starting at or after the given time.
+     */
+    private int lowerBound(final long time) {
+      int low = 0, high = startTimes.length;
+      while (low < high) {
+        final int mid = (low + high) >>> 1;
+        if (startTimes[mid] < time) {
+          low = mid + 1;
+        } else {
+          high = mid;
+        }
+      }
+      return low;
+    }
+
+    /**
+     * @return The index of the first event starting after the given time.
+     */
+    private int upperBound(final long time) {
+      int low = 0, high = startTimes.length;
+      while (low < high) {
+        final int mid = (low + high) >>> 1;
+        if (startTimes[mid] <= time) {
+          low = mid + 1;
+        } else {
+          high = mid;
+        }
+      }
+      return low;
+    }
+  }
 }
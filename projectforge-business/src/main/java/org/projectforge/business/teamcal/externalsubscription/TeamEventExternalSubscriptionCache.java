@@ -40,6 +40,8 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * @author Johannes Unterstein (j.unterstein@micromata.de)
@@ -51,10 +53,24 @@ public class TeamEventExternalSubscriptionCache {
 
   private static final long MAX_WAIT_MS_AFTER_FAILED_UPDATE = 1000 * 60 * 60 * 24; // 24 h
 
-  private final Map<Integer, TeamEventSubscription> subscriptions = new HashMap<>();
+  private final Map<Integer, TeamEventSubscription> subscriptions = new ConcurrentHashMap<>();
 
   private static final Long SUBSCRIPTION_UPDATE_TIME = 5L * 60 * 1000; // 5 min
 
+  /**
+   * Number of subscribed calendars updated in parallel. The connections per host are limited by
+   * {@link TeamEventSubscription}.
+   */
+  private static final int UPDATE_THREADS = 4;
+
+  private final AtomicInteger updateThreadCounter = new AtomicInteger();
+
+  private final ExecutorService updateExecutor = Executors.newFixedThreadPool(UPDATE_THREADS, runnable -> {
+    final Thread thread = new Thread(runnable, "ExternalCalendar-update-" + updateThreadCounter.incrementAndGet());
+    thread.setDaemon(true);
+    return thread;
+  });
+
   private transient TeamCalRight teamCalRight;
 
   private boolean initialized;
@@ -93,8 +109,23 @@ public class TeamEventExternalSubscriptionCache {
     // internalGetList is valid at this point, because we are calling this method in an asyn thread
     final List<TeamCalDO> subscribedCalendars = teamCalDao.internalGetList(filter);
 
+    final List<Callable<Object>> tasks = new ArrayList<>();
     for (final TeamCalDO calendar : subscribedCalendars) {
-      updateCache(calendar);
+      tasks.add(Executors.callable(() -> updateCache(calendar)));
+    }
+    try {
+      // Waits until all calendars are updated:
+      for (final Future<Object> future : updateExecutor.invokeAll(tasks)) {
+        try {
+          future.get();
+        } catch (final ExecutionException ex) {
+          log.error("Exception while updating subscribed calendar: " + ex.getCause().getMessage(), ex.getCause());
+        }
+      }
+    } catch (final InterruptedException ex) {
+      log.warn("Updating of TeamEventExternalSubscriptionCache interrupted.");
+      Thread.currentThread().interrupt();
+      return;
     }
 
     final List<Integer> idsToRemove = new ArrayList<>();
@@ -136,17 +167,13 @@ public class TeamEventExternalSubscriptionCache {
       log.error("Oups, calId is null (can't update subscription): " + calendar);
       return;
     }
-    TeamEventSubscription teamEventSubscription = subscriptions.get(calId);
+    final TeamEventSubscription teamEventSubscription = subscriptions.computeIfAbsent(calId, id -> new TeamEventSubscription());
     final Long now = System.currentTimeMillis();
     final Long addedTime = calendar.getExternalSubscriptionUpdateInterval() == null ? SUBSCRIPTION_UPDATE_TIME
             : 1000L * calendar
             .getExternalSubscriptionUpdateInterval();
-    if (teamEventSubscription == null || !teamEventSubscription.isInitialized()) {
+    if (!teamEventSubscription.isInitialized()) {
       // First update of subscribed calendar:
-      if (teamEventSubscription == null) {
-        teamEventSubscription = new TeamEventSubscription();
-        subscriptions.put(calendar.getId(), teamEventSubscription);
-      }
       teamEventSubscription.update(teamCalDao, calendar);
     } else if (force || teamEventSubscription.getLastUpdated() == null
             || teamEventSubscription.getLastUpdated() + addedTime <= now) {
@@ -23,9 +23,12 @@
 
 package org.projectforge.business.teamcal.externalsubscription;
 
+import org.apache.commons.httpclient.Header;
 import org.apache.commons.httpclient.HttpClient;
 import org.apache.commons.httpclient.HttpStatus;
+import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
 import org.apache.commons.httpclient.methods.GetMethod;
+import org.apache.commons.httpclient.params.HttpConnectionManagerParams;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.projectforge.business.teamcal.admin.TeamCalDao;
@@ -38,6 +41,7 @@ import java.io.ByteArrayInputStream;
 import java.io.InputStream;
 import java.io.Serializable;
 import java.math.BigInteger;
+import java.security.DigestInputStream;
 import java.security.MessageDigest;
 import java.util.ArrayList;
 import java.util.Date;
@@ -55,17 +59,51 @@ public class TeamEventSubscription implements Serializable
 
   private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(TeamEventSubscription.class);
 
+  /**
+   * Maximum number of parallel downloads from the same host.
+   */
+  private static final int MAX_CONNECTIONS_PER_HOST = 2;
+
+  private static final int MAX_TOTAL_CONNECTIONS = 20;
+
+  private static final int CONNECTION_TIMEOUT_MS = 30 * 1000;
+
+  private static final int SOCKET_TIMEOUT_MS = 60 * 1000;
+
+  /**
+   * Shared by all subscriptions, limits the concurrent connections per host.
+   */
+  private static final HttpClient httpClient;
+
+  static {
+    final MultiThreadedHttpConnectionManager connectionManager = new MultiThreadedHttpConnectionManager();
+    final HttpConnectionManagerParams params = connectionManager.getParams();
+    params.setDefaultMaxConnectionsPerHost(MAX_CONNECTIONS_PER_HOST);
+    params.setMaxTotalConnections(MAX_TOTAL_CONNECTIONS);
+    params.setConnectionTimeout(CONNECTION_TIMEOUT_MS);
+    params.setSoTimeout(SOCKET_TIMEOUT_MS);
+    httpClient = new HttpClient(connectionManager);
+  }
+
   private Integer teamCalId;
 
-  private boolean initialized = false;
+  private volatile boolean initialized = false;
 
-  private SubscriptionHolder subscription;
+  private volatile SubscriptionHolder subscription;
 
-  private List<TeamEventDO> recurrenceEvents;
+  private volatile List<TeamEventDO> recurrenceEvents;
 
+  /**
+   * Hash of the calendar data of the current subscription and recurrenceEvents.
+   */
   private String currentInitializedHash;
 
-  private Long lastUpdated, lastFailedUpdate;
+  /**
+   * Url and validators (ETag and Last-Modified) of the last successfully applied download for conditional requests.
+   */
+  private String lastUrl, eTag, lastModified;
+
+  private volatile Long lastUpdated, lastFailedUpdate;
 
   private int numberOfFailedUpdates = 0;
 
@@ -105,11 +143,9 @@ public class TeamEventSubscription implements Serializable
    * We update the cache softly, therefore we create a new instance and replace the old instance in the cached map then
    * creation and update is therefore the same two lines of code, but semantically different things.
    */
-  public void update(final TeamCalDao teamCalDao, final TeamCalDO teamCalDO)
+  public synchronized void update(final TeamCalDao teamCalDao, final TeamCalDO teamCalDO)
   {
     this.teamCalId = teamCalDO.getId();
-    currentInitializedHash = null;
-    lastUpdated = null;
     this.initialized = true;
     String url = teamCalDO.getExternalSubscriptionUrl();
     if (!teamCalDO.getExternalSubscription() || StringUtils.isEmpty(url)) {
@@ -121,13 +157,31 @@ public class TeamEventSubscription implements Serializable
     final String displayUrl = teamCalDO.getExternalSubscriptionUrlAnonymized();
     log.info("Getting subscribed calendar #" + teamCalDO.getId() + " from: " + displayUrl);
     byte[] bytes = null;
+    // Validators of this download, stored after the content was applied successfully:
+    String newETag = null, newLastModified = null;
+    boolean downloaded = false;
+    // Create a method instance.
+    GetMethod method = null;
     try {
+      method = new GetMethod(url);
+      if (subscription != null && StringUtils.equals(url, lastUrl)) {
+        // Conditional get, the server may respond with 304 (not modified):
+        if (eTag != null) {
+          method.setRequestHeader("If-None-Match", eTag);
+        }
+        if (lastModified != null) {
+          method.setRequestHeader("If-Modified-Since", lastModified);
+        }
+      }
+      final int statusCode = httpClient.executeMethod(method);
 
-      // Create a method instance.
-      final GetMethod method = new GetMethod(url);
-      final HttpClient client = new HttpClient();
-      final int statusCode = client.executeMethod(method);
-
+      if (statusCode == HttpStatus.SC_NOT_MODIFIED && subscription != null) {
+        log.info("No modification of subscribed calendar #" + teamCalDO.getId() + " found from: " + displayUrl
+            + " (not modified, OK, nothing to be done).");
+        lastUpdated = System.currentTimeMillis();
+        clear();
+        return;
+      }
       if (statusCode != HttpStatus.SC_OK) {
         error("Unable to gather subscription calendar #"
             + teamCalDO.getId()
@@ -140,11 +194,14 @@ public class TeamEventSubscription implements Serializable
 
       final MessageDigest md = MessageDigest.getInstance("MD5");
 
-      // Read the response body.
-      final InputStream stream = method.getResponseBodyAsStream();
+      // Read the response body (the content hash is calculated while reading).
+      final InputStream stream = new DigestInputStream(method.getResponseBodyAsStream(), md);
       bytes = IOUtils.toByteArray(stream);
 
-      final String md5 = calcHexHash(md.digest(bytes));
+      final String md5 = calcHexHash(md.digest());
+      newETag = getHeaderValue(method, "ETag");
+      newLastModified = getHeaderValue(method, "Last-Modified");
+      downloaded = true;
       if (!StringUtils.equals(md5, teamCalDO.getExternalSubscriptionHash())) {
         teamCalDO.setExternalSubscriptionHash(md5);
         teamCalDO.setExternalSubscriptionCalendarBinary(bytes);
@@ -160,6 +217,10 @@ public class TeamEventSubscription implements Serializable
           + displayUrl
           + "': "
           + e.getMessage());
+    } finally {
+      if (method != null) {
+        method.releaseConnection();
+      }
     }
     if (bytes == null) {
       error("Unable to use database subscription calendar #" + teamCalDO.getId() + " information, quit from url '"
@@ -172,6 +233,10 @@ public class TeamEventSubscription implements Serializable
       // nothing to do here if the hashes are equal
       log.info("No modification of subscribed calendar #" + teamCalDO.getId() + " found from: " + displayUrl
           + " (OK, nothing to be done).");
+      if (downloaded) {
+        setValidators(url, newETag, newLastModified);
+      }
+      lastUpdated = System.currentTimeMillis();
       clear();
       return;
     }
@@ -182,7 +247,10 @@ public class TeamEventSubscription implements Serializable
       final Date timeInPast = new Date(System.currentTimeMillis() - TIME_IN_THE_PAST);
       Integer startId = -1;
       ICalParser parser = ICalParser.parseAllFields();
-      parser.parse(new ByteArrayInputStream(bytes));
+      if (!parser.parse(new ByteArrayInputStream(bytes))) {
+        error("Unable to parse subscribed calendar #" + teamCalDO.getId() + " from url '" + displayUrl + "'.", null);
+        return;
+      }
 
       // the event id must (!) be negative and decrementing (different on each event)
       for (TeamEventDO event : parser.getExtractedEvents()) {
@@ -207,6 +275,12 @@ public class TeamEventSubscription implements Serializable
       subscription = newSubscription;
       lastUpdated = System.currentTimeMillis();
       currentInitializedHash = teamCalDO.getExternalSubscriptionHash();
+      if (downloaded) {
+        setValidators(url, newETag, newLastModified);
+      } else {
+        // Content of the data base applied, the next request has to be unconditional:
+        setValidators(null, null, null);
+      }
       clear();
       log.info("Subscribed calendar #" + teamCalDO.getId() + " successfully received from: " + displayUrl);
     } catch (final Exception e) {
@@ -219,6 +293,19 @@ public class TeamEventSubscription implements Serializable
     }
   }
 
+  private void setValidators(final String url, final String eTag, final String lastModified)
+  {
+    this.lastUrl = url;
+    this.eTag = eTag;
+    this.lastModified = lastModified;
+  }
+
+  private static String getHeaderValue(final GetMethod method, final String name)
+  {
+    final Header header = method.getResponseHeader(name);
+    return header != null ? header.getValue() : null;
+  }
+
   private void clear()
   {
     this.lastErrorMessage = null;
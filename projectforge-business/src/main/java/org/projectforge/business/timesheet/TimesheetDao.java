@@ -44,12 +44,15 @@ import org.projectforge.framework.access.OperationType;
 import org.projectforge.framework.configuration.Configuration;
 import org.projectforge.framework.i18n.MessageParam;
 import org.projectforge.framework.i18n.UserException;
+import org.projectforge.framework.persistence.api.AutocompletionIndex;
 import org.projectforge.framework.persistence.api.BaseDao;
 import org.projectforge.framework.persistence.api.BaseSearchFilter;
 import org.projectforge.framework.persistence.api.QueryFilter;
 import org.projectforge.framework.persistence.api.SortProperty;
+import org.projectforge.framework.persistence.api.impl.DBPredicate;
 import org.projectforge.framework.persistence.user.api.ThreadLocalUserContext;
 import org.projectforge.framework.persistence.user.entities.PFUserDO;
+import org.projectforge.framework.persistence.user.entities.TenantDO;
 import org.projectforge.framework.persistence.utils.SQLHelper;
 import org.projectforge.framework.time.DateHelper;
 import org.projectforge.framework.time.PFDateTime;
@@ -80,14 +83,30 @@ public class TimesheetDao extends BaseDao<TimesheetDO> {
           + "h!";
   private static final String[] ADDITIONAL_SEARCH_FIELDS = new String[]{"user.id", "user.username", "user.firstname",
           "user.lastname", "kost2.nummer", "kost2.description", "kost2.projekt.name"};
+  /**
+   * Maximum number of values per in clause (e. g. 1,000 for Oracle).
+   */
+  private static final int MAX_IN_CLAUSE_SIZE = 1000;
+  /**
+   * Maximum number of task ids of the select access predicate (limits the number of bind parameters of the query).
+   */
+  private static final int MAX_TASK_IDS_IN_QUERY = 10000;
   private static final Logger log = LoggerFactory.getLogger(TimesheetDao.class);
   @Autowired
   private UserDao userDao;
   @Autowired
   private Kost2Dao kost2Dao;
 
+  /**
+   * Locations of the time sheets, partitioned by user.
+   */
+  private final AutocompletionIndex<TimesheetDO> locationIndex;
+
   public TimesheetDao() {
     super(TimesheetDO.class);
+    this.supportAfterUpdate = true;
+    locationIndex = new AutocompletionIndex<>(this, "location", "user.id", TimesheetDO::getUserId, 365, 10000);
+    register(locationIndex);
   }
 
   public boolean showTimesheetsOfOtherUsers() {
@@ -250,12 +269,109 @@ public class TimesheetDao extends BaseDao<TimesheetDO> {
   }
 
   /**
-   * Rechecks the time sheet overlaps.
+   * Updates the durations of the task tree.
+   */
+  @Override
+  protected void afterSave(final TimesheetDO obj) {
+    super.afterSave(obj);
+    if (!obj.isDeleted()) {
+      addDuration(obj, 1);
+    }
+  }
+
+  /**
+   * Updates the durations of the task tree (the task may have been changed).
    */
   @Override
-  protected void afterSaveOrModify(final TimesheetDO obj) {
-    super.afterSaveOrModify(obj);
-    TaskTreeHelper.getTaskTree(obj).resetTotalDuration(obj.getTaskId());
+  protected void afterUpdate(final TimesheetDO obj, final TimesheetDO dbObj) {
+    super.afterUpdate(obj, dbObj);
+    if (dbObj == null) {
+      TaskTreeHelper.getTaskTree(obj).resetTotalDuration(obj.getTaskId());
+      return;
+    }
+    if (!dbObj.isDeleted()) {
+      addDuration(dbObj, -1);
+    }
+    if (!obj.isDeleted()) {
+      addDuration(obj, 1);
+    }
+  }
+
+  /**
+   * Updates the durations of the task tree, if the time sheet wasn't already marked as deleted.
+   */
+  @Override
+  public void internalMarkAsDeleted(final TimesheetDO obj) {
+    final TimesheetDO dbObj = getDatabaseState(obj);
+    super.internalMarkAsDeleted(obj);
+    if (dbObj != null && !dbObj.isDeleted()) {
+      addDuration(dbObj, -1);
+    }
+  }
+
+  /**
+   * Updates the durations of the task tree, if the time sheet was marked as deleted.
+   */
+  @Override
+  public void internalUndelete(final TimesheetDO obj) {
+    final TimesheetDO dbObj = getDatabaseState(obj);
+    super.internalUndelete(obj);
+    if (dbObj != null && dbObj.isDeleted()) {
+      // Additional changes of the given object are stored by undelete:
+      final TimesheetDO undeletedObj = getDatabaseState(obj);
+      if (undeletedObj != null) {
+        addDuration(undeletedObj, 1);
+      }
+    }
+  }
+
+  /**
+   * The durations of the task tree are based on the persisted values, the given object may be modified by the caller.
+   *
+   * @return The tenant, task, start and stop time and deleted flag of the persisted time sheet or null, if not found.
+   */
+  private TimesheetDO getDatabaseState(final TimesheetDO obj) {
+    if (obj.getId() == null) {
+      return null;
+    }
+    final Object[] values = SQLHelper.ensureUniqueResult(em.createQuery(
+            "select tn, tk, t.startTime, t.stopTime, t.deleted from TimesheetDO t"
+                    + " left join t.tenant tn left join t.task tk where t.id = :id", Object[].class)
+            .setParameter("id", obj.getId()));
+    if (values == null) {
+      return null;
+    }
+    final TimesheetDO dbObj = new TimesheetDO();
+    dbObj.setTenant((TenantDO) values[0]);
+    dbObj.setTask((TaskDO) values[1]);
+    dbObj.setStartTime((Date) values[2]);
+    dbObj.setStopTime((Date) values[3]);
+    dbObj.setDeleted((Boolean) values[4]);
+    return dbObj;
+  }
+
+  /**
+   * Only the fields needed for updating the durations of the task tree in {@link #afterUpdate(TimesheetDO, TimesheetDO)}.
+   */
+  @Override
+  protected TimesheetDO getBackupObject(final TimesheetDO dbObj) {
+    final TimesheetDO backupObj = new TimesheetDO();
+    backupObj.setTenant(dbObj.getTenant());
+    backupObj.setTask(dbObj.getTask());
+    backupObj.setStartTime(dbObj.getStartTime());
+    backupObj.setStopTime(dbObj.getStopTime());
+    backupObj.setDeleted(dbObj.isDeleted());
+    return backupObj;
+  }
+
+  /**
+   * @param sign 1 for adding the duration of the given time sheet, -1 for subtracting.
+   */
+  private void addDuration(final TimesheetDO obj, final int sign) {
+    if (obj.getTaskId() == null || obj.getStartTime() == null || obj.getStopTime() == null) {
+      return;
+    }
+    TaskTreeHelper.getTaskTree(obj).addDuration(obj.getTaskId(), sign * obj.getDuration() / 1000);
   }
 
   /**
@@ -312,13 +428,6 @@ public class TimesheetDao extends BaseDao<TimesheetDO> {
     }
   }
 
-  @Override
-  protected void onChange(final TimesheetDO obj, final TimesheetDO dbObj) {
-    if (obj.getTaskId().compareTo(dbObj.getTaskId()) != 0) {
-      TaskTreeHelper.getTaskTree(obj).resetTotalDuration(dbObj.getTaskId());
-    }
-  }
-
   @Override
   protected void prepareHibernateSearch(final TimesheetDO obj, final OperationType operationType) {
     final PFUserDO user = obj.getUser();
@@ -418,6 +527,63 @@ public class TimesheetDao extends BaseDao<TimesheetDO> {
     return true;
   }
 
+  /**
+   * Restricts the query to the own time sheets of the user and to the time sheets of all tasks with time sheet select
+   * access. Admins, financial staff and project managers aren't restricted (project managers may see foreign time sheets
+   * with hidden values, see {@link #hasUserSelectAccess(PFUserDO, TimesheetDO, boolean)}).
+   * <br/>
+   * The task permissions are inherited through the task tree, so they can't be expressed by a sub query. The ids of
+   * the permitted (or, if fewer, of the denied) tasks are taken from the task tree (cached per group combination). If
+   * there are too many, no predicate is returned and the access is checked for every result object only.
+   */
+  @Override
+  public DBPredicate getSelectAccessPredicate(final PFUserDO loggedInUser, final boolean superAdmin) {
+    if (accessChecker.isUserMemberOfAdminGroup(loggedInUser)
+            || accessChecker.isUserMemberOfGroup(loggedInUser, ProjectForgeGroup.FINANCE_GROUP, ProjectForgeGroup.PROJECT_MANAGER)) {
+      return null;
+    }
+    final DBPredicate ownTimesheets = QueryFilter.eq("user.id", loggedInUser.getId());
+    final Collection<Integer> groupIds = getUserGroupCache().getUserGroups(loggedInUser);
+    if (CollectionUtils.isEmpty(groupIds)) {
+      return ownTimesheets;
+    }
+    final TaskTree.TaskIdsByPermission taskIds = TaskTreeHelper.getTaskTree()
+            .getTaskIdsByPermission(groupIds, AccessType.TIMESHEETS, OperationType.SELECT);
+    if (taskIds.getDenied().isEmpty()) {
+      return null;
+    }
+    if (taskIds.getGranted().isEmpty()) {
+      return ownTimesheets;
+    }
+    // Use the smaller id set (mostly the user has access to only some sub trees or to all but some sub trees):
+    if (taskIds.getGranted().size() <= taskIds.getDenied().size()) {
+      if (taskIds.getGranted().size() > MAX_TASK_IDS_IN_QUERY) {
+        return null;
+      }
+      return QueryFilter.or(ownTimesheets, createIsInPredicate("task.id", taskIds.getGranted()));
+    }
+    if (taskIds.getDenied().size() > MAX_TASK_IDS_IN_QUERY) {
+      return null;
+    }
+    return QueryFilter.or(ownTimesheets, QueryFilter.not(createIsInPredicate("task.id", taskIds.getDenied())));
+  }
+
+  /**
+   * Splits the ids into several in clauses (some data bases support only 1,000 values per in clause).
+   */
+  private static DBPredicate createIsInPredicate(final String field, final Collection<Integer> ids) {
+    final List<Integer> sortedIds = new ArrayList<>(ids);
+    Collections.sort(sortedIds);
+    if (sortedIds.size() <= MAX_IN_CLAUSE_SIZE) {
+      return QueryFilter.isIn(field, sortedIds);
+    }
+    final List<DBPredicate> predicates = new ArrayList<>();
+    for (int i = 0; i < sortedIds.size(); i += MAX_IN_CLAUSE_SIZE) {
+      predicates.add(QueryFilter.isIn(field, sortedIds.subList(i, Math.min(i + MAX_IN_CLAUSE_SIZE, sortedIds.size()))));
+    }
+    return QueryFilter.or(predicates.toArray(new DBPredicate[0]));
+  }
+
   /**
    * User can always see his own time sheets. But if he has no access then the location and description values are
    * hidden (empty strings).
@@ -664,12 +830,7 @@ public class TimesheetDao extends BaseDao<TimesheetDO> {
    */
   public List<String> getLocationAutocompletion(final String searchString) {
     checkLoggedInUserSelectAccess();
-    PFDateTime oneYearAgo = PFDateTime.now().minusDays(365);
-    return em.createNamedQuery(TimesheetDO.SELECT_USED_LOCATIONS_BY_USER_AND_LOCATION_SEARCHSTRING, String.class)
-            .setParameter("userId", ThreadLocalUserContext.getUserId())
-            .setParameter("lastUpdate", oneYearAgo.getUtilDate())
-            .setParameter("locationSearch", "%" + StringUtils.lowerCase(searchString) + "%")
-            .getResultList();
+    return locationIndex.getAutocompletion(searchString, Collections.singletonList(ThreadLocalUserContext.getUserId()));
   }
 
   /**
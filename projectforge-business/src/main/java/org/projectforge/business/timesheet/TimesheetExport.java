@@ -106,7 +106,17 @@ public class TimesheetExport {
    */
   public byte[] export(final List<TimesheetDO> list) {
     log.info("Exporting timesheet list.");
-    final ExportWorkbook xls = new ExportWorkbook();
+    // Exports of a whole year may exceed the row limit of xls and would hold the whole workbook in memory.
+    final ExportWorkbook xls = ExportWorkbook.createStreamingWorkbook();
+    try {
+      return export(xls, list);
+    } finally {
+      // Temporary files of the streaming workbook, if not already written.
+      xls.dispose();
+    }
+  }
+
+  private byte[] export(final ExportWorkbook xls, final List<TimesheetDO> list) {
     final ContentProvider contentProvider = new MyContentProvider(xls);
     // create a default Date format and currency column
     xls.setContentProvider(contentProvider);
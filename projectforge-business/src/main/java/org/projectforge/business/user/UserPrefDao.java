@@ -67,9 +67,12 @@ import java.lang.reflect.AccessibleObject;
 import java.lang.reflect.Field;
 import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 /**
  * @author Kai Reinhard (k.reinhard@micromata.de)
@@ -82,6 +85,11 @@ public class UserPrefDao extends BaseDao<UserPrefDO> {
   private static final String[] ADDITIONAL_SEARCH_FIELDS = new String[]{"user.username", "user.firstname",
           "user.lastname"};
 
+  /**
+   * JDBC batch size of the bulk save of the write-behind (only used there, not configured globally).
+   */
+  private static final int JDBC_BATCH_SIZE = 50;
+
   @Autowired
   private Kost2Dao kost2Dao;
 
@@ -609,6 +617,59 @@ public class UserPrefDao extends BaseDao<UserPrefDO> {
     }
   }
 
+  /**
+   * Bulk version of {@link #internalSaveOrUpdate(UserPrefDO)}, used by the write-behind of {@link UserPrefCache}: the
+   * existing entries are queried once per user and all inserts and updates are done in one transaction.
+   *
+   * @param col Entries to save or update without check access.
+   */
+  @Override
+  public void internalSaveOrUpdate(final Collection<UserPrefDO> col) {
+    synchronized (this) { // Avoid parallel insert, update, delete operations.
+      final Map<Integer, Map<String, UserPrefDO>> dbUserPrefsByUser = new HashMap<>();
+      final List<UserPrefDO> list = new ArrayList<>();
+      for (final UserPrefDO obj : col) {
+        if (obj.getUser() == null) {
+          log.warn("User of UserPrefDO is null (can't save it): " + obj);
+          continue;
+        }
+        final Map<String, UserPrefDO> dbUserPrefs = dbUserPrefsByUser.computeIfAbsent(obj.getUser().getId(), this::getUserPrefsByKey);
+        final UserPrefDO dbUserPref = dbUserPrefs.get(getKey(obj));
+        if (CollectionUtils.isNotEmpty(obj.getUserPrefEntries())
+                || (dbUserPref != null && CollectionUtils.isNotEmpty(dbUserPref.getUserPrefEntries()))) {
+          // Legacy entries have to be merged:
+          internalSaveOrUpdate(obj);
+          continue;
+        }
+        if (dbUserPref == null) {
+          obj.setId(null); // Add new entry (ignore id of any previous existing entry).
+        } else {
+          obj.setId(dbUserPref.getId());
+          if (obj.getTenant() == null) {
+            obj.setTenant(dbUserPref.getTenant());
+          }
+        }
+        list.add(obj);
+      }
+      if (!list.isEmpty()) {
+        BaseDaoSupport.internalSaveOrUpdateInJdbcBatches(this, list, JDBC_BATCH_SIZE);
+      }
+    }
+  }
+
+  private Map<String, UserPrefDO> getUserPrefsByKey(final Integer userId) {
+    final Map<String, UserPrefDO> result = new HashMap<>();
+    em.createNamedQuery(UserPrefDO.FIND_BY_USER_ID, UserPrefDO.class)
+            .setParameter("userId", userId)
+            .getResultList()
+            .forEach(userPref -> result.put(getKey(userPref), userPref));
+    return result;
+  }
+
+  private static String getKey(final UserPrefDO userPref) {
+    return userPref.getArea() + "\n" + userPref.getName();
+  }
+
   /**
    * Only for synchronization with {@link #internalSaveOrUpdate(UserPrefDO)}.
    *
@@ -33,9 +33,14 @@ import org.springframework.context.annotation.DependsOn;
 import org.springframework.stereotype.Component;
 
 import javax.annotation.PreDestroy;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
 
 /**
  * Stores all user persistent objects such as filter settings, personal settings and persists them to the database.
@@ -50,7 +55,35 @@ public class UserXmlPreferencesCache extends AbstractCache
 
   private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(UserXmlPreferencesCache.class);
 
-  private final Map<Integer, UserXmlPreferencesMap> allPreferences = new HashMap<>();
+  private static final int LOCK_STRIPES = 64;
+
+  private static final int SHUTDOWN_FLUSH_ATTEMPTS = 3;
+
+  private static final int MAX_PERSIST_ATTEMPTS = 3;
+
+  private final Map<Integer, UserXmlPreferencesMap> allPreferences = new ConcurrentHashMap<>();
+
+  /**
+   * Write-behind queue: ids of all users with modified entries. Modifications of the same key are coalesced by the
+   * modified flags of {@link UserXmlPreferencesMap} and written once per flush cycle.
+   */
+  private final Set<Integer> modifiedUsers = ConcurrentHashMap.newKeySet();
+
+  /**
+   * Number of failed attempts to persist an entry in a row by user id and key ("userId:key").
+   */
+  private final Map<String, Integer> persistFailures = new ConcurrentHashMap<>();
+
+  /**
+   * Striped locks for loading and draining the preferences of a user, so users don't block each other.
+   */
+  private final ReentrantLock[] userLocks = new ReentrantLock[LOCK_STRIPES];
+
+  {
+    for (int i = 0; i < LOCK_STRIPES; i++) {
+      userLocks[i] = new ReentrantLock();
+    }
+  }
 
   @Autowired
   private UserXmlPreferencesDao userXmlPreferencesDao;
@@ -67,6 +100,9 @@ public class UserXmlPreferencesCache extends AbstractCache
   {
     final UserXmlPreferencesMap data = ensureAndGetUserPreferencesData(userId);
     data.putEntry(key, value, persistent);
+    if (persistent) {
+      modifiedUsers.add(userId);
+    }
     checkRefresh(); // Should be called at the end of this method for considering changes inside this method.
   }
 
@@ -78,8 +114,13 @@ public class UserXmlPreferencesCache extends AbstractCache
   public Object getEntry(final Integer userId, final String key)
   {
     final UserXmlPreferencesMap data = ensureAndGetUserPreferencesData(userId);
+    final Object value = data.getEntry(key);
+    if (data.isModified(key)) {
+      // Persistent entries are marked as modified after usage.
+      modifiedUsers.add(userId);
+    }
     checkRefresh();
-    return data.getEntry(key);
+    return value;
   }
 
   /**
@@ -109,20 +150,26 @@ public class UserXmlPreferencesCache extends AbstractCache
    * @param userId
    * @return
    */
-  public synchronized UserXmlPreferencesMap ensureAndGetUserPreferencesData(final Integer userId)
+  public UserXmlPreferencesMap ensureAndGetUserPreferencesData(final Integer userId)
   {
-    UserXmlPreferencesMap data = getUserPreferencesData(userId);
-    if (data == null) {
-      data = new UserXmlPreferencesMap();
-      data.setUserId(userId);
-      final List<UserXmlPreferencesDO> userPrefs = userXmlPreferencesDao.getUserPreferencesByUserId(userId);
-      for (final UserXmlPreferencesDO userPref : userPrefs) {
-        final Object value = userXmlPreferencesDao.deserialize(userId, userPref, true);
-        data.putEntry(userPref.getKey(), value, true);
-      }
-      this.allPreferences.put(userId, data);
+    final UserXmlPreferencesMap cached = getUserPreferencesData(userId);
+    if (cached != null) {
+      return cached;
     }
-    return data;
+    return withUserLock(userId, () -> {
+      UserXmlPreferencesMap data = getUserPreferencesData(userId);
+      if (data == null) {
+        data = new UserXmlPreferencesMap();
+        data.setUserId(userId);
+        final List<UserXmlPreferencesDO> userPrefs = userXmlPreferencesDao.getUserPreferencesByUserId(userId);
+        for (final UserXmlPreferencesDO userPref : userPrefs) {
+          final Object value = userXmlPreferencesDao.deserialize(userId, userPref, true);
+          data.putEntry(userPref.getKey(), value, true);
+        }
+        this.allPreferences.put(userId, data);
+      }
+      return data;
+    });
   }
 
   UserXmlPreferencesMap getUserPreferencesData(final Integer userId)
@@ -144,7 +191,7 @@ public class UserXmlPreferencesCache extends AbstractCache
     flushToDB(userId, true);
   }
 
-  private synchronized void flushToDB(final Integer userId, final boolean checkAccess)
+  private void flushToDB(final Integer userId, final boolean checkAccess)
   {
     if (checkAccess) {
       if (!userId.equals(ThreadLocalUserContext.getUserId())) {
@@ -161,11 +208,77 @@ public class UserXmlPreferencesCache extends AbstractCache
         return;
       }
     }
-    final UserXmlPreferencesMap data = allPreferences.get(userId);
-    if (data == null || !data.isModified()) {
+    final Map<Integer, Map<String, Object>> entries = new HashMap<>();
+    entries.put(userId, drainModifiedEntries(userId));
+    persist(entries);
+  }
+
+  /**
+   * Removes the user from the write-behind queue and returns all modified persistent entries of the user.
+   */
+  private Map<String, Object> drainModifiedEntries(final Integer userId)
+  {
+    return withUserLock(userId, () -> {
+      modifiedUsers.remove(userId);
+      final UserXmlPreferencesMap data = allPreferences.get(userId);
+      if (data == null || !data.isModified()) {
+        return new HashMap<>();
+      }
+      return data.drainModifiedEntries();
+    });
+  }
+
+  /**
+   * Writes the given entries in one transaction. If this fails, the entries are written one by one, so a failing entry
+   * doesn't block the others. Failing entries are re-queued for the next flush cycle and dropped after
+   * {@link #MAX_PERSIST_ATTEMPTS} attempts.
+   */
+  private void persist(final Map<Integer, Map<String, Object>> entries)
+  {
+    entries.values().removeIf(Map::isEmpty);
+    if (entries.isEmpty()) {
+      return;
+    }
+    try {
+      userXmlPreferencesDao.internalSaveOrUpdateUserEntries(entries);
+      entries.forEach((userId, userEntries) -> userEntries.keySet().forEach(key -> persistFailures.remove(userId + ":" + key)));
       return;
+    } catch (final Exception ex) {
+      log.warn("Error while persisting user preferences in one transaction, persisting them one by one: " + ex.getMessage());
+    }
+    entries.forEach((userId, userEntries) -> userEntries.forEach((key, value) -> {
+      final String failureKey = userId + ":" + key;
+      try {
+        userXmlPreferencesDao.internalSaveOrUpdateUserEntries(Collections.singletonMap(userId, Collections.singletonMap(key, value)));
+        persistFailures.remove(failureKey);
+      } catch (final Exception ex) {
+        final int failures = persistFailures.merge(failureKey, 1, Integer::sum);
+        if (failures >= MAX_PERSIST_ATTEMPTS) {
+          log.error("Error while persisting user preference '" + key + "' of user " + userId + ", dropped after " + failures
+              + " attempts: " + ex.getMessage(), ex);
+          persistFailures.remove(failureKey);
+          return;
+        }
+        log.error("Error while persisting user preference '" + key + "' of user " + userId + " (will retry on next flush): "
+            + ex.getMessage(), ex);
+        final UserXmlPreferencesMap data = allPreferences.get(userId);
+        if (data != null) {
+          data.setModified(key, true);
+          modifiedUsers.add(userId);
+        }
+      }
+    }));
+  }
+
+  private <T> T withUserLock(final Integer userId, final Supplier<T> supplier)
+  {
+    final ReentrantLock lock = userLocks[Math.floorMod(userId, LOCK_STRIPES)];
+    lock.lock();
+    try {
+      return supplier.get();
+    } finally {
+      lock.unlock();
     }
-    userXmlPreferencesDao.saveOrUpdateUserEntries(userId, data, checkAccess);
   }
 
   /**
@@ -177,10 +290,15 @@ public class UserXmlPreferencesCache extends AbstractCache
   @Override
   protected void refresh()
   {
-    log.info("Flushing all user preferences to data-base....");
-    for (final Integer userId : allPreferences.keySet()) {
-      flushToDB(userId, false);
+    if (modifiedUsers.isEmpty()) {
+      return;
+    }
+    log.info("Flushing user preferences of " + modifiedUsers.size() + " users to data-base....");
+    final Map<Integer, Map<String, Object>> entries = new HashMap<>();
+    for (final Integer userId : modifiedUsers) {
+      entries.put(userId, drainModifiedEntries(userId));
     }
+    persist(entries);
     log.info("Flushing of user preferences to data-base done.");
   }
 
@@ -204,10 +322,19 @@ public class UserXmlPreferencesCache extends AbstractCache
     this.expireTime = 10 * TICKS_PER_MINUTE;
   }
 
+  /**
+   * Drains the write-behind queue on shutdown. Entries failing to persist are retried a few times.
+   */
   @PreDestroy
   public void preDestroy()
   {
     log.info("Syncing all user preferences to database.");
-    this.forceReload();
+    int attempts = 0;
+    do {
+      this.forceReload();
+    } while (!modifiedUsers.isEmpty() && ++attempts < SHUTDOWN_FLUSH_ATTEMPTS);
+    if (!modifiedUsers.isEmpty()) {
+      log.error("Couldn't sync user preferences of users " + modifiedUsers + " to database.");
+    }
   }
 }
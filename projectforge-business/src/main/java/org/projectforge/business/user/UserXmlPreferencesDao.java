@@ -47,7 +47,9 @@ import org.springframework.context.ApplicationContext;
 import org.springframework.stereotype.Repository;
 
 import javax.annotation.PostConstruct;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -237,19 +239,82 @@ public class UserXmlPreferencesDao {
     return xml;
   }
 
-  // REQUIRES_NEW needed for avoiding a lot of new data base connections from HibernateFilter.
+  /**
+   * Saves or updates all modified entries of the given user in one transaction.
+   *
+   * @see #internalSaveOrUpdateUserEntries(Map)
+   */
   public void saveOrUpdateUserEntries(final Integer userId, final UserXmlPreferencesMap data, final boolean checkAccess) {
-    for (final Map.Entry<String, Object> prefEntry : data.getPersistentData().entrySet()) {
-      final String key = prefEntry.getKey();
-      if (data.isModified(key)) {
-        try {
-          saveOrUpdate(userId, key, prefEntry.getValue(), checkAccess);
-        } catch (final Throwable ex) {
-          log.warn(ex.getMessage(), ex);
-        }
-        data.setModified(key, false);
+    if (checkAccess) {
+      checkAccess(userId);
+    }
+    final Map<String, Object> entries = data.drainModifiedEntries();
+    try {
+      internalSaveOrUpdateUserEntries(Collections.singletonMap(userId, entries));
+    } catch (final Throwable ex) {
+      log.warn(ex.getMessage(), ex);
+      entries.keySet().forEach(key -> data.setModified(key, true));
+    }
+  }
+
+  /**
+   * Saves or updates the given entries of all users in one transaction without access checking. The existing entries
+   * of the users are selected by one query, inserts and updates are flushed together on commit.
+   *
+   * @param entriesByUser The entries to persist (key and value) by user id.
+   */
+  public void internalSaveOrUpdateUserEntries(final Map<Integer, Map<String, Object>> entriesByUser) {
+    final Map<Integer, Map<String, Object>> entries = new HashMap<>();
+    entriesByUser.forEach((userId, userEntries) -> {
+      if (!userEntries.isEmpty() && !accessChecker.isDemoUser(userId)) {
+        entries.put(userId, userEntries);
       }
+    });
+    if (entries.isEmpty()) {
+      return;
     }
+    final Date date = new Date();
+    emgrFactory.runInTrans(emgr -> {
+      final Map<Integer, Map<String, UserXmlPreferencesDO>> dbEntries = new HashMap<>();
+      emgr.getEntityManager()
+              .createQuery("select u from UserXmlPreferencesDO u where u.user.id in :userIds", UserXmlPreferencesDO.class)
+              .setParameter("userIds", entries.keySet())
+              .getResultList()
+              .forEach(userPrefs -> dbEntries.computeIfAbsent(userPrefs.getUserId(), id -> new HashMap<>()).put(userPrefs.getKey(), userPrefs));
+      entries.forEach((userId, userEntries) -> {
+        final Map<String, UserXmlPreferencesDO> dbUserEntries = dbEntries.getOrDefault(userId, Collections.emptyMap());
+        userEntries.forEach((key, value) -> {
+          UserXmlPreferencesDO userPrefs = dbUserEntries.get(key);
+          final boolean isNew = userPrefs == null;
+          if (isNew) {
+            userPrefs = new UserXmlPreferencesDO();
+            userPrefs.setTenant(tenantDao.getDefaultTenant());
+            userPrefs.setCreated(date);
+            userPrefs.setUser(userDao.internalGetById(userId));
+            userPrefs.setKey(key);
+          }
+          final String xml;
+          try {
+            xml = serialize(userPrefs, value);
+          } catch (final Exception ex) {
+            log.error("Can't serialize user preference '" + key + "' of user '" + userId + "', entry is dropped and not persisted: "
+                + ex.getMessage(), ex);
+            return;
+          }
+          if (log.isDebugEnabled()) {
+            log.debug((isNew ? "Storing new" : "Updating") + " user preference for user '" + userId + "': " + xml);
+          }
+          userPrefs.setLastUpdate(date);
+          userPrefs.setVersion();
+          if (isNew) {
+            emgr.insert(userPrefs);
+          } else {
+            emgr.update(userPrefs);
+          }
+        });
+      });
+      return null;
+    });
   }
 
   /**
@@ -149,16 +149,38 @@ public class UserXmlPreferencesMap
 
   protected void setModified(String key, boolean isModified)
   {
-    if (isModified) {
-      getModifiedObjects().add(key);
-    } else {
-      getModifiedObjects().remove(key);
+    synchronized (this) {
+      if (isModified) {
+        getModifiedObjects().add(key);
+      } else {
+        getModifiedObjects().remove(key);
+      }
     }
   }
 
   protected boolean isModified(String key)
   {
-    return getModifiedObjects().contains(key);
+    synchronized (this) {
+      return getModifiedObjects().contains(key);
+    }
+  }
+
+  /**
+   * Gets all modified persistent entries and resets their modified flags. Multiple modifications of an entry since the
+   * last call are coalesced to one write.
+   */
+  protected Map<String, Object> drainModifiedEntries()
+  {
+    synchronized (this) {
+      final Map<String, Object> result = new HashMap<>();
+      for (final String key : getModifiedObjects()) {
+        if (getPersistentData().containsKey(key)) {
+          result.put(key, getPersistentData().get(key));
+        }
+      }
+      getModifiedObjects().clear();
+      return result;
+    }
   }
 
   /**
@@ -30,8 +30,8 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Access to ffp event.
@@ -45,16 +45,20 @@ public class VacationMenuCounterCache extends AbstractCache {
   @Autowired
   private VacationService vacationService;
 
-  private Map<Integer, Integer> openMenuCounter = new HashMap<>();
+  /**
+   * Filled lazily by concurrent readers and replaced as a whole by {@link #refresh()}.
+   */
+  private volatile Map<Integer, Integer> openMenuCounter = new ConcurrentHashMap<>();
 
   public Integer getOpenLeaveApplicationsForUser(PFUserDO employeeUser) {
     if (employeeUser == null)
       return 0;
     checkRefresh();
-    Integer value = openMenuCounter.get(employeeUser.getId());
+    final Map<Integer, Integer> counter = openMenuCounter;
+    Integer value = counter.get(employeeUser.getId());
     if (value == null) {
       value = vacationService.getOpenLeaveApplicationsForUser(employeeUser);
-      openMenuCounter.put(employeeUser.getId(), value);
+      counter.put(employeeUser.getId(), value);
     }
     return value;
   }
@@ -65,7 +69,7 @@ public class VacationMenuCounterCache extends AbstractCache {
   @Override
   protected void refresh() {
     log.info("Initializing VacationMenuCounterCache ...");
-    openMenuCounter.clear();
+    openMenuCounter = new ConcurrentHashMap<>();
     log.info("Initializing of VacationMenuCounterCache done.");
   }
 }
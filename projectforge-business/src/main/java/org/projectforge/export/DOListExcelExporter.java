@@ -25,6 +25,7 @@ package org.projectforge.export;
 
 import org.projectforge.business.excel.ContentProvider;
 import org.projectforge.business.excel.ExportColumn;
+import org.projectforge.business.excel.ExportWorkbook;
 import org.projectforge.common.anots.PropertyInfo;
 import org.projectforge.framework.time.DateHelper;
 
@@ -39,7 +40,9 @@ import java.util.Date;
 public class DOListExcelExporter extends MyExcelExporter
 {
   /**
-   * @param filename
+   * Uses a streaming workbook (xlsx), so large lists don't hold the whole workbook in memory.
+   *
+   * @param filenameIdentifier
    */
   public DOListExcelExporter(final String filenameIdentifier)
   {
@@ -47,7 +50,7 @@ public class DOListExcelExporter extends MyExcelExporter
         + (filenameIdentifier != null ? filenameIdentifier : "export")
         + "_"
         + DateHelper.getDateAsFilenameSuffix(new Date())
-        + ".xls");
+        + ".xlsx", ExportWorkbook.createStreamingWorkbook());
   }
 
   /**
@@ -44,6 +44,11 @@ public class MyExcelExporter extends ExcelExporter
     super(filename);
   }
 
+  public MyExcelExporter(final String filename, final ExportWorkbook workbook)
+  {
+    super(filename, workbook);
+  }
+
   public ExportSheet addSheet(final String sheetTitle)
   {
     final ContentProvider contentProvider = new MyXlsContentProvider(getWorkbook())
@@ -23,11 +23,31 @@
 
 package org.projectforge.framework.cache;
 
+import org.projectforge.framework.persistence.user.api.ThreadLocalUserContext;
+import org.projectforge.framework.persistence.user.api.UserContext;
+
 import java.io.Serializable;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * This class is usefull, if the stored object of derived classes has to be cached. After reaching expireTime during a
  * request, the method refresh will be called.
+ * <p>
+ * Reading is non-blocking: {@link #checkRefresh()} doesn't take a monitor as long as the cache is valid. The first
+ * refresh and refreshes after {@link #setExpired()} are done synchronously by the calling thread (concurrent callers
+ * wait for this single refresh). If only the expire time is (nearly) reached, the refresh is done ahead in the
+ * background by a shared executor and readers go on with the current data. Therefore refresh() has to build its data
+ * in local variables and to publish it at the end.
+ * <p>
+ * refresh() is still called under the monitor of the cache, so methods of derived classes synchronized on the cache
+ * (e. g. for modifying the cached data in place) are excluded during a refresh as before. Unsynchronized readers
+ * aren't blocked.
  *
  * @author Kai Reinhard (k.reinhard@micromata.de)
  */
@@ -57,16 +77,48 @@ public abstract class AbstractCache implements Serializable
    */
   public static final long TICKS_PER_DAY = 24 * TICKS_PER_HOUR;
 
+  /**
+   * Refresh in the background, if this fraction of the expire time is reached.
+   */
+  private static final double REFRESH_AHEAD_FACTOR = 0.8;
+
+  private static final AtomicInteger refreshThreadCounter = new AtomicInteger();
+
+  /**
+   * Shared by all caches for refreshing ahead in the background.
+   */
+  private static final ExecutorService refreshExecutor = Executors.newFixedThreadPool(2, runnable -> {
+    final Thread thread = new Thread(runnable, "Cache-refresh-" + refreshThreadCounter.incrementAndGet());
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  /**
+   * All created caches for monitoring their metrics. Weak references, so caches of removed tenants may be collected.
+   */
+  private static final Set<AbstractCache> allCaches = Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<>()));
+
   protected long expireTime = 60 * TICKS_PER_MINUTE;
 
-  private transient long timeOfLastRefresh = -1;
+  private transient volatile long timeOfLastRefresh = -1;
+
+  private transient volatile boolean isExpired = true;
+
+  private transient volatile boolean refreshInProgress = false;
+
+  private final ReentrantLock refreshLock = new ReentrantLock();
+
+  private final AtomicBoolean backgroundRefreshScheduled = new AtomicBoolean();
 
-  private transient boolean isExpired = true;
+  private final LongAdder hitCounter = new LongAdder();
 
-  private transient boolean refreshInProgress = false;
+  private volatile long refreshCounter;
+
+  private volatile long lastRefreshDuration;
 
   protected AbstractCache()
   {
+    allCaches.add(this);
   }
 
   /**
@@ -74,9 +126,23 @@ public abstract class AbstractCache implements Serializable
    */
   protected AbstractCache(final long expireTime)
   {
+    this();
     this.expireTime = expireTime;
   }
 
+  /**
+   * @return All caches ordered by their class names, e. g. for showing their metrics.
+   */
+  public static List<AbstractCache> getAllCaches()
+  {
+    final List<AbstractCache> result;
+    synchronized (allCaches) {
+      result = new ArrayList<>(allCaches);
+    }
+    result.sort(Comparator.comparing(cache -> cache.getClass().getName()));
+    return result;
+  }
+
   public void setExpireTimeInMinutes(final long expireTime)
   {
     this.expireTime = expireTime * TICKS_PER_MINUTE;
@@ -101,36 +167,111 @@ public abstract class AbstractCache implements Serializable
   }
 
   /**
-   * Sets the cache to expired and calls checkRefresh, which forces refresh.
+   * Sets the cache to expired and refreshes it synchronously.
    */
   public void forceReload()
   {
     setExpired();
-    checkRefresh();
+    refreshNow();
+  }
+
+  /**
+   * @return true if the cache is expired or the expire time is exceeded (a refresh is due).
+   */
+  protected boolean isRefreshRequired()
+  {
+    return this.isExpired || System.currentTimeMillis() - this.timeOfLastRefresh > this.expireTime;
   }
 
   /**
-   * Checks the expire time and calls refresh, if cache is expired.
+   * Checks the expire time and calls refresh, if cache is expired. Refreshes in the background, if only the expire
+   * time is (nearly) reached.
    */
-  protected synchronized void checkRefresh()
+  protected void checkRefresh()
   {
-    if (refreshInProgress) {
+    hitCounter.increment();
+    if (this.isExpired || this.timeOfLastRefresh < 0) {
+      refreshNow();
+    } else if (System.currentTimeMillis() - this.timeOfLastRefresh > this.expireTime * REFRESH_AHEAD_FACTOR) {
+      scheduleRefresh();
+    }
+  }
+
+  /**
+   * Refreshes the cache by the calling thread, if required. Concurrent callers wait until the running refresh is done.
+   * Does nothing, if called by the refreshing thread itself (e. g. from inside refresh()).
+   */
+  protected void refreshNow()
+  {
+    if (refreshLock.isHeldByCurrentThread()) {
       // Do nothing because refreshing is already in progress.
       return;
     }
-    if (this.isExpired || System.currentTimeMillis() - this.timeOfLastRefresh > this.expireTime) {
+    // The monitor is always taken before the refresh lock, because synchronized methods of derived classes may call
+    // checkRefresh():
+    synchronized (this) {
+      refreshLock.lock();
+      try {
+        if (isRefreshRequired()) {
+          doRefresh();
+        }
+      } finally {
+        refreshLock.unlock();
+      }
+    }
+  }
+
+  /**
+   * Refreshes the cache in the background, if required and not yet scheduled. Readers go on with the current data.
+   */
+  protected void scheduleRefresh()
+  {
+    if (!backgroundRefreshScheduled.compareAndSet(false, true)) {
+      return;
+    }
+    // The refresh may depend on the tenant of the current user:
+    final UserContext userContext = ThreadLocalUserContext.getUserContext();
+    refreshExecutor.execute(() -> {
       try {
-        refreshInProgress = true;
-        this.timeOfLastRefresh = System.currentTimeMillis();
-        try {
-          this.refresh();
-        } catch (final Throwable ex) {
-          log.error(ex.getMessage(), ex);
+        ThreadLocalUserContext.setUserContext(userContext);
+        synchronized (this) {
+          refreshLock.lock();
+          try {
+            if (System.currentTimeMillis() - this.timeOfLastRefresh > this.expireTime * REFRESH_AHEAD_FACTOR
+                || isRefreshRequired()) {
+              doRefresh();
+            }
+          } finally {
+            refreshLock.unlock();
+          }
         }
-        this.isExpired = false;
       } finally {
-        refreshInProgress = false;
+        ThreadLocalUserContext.clear();
+        backgroundRefreshScheduled.set(false);
       }
+    });
+  }
+
+  private void doRefresh()
+  {
+    try {
+      refreshInProgress = true;
+      final long begin = System.currentTimeMillis();
+      this.timeOfLastRefresh = begin;
+      // Reset before refreshing, so a setExpired() call during the refresh isn't lost.
+      this.isExpired = false;
+      try {
+        this.refresh();
+      } catch (final Throwable ex) {
+        log.error(ex.getMessage(), ex);
+      }
+      this.lastRefreshDuration = System.currentTimeMillis() - begin;
+      ++this.refreshCounter;
+      if (log.isDebugEnabled()) {
+        log.debug(getClass().getSimpleName() + " refreshed in " + lastRefreshDuration + "ms.");
+      }
+    } finally {
+      refreshInProgress = false;
     }
   }
 
@@ -142,9 +283,54 @@ public abstract class AbstractCache implements Serializable
     return refreshInProgress;
   }
 
+  /**
+   * @return The number of calls of {@link #checkRefresh()} (cache reads).
+   */
+  public long getHitCount()
+  {
+    return hitCounter.sum();
+  }
+
+  /**
+   * @return The number of refreshes done.
+   */
+  public long getRefreshCount()
+  {
+    return refreshCounter;
+  }
+
+  /**
+   * @return The duration of the last refresh in milliseconds.
+   */
+  public long getLastRefreshDuration()
+  {
+    return lastRefreshDuration;
+  }
+
+  /**
+   * @return The age of the cached data in milliseconds or -1, if never refreshed.
+   */
+  public long getStaleness()
+  {
+    final long time = this.timeOfLastRefresh;
+    return time < 0 ? -1 : System.currentTimeMillis() - time;
+  }
+
+  /**
+   * @return The metrics of this cache: hits, refreshes, duration of the last refresh and staleness.
+   */
+  public String getStatistics()
+  {
+    final long staleness = getStaleness();
+    return "hits=" + getHitCount()
+        + ", refreshes=" + getRefreshCount()
+        + ", last refresh=" + getLastRefreshDuration() + "ms"
+        + ", staleness=" + (staleness < 0 ? "-" : (staleness / TICKS_PER_SECOND) + "s");
+  }
+
   /**
    * Please implement this method refreshing the stored object _data. Do not forget to call checkRefresh in your cache
-   * methods.
+   * methods. Will be called under the monitor of this cache.
    *
    * @see #checkRefresh()
    */
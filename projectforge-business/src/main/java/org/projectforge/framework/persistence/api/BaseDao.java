@@ -42,6 +42,7 @@ import org.projectforge.framework.access.AccessException;
 import org.projectforge.framework.access.OperationType;
 import org.projectforge.framework.i18n.UserException;
 import org.projectforge.framework.persistence.api.impl.CustomResultFilter;
+import org.projectforge.framework.persistence.api.impl.DBPredicate;
 import org.projectforge.framework.persistence.api.impl.DBQuery;
 import org.projectforge.framework.persistence.api.impl.HibernateSearchMeta;
 import org.projectforge.framework.persistence.database.DatabaseDao;
@@ -54,7 +55,6 @@ import org.projectforge.framework.persistence.user.api.ThreadLocalUserContext;
 import org.projectforge.framework.persistence.user.entities.PFUserDO;
 import org.projectforge.framework.persistence.user.entities.TenantDO;
 import org.projectforge.framework.persistence.utils.SQLHelper;
-import org.projectforge.framework.time.PFDateTime;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -68,6 +68,8 @@ import javax.persistence.criteria.CriteriaQuery;
 import javax.persistence.criteria.Root;
 import java.io.Serializable;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.stream.Collectors;
 
 /**
@@ -91,7 +93,9 @@ public abstract class BaseDao<O extends ExtendedBaseDO<Integer>>
    */
   private static final boolean LUCENE_FLUSH_ALWAYS = false;
 
-  private final List<BaseDOChangedListener<O>> objectChangedListeners = new LinkedList<>();
+  private final List<BaseDOChangedListener<O>> objectChangedListeners = new CopyOnWriteArrayList<>();
+
+  private final Map<String, AutocompletionIndex<O>> autocompletionIndices = new ConcurrentHashMap<>();
 
   protected Class<O> clazz;
 
@@ -315,16 +319,6 @@ public abstract class BaseDao<O extends ExtendedBaseDO<Integer>>
     return idSet.contains(entry.getId());
   }
 
-  /**
-   * idSet.contains(entry.getId()) at default.
-   */
-  public boolean containsLong(final Set<Long> idSet, final O entry) {
-    if (idSet == null) {
-      return false;
-    }
-    return idSet.contains(entry.getId().longValue());
-  }
-
   protected List<O> selectUnique(final List<O> list) {
     @SuppressWarnings("unchecked") final List<O> result = (List<O>) CollectionUtils.select(list, PredicateUtils.uniquePredicate());
     return result;
@@ -356,6 +350,20 @@ public abstract class BaseDao<O extends ExtendedBaseDO<Integer>>
             && hasUserSelectAccess(loggedInUser, obj, false);
   }
 
+  /**
+   * Overwrite this method for pushing the row level select access into the data base query (criteria as well as full
+   * text search), so entities without select access aren't loaded at all. The returned predicate must not be more
+   * restrictive than {@link #hasSelectAccess(ExtendedBaseDO, PFUserDO, boolean)}, because every result object is still
+   * checked by hasSelectAccess.
+   *
+   * @param loggedInUser The current logged in user.
+   * @param superAdmin   Super admin has access to entries of all tenants
+   * @return null at default (no restriction of the query).
+   */
+  public DBPredicate getSelectAccessPredicate(final PFUserDO loggedInUser, final boolean superAdmin) {
+    return null;
+  }
+
   /**
    * Overwrite this method for own list sorting. This method returns only the given list.
    */
@@ -1173,7 +1181,8 @@ public abstract class BaseDao<O extends ExtendedBaseDO<Integer>>
    *
    * @param property     Property of the data base entity.
    * @param searchString String the user has typed in.
-   * @return All matching entries (like search) for the given property modified or updated in the last 2 years.
+   * @return All matching entries (ignoring case) for the given property modified or updated in the last 2 years, the
+   * most frequently and recently used first.
    */
   @Override
   public List<String> getAutocompletion(final String property, final String searchString) {
@@ -1185,17 +1194,21 @@ public abstract class BaseDao<O extends ExtendedBaseDO<Integer>>
     if (StringUtils.isBlank(searchString)) {
       return new ArrayList<>();
     }
-    CriteriaBuilder cb = em.getCriteriaBuilder();
-    CriteriaQuery<String> cr = cb.createQuery(String.class);
-    Root<O> root = cr.from(clazz);
-    Date yearsAgo = PFDateTime.now().minusYears(2).getUtilDate();
-    cr.select(root.get(property)).where(
-            cb.equal(root.get("deleted"), false),
-            cb.greaterThan(root.get("lastUpdate"), yearsAgo),
-            cb.like(cb.lower(root.get(property)), "%" + StringUtils.lowerCase(searchString) + "%"))
-            .orderBy(cb.asc(root.get(property)))
-            .distinct(true);
-    return em.createQuery(cr).getResultList();
+    return getAutocompletionIndex(property).getAutocompletion(searchString);
+  }
+
+  /**
+   * The index is created on first use and registered as change listener of this dao.
+   *
+   * @param property Property of the data base entity.
+   * @return The in-memory autocompletion index of all values of the given property modified in the last 2 years.
+   */
+  protected AutocompletionIndex<O> getAutocompletionIndex(final String property) {
+    return autocompletionIndices.computeIfAbsent(property, key -> {
+      final AutocompletionIndex<O> index = new AutocompletionIndex<>(this, key);
+      register(index);
+      return index;
+    });
   }
 
   /**
@@ -49,7 +49,7 @@ public class StatisticsCache extends AbstractCache
   private static Logger log = LoggerFactory.getLogger(StatisticsCache.class);
 
   /** The key is the entity class and the value the number of entries in the table. */
-  private Map<Class<? extends BaseDO<?>>, Integer> numberOfEntitiesMap;
+  private volatile Map<Class<? extends BaseDO<?>>, Integer> numberOfEntitiesMap;
 
   @Autowired
   private DataSource dataSource;
@@ -67,18 +67,19 @@ public class StatisticsCache extends AbstractCache
   protected void refresh()
   {
     log.info("Initializing StatisticsCache ...");
-    numberOfEntitiesMap = new HashMap<>();
+    final Map<Class<? extends BaseDO<?>>, Integer> map = new HashMap<>();
     final JdbcTemplate jdbc = new JdbcTemplate(dataSource);
     for (final RegistryEntry registryEntry : Registry.getInstance().getOrderedList()) {
       try {
         final int number = jdbc.queryForObject(
             "SELECT COUNT(*) FROM " + HibernateUtils.getDBTableName(registryEntry.getDOClass()), Integer.class);
-        numberOfEntitiesMap.put(registryEntry.getDOClass(), number);
+        map.put(registryEntry.getDOClass(), number);
       } catch (final Exception ex) {
         log.error(ex.getMessage(), ex);
         continue;
       }
     }
+    numberOfEntitiesMap = map;
     log.info("Initializing of StatisticsCache done.");
   }
 }
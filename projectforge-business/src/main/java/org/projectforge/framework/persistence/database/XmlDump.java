@@ -34,6 +34,7 @@ import org.hibernate.FlushMode;
 import org.hibernate.Hibernate;
 import org.hibernate.LockOptions;
 import org.hibernate.Session;
+import org.hibernate.Transaction;
 import org.projectforge.business.fibu.*;
 import org.projectforge.business.fibu.kost.Kost1DO;
 import org.projectforge.business.fibu.kost.Kost2ArtDO;
@@ -51,8 +52,13 @@ import org.projectforge.framework.configuration.entities.ConfigurationDO;
 import org.projectforge.framework.persistence.api.HibernateUtils;
 import org.projectforge.framework.persistence.api.UserRightService;
 import org.projectforge.framework.persistence.entities.AbstractBaseDO;
+import org.projectforge.framework.persistence.history.entities.PfHistoryAttrDO;
+import org.projectforge.framework.persistence.history.entities.PfHistoryAttrDataDO;
+import org.projectforge.framework.persistence.history.entities.PfHistoryAttrWithDataDO;
+import org.projectforge.framework.persistence.history.entities.PfHistoryMasterDO;
 import org.projectforge.framework.persistence.jpa.PfEmgrFactory;
 import org.projectforge.framework.persistence.user.entities.*;
+import org.projectforge.framework.persistence.xstream.EntityReferenceConverter;
 import org.projectforge.framework.persistence.xstream.HibernateXmlConverter;
 import org.projectforge.framework.persistence.xstream.XStreamSavingConverter;
 import org.projectforge.framework.xstream.XStreamHelper;
@@ -91,13 +97,29 @@ import java.util.zip.GZIPOutputStream;
 public class XmlDump {
   private static final Logger log = LoggerFactory.getLogger(XmlDump.class);
 
+  /**
+   * Number of objects saved and verified per transaction while restoring streamed dumps.
+   */
+  private static final int RESTORE_BATCH_SIZE = 500;
+  private static final int STREAM_FORMAT_DETECTION_LENGTH = 1024;
   private static final String XML_DUMP_FILENAME = System.getProperty("user.home") + "/tmp/database-dump.xml.gz";
   private final List<XmlDumpHook> xmlDumpHooks = new LinkedList<>();
   /**
    * TODO RK better also via Metadata. These classes are stored automatically because they're dependent.
+   * The history attributes are written inside their history entries (map values can't be restored as references).
    */
   private final Class<?>[] embeddedClasses = new Class<?>[]{UserRightDO.class, AuftragsPositionDO.class,
-          EingangsrechnungsPositionDO.class, RechnungsPositionDO.class};
+          EingangsrechnungsPositionDO.class, RechnungsPositionDO.class, PfHistoryAttrDO.class,
+          PfHistoryAttrWithDataDO.class, PfHistoryAttrDataDO.class};
+  /**
+   * Entities to save first (in this order). All other entities are saved afterwards.
+   */
+  private final Class<?>[] orderedTypes = new Class<?>[]{PFUserDO.class, GroupDO.class, TaskDO.class, KundeDO.class,
+          ProjektDO.class, Kost1DO.class,
+          Kost2ArtDO.class, Kost2DO.class, AuftragDO.class, //
+          RechnungDO.class, EingangsrechnungDO.class, EmployeeSalaryDO.class, KostZuweisungDO.class, //
+          UserPrefEntryDO.class, UserPrefDO.class, //
+          AccessEntryDO.class, GroupTaskAccessDO.class, ConfigurationDO.class};
   @Autowired
   UserRightService userRights;
   @Autowired
@@ -141,8 +163,234 @@ public class XmlDump {
    * @return Only for test cases.
    */
   public XStreamSavingConverter restoreDatabase(final Reader reader) {
+    final BufferedReader bufferedReader = new BufferedReader(reader);
+    if (isStreamedDump(bufferedReader)) {
+      return restoreDatabaseStreamed(bufferedReader);
+    }
+    final XStreamSavingConverter xstreamSavingConverter = createSavingConverter();
+    // UserRightDO is inserted on cascade while inserting PFUserDO.
+    xstreamSavingConverter.appendIgnoredObjects(embeddedClasses);
+    xstreamSavingConverter.appendOrderedType(orderedTypes);
+    xstreamSavingConverter.appendOrderedType(getTableEntitiesInInsertOrder().toArray(new Class<?>[]{}));
+
+    //    if (plugins != null) {
+    //      for (final AbstractPlugin plugin : plugins) {
+    //        xstreamSavingConverter.appendOrderedType(plugin.getPersistentEntities());
+    //      }
+    //    }
+    Session session = null;
+    try {
+      session = (Session) emf.getEntityManagerFactory().createEntityManager().getDelegate();
+      session.setFlushMode(FlushMode.AUTO);
+      final XStream xstream = XStreamHelper.createXStream();
+      xstream.setMode(XStream.ID_REFERENCES);
+      xstreamSavingConverter.setSession(session);
+      xstream.registerConverter(xstreamSavingConverter, 10);
+      xstream.registerConverter(new UserRightIdSingleValueConverter(userRights), 20);
+      xstream.registerConverter(new UserPrefAreaSingleValueConverter(), 19);
+      // alle Objekte Laden und speichern
+      xstream.fromXML(bufferedReader);
+
+      xstreamSavingConverter.saveObjects();
+    } catch (final Exception ex) {
+      log.error(ex.getMessage(), ex);
+      throw new RuntimeException(ex);
+    } finally {
+      IOUtils.closeQuietly(bufferedReader);
+      if (session != null) {
+        session.close();
+      }
+    }
+    return xstreamSavingConverter;
+  }
+
+  /**
+   * Restores a dump written by {@link #dumpDatabase(String, OutputStream)} object by object. The objects are saved and
+   * verified in chunks of {@link #RESTORE_BATCH_SIZE} objects per transaction, so the needed heap doesn't depend on the
+   * size of the dump. Only the mapping of the origin ids to the new ids is held in memory.
+   *
+   * @return The converter with the number of verified objects ({@link XStreamSavingConverter#getVerifiedCounter()}).
+   */
+  public XStreamSavingConverter restoreDatabaseStreamed(final Reader reader) {
+    final XStreamSavingConverter xstreamSavingConverter = createSavingConverter();
+    xstreamSavingConverter.setRetainObjects(false);
+    xstreamSavingConverter.appendIgnoredObjects(embeddedClasses);
+    EntityManager em = null;
+    Transaction tx = null;
+    int counter = 0;
+    boolean hasError = false;
+    try {
+      em = emf.getEntityManagerFactory().createEntityManager();
+      final Session session = (Session) em.getDelegate();
+      session.setFlushMode(FlushMode.AUTO);
+      xstreamSavingConverter.setSession(session);
+      final XStream xstream = XStreamHelper.createStreamingXStream();
+      xstream.setMode(XStream.ID_REFERENCES);
+      final EntityReferenceConverter referenceConverter = new EntityReferenceConverter(xstream,
+              new HashSet<>(Arrays.asList(embeddedClasses)), (entityClass, origId) -> {
+        final Serializable newId = xstreamSavingConverter.getNewId(entityClass, origId);
+        // Forward references are set after restoring all objects (see setUnresolvedReferences):
+        return newId != null ? session.load(entityClass, newId) : null;
+      });
+      xstream.registerConverter(referenceConverter, XStream.PRIORITY_VERY_HIGH);
+      xstream.registerConverter(new UserRightIdSingleValueConverter(userRights), 20);
+      xstream.registerConverter(new UserPrefAreaSingleValueConverter(), 19);
+      final ObjectInputStream in = xstream.createObjectInputStream(reader);
+      final List<Object> batch = new ArrayList<>(RESTORE_BATCH_SIZE);
+      tx = session.beginTransaction();
+      while (true) {
+        final Object obj;
+        try {
+          obj = in.readObject();
+        } catch (final EOFException ex) {
+          break;
+        }
+        if (referenceConverter.clearUnassignedReferences() > 0) {
+          log.error("Unresolvable references found in object (data loss): " + obj);
+          hasError = true;
+        }
+        if (obj == null) {
+          continue;
+        }
+        if (!xstreamSavingConverter.saveObject(obj)) {
+          hasError = true;
+        }
+        batch.add(obj);
+        if (batch.size() >= RESTORE_BATCH_SIZE) {
+          tx.commit();
+          hasError |= !verifyObjects(session, batch);
+          counter += batch.size();
+          batch.clear();
+          tx = session.beginTransaction();
+        }
+      }
+      tx.commit();
+      hasError |= !verifyObjects(session, batch);
+      counter += batch.size();
+      in.close();
+      hasError |= !setUnresolvedReferences(session, referenceConverter.getUnresolvedReferences(), xstreamSavingConverter);
+    } catch (final Exception ex) {
+      log.error(ex.getMessage(), ex);
+      if (tx != null && tx.isActive()) {
+        tx.rollback();
+      }
+      throw new RuntimeException(ex);
+    } finally {
+      IOUtils.closeQuietly(reader);
+      if (em != null) {
+        em.close();
+      }
+    }
+    if (hasError) {
+      log.error(
+              "*********** A inconsistency in the import was found! This may result in a data loss or corrupted data! Please retry the import. "
+                      + counter
+                      + " entries checked.");
+      xstreamSavingConverter.setVerifiedCounter(-counter);
+    } else {
+      log.info("Data-base import successfully verified: " + counter + " entries checked.");
+      xstreamSavingConverter.setVerifiedCounter(counter);
+    }
+    return xstreamSavingConverter;
+  }
+
+  /**
+   * Sets the references to entities which weren't yet restored while restoring the referring objects (e. g. a task
+   * referring a parent task with a higher id).
+   *
+   * @return false if any reference couldn't be resolved.
+   */
+  private boolean setUnresolvedReferences(final Session session, final List<EntityReferenceConverter.UnresolvedReference> references,
+                                          final XStreamSavingConverter xstreamSavingConverter) {
+    if (references.isEmpty()) {
+      return true;
+    }
+    log.info("Setting " + references.size() + " forward references ...");
+    boolean result = true;
+    int counter = 0;
+    Transaction tx = session.beginTransaction();
+    try {
+      for (final EntityReferenceConverter.UnresolvedReference reference : references) {
+        final Serializable newId = xstreamSavingConverter.getNewId(reference.getEntityClass(), reference.getOrigId());
+        final Serializable ownerId = HibernateUtils.isEntity(reference.getOwner().getClass()) ? HibernateUtils.getIdentifier(reference.getOwner()) : null;
+        final Object owner = ownerId != null ? session.get(reference.getOwner().getClass(), ownerId) : null;
+        if (newId == null || owner == null) {
+          log.error("Can't restore reference (data loss): " + reference);
+          result = false;
+          continue;
+        }
+        final Field field = reference.getField();
+        field.setAccessible(true);
+        final Object entity = session.load(reference.getEntityClass(), newId);
+        if (Collection.class.isAssignableFrom(field.getType())) {
+          @SuppressWarnings("unchecked") final Collection<Object> collection = (Collection<Object>) field.get(owner);
+          collection.add(entity);
+        } else {
+          field.set(owner, entity);
+        }
+        if (++counter % RESTORE_BATCH_SIZE == 0) {
+          tx.commit();
+          session.clear();
+          tx = session.beginTransaction();
+        }
+      }
+      tx.commit();
+    } catch (final IllegalAccessException ex) {
+      log.error(ex.getMessage(), ex);
+      if (tx.isActive()) {
+        tx.rollback();
+      }
+      return false;
+    } finally {
+      session.clear();
+    }
+    return result;
+  }
+
+  /**
+   * Compares the given (already committed) objects with the objects of the data-base and clears the session afterwards.
+   *
+   * @return false if any object wasn't imported successfully.
+   */
+  private boolean verifyObjects(final Session session, final List<Object> objects) {
+    session.clear();
+    boolean result = true;
+    for (final Object obj : objects) {
+      if (!HibernateUtils.isEntity(obj.getClass())) {
+        continue;
+      }
+      final Serializable id = HibernateUtils.getIdentifier(obj);
+      if (id == null) {
+        // Can't compare this object without identifier.
+        continue;
+      }
+      final Object databaseObject = session.get(obj.getClass(), id, LockOptions.READ);
+      Hibernate.initialize(databaseObject);
+      if (!equals(obj, databaseObject, true)) {
+        log.error("Object not sucessfully imported! xml object=[" + obj + "], data base=[" + databaseObject + "]");
+        result = false;
+      }
+    }
+    session.clear();
+    return result;
+  }
+
+  private boolean isStreamedDump(final BufferedReader reader) {
+    try {
+      reader.mark(STREAM_FORMAT_DETECTION_LENGTH);
+      final char[] buf = new char[STREAM_FORMAT_DETECTION_LENGTH];
+      final int length = reader.read(buf);
+      reader.reset();
+      return length > 0 && new String(buf, 0, length).contains("<" + HibernateXmlConverter.STREAM_ROOT_NODE);
+    } catch (final IOException ex) {
+      log.error(ex.getMessage(), ex);
+      throw new RuntimeException(ex);
+    }
+  }
+
+  private XStreamSavingConverter createSavingConverter() {
     final List<AbstractPlugin> plugins = pluginAdminService.getActivePlugins();
-    final XStreamSavingConverter xstreamSavingConverter = new XStreamSavingConverter() {
+    return new XStreamSavingConverter() {
 
       @Override
       protected Serializable getOriginalIdentifierValue(final Object obj) {
@@ -226,51 +474,6 @@ public class XmlDump {
         }
       }
     };
-    // UserRightDO is inserted on cascade while inserting PFUserDO.
-    xstreamSavingConverter.appendIgnoredObjects(embeddedClasses);
-    // automatically detect insert order.
-    List<EntityMetadata> ents = emf.getMetadataRepository().getTableEntities();
-    List<Class<?>> classList = ents.stream().map((e) -> e.getJavaType()).collect(Collectors.toList());
-    // first entities with now deps
-    Collections.reverse(classList);
-
-    xstreamSavingConverter.appendOrderedType(PFUserDO.class, GroupDO.class, TaskDO.class, KundeDO.class,
-            ProjektDO.class, Kost1DO.class,
-            Kost2ArtDO.class, Kost2DO.class, AuftragDO.class, //
-            RechnungDO.class, EingangsrechnungDO.class, EmployeeSalaryDO.class, KostZuweisungDO.class, //
-            UserPrefEntryDO.class, UserPrefDO.class, //
-            AccessEntryDO.class, GroupTaskAccessDO.class, ConfigurationDO.class);
-    xstreamSavingConverter.appendOrderedType(classList.toArray(new Class<?>[]{}));
-
-    //    if (plugins != null) {
-    //      for (final AbstractPlugin plugin : plugins) {
-    //        xstreamSavingConverter.appendOrderedType(plugin.getPersistentEntities());
-    //      }
-    //    }
-    Session session = null;
-    try {
-      session = (Session) emf.getEntityManagerFactory().createEntityManager().getDelegate();
-      session.setFlushMode(FlushMode.AUTO);
-      final XStream xstream = XStreamHelper.createXStream();
-      xstream.setMode(XStream.ID_REFERENCES);
-      xstreamSavingConverter.setSession(session);
-      xstream.registerConverter(xstreamSavingConverter, 10);
-      xstream.registerConverter(new UserRightIdSingleValueConverter(userRights), 20);
-      xstream.registerConverter(new UserPrefAreaSingleValueConverter(), 19);
-      // alle Objekte Laden und speichern
-      xstream.fromXML(reader);
-
-      xstreamSavingConverter.saveObjects();
-    } catch (final Exception ex) {
-      log.error(ex.getMessage(), ex);
-      throw new RuntimeException(ex);
-    } finally {
-      IOUtils.closeQuietly(reader);
-      if (session != null) {
-        session.close();
-      }
-    }
-    return xstreamSavingConverter;
   }
 
   /**
@@ -299,6 +502,9 @@ public class XmlDump {
   }
 
   /**
+   * Writes the dump as stream of independent objects (one entity type after another in insert order, references as
+   * ids), see {@link HibernateXmlConverter#dumpDatabaseToXmlStream(Writer, List, Set)}.
+   *
    * @param filename virtual filename: If the filename suffix is "gz" then the dump will be compressed.
    * @param out
    */
@@ -314,6 +520,11 @@ public class XmlDump {
     };
     converter.setEntityManagaerFactory(emf);
     converter.appendIgnoredTopLevelObjects(embeddedClasses);
+    final Set<Class<?>> entities = new LinkedHashSet<>(Arrays.asList(orderedTypes));
+    entities.addAll(getTableEntitiesInInsertOrder());
+    // History entries are written last, the ids of their entities must be known while restoring.
+    entities.remove(PfHistoryMasterDO.class);
+    entities.add(PfHistoryMasterDO.class);
     Writer writer = null;
     GZIPOutputStream gzipOut = null;
     try {
@@ -323,7 +534,7 @@ public class XmlDump {
       } else {
         writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
       }
-      converter.dumpDatabaseToXml(writer, true); // history=false, preserveIds=true
+      converter.dumpDatabaseToXmlStream(writer, new ArrayList<>(entities), new HashSet<>(Arrays.asList(embeddedClasses)));
     } catch (final IOException ex) {
       log.error(ex.getMessage(), ex);
     } finally {
@@ -332,6 +543,16 @@ public class XmlDump {
     }
   }
 
+  /**
+   * Automatically detected insert order: first entities without dependencies.
+   */
+  private List<Class<?>> getTableEntitiesInInsertOrder() {
+    final List<EntityMetadata> ents = emf.getMetadataRepository().getTableEntities();
+    final List<Class<?>> classList = ents.stream().map((e) -> e.getJavaType()).collect(Collectors.toList());
+    Collections.reverse(classList);
+    return classList;
+  }
+
   public void dumpDatabase(final String path, final String encoding) {
     OutputStream out = null;
     try {
@@ -351,6 +572,10 @@ public class XmlDump {
    * successfully).
    */
   public int verifyDump(final XStreamSavingConverter xstreamSavingConverter) {
+    if (xstreamSavingConverter.getVerifiedCounter() != null) {
+      // Streamed dumps are already verified chunk by chunk while restoring.
+      return xstreamSavingConverter.getVerifiedCounter();
+    }
     Session session = null;
     EntityManager em = null;
     boolean hasError = false;
@@ -37,9 +37,9 @@ import org.projectforge.mail.SendMail;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
-import java.util.Date;
-import java.util.Locale;
-import java.util.Set;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Service
 public class HibernateSearchReindexer {
@@ -55,7 +55,24 @@ public class HibernateSearchReindexer {
   @Autowired
   private DatabaseDao databaseDao;
 
-  private Date currentReindexRun = null;
+  /**
+   * Number of entity types re-indexed concurrently. Each entity type itself may be re-indexed by multiple threads
+   * (see {@link DatabaseDao}).
+   */
+  private static final int CONCURRENT_ENTITIES = 2;
+
+  private volatile Date currentReindexRun = null;
+
+  private final ExecutorService entityExecutor = Executors.newFixedThreadPool(CONCURRENT_ENTITIES, new ThreadFactory() {
+    private final AtomicInteger counter = new AtomicInteger();
+
+    @Override
+    public Thread newThread(final Runnable runnable) {
+      final Thread thread = new Thread(runnable, "Reindex-entity-" + counter.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    }
+  });
 
   @Autowired
   private PfEmgrFactory emf;
@@ -102,16 +119,32 @@ public class HibernateSearchReindexer {
     synchronized (this) {
       try {
         currentReindexRun = new Date();
-        final StringBuffer buf = new StringBuffer();
+        final Collection<Class<?>> entities;
         if (classes != null && classes.length > 0) {
-          for (final Class<?> cls : classes) {
-            reindex(cls, settings, buf);
-          }
+          entities = Arrays.asList(classes);
         } else {
           // Re-index of all ProjectForge entities:
-          Set<Class<?>> clsses = emf.getSearchableEntities();
-          for (Class<?> clz : clsses) {
-            reindex(clz, settings, buf);
+          entities = emf.getSearchableEntities();
+        }
+        final List<Future<String>> futures = new ArrayList<>();
+        for (final Class<?> cls : entities) {
+          futures.add(entityExecutor.submit(() -> {
+            final StringBuffer entityBuf = new StringBuffer();
+            reindex(cls, settings, entityBuf);
+            return entityBuf.toString();
+          }));
+        }
+        final StringBuffer buf = new StringBuffer();
+        for (final Future<String> future : futures) {
+          try {
+            buf.append(future.get());
+          } catch (final InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            buf.append(" (interrupted), ");
+            break;
+          } catch (final ExecutionException ex) {
+            // Shouldn't occur, reindex catches all exceptions.
+            log.error("While rebuilding data-base-search-index: " + ex.getMessage(), ex);
           }
         }
         return buf.toString();
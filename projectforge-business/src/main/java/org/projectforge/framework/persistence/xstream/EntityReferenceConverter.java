@@ -0,0 +1,226 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2020 Micromata GmbH, Germany (www.micromata.com)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+
+package org.projectforge.framework.persistence.xstream;
+
+import com.thoughtworks.xstream.XStream;
+import com.thoughtworks.xstream.converters.Converter;
+import com.thoughtworks.xstream.converters.MarshallingContext;
+import com.thoughtworks.xstream.converters.UnmarshallingContext;
+import com.thoughtworks.xstream.converters.reflection.ReflectionConverter;
+import com.thoughtworks.xstream.io.HierarchicalStreamReader;
+import com.thoughtworks.xstream.io.HierarchicalStreamWriter;
+import com.thoughtworks.xstream.mapper.Mapper;
+import org.hibernate.proxy.HibernateProxy;
+import org.projectforge.framework.persistence.api.HibernateUtils;
+
+import java.io.Serializable;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Writes references to other entities only as their ids (attribute {@link #REF_ID_ATTRIBUTE}) and their entity classes
+ * (attribute {@link #REF_CLASS_ATTRIBUTE}) instead of the whole object graph. So every top level object of a streamed
+ * dump may be marshalled and unmarshalled on its own. The current top level object and the embedded entities (saved by
+ * cascade with their parent) are written completely.
+ * <p>
+ * References aren't initialized (Hibernate proxies are written by their identifier).
+ * <p>
+ * References which can't be resolved while unmarshalling (forward references to entities restored later) are set to
+ * null and are available by {@link #getUnresolvedReferences()} for setting them after all objects are restored.
+ */
+public class EntityReferenceConverter implements Converter {
+  public static final String REF_ID_ATTRIBUTE = "ref-id";
+
+  public static final String REF_CLASS_ATTRIBUTE = "ref-class";
+
+  /**
+   * Resolves the id of a referenced entity of the dump to the entity restored in the data-base.
+   */
+  public interface ReferenceResolver {
+    /**
+     * @return The restored entity (usually a proxy) or null, if the referenced entity isn't (yet) restored.
+     */
+    Object resolve(Class<?> entityClass, String origId);
+  }
+
+  /**
+   * A reference of the given field of the owner object which couldn't be resolved while unmarshalling. If the field
+   * is a collection, the referenced entity is missing in the collection.
+   */
+  public static class UnresolvedReference {
+    private final Object owner;
+
+    private final Field field;
+
+    private final Class<?> entityClass;
+
+    private final String origId;
+
+    private UnresolvedReference(final Object owner, final Field field, final Class<?> entityClass, final String origId) {
+      this.owner = owner;
+      this.field = field;
+      this.entityClass = entityClass;
+      this.origId = origId;
+    }
+
+    public Object getOwner() {
+      return owner;
+    }
+
+    public Field getField() {
+      return field;
+    }
+
+    public Class<?> getEntityClass() {
+      return entityClass;
+    }
+
+    public String getOrigId() {
+      return origId;
+    }
+
+    @Override
+    public String toString() {
+      return owner.getClass().getSimpleName() + "." + field.getName() + " -> " + entityClass.getSimpleName() + " #" + origId;
+    }
+  }
+
+  private final Mapper mapper;
+
+  private final ReflectionConverter reflectionConverter;
+
+  private final Set<Class<?>> embeddedClasses;
+
+  private final ReferenceResolver referenceResolver;
+
+  private final List<UnresolvedReference> unresolvedReferences = new ArrayList<>();
+
+  /**
+   * Unresolved references not yet assigned to their owner and field (see {@link #getUnresolvedReferences()}).
+   */
+  private final List<UnresolvedReference> unassignedReferences = new ArrayList<>();
+
+  private Object rootObject;
+
+  /**
+   * @param xstream           The mapper and the reflection provider of this xstream is used.
+   * @param embeddedClasses   These entities are written completely.
+   * @param referenceResolver Only needed for unmarshalling.
+   */
+  public EntityReferenceConverter(final XStream xstream, final Set<Class<?>> embeddedClasses,
+                                  final ReferenceResolver referenceResolver) {
+    this.mapper = xstream.getMapper();
+    this.reflectionConverter = new ReflectionConverter(xstream.getMapper(), xstream.getReflectionProvider()) {
+      @SuppressWarnings("rawtypes")
+      @Override
+      protected Object unmarshallField(final UnmarshallingContext context, final Object result, final Class type,
+                                       final Field field) {
+        final int start = unassignedReferences.size();
+        final Object value = super.unmarshallField(context, result, type, field);
+        final List<UnresolvedReference> references = unassignedReferences.subList(start, unassignedReferences.size());
+        if (!references.isEmpty() && (value == null || value instanceof Collection)) {
+          if (value != null) {
+            ((Collection<?>) value).removeIf(Objects::isNull);
+          }
+          for (final UnresolvedReference reference : references) {
+            unresolvedReferences.add(new UnresolvedReference(result, field, reference.entityClass, reference.origId));
+          }
+          references.clear();
+        }
+        return value;
+      }
+    };
+    this.embeddedClasses = embeddedClasses;
+    this.referenceResolver = referenceResolver;
+  }
+
+  /**
+   * The top level object to marshal next. All other entities (except embedded ones) are written as references.
+   */
+  public void setRootObject(final Object rootObject) {
+    this.rootObject = rootObject;
+  }
+
+  /**
+   * @return The references which couldn't be resolved while unmarshalling.
+   */
+  public List<UnresolvedReference> getUnresolvedReferences() {
+    return unresolvedReferences;
+  }
+
+  /**
+   * Unresolved references outside of plain fields and collections (e. g. map values) can't be set afterwards.
+   *
+   * @return The number of such references since the last call.
+   */
+  public int clearUnassignedReferences() {
+    final int size = unassignedReferences.size();
+    unassignedReferences.clear();
+    return size;
+  }
+
+  @SuppressWarnings("rawtypes")
+  @Override
+  public boolean canConvert(final Class type) {
+    return type != null && (HibernateProxy.class.isAssignableFrom(type) || HibernateUtils.isEntity(type));
+  }
+
+  @Override
+  public void marshal(final Object source, final HierarchicalStreamWriter writer, final MarshallingContext context) {
+    if (source instanceof HibernateProxy) {
+      final Serializable id = ((HibernateProxy) source).getHibernateLazyInitializer().getIdentifier();
+      writer.addAttribute(REF_ID_ATTRIBUTE, String.valueOf(id));
+      writer.addAttribute(REF_CLASS_ATTRIBUTE,
+              mapper.serializedClass(((HibernateProxy) source).getHibernateLazyInitializer().getPersistentClass()));
+      return;
+    }
+    if (source == rootObject || embeddedClasses.contains(source.getClass())) {
+      reflectionConverter.marshal(source, writer, context);
+      return;
+    }
+    writer.addAttribute(REF_ID_ATTRIBUTE, String.valueOf(HibernateUtils.getIdentifier(source)));
+    writer.addAttribute(REF_CLASS_ATTRIBUTE, mapper.serializedClass(source.getClass()));
+  }
+
+  @Override
+  public Object unmarshal(final HierarchicalStreamReader reader, final UnmarshallingContext context) {
+    final String refId = reader.getAttribute(REF_ID_ATTRIBUTE);
+    if (refId == null) {
+      return reflectionConverter.unmarshal(reader, context);
+    }
+    final String refClass = reader.getAttribute(REF_CLASS_ATTRIBUTE);
+    // The required type is only the declared type of the field (dumps written without the entity class):
+    final Class<?> entityClass = refClass != null ? mapper.realClass(refClass) : context.getRequiredType();
+    final Object entity = referenceResolver.resolve(entityClass, refId);
+    if (entity == null) {
+      unassignedReferences.add(new UnresolvedReference(null, null, entityClass, refId));
+    }
+    return entity;
+  }
+}
@@ -35,6 +35,8 @@ import org.apache.commons.io.output.NullWriter;
 import org.hibernate.EntityMode;
 import org.hibernate.Hibernate;
 import org.hibernate.HibernateException;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
 import org.hibernate.Session;
 import org.hibernate.metadata.ClassMetadata;
 import org.hibernate.proxy.HibernateProxyHelper;
@@ -43,6 +45,7 @@ import org.projectforge.framework.persistence.jpa.PfEmgrFactory;
 import org.springframework.dao.DataAccessException;
 
 import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.io.Writer;
 import java.util.*;
 import java.util.stream.Collectors;
@@ -60,6 +63,16 @@ public class HibernateXmlConverter {
    */
   private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(HibernateXmlConverter.class);
 
+  /**
+   * Root element of streamed dumps, see {@link #dumpDatabaseToXmlStream(Writer, List, Set)}.
+   */
+  public static final String STREAM_ROOT_NODE = "pf-dump";
+
+  /**
+   * The session is cleared after writing this number of objects.
+   */
+  private static final int STREAM_BLOCK_SIZE = 500;
+
   private PfEmgrFactory emf;
 
   // Ignore these objects listing in the top level list saving because the are saved implicit by their parent objects.
@@ -107,6 +120,28 @@ public class HibernateXmlConverter {
     });
   }
 
+  /**
+   * Writes all objects of the given entity types (in the given order, which should be the order for inserting) as a
+   * stream of independent top level objects. References to other entities are written as ids (see
+   * {@link EntityReferenceConverter}), so neither the dump nor the restore has to hold the whole object graph in memory.
+   *
+   * @param writer          Ziel für die XML-Datei.
+   * @param entities        The entity types to write, ordered by their dependencies.
+   * @param embeddedClasses Entities written completely inside their parent objects (saved by cascade).
+   */
+  public void dumpDatabaseToXmlStream(final Writer writer, final List<Class<?>> entities,
+                                      final Set<Class<?>> embeddedClasses) {
+    emf.runInTrans(emgr -> {
+      final Session session = (Session) emgr.getEntityManager().getDelegate();
+      try {
+        writeObjectStream(writer, session, entities, embeddedClasses);
+      } catch (final IOException ex) {
+        throw new RuntimeException(ex);
+      }
+      return null;
+    });
+  }
+
   public HibernateXmlConverter appendIgnoredTopLevelObjects(final Class<?>... types) {
     if (types != null) {
       this.ignoreFromTopLevelListing.addAll(Arrays.asList(types));
@@ -186,6 +221,49 @@ public class HibernateXmlConverter {
     stream.marshal(all, new PrettyPrintWriter(writer));
   }
 
+  private void writeObjectStream(final Writer writer, final Session session, final List<Class<?>> entities,
+                                 final Set<Class<?>> embeddedClasses) throws IOException {
+    final XStream stream = initXStream(session, true);
+    final EntityReferenceConverter referenceConverter = new EntityReferenceConverter(stream, embeddedClasses, null);
+    stream.registerConverter(referenceConverter, XStream.PRIORITY_VERY_HIGH + 1);
+    // References inside of one top level object only (e. g. embedded objects referring their parent).
+    stream.setMode(XStream.ID_REFERENCES);
+    session.flush();
+    writer.write("<?xml version=\"1.0\" encoding=\"utf-8\" ?>\n");
+    final ObjectOutputStream out = stream.createObjectOutputStream(new PrettyPrintWriter(writer), STREAM_ROOT_NODE);
+    int total = 0;
+    for (final Class<?> entityClass : entities) {
+      final ClassMetadata classMetadata = session.getSessionFactory().getClassMetadata(entityClass);
+      if (classMetadata == null || this.ignoreFromTopLevelListing.contains(entityClass)) {
+        continue;
+      }
+      final ScrollableResults results = session
+              .createQuery("select o from " + entityClass.getName() + " o order by o." + classMetadata.getIdentifierPropertyName())
+              .setReadOnly(true)
+              .setFetchSize(STREAM_BLOCK_SIZE)
+              .scroll(ScrollMode.FORWARD_ONLY);
+      int counter = 0;
+      try {
+        while (results.next()) {
+          final Object obj = results.get(0);
+          referenceConverter.setRootObject(obj);
+          out.writeObject(obj);
+          if (++counter % STREAM_BLOCK_SIZE == 0) {
+            out.flush();
+            session.clear();
+          }
+        }
+      } finally {
+        results.close();
+      }
+      session.clear();
+      total += counter;
+      log.info("Wrote " + counter + " objects of type " + entityClass.getName());
+    }
+    out.close();
+    log.info("Wrote " + total + " objects");
+  }
+
   /**
    * Overload this method if you need further initializations before reading xml stream. Does nothing at default.
    *
@@ -31,6 +31,8 @@ import com.thoughtworks.xstream.converters.UnmarshallingContext;
 import com.thoughtworks.xstream.io.HierarchicalStreamReader;
 import com.thoughtworks.xstream.io.HierarchicalStreamWriter;
 import de.micromata.genome.db.jpa.history.api.HistoryEntry;
+import de.micromata.genome.db.jpa.tabattr.entities.JpaTabAttrBaseDO;
+import de.micromata.genome.db.jpa.tabattr.entities.JpaTabAttrDataBaseDO;
 import de.micromata.hibernate.history.delta.PropertyDelta;
 import org.hibernate.HibernateException;
 import org.hibernate.Session;
@@ -81,6 +83,12 @@ public class XStreamSavingConverter implements Converter
 
   private Session session;
 
+  // If false, the saved objects and history entries aren't kept in memory (for restoring streamed dumps).
+  private boolean retainObjects = true;
+
+  // Number of verified objects of restores verified while saving (negative on errors).
+  private Integer verifiedCounter;
+
   public XStreamSavingConverter() throws HibernateException
   {
     final XStream xstream = new XStream();
@@ -97,6 +105,24 @@ public class XStreamSavingConverter implements Converter
     this.session = session;
   }
 
+  public void setRetainObjects(final boolean retainObjects)
+  {
+    this.retainObjects = retainObjects;
+  }
+
+  /**
+   * @return Number of already verified objects if the objects were verified while restoring, otherwise null.
+   */
+  public Integer getVerifiedCounter()
+  {
+    return verifiedCounter;
+  }
+
+  public void setVerifiedCounter(final Integer verifiedCounter)
+  {
+    this.verifiedCounter = verifiedCounter;
+  }
+
   public Map<Class<?>, List<Object>> getAllObjects()
   {
     return allObjects;
@@ -174,6 +200,17 @@ public class XStreamSavingConverter implements Converter
         log.error("Can't find mapping of old entity id. This results in a corrupted history: " + entry);
       }
       invokeHistorySetter(entry, "setDelta", List.class, null);
+      // The attributes are inserted on cascade:
+      if (entry.getAttributes() != null) {
+        for (final JpaTabAttrBaseDO<PfHistoryMasterDO, Long> attr : entry.getAttributes().values()) {
+          attr.setPk(null);
+          if (attr.getData() != null) {
+            for (final JpaTabAttrDataBaseDO<?, Long> data : attr.getData()) {
+              data.setPk(null);
+            }
+          }
+        }
+      }
       id = save(entry);
       final List<PropertyDelta> list = new ArrayList<>();
       invokeHistorySetter(entry, "setDelta", List.class, list);
@@ -182,7 +219,9 @@ public class XStreamSavingConverter implements Converter
       //        list.add(deltaEntry);
       //        save(deltaEntry);
       //      }
-      this.historyEntries.add(entry);
+      if (retainObjects) {
+        this.historyEntries.add(entry);
+      }
       return id;
     }
     return null;
@@ -288,24 +327,37 @@ public class XStreamSavingConverter implements Converter
         // Object null or already written. Skip this item.
         continue;
       }
-      if (session.contains(obj)) {
-        continue;
+      saveObject(obj);
+    }
+  }
+
+  /**
+   * Saves the given top level object including the callbacks {@link #onBeforeSave(Session, Object)} and
+   * {@link #onAfterSave(Object, Serializable)}. Used directly for restoring streamed dumps object by object.
+   *
+   * @return false if the object couldn't be saved.
+   */
+  public boolean saveObject(final Object obj)
+  {
+    if (session.contains(obj)) {
+      return true;
+    }
+    try {
+      if (log.isDebugEnabled()) {
+        log.debug("Try to write object " + obj);
       }
-      try {
-        if (log.isDebugEnabled()) {
-          log.debug("Try to write object " + obj);
-        }
-        Serializable id = onBeforeSave(session, obj);
-        if (id == null) {
-          id = save(obj);
-        }
-        onAfterSave(obj, id);
-        if (log.isDebugEnabled()) {
-          log.debug("wrote object " + obj + " under id " + id);
-        }
-      } catch (final HibernateException | NullPointerException ex) {
-        log.error("Failed to write " + obj + " ex=" + ex, ex);
+      Serializable id = onBeforeSave(session, obj);
+      if (id == null) {
+        id = save(obj);
       }
+      onAfterSave(obj, id);
+      if (log.isDebugEnabled()) {
+        log.debug("wrote object " + obj + " under id " + id);
+      }
+      return true;
+    } catch (final HibernateException | NullPointerException ex) {
+      log.error("Failed to write " + obj + " ex=" + ex, ex);
+      return false;
     }
   }
 
@@ -333,7 +385,9 @@ public class XStreamSavingConverter implements Converter
         if (oldId != null) {
           registerEntityMapping(obj.getClass(), oldId, id);
         }
-        writtenObjects.add(obj);
+        if (retainObjects) {
+          writtenObjects.add(obj);
+        }
       } else if (obj instanceof HistoryEntry) {
         // HistoryEntry
         ((HistoryEntry) obj).setPk(null);
@@ -25,6 +25,7 @@ package org.projectforge.framework.xstream;
 
 import com.thoughtworks.xstream.XStream;
 import com.thoughtworks.xstream.io.xml.DomDriver;
+import com.thoughtworks.xstream.io.xml.StaxDriver;
 
 /**
  * Some helpers for using XStream (with proper UTF-8 encoding).
@@ -45,6 +46,17 @@ public class XStreamHelper
     return new XStream(new DomDriver("UTF-8"));
   }
 
+  /**
+   * The DomDriver of {@link #createXStream()} reads the whole document at once. Use this XStream for reading object
+   * streams (see {@link XStream#createObjectInputStream(java.io.Reader)}) object by object.
+   *
+   * @return new XStream initialized with StaxDriver.
+   */
+  public static XStream createStreamingXStream()
+  {
+    return new XStream(new StaxDriver());
+  }
+
   public static String toXml(final XStream xstream, final Object object)
   {
     return xstream.toXML(object);
@@ -0,0 +1,209 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2020 Micromata GmbH, Germany (www.micromata.com)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+
+package org.projectforge.business.address
+
+import mu.KotlinLogging
+import org.projectforge.framework.access.OperationType
+import org.projectforge.framework.cache.AbstractCache
+import org.projectforge.framework.configuration.Configuration
+import org.projectforge.framework.configuration.ConfigurationParam
+import org.projectforge.framework.persistence.api.BaseDOChangedListener
+import org.projectforge.framework.persistence.jpa.PfEmgrFactory
+import org.projectforge.framework.utils.NumberHelper
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.stereotype.Component
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.locks.ReentrantReadWriteLock
+import javax.annotation.PostConstruct
+import kotlin.concurrent.read
+import kotlin.concurrent.write
+
+private val log = KotlinLogging.logger {}
+
+/**
+ * Reverse index of the phone numbers of all addresses for the phone look-up of incoming calls. The numbers are indexed
+ * as digits without leading zeros, so matching numbers are found by hash look-ups, also if the country or area code is
+ * missing on one side.
+ */
+@Component
+open class AddressPhoneNumberIndex : AbstractCache(AbstractCache.TICKS_PER_HOUR), BaseDOChangedListener<AddressDO> {
+    @Autowired
+    private lateinit var addressDao: AddressDao
+
+    @Autowired
+    private lateinit var emgrFactory: PfEmgrFactory
+
+    private val lock = ReentrantReadWriteLock()
+
+    private var data = Data()
+
+    /**
+     * Changes made while rebuilding the index are replayed on the rebuilt index.
+     */
+    @Volatile
+    private var changesWhileRebuilding: ConcurrentLinkedQueue<AddressDO>? = null
+
+    /**
+     * @param phoneNumber The phone number in any format, e. g. +49 561 316793-0.
+     * @return The ids of all (not deleted) addresses with a matching phone number.
+     */
+    open fun findAddressIds(phoneNumber: String?): Set<Int> {
+        checkRefresh()
+        val number = canonicalize(phoneNumber, getCountryPrefix()) ?: return emptySet()
+        return lock.read { data.find(number) }
+    }
+
+    override fun afterSaveOrModifify(changedObject: AddressDO, operationType: OperationType) {
+        changesWhileRebuilding?.add(changedObject)
+        val countryPrefix = getCountryPrefix()
+        lock.write { data.put(changedObject, countryPrefix) }
+    }
+
+    @PostConstruct
+    fun postConstruct() {
+        addressDao.register(this)
+    }
+
+    override fun refresh() {
+        val begin = System.currentTimeMillis()
+        val changes = ConcurrentLinkedQueue<AddressDO>()
+        changesWhileRebuilding = changes
+        try {
+            val countryPrefix = getCountryPrefix()
+            val newData = Data()
+            val rows = emgrFactory.runRoTrans { emgr ->
+                emgr.entityManager.createQuery("select a.id, a.businessPhone, a.mobilePhone, a.fax, a.privatePhone, a.privateMobilePhone"
+                        + " from AddressDO a where a.deleted=false", Array<Any?>::class.java)
+                        .resultList
+            }
+            rows.forEach { row ->
+                val numbers = (1 until row.size).mapNotNull { canonicalize(row[it] as String?, countryPrefix) }
+                newData.put(row[0] as Int, numbers)
+            }
+            lock.write {
+                // Re-indexing a changed address is idempotent, so replaying all changes is safe:
+                changes.forEach { newData.put(it, countryPrefix) }
+                data = newData
+            }
+            log.info { "Phone number index of ${rows.size} addresses built in ${System.currentTimeMillis() - begin}ms." }
+        } finally {
+            changesWhileRebuilding = null
+        }
+    }
+
+    private fun getCountryPrefix(): String? {
+        return Configuration.getInstance().getStringValue(ConfigurationParam.DEFAULT_COUNTRY_PHONE_PREFIX)
+    }
+
+    internal class Data {
+        /**
+         * Canonical numbers of each address, needed for removing them on updates.
+         */
+        private val numbersById = HashMap<Int, Collection<String>>()
+
+        private val idsByNumber = HashMap<String, MutableSet<Int>>()
+
+        /**
+         * All suffixes (with the minimum length) of the numbers, for looking up numbers without country or area code.
+         */
+        private val idsBySuffix = HashMap<String, MutableSet<Int>>()
+
+        fun put(address: AddressDO, countryPrefix: String?) {
+            val id = address.id ?: return
+            if (address.isDeleted) {
+                remove(id)
+                return
+            }
+            put(id, listOf(address.businessPhone, address.mobilePhone, address.fax, address.privatePhone, address.privateMobilePhone)
+                    .mapNotNull { canonicalize(it, countryPrefix) })
+        }
+
+        fun put(id: Int, numbers: Collection<String>) {
+            remove(id)
+            if (numbers.isEmpty()) {
+                return
+            }
+            numbersById[id] = numbers
+            numbers.forEach { number ->
+                idsByNumber.getOrPut(number) { HashSet() }.add(id)
+                getSuffixes(number).forEach { idsBySuffix.getOrPut(it) { HashSet() }.add(id) }
+            }
+        }
+
+        fun remove(id: Int) {
+            numbersById.remove(id)?.forEach { number ->
+                remove(idsByNumber, number, id)
+                getSuffixes(number).forEach { remove(idsBySuffix, it, id) }
+            }
+        }
+
+        /**
+         * @param number Canonical number.
+         * @return Ids of all addresses with a number ending with the given one (missing country or area code of the given
+         * number) or with a number the given one ends with (missing country or area code of the address).
+         */
+        fun find(number: String): Set<Int> {
+            val result = HashSet<Int>()
+            idsBySuffix[number]?.let { result.addAll(it) }
+            for (suffix in getSuffixes(number)) {
+                idsByNumber[suffix]?.let { result.addAll(it) }
+            }
+            return result
+        }
+
+        private fun remove(map: MutableMap<String, MutableSet<Int>>, key: String, id: Int) {
+            map[key]?.let {
+                it.remove(id)
+                if (it.isEmpty()) {
+                    map.remove(key)
+                }
+            }
+        }
+    }
+
+    companion object {
+        /**
+         * Shorter numbers (or suffixes) aren't indexed for avoiding arbitrary matches.
+         */
+        internal const val MIN_NUMBER_LENGTH = 6
+
+        /**
+         * @return The digits of the given number without leading zeros (+49 561 316793-0 -> 5613167930) or null, if the
+         * number is too short.
+         * @see NumberHelper.extractPhonenumber
+         */
+        internal fun canonicalize(phoneNumber: String?, countryPrefix: String?): String? {
+            val number = NumberHelper.extractPhonenumber(phoneNumber, countryPrefix)?.trimStart('0') ?: return null
+            return if (number.length >= MIN_NUMBER_LENGTH) number else null
+        }
+
+        /**
+         * @return All suffixes of the given number with at least [MIN_NUMBER_LENGTH] digits (including the number itself).
+         */
+        private fun getSuffixes(number: String): List<String> {
+            return (0..number.length - MIN_NUMBER_LENGTH).map { number.substring(it) }
+        }
+    }
+}
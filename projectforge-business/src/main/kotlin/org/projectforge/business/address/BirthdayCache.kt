@@ -25,7 +25,8 @@ package org.projectforge.business.address
 
 import org.projectforge.framework.cache.AbstractCache
 import org.projectforge.framework.persistence.api.QueryFilter
-import org.projectforge.framework.time.DateHelper
+import org.projectforge.framework.persistence.user.api.ThreadLocalUserContext
+import org.projectforge.framework.persistence.user.entities.PFUserDO
 import org.projectforge.framework.time.PFDateTime
 import org.projectforge.registry.Registry
 import java.util.*
@@ -33,7 +34,19 @@ import java.util.*
 class BirthdayCache() : AbstractCache() {
     private var addressDao: AddressDao
 
-    private var cacheList = mutableListOf<BirthdayAddress>()
+    /**
+     * The addresses bucketed by day of year, see [getDayOfYearIndex].
+     */
+    private class Buckets {
+        val buckets = arrayOfNulls<MutableList<BirthdayAddress>>(DAY_OF_YEAR_INDEX_SIZE)
+        /**
+         * Indexes of non empty buckets.
+         */
+        val used = BitSet(DAY_OF_YEAR_INDEX_SIZE)
+    }
+
+    @Volatile
+    private var buckets = Buckets()
 
     init {
         val registryEntry = Registry.instance.getEntry(AddressDao::class.java)
@@ -48,52 +61,92 @@ class BirthdayCache() : AbstractCache() {
      * @param all      If false, only the birthdays of favorites will be returned.
      * @return The entries are ordered by date of year and name.
      */
-    fun getBirthdays(fromDate: Date, toDate: Date, all: Boolean, favorites: List<Int>)
+    fun getBirthdays(fromDate: Date, toDate: Date, all: Boolean, favorites: Collection<Int>)
             : Set<BirthdayAddress> {
         checkRefresh()
-        // Uses not Collections.sort because every comparison needs Calendar.getDayOfYear().
+        val buckets = this.buckets
         val set = TreeSet<BirthdayAddress>()
+        val favoriteSet = if (favorites is Set<Int>) favorites else favorites.toHashSet()
+        val user = ThreadLocalUserContext.getUser()
+        // The select access is given by the address books, so check each address book only once:
+        val addressbookAccess = HashMap<Int, Boolean>()
         val from = PFDateTime.from(fromDate) // not null
         val to = PFDateTime.from(toDate) // not null
-        var dh: PFDateTime
-        val fromMonth = from.month
-        val fromDayOfMonth = from.dayOfMonth
-        val toMonth = to.month
-        val toDayOfMonth = to.dayOfMonth
-        for (birthdayAddress in cacheList) {
-            val address = birthdayAddress.address
-            if (!addressDao.hasLoggedInUserSelectAccess(address,false)) {
-                // User has no access to the given address.
-                continue
-            }
-            if (!all && !favorites.contains(address.id)) {
-                // Address is not a favorite address, so ignore it.
-                continue
+        val fromIndex = getDayOfYearIndex(from.month.value, from.dayOfMonth)
+        val toIndex = getDayOfYearIndex(to.month.value, to.dayOfMonth)
+        val consumer = { index: Int ->
+            for (birthdayAddress in buckets.buckets[index]!!) {
+                val address = birthdayAddress.address
+                val isFavorite = favoriteSet.contains(address.id)
+                if (!all && !isFavorite) {
+                    // Address is not a favorite address, so ignore it.
+                    continue
+                }
+                if (!hasSelectAccess(user, address, addressbookAccess)) {
+                    // User has no access to the given address.
+                    continue
+                }
+                val ba = BirthdayAddress(birthdayAddress)
+                ba.isFavorite = isFavorite
+                set.add(ba)
             }
-            dh = PFDateTime.fromOrNull(address.birthday) ?: continue
-            val month = dh.month
-            val dayOfMonth = dh.dayOfMonth
-            if (!DateHelper.dateOfYearBetween(month.value, dayOfMonth, fromMonth.value, fromDayOfMonth, toMonth.value, toDayOfMonth)) {
-                continue
-            }
-            val ba = BirthdayAddress(address)
-            ba.isFavorite = favorites.contains(address.getId())
-            set.add(ba)
+        }
+        if (from.month <= to.month) {
+            forEachUsedBucket(buckets.used, fromIndex, toIndex, consumer)
+        } else {
+            // e. g. NOV - FEB
+            forEachUsedBucket(buckets.used, fromIndex, DAY_OF_YEAR_INDEX_SIZE - 1, consumer)
+            forEachUsedBucket(buckets.used, 0, toIndex, consumer)
         }
         return set
     }
 
+    /**
+     * Same as [AddressDao.hasAccess] for select access, but the result per address book is cached in the given map.
+     */
+    private fun hasSelectAccess(user: PFUserDO, address: AddressDO, addressbookAccess: MutableMap<Int, Boolean>): Boolean {
+        val addressbookList = address.addressbookList ?: return true
+        return addressbookList.any { ab ->
+            val id = ab.id
+            if (id == null) addressDao.hasAddressbookSelectAccess(user, ab)
+            else addressbookAccess.getOrPut(id) { addressDao.hasAddressbookSelectAccess(user, ab) }
+        }
+    }
+
     override fun refresh() {
         val filter = QueryFilter()
         filter.add(QueryFilter.isNotNull("birthday"))
         filter.deleted = false
         val addressList = addressDao.internalGetList(filter)
-        val newList = mutableListOf<BirthdayAddress>()
+        val newBuckets = Buckets()
         addressList.forEach {
             if (!it.isDeleted) { // deleted shouldn't occur, already filtered above.
-                newList.add(BirthdayAddress(it))
+                val birthdayAddress = BirthdayAddress(it)
+                val index = getDayOfYearIndex(birthdayAddress.month.value, birthdayAddress.dayOfMonth)
+                val bucket = newBuckets.buckets[index] ?: mutableListOf<BirthdayAddress>().also { newBuckets.buckets[index] = it }
+                bucket.add(birthdayAddress)
+                newBuckets.used.set(index)
+            }
+        }
+        buckets = newBuckets
+    }
+
+    companion object {
+        /**
+         * 31 days for every month, so leap days and all other dates have a fixed index independent of the year.
+         */
+        private const val DAY_OF_YEAR_INDEX_SIZE = 12 * 31
+
+        private fun getDayOfYearIndex(month: Int, dayOfMonth: Int): Int {
+            return (month - 1) * 31 + dayOfMonth - 1
+        }
+
+        private fun forEachUsedBucket(used: BitSet, fromIndex: Int, toIndex: Int, consumer: (Int) -> Unit) {
+            var index = used.nextSetBit(fromIndex)
+            while (index in 0..toIndex) {
+                consumer(index)
+                index = used.nextSetBit(index + 1)
             }
         }
-        cacheList = newList
     }
 }
@@ -0,0 +1,171 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2020 Micromata GmbH, Germany (www.micromata.com)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+
+package org.projectforge.business.scripting
+
+import org.slf4j.LoggerFactory
+import java.security.MessageDigest
+import java.util.concurrent.atomic.AtomicBoolean
+
+/**
+ * LRU cache of compiled scripts by hash of their source code. Compiled scripts are acquired by [acquire] and released
+ * by closing the returned [Handle]. Entries are disposed (e. g. by closing their class loaders) after eviction or
+ * removal, as soon as they aren't used by any running script anymore, so the classes of scripts not used anymore may be
+ * unloaded.
+ *
+ * @param dispose Called for evicted, removed or concurrently compiled (duplicate) entries, which aren't in use.
+ */
+class CompiledScriptCache<T : Any>(private val name: String,
+                                   private val maxSize: Int,
+                                   private val dispose: (T) -> Unit) {
+    internal class Entry<T>(val compiled: T) {
+        /**
+         * Number of acquired and not yet released handles, guarded by the cache.
+         */
+        var refCount = 0
+
+        /**
+         * True, if evicted or removed from the cache, guarded by the cache.
+         */
+        var removed = false
+    }
+
+    /**
+     * A compiled script in use. Must be closed after usage, so the compiled script may be disposed after eviction.
+     */
+    class Handle<T : Any> internal constructor(private val cache: CompiledScriptCache<T>,
+                                               private val entry: Entry<T>,
+                                               /**
+                                                * True, if the compiled script was already cached.
+                                                */
+                                               val fromCache: Boolean) : AutoCloseable {
+        private val closed = AtomicBoolean()
+
+        val compiled: T
+            get() = entry.compiled
+
+        override fun close() {
+            if (closed.compareAndSet(false, true)) {
+                cache.release(entry)
+            }
+        }
+    }
+
+    private val map = object : LinkedHashMap<String, Entry<T>>(16, 0.75f, true) {
+        override fun removeEldestEntry(eldest: MutableMap.MutableEntry<String, Entry<T>>): Boolean {
+            if (size <= maxSize) {
+                return false
+            }
+            log.info("Evicting compiled script from cache '$name' (max size $maxSize).")
+            markRemoved(eldest.value)
+            return true
+        }
+    }
+
+    /**
+     * @return The cached compiled script or the compiled one by [compile]. Compilation is done outside of any lock.
+     * If [compile] returns null (compilation failed) nothing is cached and null is returned.
+     */
+    fun acquire(source: String, compile: () -> T?): Handle<T>? {
+        val key = hash(source)
+        synchronized(this) {
+            map[key]?.let { return createHandle(it, true) }
+        }
+        val compiled = compile() ?: return null
+        synchronized(this) {
+            val existing = map[key]
+            if (existing != null) {
+                // Compiled concurrently by another thread.
+                disposeSafely(compiled)
+                return createHandle(existing, true)
+            }
+            val entry = Entry(compiled)
+            map[key] = entry
+            return createHandle(entry, false)
+        }
+    }
+
+    fun remove(source: String) {
+        synchronized(this) {
+            map.remove(hash(source))?.let { markRemoved(it) }
+        }
+    }
+
+    @Synchronized
+    fun contains(source: String): Boolean {
+        return map.containsKey(hash(source))
+    }
+
+    @Synchronized
+    fun clear() {
+        map.values.forEach { markRemoved(it) }
+        map.clear()
+    }
+
+    val size: Int
+        @Synchronized
+        get() = map.size
+
+    /**
+     * Must be called with lock.
+     */
+    private fun createHandle(entry: Entry<T>, fromCache: Boolean): Handle<T> {
+        ++entry.refCount
+        return Handle(this, entry, fromCache)
+    }
+
+    @Synchronized
+    private fun release(entry: Entry<T>) {
+        if (--entry.refCount == 0 && entry.removed) {
+            disposeSafely(entry.compiled)
+        }
+    }
+
+    /**
+     * Must be called with lock.
+     */
+    private fun markRemoved(entry: Entry<T>) {
+        entry.removed = true
+        if (entry.refCount == 0) {
+            disposeSafely(entry.compiled)
+        }
+    }
+
+    private fun disposeSafely(compiled: T) {
+        try {
+            dispose(compiled)
+        } catch (ex: Exception) {
+            log.warn("Error while disposing compiled script of cache '$name': ${ex.message}", ex)
+        }
+    }
+
+    companion object {
+        private val log = LoggerFactory.getLogger(CompiledScriptCache::class.java)
+
+        fun hash(source: String): String {
+            val digest = MessageDigest.getInstance("SHA-256").digest(source.toByteArray(Charsets.UTF_8))
+            return digest.joinToString("") { "%02x".format(it) }
+        }
+    }
+}
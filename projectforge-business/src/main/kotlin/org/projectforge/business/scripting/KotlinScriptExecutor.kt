@@ -24,7 +24,12 @@
 package org.projectforge.business.scripting
 
 import org.slf4j.LoggerFactory
+import javax.script.Compilable
+import javax.script.CompiledScript
+import javax.script.ScriptContext
+import javax.script.ScriptEngine
 import javax.script.ScriptEngineManager
+import javax.script.SimpleScriptContext
 
 object KotlinScriptExecutor {
 
@@ -51,6 +56,14 @@ object KotlinScriptExecutor {
             "import org.projectforge.business.scripting.ScriptingDao",
             "import org.projectforge.common.*")
 
+    /**
+     * Compiled scripts by effective script. Each script has its own engine, each execution its own script context
+     * (bindings and state of the evaluation), so executions of the same script may run concurrently.
+     */
+    private val scriptCache = CompiledScriptCache<CachedScript>("kotlin-scripts", 50) { dispose(it) }
+
+    private class CachedScript(val engine: ScriptEngine, val compiledScript: CompiledScript?)
+
     /**
      * @param script Common imports will be prepended.
      * @param variables Variables to bind. Variables are usable via binding["key"] or directly, if #autobind# is part of script.
@@ -59,28 +72,88 @@ object KotlinScriptExecutor {
     @JvmStatic
     @JvmOverloads
     fun execute(script: String, variables: Map<String, Any>, file: ByteArray? = null, filename: String? = null): ScriptExecutionResult {
-        val engine = MyKotlinScriptEngineFactory().scriptEngine
-        val bindings = engine.createBindings()
-        variables.forEach {
-            bindings[it.key] = it.value
-        }
-        if (file != null) {
-            bindings["file"] = file
-            bindings["filename"] = filename
-        }
-        val sb = StringBuilder()
-        sb.appendln(autoImports.joinToString("\n"))
-        sb.append(script)
-        val effectiveScript = sb.toString()
+        val effectiveScript = getEffectiveScript(script)
+        val result = ScriptExecutionResult()
+        result.script = effectiveScript
         try {
-            val result = ScriptExecutionResult()
-            result.script = effectiveScript
-            result.result = engine.eval(effectiveScript, bindings)
+            val start = System.currentTimeMillis()
+            scriptCache.acquire(effectiveScript) { compile(effectiveScript) }!!.use { handle ->
+                result.compileTimeMillis = if (handle.fromCache) 0L else System.currentTimeMillis() - start
+                val cached = handle.compiled
+                val bindings = cached.engine.createBindings()
+                variables.forEach {
+                    bindings[it.key] = it.value
+                }
+                if (file != null) {
+                    bindings["file"] = file
+                    bindings["filename"] = filename
+                }
+                val context = SimpleScriptContext()
+                context.setBindings(bindings, ScriptContext.ENGINE_SCOPE)
+                context.setBindings(cached.engine.getBindings(ScriptContext.GLOBAL_SCOPE), ScriptContext.GLOBAL_SCOPE)
+                val evalStart = System.currentTimeMillis()
+                try {
+                    result.result = eval(cached, effectiveScript, context)
+                } finally {
+                    result.executionTimeMillis = System.currentTimeMillis() - evalStart
+                }
+            }
             return result
         } catch (ex: Exception) {
             log.info("Exception on Kotlin script execution: ${ex.message}", ex)
-            return ScriptExecutionResult(ex)
+            val exResult = ScriptExecutionResult(ex)
+            exResult.script = effectiveScript
+            exResult.compileTimeMillis = result.compileTimeMillis
+            exResult.executionTimeMillis = result.executionTimeMillis
+            return exResult
+        }
+    }
+
+    /**
+     * Removes the compiled script from the cache (if cached), e. g. after modifying the script.
+     */
+    @JvmStatic
+    fun removeFromCache(script: String) {
+        scriptCache.remove(getEffectiveScript(script))
+    }
+
+    /**
+     * @return true, if the compiled script is cached.
+     */
+    internal fun isCached(script: String): Boolean {
+        return scriptCache.contains(getEffectiveScript(script))
+    }
+
+    private fun getEffectiveScript(script: String): String {
+        val sb = StringBuilder()
+        sb.appendln(autoImports.joinToString("\n"))
+        sb.append(script)
+        return sb.toString()
+    }
+
+    private fun compile(effectiveScript: String): CachedScript {
+        val engine = MyKotlinScriptEngineFactory().scriptEngine
+        if (engine !is Compilable) {
+            log.warn("Script engine doesn't support compilation, script will be evaluated on every execution.")
+            return CachedScript(engine, null)
         }
+        return CachedScript(engine, engine.compile(effectiveScript))
+    }
+
+    /**
+     * Releases the compiled script after eviction or removal. The engine keeps the state of its compilations (compiled
+     * classes and their class loader) in the bindings of its default context, so clearing them releases the classes of
+     * the script. Engine and compiled script aren't referenced anymore afterwards.
+     */
+    private fun dispose(cached: CachedScript) {
+        cached.engine.getBindings(ScriptContext.ENGINE_SCOPE)?.clear()
+        (cached.compiledScript as? AutoCloseable)?.close()
+        (cached.engine as? AutoCloseable)?.close()
+    }
+
+    private fun eval(cached: CachedScript, effectiveScript: String, context: ScriptContext): Any? {
+        val compiledScript = cached.compiledScript ?: return cached.engine.eval(effectiveScript, context)
+        return compiledScript.eval(context)
     }
 
     private val log = LoggerFactory.getLogger(KotlinScriptExecutor::class.java)
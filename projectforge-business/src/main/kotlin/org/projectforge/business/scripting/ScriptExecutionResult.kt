@@ -36,6 +36,14 @@ class ScriptExecutionResult : Serializable {
      * The effective script (including any auto-imports and bindings).
      */
     var script: String = ""
+    /**
+     * Time of compilation in millis (0, if the compiled script was taken from the cache).
+     */
+    var compileTimeMillis: Long? = null
+    /**
+     * Time of script execution in millis (without compilation).
+     */
+    var executionTimeMillis: Long? = null
 
     constructor() {}
     constructor(ex: Exception?) {
@@ -35,6 +35,8 @@ import org.springframework.beans.factory.annotation.Autowired
 import org.springframework.context.annotation.DependsOn
 import org.springframework.stereotype.Component
 import java.util.*
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.locks.ReentrantLock
 import javax.annotation.PreDestroy
 
 private val log = KotlinLogging.logger {}
@@ -51,6 +53,17 @@ class UserPrefCache : AbstractCache() {
 
     private val allPreferences = HashMap<Int, UserPrefCacheData>()
 
+    /**
+     * Write-behind queue: ids of all users with modified entries. Modifications of the same entry (area, name) are
+     * coalesced by the modified flag of the cache entry and written once per flush cycle.
+     */
+    private val modifiedUsers = ConcurrentHashMap.newKeySet<Int>()
+
+    /**
+     * Striped locks for loading and draining the preferences of a user, so users don't block each other.
+     */
+    private val userLocks = Array(LOCK_STRIPES) { ReentrantLock() }
+
     @Autowired
     private lateinit var accessChecker: AccessChecker
 
@@ -76,6 +89,9 @@ class UserPrefCache : AbstractCache() {
             log.debug { "Put value for area '$area' and name '$name' (persistent=$persistent): ${ToStringUtil.toJsonString(value)}" }
         }
         data.putEntry(area, name, value, persistent)
+        if (persistent) {
+            modifiedUsers.add(uid)
+        }
         checkRefresh() // Should be called at the end of this method for considering changes inside this method.
     }
 
@@ -85,8 +101,12 @@ class UserPrefCache : AbstractCache() {
     fun getEntries(area: String): List<UserPrefDO> {
         val userId = ThreadLocalUserContext.getUserId()
         val data = ensureAndGetUserPreferencesData(userId)
+        val entries = data.getEntries(area)
+        if (entries.isNotEmpty()) {
+            modifiedUsers.add(userId) // Entries are marked as modified after usage.
+        }
         checkRefresh()
-        return data.getEntries(area).map { it.userPrefDO }
+        return entries.map { it.userPrefDO }
     }
 
     /**
@@ -130,6 +150,7 @@ class UserPrefCache : AbstractCache() {
         val data = ensureAndGetUserPreferencesData(userId)
         checkRefresh()
         val userPref = data.getEntry(area, name)?.userPrefDO ?: return null
+        modifiedUsers.add(userId) // Entry is marked as modified after usage.
         return userPref.valueObject ?: userPrefDao.deserizalizeValueObject(userPref)
     }
 
@@ -157,24 +178,26 @@ class UserPrefCache : AbstractCache() {
      * @param userId
      * @return
      */
-    @Synchronized
     private fun ensureAndGetUserPreferencesData(userId: Int): UserPrefCacheData {
-        var data = getUserPreferencesData(userId)
-        if (data == null) {
-            data = UserPrefCacheData()
-            data.userId = userId
-            val userPrefs = userPrefDao.getUserPrefs(userId)
-            userPrefs?.forEach {
-                data.putEntry(it)
-            }
-            if (log.isDebugEnabled) {
-                log.debug { "Created new UserPrefCacheData: ${ToStringUtil.toJsonString(data)}" }
-            }
-            synchronized(allPreferences) {
-                this.allPreferences[userId] = data
+        getUserPreferencesData(userId)?.let { return it }
+        return withUserLock(userId) {
+            var data = getUserPreferencesData(userId)
+            if (data == null) {
+                data = UserPrefCacheData()
+                data.userId = userId
+                val userPrefs = userPrefDao.getUserPrefs(userId)
+                userPrefs?.forEach {
+                    data.putEntry(it)
+                }
+                if (log.isDebugEnabled) {
+                    log.debug { "Created new UserPrefCacheData: ${ToStringUtil.toJsonString(data)}" }
+                }
+                synchronized(allPreferences) {
+                    this.allPreferences[userId] = data
+                }
             }
+            data
         }
-        return data
     }
 
     internal fun getUserPreferencesData(userId: Int): UserPrefCacheData? {
@@ -197,7 +220,6 @@ class UserPrefCache : AbstractCache() {
         flushToDB(userId, true)
     }
 
-    @Synchronized
     private fun flushToDB(userId: Int?, checkAccess: Boolean) {
         if (checkAccess) {
             if (userId != ThreadLocalUserContext.getUserId()) {
@@ -212,12 +234,64 @@ class UserPrefCache : AbstractCache() {
                 return
             }
         }
-        val data = allPreferences[userId]
-        data?.getModifiedPersistentEntries()?.forEach {
-            if (log.isDebugEnabled) {
-                log.debug { "Persisting entry to data base: ${ToStringUtil.toJsonString(it.userPrefDO)}" }
+        userId ?: return
+        persist(drainModifiedEntries(userId))
+    }
+
+    /**
+     * Removes the user from the write-behind queue and returns all modified persistent entries of the user.
+     */
+    private fun drainModifiedEntries(userId: Int): List<UserPrefCacheData.CacheEntry> {
+        return withUserLock(userId) {
+            modifiedUsers.remove(userId)
+            getUserPreferencesData(userId)?.drainModifiedPersistentEntries() ?: emptyList()
+        }
+    }
+
+    /**
+     * Writes the given entries in one transaction. If this fails, the entries are written one by one, so a failing entry
+     * doesn't block the others. Failing entries are re-queued for the next flush cycle and dropped after
+     * [MAX_PERSIST_ATTEMPTS] attempts.
+     */
+    private fun persist(entries: List<UserPrefCacheData.CacheEntry>) {
+        if (entries.isEmpty()) {
+            return
+        }
+        if (log.isDebugEnabled) {
+            entries.forEach { log.debug { "Persisting entry to data base: ${ToStringUtil.toJsonString(it.userPrefDO)}" } }
+        }
+        try {
+            userPrefDao.internalSaveOrUpdate(entries.map { it.userPrefDO })
+            entries.forEach { it.persistFailures = 0 }
+            return
+        } catch (ex: Exception) {
+            log.warn("Error while persisting ${entries.size} user preferences in one transaction, persisting them one by one: ${ex.message}")
+        }
+        entries.forEach { entry ->
+            val userPref = entry.userPrefDO
+            try {
+                userPrefDao.internalSaveOrUpdate(userPref)
+                entry.persistFailures = 0
+            } catch (ex: Exception) {
+                if (++entry.persistFailures >= MAX_PERSIST_ATTEMPTS) {
+                    log.error("Error while persisting user preference '${userPref.area}.${userPref.name}' of user ${userPref.user?.id}, dropped after ${entry.persistFailures} attempts: ${ex.message}", ex)
+                    entry.persistFailures = 0
+                } else {
+                    log.error("Error while persisting user preference '${userPref.area}.${userPref.name}' of user ${userPref.user?.id} (will retry on next flush): ${ex.message}", ex)
+                    entry.modified = true
+                    userPref.user?.id?.let { userId -> modifiedUsers.add(userId) }
+                }
             }
-            userPrefDao.internalSaveOrUpdate(it.userPrefDO)
+        }
+    }
+
+    private fun <T> withUserLock(userId: Int, block: () -> T): T {
+        val lock = userLocks[Math.floorMod(userId, LOCK_STRIPES)]
+        lock.lock()
+        try {
+            return block()
+        } finally {
+            lock.unlock()
         }
     }
 
@@ -228,14 +302,19 @@ class UserPrefCache : AbstractCache() {
      * @see AbstractCache.refresh
      */
     override fun refresh() {
-        log.info("Flushing all user preferences to data-base....")
-        for (userId in allPreferences.keys) {
+        val userIds = modifiedUsers.toList()
+        if (userIds.isEmpty()) {
+            return
+        }
+        log.info("Flushing user preferences of ${userIds.size} users to data-base....")
+        val entries = userIds.flatMap {
             if (log.isDebugEnabled) {
-                log.debug { "Flushing all user preferences for user $userId." }
+                log.debug { "Flushing all user preferences for user $it." }
             }
-            flushToDB(userId, false)
+            drainModifiedEntries(it)
         }
-        log.info("Flushing of user preferences to data-base done.")
+        persist(entries)
+        log.info("Flushing of ${entries.size} user preferences to data-base done.")
     }
 
     /**
@@ -258,9 +337,26 @@ class UserPrefCache : AbstractCache() {
         this.expireTime = 10 * TICKS_PER_MINUTE
     }
 
+    /**
+     * Drains the write-behind queue on shutdown. Entries failing to persist are retried a few times.
+     */
     @PreDestroy
     fun preDestroy() {
         log.info("Syncing all user preferences to database.")
-        this.forceReload()
+        var attempts = 0
+        do {
+            this.forceReload()
+        } while (modifiedUsers.isNotEmpty() && ++attempts < SHUTDOWN_FLUSH_ATTEMPTS)
+        if (modifiedUsers.isNotEmpty()) {
+            log.error("Couldn't sync user preferences of users ${modifiedUsers.joinToString()} to database.")
+        }
+    }
+
+    companion object {
+        private const val LOCK_STRIPES = 64
+
+        private const val SHUTDOWN_FLUSH_ATTEMPTS = 3
+
+        private const val MAX_PERSIST_ATTEMPTS = 3
     }
 }
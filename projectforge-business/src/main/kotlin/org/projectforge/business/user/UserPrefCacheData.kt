@@ -23,6 +23,7 @@
 
 package org.projectforge.business.user
 
+import com.fasterxml.jackson.annotation.JsonIgnore
 import org.projectforge.framework.persistence.user.api.ThreadLocalUserContext
 import org.projectforge.framework.persistence.user.entities.UserPrefDO
 
@@ -35,7 +36,13 @@ internal class UserPrefCacheData {
     class CacheEntry(
             var userPrefDO: UserPrefDO,
             var persistant: Boolean = true,
-            var modified: Boolean = false)
+            var modified: Boolean = false) {
+        /**
+         * Number of failed attempts to persist this entry in a row.
+         */
+        @JsonIgnore
+        var persistFailures: Int = 0
+    }
 
     var userId: Int? = null
 
@@ -107,6 +114,18 @@ internal class UserPrefCacheData {
         return entries.filter { it.persistant && it.modified }
     }
 
+    /**
+     * Gets all modified persistent entries and resets their modified flag. Multiple modifications of an entry since the
+     * last call are coalesced to one write; entries modified after this call will be returned by the next call.
+     */
+    internal fun drainModifiedPersistentEntries(): List<CacheEntry> {
+        synchronized(entries) {
+            val result = getModifiedPersistentEntries()
+            result.forEach { it.modified = false }
+            return result
+        }
+    }
+
     /**
      * Clear all volatile data (after logout). Forces refreshing of volatile data after re-login.
      */
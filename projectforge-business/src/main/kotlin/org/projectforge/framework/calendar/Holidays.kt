@@ -34,19 +34,33 @@ import org.slf4j.LoggerFactory
 import java.math.BigDecimal
 import java.time.DayOfWeek
 import java.time.LocalDate
+import java.time.Year
 import java.time.ZonedDateTime
 import java.util.*
+import java.util.concurrent.ConcurrentHashMap
 
 /**
+ * Holidays and working days are precomputed once per year as immutable [HolidayYear] tables, so all lookups are
+ * lock-free.
+ *
  * @author Kai Reinhard (k.reinhard@micromata.de)
  */
 class Holidays private constructor() {
     /**
-     * Contains all holidays of a year. Key is the year. Value is a map of all holidays in the year with the day of the year as key.
+     * Contains all holidays and working days of a year. Key is the year.
      */
-    private val holidaysByYear: MutableMap<Int, Map<Int, Holiday?>?> = HashMap()
-    private val reconfiguredHolidays: MutableMap<HolidayDefinition, ConfigureHoliday?> = HashMap()
-    private var xmlConfiguration: ConfigXml? = null
+    private val holidaysByYear = ConcurrentHashMap<Int, HolidayYear>()
+    private val xmlConfiguration: ConfigXml by lazy { ConfigXml.getInstance() }
+    private val reconfiguredHolidays: Map<HolidayDefinition, ConfigureHoliday> by lazy {
+        val map = mutableMapOf<HolidayDefinition, ConfigureHoliday>()
+        xmlConfiguration.holidays?.forEach { holiday ->
+            if (holiday.id != null) {
+                map[holiday.id] = holiday
+            }
+        }
+        map
+    }
+
     private fun computeHolidays(year: Int): Map<Int, Holiday?> {
         log.info("Compute holidays for year: $year")
         val holidays: MutableMap<Int, Holiday?> = HashMap()
@@ -75,8 +89,8 @@ class Holidays private constructor() {
                 putEasterHoliday(holidays, day, holiday)
             }
         }
-        if (xmlConfiguration!!.holidays != null) {
-            for (cfgHoliday in xmlConfiguration!!.holidays) {
+        if (xmlConfiguration.holidays != null) {
+            for (cfgHoliday in xmlConfiguration.holidays) {
                 if (cfgHoliday.id == null && !cfgHoliday.isIgnore) {
                     val month = getMonth(cfgHoliday.month)
                     // New Holiday.
@@ -123,8 +137,8 @@ class Holidays private constructor() {
         var workingFraction: BigDecimal? = null
         val isWorkingDay = def.isWorkingDay
         if (reconfiguredHolidays.containsKey(def)) {
-            val cfgHoliday = reconfiguredHolidays[def]
-            if (cfgHoliday!!.isIgnore) { // Ignore holiday.
+            val cfgHoliday = reconfiguredHolidays.getValue(def)
+            if (cfgHoliday.isIgnore) { // Ignore holiday.
                 return null
             }
             if (StringUtils.isNotBlank(cfgHoliday.label)) {
@@ -148,25 +162,8 @@ class Holidays private constructor() {
         holidays[dayOfYear] = holiday
     }
 
-    @Synchronized
-    private fun getHolidays(year: Int): Map<Int, Holiday?>? {
-        if (xmlConfiguration == null) {
-            xmlConfiguration = ConfigXml.getInstance()
-            xmlConfiguration!!.let { xmlConfiguration ->
-                for (holiday in xmlConfiguration.holidays) {
-                    if (holiday.id != null) {
-                        reconfiguredHolidays[holiday.id] = holiday
-                    }
-                }
-                holidaysByYear.clear()
-            }
-        }
-        var holidays = holidaysByYear[year]
-        if (holidays == null) {
-            holidays = computeHolidays(year)
-            holidaysByYear[year] = holidays
-        }
-        return holidays
+    private fun getHolidayYear(year: Int): HolidayYear {
+        return holidaysByYear[year] ?: holidaysByYear.computeIfAbsent(year) { HolidayYear(it, computeHolidays(it)) }
     }
 
     fun isHoliday(date: IPFDate<*>): Boolean {
@@ -174,34 +171,26 @@ class Holidays private constructor() {
     }
 
     fun isHoliday(year: Int, dayOfYear: Int): Boolean {
-        return getHolidays(year)!!.containsKey(dayOfYear)
+        return getHolidayYear(year).getHoliday(dayOfYear) != null
     }
 
     fun isWorkingDay(dateTime: ZonedDateTime): Boolean {
-        return isWorkingDay(dateTime.year, dateTime.dayOfYear, dateTime.dayOfWeek)
+        return getHolidayYear(dateTime.year).isWorkingDay(dateTime.dayOfYear)
     }
 
     fun isWorkingDay(date: IPFDate<*>): Boolean {
-        return isWorkingDay(date.year, date.dayOfYear, date.dayOfWeek)
+        return getHolidayYear(date.year).isWorkingDay(date.dayOfYear)
     }
 
     fun isWorkingDay(date: LocalDate): Boolean {
-        return isWorkingDay(date.year, date.dayOfYear, date.dayOfWeek)
-    }
-
-    private fun isWorkingDay(year: Int, dayOfYear: Int, dayOfWeek: DayOfWeek): Boolean {
-        if (WEEKEND_DAYS.contains(dayOfWeek)) {
-            return false
-        }
-        return getHolidays(year)?.get(dayOfYear)?.isWorkingDay ?: true
+        return getHolidayYear(date.year).isWorkingDay(date.dayOfYear)
     }
 
     fun getWorkFraction(date: IPFDate<*>): BigDecimal? {
         if (date.isWeekend()) {
             return null
         }
-        val day = getHolidays(date.year)!![date.dayOfYear] ?: return null
-        return day.workFraction
+        return getHolidayYear(date.year).getHoliday(date.dayOfYear)?.workFraction
     }
 
     fun getHolidayInfo(date: IPFDate<*>): String {
@@ -209,10 +198,83 @@ class Holidays private constructor() {
     }
 
     fun getHolidayInfo(year: Int, dayOfYear: Int): String {
-        val day = getHolidays(year)!![dayOfYear] ?: return ""
+        val day = getHolidayYear(year).getHoliday(dayOfYear) ?: return ""
         return if (StringUtils.isNotBlank(day.label)) day.label else day.i18nKey
     }
 
+    /**
+     * Number of working days (including fractions of half working days such as Xmas) in the given period (both
+     * inclusive). Uses the prefix sums of the year tables, so the costs don't depend on the length of the period.
+     */
+    fun getNumberOfWorkingDays(from: LocalDate, to: LocalDate): BigDecimal {
+        if (to.isBefore(from)) {
+            return BigDecimal.ZERO
+        }
+        var result = BigDecimal.ZERO
+        for (year in from.year..to.year) {
+            val holidayYear = getHolidayYear(year)
+            val fromDayOfYear = if (year == from.year) from.dayOfYear else 1
+            val toDayOfYear = if (year == to.year) to.dayOfYear else holidayYear.lengthOfYear
+            result = result.add(holidayYear.getNumberOfWorkingDays(fromDayOfYear, toDayOfYear))
+        }
+        return result
+    }
+
+    /**
+     * Immutable working day table of one year: a bitset of all (full or partial) working days and prefix sums of full
+     * working days and of the work fractions of partial working days for counting working days of periods in O(1).
+     */
+    private class HolidayYear(year: Int, private val holidays: Map<Int, Holiday?>) {
+        val lengthOfYear = Year.of(year).length()
+        private val workingDays = BitSet(lengthOfYear + 1)
+        /**
+         * Number of full working days until day of year (inclusive), index 0 is 0.
+         */
+        private val fullWorkingDaysSum = IntArray(lengthOfYear + 1)
+        /**
+         * Sum of the work fractions of partial working days until day of year (inclusive), index 0 is 0.
+         */
+        private val workFractionsSum = arrayOfNulls<BigDecimal>(lengthOfYear + 1)
+
+        init {
+            var day = LocalDate.ofYearDay(year, 1)
+            var fullSum = 0
+            var fractionSum = BigDecimal.ZERO
+            workFractionsSum[0] = fractionSum
+            for (dayOfYear in 1..lengthOfYear) {
+                if (!WEEKEND_DAYS.contains(day.dayOfWeek)) {
+                    val holiday = holidays[dayOfYear]
+                    if (holiday == null || holiday.isWorkingDay) {
+                        workingDays.set(dayOfYear)
+                        val workFraction = holiday?.workFraction
+                        if (workFraction != null) {
+                            fractionSum = fractionSum.add(workFraction)
+                        } else {
+                            ++fullSum
+                        }
+                    }
+                }
+                fullWorkingDaysSum[dayOfYear] = fullSum
+                workFractionsSum[dayOfYear] = fractionSum
+                day = day.plusDays(1)
+            }
+        }
+
+        fun getHoliday(dayOfYear: Int): Holiday? {
+            return holidays[dayOfYear]
+        }
+
+        fun isWorkingDay(dayOfYear: Int): Boolean {
+            return workingDays.get(dayOfYear)
+        }
+
+        fun getNumberOfWorkingDays(fromDayOfYear: Int, toDayOfYear: Int): BigDecimal {
+            val fullWorkingDays = fullWorkingDaysSum[toDayOfYear] - fullWorkingDaysSum[fromDayOfYear - 1]
+            return workFractionsSum[toDayOfYear]!!.subtract(workFractionsSum[fromDayOfYear - 1])
+                    .add(BigDecimal(fullWorkingDays))
+        }
+    }
+
     companion object {
         private val log = LoggerFactory.getLogger(Holidays::class.java)
         @JvmStatic
@@ -0,0 +1,342 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2020 Micromata GmbH, Germany (www.micromata.com)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+
+package org.projectforge.framework.persistence.api
+
+import mu.KotlinLogging
+import org.apache.commons.lang3.StringUtils
+import org.projectforge.common.BeanHelper
+import org.projectforge.framework.access.OperationType
+import org.projectforge.framework.cache.AbstractCache
+import java.util.*
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ConcurrentLinkedQueue
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.locks.ReentrantReadWriteLock
+import kotlin.concurrent.read
+import kotlin.concurrent.write
+
+private val log = KotlinLogging.logger {}
+
+/**
+ * In-memory autocompletion index of one property of an entity, replacing the like '%searchString%' queries on every key
+ * stroke. The values are grouped by partitions (e. g. by user for time sheet locations) and ranked by frequency and
+ * recency.
+ *
+ * The index is built by one grouped query and maintained incrementally as [BaseDOChangedListener]. The previous values
+ * of modified objects aren't known by the listener, so the counts are corrected by the hourly rebuild.
+ *
+ * @param partitionProperty Property path of the partition in JPQL (e. g. "user.id") or null for only one partition.
+ * @param partitionOf Gets the partition of a changed object, must match [partitionProperty].
+ * @param maxAgeInDays Only values of objects modified within this period are proposed.
+ * @param maxValuesPerPartition Memory budget per partition: the lowest ranked values are evicted if exceeded.
+ * @param maxValues Memory budget of all partitions: the lowest ranked values of all partitions are evicted if exceeded.
+ */
+class AutocompletionIndex<O : ExtendedBaseDO<Int>> @JvmOverloads constructor(
+        private val baseDao: BaseDao<O>,
+        val property: String,
+        private val partitionProperty: String? = null,
+        private val partitionOf: ((O) -> Any?)? = null,
+        private val maxAgeInDays: Int = 730,
+        private val maxValuesPerPartition: Int = 10000,
+        private val maxValues: Int = 100000)
+    : AbstractCache(AbstractCache.TICKS_PER_HOUR), BaseDOChangedListener<O> {
+
+    private class Entry(val value: String) {
+        val lowerValue = value.toLowerCase()
+        var count = 0
+        var lastUpdate = 0L
+
+        fun isBefore(other: Entry): Boolean {
+            return if (count != other.count) count < other.count else lastUpdate < other.lastUpdate
+        }
+    }
+
+    /**
+     * Partitions by partition key ([NO_PARTITION] for null) and the number of values of all partitions.
+     */
+    private inner class Partitions {
+        private val map = ConcurrentHashMap<Any, Partition>()
+        val valueCount = AtomicInteger()
+
+        operator fun get(partitionKey: Any?): Partition? {
+            return map[partitionKey ?: NO_PARTITION]
+        }
+
+        fun getOrCreate(partitionKey: Any?): Partition {
+            return map.computeIfAbsent(partitionKey ?: NO_PARTITION) { Partition(valueCount) }
+        }
+
+        /**
+         * Removes the lowest ranked 10% of the values of all partitions, if more than [maxValues] values are indexed.
+         */
+        fun evictIfRequired() {
+            if (valueCount.get() <= maxValues) {
+                return
+            }
+            synchronized(this) {
+                if (valueCount.get() <= maxValues) {
+                    return
+                }
+                val candidates = ArrayList<Pair<Partition, Entry>>()
+                map.values.forEach { partition -> partition.forEach { candidates.add(Pair(partition, it)) } }
+                candidates.sortWith(Comparator { o1, o2 -> compare(o1.second, o2.second) })
+                candidates.take(maxValues / 10 + 1)
+                        .groupBy({ it.first }, { it.second })
+                        .forEach { (partition, entries) -> partition.remove(entries) }
+            }
+        }
+    }
+
+    /**
+     * Values of one partition with a trigram index for substring searches.
+     *
+     * @param valueCount Number of values of all partitions.
+     */
+    private inner class Partition(private val valueCount: AtomicInteger) {
+        private val lock = ReentrantReadWriteLock()
+        private val entries = HashMap<String, Entry>()
+        private val trigrams = HashMap<String, MutableSet<Entry>>()
+
+        fun add(value: String, countDelta: Int, lastUpdate: Long?) {
+            lock.write {
+                var entry = entries[value]
+                if (entry == null) {
+                    if (countDelta < 0) {
+                        return
+                    }
+                    entry = Entry(value)
+                    entries[value] = entry
+                    valueCount.incrementAndGet()
+                    getTrigrams(entry.lowerValue).forEach { trigrams.getOrPut(it) { HashSet() }.add(entry) }
+                }
+                entry.count = maxOf(if (countDelta == 0) 1 else 0, entry.count + countDelta)
+                if (lastUpdate != null && lastUpdate > entry.lastUpdate) {
+                    entry.lastUpdate = lastUpdate
+                }
+                if (entries.size > maxValuesPerPartition) {
+                    evict()
+                }
+            }
+        }
+
+        fun find(term: String, minLastUpdate: Long, consumer: (Entry) -> Unit) {
+            lock.read {
+                val candidates: Collection<Entry> = if (term.length < TRIGRAM_LENGTH) {
+                    entries.values
+                } else {
+                    var smallest: Set<Entry>? = null
+                    for (trigram in getTrigrams(term)) {
+                        val posting = trigrams[trigram] ?: return // No value contains this trigram.
+                        if (smallest == null || posting.size < smallest.size) {
+                            smallest = posting
+                        }
+                    }
+                    smallest ?: return
+                }
+                candidates.forEach {
+                    if (it.count > 0 && it.lastUpdate >= minLastUpdate && it.lowerValue.contains(term)) {
+                        consumer(it)
+                    }
+                }
+            }
+        }
+
+        fun forEach(consumer: (Entry) -> Unit) {
+            lock.read {
+                entries.values.forEach(consumer)
+            }
+        }
+
+        fun remove(evict: Collection<Entry>) {
+            lock.write {
+                evict.forEach { removeEntry(it) }
+            }
+        }
+
+        /**
+         * Removes the lowest ranked 10% of the values.
+         */
+        private fun evict() {
+            entries.values.sortedWith(Comparator { o1, o2 -> compare(o1, o2) })
+                    .take(maxValuesPerPartition / 10 + 1)
+                    .forEach { removeEntry(it) }
+        }
+
+        /**
+         * Must be called with write lock.
+         */
+        private fun removeEntry(entry: Entry) {
+            if (entries[entry.value] !== entry) {
+                return // Already removed.
+            }
+            entries.remove(entry.value)
+            valueCount.decrementAndGet()
+            getTrigrams(entry.lowerValue).forEach { trigram ->
+                trigrams[trigram]?.let {
+                    it.remove(entry)
+                    if (it.isEmpty()) {
+                        trigrams.remove(trigram)
+                    }
+                }
+            }
+        }
+    }
+
+    private class Change(val partition: Any?, val value: String, val countDelta: Int, val lastUpdate: Long?)
+
+    @Volatile
+    private var partitions = Partitions()
+
+    /**
+     * Changes made while rebuilding the index are replayed on the rebuilt index.
+     */
+    @Volatile
+    private var changesWhileRebuilding: Queue<Change>? = null
+
+    /**
+     * @return All matching values of the partition (ignoring case), the most frequent and recent values first.
+     */
+    fun getAutocompletion(searchString: String?): List<String> {
+        return getAutocompletion(searchString, Collections.singletonList(null))
+    }
+
+    /**
+     * @return All matching values of the given partitions (ignoring case), the most frequent and recent values first.
+     */
+    fun getAutocompletion(searchString: String?, partitions: Collection<*>): List<String> {
+        checkRefresh()
+        val term = StringUtils.lowerCase(searchString) ?: ""
+        val minLastUpdate = System.currentTimeMillis() - maxAgeInDays * TICKS_PER_DAY
+        val result = HashMap<String, Entry>()
+        val current = this.partitions
+        partitions.forEach { partitionKey ->
+            current[partitionKey]?.find(term, minLastUpdate) { entry ->
+                val existing = result[entry.value]
+                if (existing == null) {
+                    result[entry.value] = Entry(entry.value).also {
+                        it.count = entry.count
+                        it.lastUpdate = entry.lastUpdate
+                    }
+                } else {
+                    existing.count += entry.count
+                    existing.lastUpdate = maxOf(existing.lastUpdate, entry.lastUpdate)
+                }
+            }
+        }
+        return result.values.sortedWith(Comparator { o1, o2 ->
+            when {
+                o1.count != o2.count -> o2.count.compareTo(o1.count)
+                o1.lastUpdate != o2.lastUpdate -> o2.lastUpdate.compareTo(o1.lastUpdate)
+                else -> o1.value.compareTo(o2.value)
+            }
+        }).map { it.value }
+    }
+
+    override fun afterSaveOrModifify(changedObject: O, operationType: OperationType) {
+        val value = BeanHelper.getNestedProperty(changedObject, property) as? String
+        if (StringUtils.isBlank(value)) {
+            return
+        }
+        val partitionKey = partitionOf?.invoke(changedObject)
+        val lastUpdate = changedObject.lastUpdate?.time ?: System.currentTimeMillis()
+        when (operationType) {
+            OperationType.INSERT, OperationType.UNDELETE -> apply(Change(partitionKey, value!!, 1, lastUpdate))
+            // The listeners may be called twice per update and the previous value is unknown, so the count is only
+            // ensured here and corrected by the next rebuild:
+            OperationType.UPDATE -> if (!changedObject.isDeleted) apply(Change(partitionKey, value!!, 0, lastUpdate))
+            OperationType.DELETE -> apply(Change(partitionKey, value!!, -1, null))
+            else -> {
+            }
+        }
+    }
+
+    private fun apply(change: Change) {
+        changesWhileRebuilding?.add(change)
+        apply(partitions, change)
+    }
+
+    private fun apply(partitions: Partitions, change: Change) {
+        partitions.getOrCreate(change.partition).add(change.value, change.countDelta, change.lastUpdate)
+        partitions.evictIfRequired()
+    }
+
+    /**
+     * Rebuilds the index by one query grouped by partition and value.
+     */
+    override fun refresh() {
+        val begin = System.currentTimeMillis()
+        val changes = ConcurrentLinkedQueue<Change>()
+        changesWhileRebuilding = changes
+        try {
+            val newPartitions = Partitions()
+            val since = Date(begin - maxAgeInDays * TICKS_PER_DAY)
+            val partitionSelect = if (partitionProperty != null) "t.$partitionProperty" else "null"
+            val groupBy = if (partitionProperty != null) "t.$partitionProperty, t.$property" else "t.$property"
+            val jpql = "select $partitionSelect, t.$property, count(t), max(t.lastUpdate) from ${baseDao.clazz.simpleName} t" +
+                    " where t.deleted=false and t.lastUpdate>:since and t.$property is not null and t.$property<>''" +
+                    " group by $groupBy"
+            val rows = baseDao.emgrFactory.runRoTrans { emgr ->
+                emgr.entityManager.createQuery(jpql, Array<Any?>::class.java)
+                        .setParameter("since", since)
+                        .resultList
+            }
+            rows.forEach { row ->
+                val value = row[1] as? String ?: return@forEach
+                val count = (row[2] as Number).toInt()
+                val lastUpdate = (row[3] as? Date)?.time
+                apply(newPartitions, Change(row[0], value, count, lastUpdate))
+            }
+            while (true) {
+                apply(newPartitions, changes.poll() ?: break)
+            }
+            partitions = newPartitions
+            log.info { "Autocompletion index of ${baseDao.clazz.simpleName}.$property with ${rows.size} values built in ${System.currentTimeMillis() - begin}ms." }
+        } finally {
+            // Changes between replaying and publishing the rebuilt index are corrected by the next rebuild.
+            changesWhileRebuilding = null
+        }
+    }
+
+    companion object {
+        private const val TRIGRAM_LENGTH = 3
+
+        /**
+         * Key of the partition for null (not supported as key by [ConcurrentHashMap]).
+         */
+        private val NO_PARTITION = Any()
+
+        private fun compare(o1: Entry, o2: Entry): Int {
+            return if (o1.isBefore(o2)) -1 else if (o2.isBefore(o1)) 1 else 0
+        }
+
+        private fun getTrigrams(str: String): Set<String> {
+            val result = HashSet<String>()
+            for (i in 0..str.length - TRIGRAM_LENGTH) {
+                result.add(str.substring(i, i + TRIGRAM_LENGTH))
+            }
+            return result
+        }
+    }
+}
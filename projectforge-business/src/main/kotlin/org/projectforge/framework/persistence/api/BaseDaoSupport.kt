@@ -219,18 +219,46 @@ object BaseDaoSupport {
      */
     @JvmStatic
     fun <O : ExtendedBaseDO<Int>> internalSaveOrUpdate(baseDao: BaseDao<O>, col: Collection<O>) {
+        internalSaveOrUpdateInJdbcBatches(baseDao, col, null)
+    }
+
+    /**
+     * Bulk update, the inserts and updates are sent to the data base in JDBC batches.
+     * @param col Entries to save or update without check access.
+     * @param jdbcBatchSize The JDBC batch size of the session, only for this transaction. If null, the default of the
+     * session factory (no batching) is used.
+     */
+    @JvmStatic
+    fun <O : ExtendedBaseDO<Int>> internalSaveOrUpdateInJdbcBatches(baseDao: BaseDao<O>, col: Collection<O>, jdbcBatchSize: Int?) {
         baseDao.emgrFactory.runInTrans { emgr ->
-            for (obj in col) {
-                if (obj.id != null) {
-                    preInternalUpdate(baseDao, obj, false)
-                    val res = ResultObject<O>()
-                    internalUpdate(emgr, baseDao, obj, false, res)
-                    postInternalUpdate<O>(baseDao, obj, res)
-                } else {
-                    preInternalSave(baseDao, obj)
-                    internalSave(emgr, baseDao, obj)
-                    postInternalSave(baseDao, obj)
+            val session = emgr.session
+            val oldJdbcBatchSize = session.jdbcBatchSize
+            if (jdbcBatchSize != null) {
+                session.jdbcBatchSize = jdbcBatchSize
+            }
+            try {
+                internalSaveOrUpdate(emgr, baseDao, col)
+                if (jdbcBatchSize != null) {
+                    // Flush with the batch size of this transaction (otherwise done on commit with the old batch size):
+                    emgr.entityManager.flush()
                 }
+            } finally {
+                session.jdbcBatchSize = oldJdbcBatchSize
+            }
+        }
+    }
+
+    private fun <O : ExtendedBaseDO<Int>> internalSaveOrUpdate(emgr: PfEmgr, baseDao: BaseDao<O>, col: Collection<O>) {
+        for (obj in col) {
+            if (obj.id != null) {
+                preInternalUpdate(baseDao, obj, false)
+                val res = ResultObject<O>()
+                internalUpdate(emgr, baseDao, obj, false, res)
+                postInternalUpdate<O>(baseDao, obj, res)
+            } else {
+                preInternalSave(baseDao, obj)
+                internalSave(emgr, baseDao, obj)
+                postInternalSave(baseDao, obj)
             }
         }
     }
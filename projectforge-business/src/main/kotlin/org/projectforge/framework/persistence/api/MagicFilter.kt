@@ -36,6 +36,15 @@ class MagicFilter(
         var entries: MutableList<MagicFilterEntry> = mutableListOf(),
         var sortAndLimitMaxRowsWhileSelect: Boolean = true,
         var maxRows: Int = 50,
+        /**
+         * If true, [maxRows] entries are returned per page, and the next page is queried by [cursor].
+         * @see QueryFilter.keysetPagination
+         */
+        var keysetPagination: Boolean = false,
+        /**
+         * For keyset pagination: the nextCursor of the previous result set.
+         */
+        var cursor: String? = null,
         /**
          * If true, only deleted entries will be shown. If false, no deleted entries will be shown. If null, all entries will be shown.
          */
@@ -79,6 +88,7 @@ class MagicFilter(
         entries.clear()
         sortProperties.clear()
         sortAndLimitMaxRowsWhileSelect = true
+        cursor = null
         deleted = false
         searchHistory = null
         extended.clear()
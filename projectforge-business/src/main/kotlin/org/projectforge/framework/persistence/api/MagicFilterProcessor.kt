@@ -41,6 +41,8 @@ object MagicFilterProcessor {
         queryFilter.maxRows = magicFilter.maxRows
         queryFilter.searchHistory = magicFilter.searchHistory
         queryFilter.sortAndLimitMaxRowsWhileSelect = magicFilter.sortAndLimitMaxRowsWhileSelect
+        queryFilter.keysetPagination = magicFilter.keysetPagination
+        queryFilter.cursor = magicFilter.cursor
         queryFilter.sortProperties = magicFilter.sortProperties.map {
             var property = it.property
             if (property.indexOf('.') > 0)
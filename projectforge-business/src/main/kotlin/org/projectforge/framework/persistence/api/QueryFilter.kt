@@ -105,6 +105,25 @@ class QueryFilter @JvmOverloads constructor(filter: BaseSearchFilter? = null,
 
     var sortAndLimitMaxRowsWhileSelect: Boolean = true
 
+    /**
+     * If true, the result is a page of [maxRows] entries in a unique order (the sort properties and the id as tie breaker).
+     * The next page is queried by setting [cursor] (keyset pagination instead of offsets, for criteria as well as for
+     * full text queries).
+     */
+    var keysetPagination: Boolean = false
+
+    /**
+     * For keyset pagination: the [nextCursor] of the previous page (the encoded sort values of its last entry). Only
+     * entries following this entry will be returned. If null, the first page will be returned.
+     */
+    var cursor: String? = null
+
+    /**
+     * For keyset pagination: set by the query to the cursor of the next page, or null, if the returned page is the last
+     * one.
+     */
+    var nextCursor: String? = null
+
     fun getExtendedBooleanValue(key: String): Boolean {
         val value = extended[key] ?: return false
         if (value is Boolean) {
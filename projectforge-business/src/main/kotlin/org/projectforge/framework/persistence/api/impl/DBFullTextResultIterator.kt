@@ -23,12 +23,14 @@
 
 package org.projectforge.framework.persistence.api.impl
 
-import org.apache.commons.lang3.builder.CompareToBuilder
 import org.apache.lucene.analysis.standard.ClassicAnalyzer
 import org.apache.lucene.queryparser.classic.MultiFieldQueryParser
 import org.apache.lucene.queryparser.classic.QueryParser
+import org.hibernate.ScrollMode
+import org.hibernate.ScrollableResults
+import org.hibernate.Session
+import org.hibernate.search.Search
 import org.hibernate.search.jpa.FullTextEntityManager
-import org.projectforge.common.BeanHelper
 import org.projectforge.framework.persistence.api.BaseDao
 import org.projectforge.framework.persistence.api.ExtendedBaseDO
 import org.projectforge.framework.persistence.api.QueryFilter
@@ -37,8 +39,15 @@ import org.projectforge.framework.persistence.user.api.ThreadLocalUserContext
 import org.slf4j.LoggerFactory
 import java.text.Collator
 
-private const val MAX_RESULTS = 100
+/**
+ * Default number of entities loaded per batch (by id) while scrolling through the hits of a full text query.
+ */
+internal const val FULLTEXT_DEFAULT_BLOCK_SIZE = 100
 
+/**
+ * The Lucene query is executed only once. The hits are scrolled and the entities are loaded by id in blocks of
+ * [blockSize] (instead of re-executing the query for every block with a new offset).
+ */
 internal class DBFullTextResultIterator<O : ExtendedBaseDO<Int>>(
         val baseDao: BaseDao<O>,
         private val fullTextEntityManager: FullTextEntityManager,
@@ -46,14 +55,13 @@ internal class DBFullTextResultIterator<O : ExtendedBaseDO<Int>>(
         private val filter: QueryFilter,
         val sortProperties: Array<SortProperty>,
         val fullTextQuery: org.apache.lucene.search.Query? = null, // Full text query
-        val multiFieldQuery: List<String>? = null)     // MultiField query
+        val multiFieldQuery: List<String>? = null,     // MultiField query
+        private val blockSize: Int = FULLTEXT_DEFAULT_BLOCK_SIZE)
     : DBResultIterator<O> {
     private val log = LoggerFactory.getLogger(DBFullTextResultIterator::class.java)
-    private var result: List<O>
-    private var resultIndex = -1
-    private var firstIndex = 0
     private val searchClassInfo = HibernateSearchMeta.getClassInfo(baseDao)
     private val searchFields: Array<String>
+    private val scrollableResults: ScrollableResults?
 
     init {
         if (log.isDebugEnabled && !multiFieldQuery.isNullOrEmpty()) {
@@ -63,7 +71,15 @@ internal class DBFullTextResultIterator<O : ExtendedBaseDO<Int>>(
         val fullTextSearchFields = filter.fullTextSearchFields
         searchFields = if (fullTextSearchFields.isNullOrEmpty()) searchClassInfo.stringFieldNames else fullTextSearchFields
         log.debug("Using search fields: ${searchFields.joinToString(", ")}")
-        result = nextResultBlock()
+        val query = fullTextQuery ?: parseMultiFieldQuery()
+        scrollableResults = if (query != null) {
+            val fullTextSession = Search.getFullTextSession(fullTextEntityManager.unwrap(Session::class.java))
+            fullTextSession.createFullTextQuery(query, baseDao.doClass)
+                    .setFetchSize(blockSize)
+                    .scroll(ScrollMode.FORWARD_ONLY)
+        } else {
+            null
+        }
     }
 
     override fun next(): O? {
@@ -85,90 +101,101 @@ internal class DBFullTextResultIterator<O : ExtendedBaseDO<Int>>(
         }
     }
 
+    /**
+     * The sort keys of every row (property values, [java.text.CollationKey] for strings) are computed only once per row
+     * and not O(n log n) times by the comparator.
+     */
     override fun sort(list: List<O>): List<O> {
-        val collator = Collator.getInstance(ThreadLocalUserContext.getLocale())
-        val errorProperties = mutableListOf<String>()
-        return list.sortedWith(object : Comparator<O> {
-            override fun compare(o1: O, o2: O): Int {
-                if (sortProperties.isNullOrEmpty()) {
-                    return 0
-                }
-                val ctb = CompareToBuilder()
-                for (sortProperty in sortProperties) {
-                    try {
-                        val val1 = BeanHelper.getNestedProperty(o1, sortProperty.property)
-                        val val2 = BeanHelper.getNestedProperty(o2, sortProperty.property)
-                        if (val1 is String) {
-                            // Strings should be compared by using locale dependent collator (especially for german Umlaute)
-                            if (sortProperty.ascending) {
-                                ctb.append(val1, val2, collator)
-                            } else {
-                                ctb.append(val2, val1, collator)
-                            }
-                        } else if (val1 is Comparable<*>) {
-                            if (sortProperty.ascending) {
-                                ctb.append(val1, val2)
-                            } else {
-                                ctb.append(val2, val1)
-                            }
-                        } else {
-                            if (sortProperty.ascending) {
-                                ctb.append(val1?.toString(), val2?.toString())
-                            } else {
-                                ctb.append(val2?.toString(), val1?.toString())
-                            }
-                        }
-                    } catch (ex: Exception) {
-                        if (!errorProperties.contains(ex.message)) {
-                            errorProperties.add("${ex.message}")
-                            log.warn("Ignore sort property (OK): ${ex.message}")
-                        }
-                    }
-                }
-                return ctb.toComparison()
-            }
-        })
+        return sortAfter(list, null)
     }
 
-    private fun internalNext(): O? {
-        if (result.isEmpty()) {
-            return null
+    override fun sortAfter(list: List<O>, anchorValues: List<Any?>?, maxRows: Int): List<O> {
+        if (sortProperties.isNullOrEmpty() || (list.size < 2 && anchorValues == null)) {
+            return list.take(maxRows)
+        }
+        val collator = Collator.getInstance(ThreadLocalUserContext.getLocale())
+        val errorProperties = mutableSetOf<String>()
+        var rows = list.map { SortRow(it, getSortKeys(it, collator, errorProperties)) }
+        if (anchorValues != null) {
+            val anchorKeys = Array(sortProperties.size) { idx -> anchorValues[idx].let { if (it is String) collator.getCollationKey(it) else it } }
+            rows = rows.filter { compareRows(it.keys, anchorKeys) > 0 }
         }
-        if (++resultIndex >= result.size) {
-            if (result.size < MAX_RESULTS)
-                return null
-            result = nextResultBlock()
-            if (result.isEmpty()) {
-                return null
+        return rows.sortedWith(Comparator { row1, row2 -> compareRows(row1.keys, row2.keys) }).take(maxRows).map { it.obj }
+    }
+
+    private fun getSortKeys(obj: O, collator: Collator, errorProperties: MutableSet<String>): Array<Any?> {
+        return Array(sortProperties.size) { getSortKey(obj, sortProperties[it].property, collator, errorProperties) }
+    }
+
+    private fun compareRows(keys1: Array<Any?>, keys2: Array<Any?>): Int {
+        for ((idx, sortProperty) in sortProperties.withIndex()) {
+            val result = compareSortKeys(keys1[idx], keys2[idx])
+            if (result != 0) {
+                return if (sortProperty.ascending) result else -result
             }
-            resultIndex = 0
         }
-        return result[resultIndex]
+        return 0
     }
 
-    private fun nextResultBlock(): List<O> {
-        val fullTextQuery = if (fullTextQuery != null) {
-            fullTextEntityManager.createFullTextQuery(fullTextQuery, baseDao.doClass)
-        } else {
-            val queryString = multiFieldQuery?.joinToString(" ") ?: ""
-            val parser = MultiFieldQueryParser(searchFields, ClassicAnalyzer())
-            parser.defaultOperator = QueryParser.Operator.AND
-            parser.allowLeadingWildcard = true
-            var query: org.apache.lucene.search.Query? = null
-            try {
-                query = parser.parse(queryString)
-            } catch (ex: org.apache.lucene.queryparser.classic.ParseException) {
-                val errorMsg = ("Lucene error message: '${ex.message}'  (for ${baseDao.doClass.getSimpleName()}: '$queryString').")
-                // TODO feedback
-                log.error(errorMsg)
+    private class SortRow<O>(val obj: O, val keys: Array<Any?>)
+
+    private fun getSortKey(obj: O, property: String, collator: Collator, errorProperties: MutableSet<String>): Any? {
+        try {
+            // Entities are ordered by their id (as by the data base and as encoded by DBKeysetPagination.createCursor).
+            return when (val value = DBKeysetPagination.getSortValue(obj, property)) {
+                null -> null
+                // Strings should be compared by using locale dependent collator (especially for german Umlaute)
+                is String -> collator.getCollationKey(value)
+                is Comparable<*> -> value
+                else -> value.toString()
+            }
+        } catch (ex: Exception) {
+            if (errorProperties.add("${ex.message}")) {
+                log.warn("Ignore sort property (OK): ${ex.message}")
             }
-            fullTextEntityManager.createFullTextQuery(query, baseDao.doClass)
+            return null
+        }
+    }
+
+    /**
+     * Nulls first, values of different (not comparable) types are compared by their string representation.
+     */
+    private fun compareSortKeys(key1: Any?, key2: Any?): Int {
+        if (key1 === key2) return 0
+        if (key1 == null) return -1
+        if (key2 == null) return 1
+        @Suppress("UNCHECKED_CAST")
+        return when {
+            key1 is Comparable<*> && key1.javaClass.isInstance(key2) -> (key1 as Comparable<Any>).compareTo(key2)
+            key2 is Comparable<*> && key2.javaClass.isInstance(key1) -> -(key2 as Comparable<Any>).compareTo(key1)
+            else -> key1.toString().compareTo(key2.toString())
         }
-        fullTextQuery.firstResult = firstIndex
-        fullTextQuery.maxResults = MAX_RESULTS
+    }
 
-        firstIndex += MAX_RESULTS
+    override fun close() {
+        scrollableResults?.close()
+    }
+
+    private fun internalNext(): O? {
+        if (scrollableResults == null || !scrollableResults.next()) {
+            return null
+        }
         @Suppress("UNCHECKED_CAST")
-        return fullTextQuery.resultList as List<O> // return a list of managed objects
+        return scrollableResults.get(0) as O
+    }
+
+    private fun parseMultiFieldQuery(): org.apache.lucene.search.Query? {
+        val queryString = multiFieldQuery?.joinToString(" ") ?: ""
+        val parser = MultiFieldQueryParser(searchFields, ClassicAnalyzer())
+        parser.defaultOperator = QueryParser.Operator.AND
+        parser.allowLeadingWildcard = true
+        try {
+            return parser.parse(queryString)
+        } catch (ex: org.apache.lucene.queryparser.classic.ParseException) {
+            val errorMsg = ("Lucene error message: '${ex.message}'  (for ${baseDao.doClass.getSimpleName()}: '$queryString').")
+            // TODO feedback
+            log.error(errorMsg)
+        }
+        return null
     }
 }
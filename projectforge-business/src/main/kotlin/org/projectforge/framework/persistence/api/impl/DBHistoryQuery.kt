@@ -29,15 +29,39 @@ import org.projectforge.framework.persistence.history.entities.PfHistoryMasterDO
 import org.slf4j.LoggerFactory
 import java.util.*
 import javax.persistence.EntityManager
+import javax.persistence.criteria.CriteriaBuilder
 import javax.persistence.criteria.Predicate
+import javax.persistence.criteria.Root
 
 internal object DBHistoryQuery {
     private const val MAX_RESULT_SIZE = 100000 // Limit result list to 100000
 
-    fun searchHistoryEntryByCriteria(entityManager: EntityManager, clazz: Class<*>, searchParams: DBHistorySearchParams): Set<Long> {
+    /**
+     * Creates an exists predicate (semi join) for the criteria query of the entities, so the history entries are
+     * filtered by the data base and needn't be loaded.
+     */
+    fun createExistsPredicate(ctx: DBCriteriaContext<*>, searchParams: DBHistorySearchParams): Predicate {
+        val subquery = ctx.cr.subquery(Long::class.java)
+        val root = subquery.from(PfHistoryMasterDO::class.java)
+        val predicates = createPredicates(ctx.cb, root, ctx.entityClass, searchParams)
+        predicates.add(ctx.cb.equal(root.get<Long>("entityId"), ctx.root.get<Int>("id")))
+        return ctx.cb.exists(subquery.select(root.get("entityId")).where(*predicates.toTypedArray()))
+    }
+
+    /**
+     * @return The ids of the matching entities.
+     */
+    fun searchHistoryEntryByCriteria(entityManager: EntityManager, clazz: Class<*>, searchParams: DBHistorySearchParams): BitSet {
         val cb = entityManager.criteriaBuilder
         val cr = cb.createQuery(Long::class.java)
         val root = cr.from(PfHistoryMasterDO::class.java)
+        val predicates = createPredicates(cb, root, clazz, searchParams)
+        val query = entityManager.createQuery(cr.select(root.get("entityId")).where(*predicates.toTypedArray()))
+        query.maxResults = MAX_RESULT_SIZE
+        return toBitSet(query.resultList)
+    }
+
+    private fun createPredicates(cb: CriteriaBuilder, root: Root<PfHistoryMasterDO>, clazz: Class<*>, searchParams: DBHistorySearchParams): MutableList<Predicate> {
         val predicates = mutableListOf<Predicate>()
         predicates.add(cb.equal(root.get<String>("entityName"), clazz.name))
         if (searchParams.modifiedByUserId != null) {
@@ -56,16 +80,13 @@ internal object DBHistoryQuery {
         if (!searchParams.searchHistory.isNullOrBlank()) {
             log.warn("Search string for history search is given but is ignored by criteria search. Use full text search instead: ${ToStringUtil.toJsonString(searchParams)}")
         }
-        val query = entityManager.createQuery(cr.select(root.get("entityId")).where(*predicates.toTypedArray()))
-        query.maxResults = MAX_RESULT_SIZE
-        val result = query.resultList
-        if (result.isNullOrEmpty()) {
-            return emptySet()
-        }
-        return result.toSet()
+        return predicates
     }
 
-    fun searchHistoryEntryByFullTextQuery(entityManager: EntityManager, clazz: Class<*>, searchParams: DBHistorySearchParams): Set<Long> {
+    /**
+     * @return The ids of the matching entities.
+     */
+    fun searchHistoryEntryByFullTextQuery(entityManager: EntityManager, clazz: Class<*>, searchParams: DBHistorySearchParams): BitSet {
         val fullTextEntityManager = org.hibernate.search.jpa.Search.getFullTextEntityManager(entityManager)
         val queryBuilder = fullTextEntityManager.searchFactory.buildQueryBuilder().forEntity(PfHistoryMasterDO::class.java).get()
         var boolJunction: BooleanJunction<*> = queryBuilder.bool()
@@ -104,15 +125,17 @@ internal object DBHistoryQuery {
         val fullTextQuery = fullTextEntityManager.createFullTextQuery(boolJunction.createQuery(), PfHistoryMasterDO::class.java)
         fullTextQuery.maxResults = MAX_RESULT_SIZE
         fullTextQuery.setProjection("entityId")
-        @Suppress("UNCHECKED_CAST")
-        val result = fullTextQuery.getResultList()// as List<Long> // return a list of managed objects
+        val result = fullTextQuery.getResultList() // List of projections
+        return toBitSet(result.map { (it as Array<*>)[0] as Long })
+    }
 
-        if (result.isNullOrEmpty()) {
-            return emptySet()
-        }
-        return result.map {
-            (it as Array<*>)[0] as Long
-        }.toSet()
+    /**
+     * The entity ids are integers, so a bit set is much smaller than a set of (boxed) longs.
+     */
+    private fun toBitSet(ids: List<Long>?): BitSet {
+        val result = BitSet()
+        ids?.forEach { result.set(it.toInt()) }
+        return result
     }
 
     private val log = LoggerFactory.getLogger(DBHistoryQuery::class.java)
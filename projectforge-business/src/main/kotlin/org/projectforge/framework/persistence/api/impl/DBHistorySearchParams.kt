@@ -23,6 +23,7 @@
 
 package org.projectforge.framework.persistence.api.impl
 
+import com.fasterxml.jackson.annotation.JsonIgnore
 import org.projectforge.framework.time.PFDateTime
 
 /**
@@ -31,4 +32,11 @@ import org.projectforge.framework.time.PFDateTime
 data class DBHistorySearchParams(var modifiedByUserId: Int? = null,
                                  var modifiedFrom: PFDateTime? = null,
                                  var modifiedTo: PFDateTime? = null,
-                                 var searchHistory: String? = null)
+                                 var searchHistory: String? = null) {
+    /**
+     * True, if any history search param is given.
+     */
+    val isGiven: Boolean
+        @JsonIgnore
+        get() = modifiedByUserId != null || modifiedFrom != null || modifiedTo != null || !searchHistory.isNullOrBlank()
+}
@@ -0,0 +1,199 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2020 Micromata GmbH, Germany (www.micromata.com)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+
+
+package org.projectforge.framework.persistence.api.impl
+
+import com.fasterxml.jackson.databind.ObjectMapper
+import org.projectforge.common.BeanHelper
+import org.projectforge.common.PropertyAccessors
+import org.projectforge.framework.persistence.api.BaseDO
+import org.projectforge.framework.persistence.api.SortProperty
+import org.slf4j.LoggerFactory
+import java.math.BigDecimal
+import java.math.BigInteger
+import java.nio.charset.StandardCharsets
+import java.time.Instant
+import java.time.LocalDate
+import java.time.LocalDateTime
+import java.util.*
+
+/**
+ * Keyset pagination: the next page is selected by the sort values and id of the last entry of the previous page
+ * (anchor) instead of an offset. The anchor values are encoded in the cursor itself, so the anchor entry doesn't need to
+ * exist anymore, nor to have the same sort values when the next page is queried.
+ *
+ * The result has to be ordered by [getSortProperties] (criteria queries with nulls last, see
+ * [DBQueryBuilderByCriteria.addOrder]).
+ */
+internal object DBKeysetPagination {
+    private val log = LoggerFactory.getLogger(DBKeysetPagination::class.java)
+
+    /**
+     * Only the first sort properties are used for ordering (see [DBQueryBuilder]).
+     */
+    const val MAX_SORT_PROPERTIES = 3
+
+    private val objectMapper = ObjectMapper()
+
+    /**
+     * The sort values of the last entry of the previous page.
+     * @param fields The fields to compare: entities are compared by their id ("task.id" for sort property "task").
+     */
+    class Anchor(val sortProperties: List<SortProperty>, val fields: List<String>, val values: List<Any?>)
+
+    /**
+     * The sort properties used for ordering as well as for the anchor: the first [MAX_SORT_PROPERTIES] sort properties
+     * and the id as tie breaker (unique order).
+     */
+    fun getSortProperties(sortProperties: List<SortProperty>): List<SortProperty> {
+        val result = sortProperties.take(MAX_SORT_PROPERTIES).toMutableList()
+        if (result.none { it.property == "id" }) {
+            result.add(SortProperty.asc("id"))
+        }
+        return result
+    }
+
+    /**
+     * @return The sort value of the given object, entities are represented by their id.
+     */
+    fun getSortValue(obj: Any, property: String): Any? {
+        val value = PropertyAccessors.getNestedProperty(obj, property)
+        return if (value is BaseDO<*>) value.id else value
+    }
+
+    /**
+     * Encodes the sort properties and sort values of the given object (the last entry of a page) as cursor for the next
+     * page.
+     * @return The cursor or null, if a sort value isn't supported.
+     */
+    fun createCursor(sortProperties: List<SortProperty>, obj: Any): String? {
+        val values = mutableListOf<String?>()
+        for (sortProperty in sortProperties) {
+            val value = getSortValue(obj, sortProperty.property)
+            values.add(when (value) {
+                null -> null
+                is Date -> value.time.toString()
+                is Enum<*> -> value.name
+                is String, is Number, is Boolean, is LocalDate, is LocalDateTime, is Instant -> value.toString()
+                else -> {
+                    log.warn("Keyset pagination not supported for sort property '${obj.javaClass.simpleName}.${sortProperty.property}' of type ${value.javaClass.name}.")
+                    return null
+                }
+            })
+        }
+        val json = objectMapper.writeValueAsString(listOf(getSpec(sortProperties), values))
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(json.toByteArray(StandardCharsets.UTF_8))
+    }
+
+    /**
+     * Decodes the given cursor.
+     * @return The anchor or null, if the cursor is invalid or was created for other sort properties.
+     */
+    fun parseCursor(cursor: String, sortProperties: List<SortProperty>, doClass: Class<*>): Anchor? {
+        try {
+            val json = String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8)
+            val list = objectMapper.readValue(json, List::class.java)
+            val spec = list[0] as List<*>
+            val values = list[1] as List<*>
+            if (spec != getSpec(sortProperties) || values.size != sortProperties.size) {
+                log.warn("Cursor of keyset pagination doesn't match the sort properties ${getSpec(sortProperties).joinToString()} of ${doClass.simpleName}.")
+                return null
+            }
+            val fields = mutableListOf<String>()
+            val anchorValues = mutableListOf<Any?>()
+            sortProperties.forEachIndexed { idx, sortProperty ->
+                val type = getPropertyType(doClass, sortProperty.property)
+                val isEntity = BaseDO::class.java.isAssignableFrom(type)
+                fields.add(if (isEntity) "${sortProperty.property}.id" else sortProperty.property)
+                anchorValues.add((values[idx] as String?)?.let { parseValue(it, if (isEntity) Integer::class.java else type) })
+            }
+            return Anchor(sortProperties, fields, anchorValues)
+        } catch (ex: Exception) {
+            log.warn("Invalid cursor of keyset pagination for ${doClass.simpleName}: ${ex.message}")
+            return null
+        }
+    }
+
+    /**
+     * Creates a predicate matching all entries following the anchor in the given order (nulls last):
+     * (s1 after v1) or (s1 = v1 and s2 after v2) or ... or (s1 = v1 and ... and sn after vn). The last sort property is
+     * always unique (id).
+     */
+    fun createPredicate(anchor: Anchor): DBPredicate {
+        val branches = mutableListOf<DBPredicate>()
+        val equals = mutableListOf<DBPredicate>()
+        anchor.sortProperties.forEachIndexed { idx, sortProperty ->
+            val field = anchor.fields[idx]
+            val value = anchor.values[idx]
+            if (value == null) {
+                // Nulls last: no value follows null, only entries with null and greater successive sort values.
+                equals.add(DBPredicate.IsNull(field))
+                return@forEachIndexed
+            }
+            @Suppress("UNCHECKED_CAST")
+            val comparable = value as Comparable<Any>
+            val after = if (sortProperty.ascending) DBPredicate.Greater(field, comparable) else DBPredicate.Less(field, comparable)
+            branches.add(DBPredicate.And(*equals.toTypedArray(), DBPredicate.Or(after, DBPredicate.IsNull(field))))
+            equals.add(DBPredicate.Equal(field, value))
+        }
+        return DBPredicate.Or(*branches.toTypedArray())
+    }
+
+    private fun getSpec(sortProperties: List<SortProperty>): List<String> {
+        return sortProperties.map { "${it.property} ${it.sortOrder}" }
+    }
+
+    private fun getPropertyType(doClass: Class<*>, property: String): Class<*> {
+        var type = doClass
+        for (name in property.split('.')) {
+            val getter = BeanHelper.determineGetter(type, name)
+                    ?: throw IllegalArgumentException("Property '$property' not found.")
+            type = getter.returnType
+        }
+        return type
+    }
+
+    private fun parseValue(value: String, type: Class<*>): Any {
+        return when {
+            type == String::class.java -> value
+            type == Integer::class.java || type == Integer.TYPE -> value.toInt()
+            type == java.lang.Long::class.java || type == java.lang.Long.TYPE -> value.toLong()
+            type == java.lang.Short::class.java || type == java.lang.Short.TYPE -> value.toShort()
+            type == java.lang.Double::class.java || type == java.lang.Double.TYPE -> value.toDouble()
+            type == java.lang.Float::class.java || type == java.lang.Float.TYPE -> value.toFloat()
+            type == java.lang.Boolean::class.java || type == java.lang.Boolean.TYPE -> value.toBoolean()
+            type == BigDecimal::class.java -> BigDecimal(value)
+            type == BigInteger::class.java -> BigInteger(value)
+            type == java.sql.Timestamp::class.java -> java.sql.Timestamp(value.toLong())
+            type == java.sql.Date::class.java -> java.sql.Date(value.toLong())
+            Date::class.java.isAssignableFrom(type) -> Date(value.toLong())
+            type == LocalDate::class.java -> LocalDate.parse(value)
+            type == LocalDateTime::class.java -> LocalDateTime.parse(value)
+            type == Instant::class.java -> Instant.parse(value)
+            type.isEnum -> type.enumConstants.first { (it as Enum<*>).name == value }
+            else -> throw UnsupportedOperationException("Unsupported type ${type.name}.")
+        }
+    }
+}
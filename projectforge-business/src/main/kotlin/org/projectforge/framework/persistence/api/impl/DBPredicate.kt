@@ -23,7 +23,7 @@
 
 package org.projectforge.framework.persistence.api.impl
 
-import org.projectforge.common.BeanHelper
+import org.projectforge.common.PropertyAccessors
 import org.projectforge.framework.ToStringUtil
 import org.projectforge.framework.persistence.jpa.impl.HibernateSearchFilterUtils
 import org.slf4j.LoggerFactory
@@ -54,6 +54,14 @@ abstract class DBPredicate(
         throw UnsupportedOperationException("Operation '${this.javaClass}' not supported by full text query.")
     }
 
+    /**
+     * @return true, if the field (and all fields of nested predicates) is indexed by the full text index, or if no
+     * field is given.
+     */
+    internal open fun fullTextFieldsSupported(qb: DBQueryBuilderByFullText<*>): Boolean {
+        return field == null || qb.fieldSupported(field)
+    }
+
     /**
      * As Json
      */
@@ -117,7 +125,7 @@ abstract class DBPredicate(
     }
 
     class IsIn<T>(field: String, vararg val values: T)
-        : DBPredicate(field, false) {
+        : DBPredicate(field, true) {
         override fun match(obj: Any): Boolean {
             return fieldValueMatch(obj, field!!) { innerMatch(it) }
         }
@@ -139,7 +147,7 @@ abstract class DBPredicate(
         override fun asPredicate(ctx: DBCriteriaContext<*>): Predicate {
             if (log.isDebugEnabled) log.debug("Adding criteria search (${ctx.entityName}): [in] cb.in($field.in[${values.joinToString(", ", "'", "'")}])")
             if (values.isNullOrEmpty()) {
-                if (log.isDebugEnabled) log.debug("Adding criteria search (${ctx.entityName}): [in] cb.isNull('$field'), '${values[0]}') (uses equal, because no value is given).")
+                if (log.isDebugEnabled) log.debug("Adding criteria search (${ctx.entityName}): [in] cb.isNull('$field') (uses isNull, because no value is given).")
                 return ctx.cb.isNull(ctx.getField<Any>(field!!))
             }
             if (values.size == 1) {
@@ -152,6 +160,17 @@ abstract class DBPredicate(
             }
             return inClause
         }
+
+        /**
+         * An empty in clause isn't supported by full text queries.
+         */
+        override fun fullTextFieldsSupported(qb: DBQueryBuilderByFullText<*>): Boolean {
+            return values.any { it != null } && super.fullTextFieldsSupported(qb)
+        }
+
+        override fun addTo(qb: DBQueryBuilderByFullText<*>) {
+            qb.isIn(field!!, values)
+        }
     }
 
     class Between<T : Comparable<T>>(field: String, val from: T, val to: T)
@@ -463,6 +482,10 @@ abstract class DBPredicate(
             return result
         }
 
+        override fun fullTextFieldsSupported(qb: DBQueryBuilderByFullText<*>): Boolean {
+            return predicates.all { it.fullTextFieldsSupported(qb) }
+        }
+
         override fun addTo(qb: DBQueryBuilderByFullText<*>) {
             qb.and(*predicates.toTypedArray())
         }
@@ -483,6 +506,19 @@ abstract class DBPredicate(
             return this
         }
 
+        override val fullTextSupport: Boolean
+            get() {
+                if (predicates.isEmpty()) {
+                    return false
+                }
+                for (predicate in predicates) {
+                    if (!predicate.fullTextSupport) {
+                        return false
+                    }
+                }
+                return true
+            }
+
         override fun match(obj: Any): Boolean {
             if (predicates.isNullOrEmpty()) {
                 return false
@@ -501,6 +537,14 @@ abstract class DBPredicate(
             if (log.isDebugEnabled) log.debug("Adding criteria search (${ctx.entityName}): [or] cb.or(...) ended.")
             return result
         }
+
+        override fun fullTextFieldsSupported(qb: DBQueryBuilderByFullText<*>): Boolean {
+            return predicates.all { it.fullTextFieldsSupported(qb) }
+        }
+
+        override fun addTo(qb: DBQueryBuilderByFullText<*>) {
+            qb.or(*predicates.toTypedArray())
+        }
     }
 
     /**
@@ -514,13 +558,13 @@ abstract class DBPredicate(
         if (!field.contains('.')) {
             return match(getProperty(obj, field))
         }
-        return fieldValueMatch(obj, field.split('.'), 0, match)
+        return fieldValueMatch(obj, PropertyAccessors.getPath(field), 0, match)
     }
 
     /**
      * For recursive processing of nested properties...
      */
-    private fun fieldValueMatch(obj: Any?, path: List<String>, idx: Int, match: (value: Any?) -> Boolean): Boolean {
+    private fun fieldValueMatch(obj: Any?, path: Array<String>, idx: Int, match: (value: Any?) -> Boolean): Boolean {
         val nestedObj = getProperty(obj, path[idx])
         if (nestedObj == null) {
             return match(nestedObj)
@@ -565,10 +609,10 @@ abstract class DBPredicate(
     private fun getProperty(obj: Any?, field: String): Any? {
         if (obj == null)
             return null
-        return BeanHelper.getProperty(obj, field)
+        return PropertyAccessors.getProperty(obj, field)
     }
 
-    private fun hasNext(path: List<String>, idx: Int): Boolean {
+    private fun hasNext(path: Array<String>, idx: Int): Boolean {
         return path.size > idx + 1
     }
 }
@@ -28,11 +28,14 @@ import org.projectforge.business.multitenancy.TenantService
 import org.projectforge.framework.access.AccessChecker
 import org.projectforge.framework.persistence.api.BaseDao
 import org.projectforge.framework.persistence.api.ExtendedBaseDO
+import org.projectforge.framework.persistence.api.QUERY_FILTER_MAX_ROWS
 import org.projectforge.framework.persistence.api.QueryFilter
 import org.projectforge.framework.persistence.jpa.PfEmgrFactory
 import org.projectforge.framework.persistence.user.api.ThreadLocalUserContext
+import org.projectforge.framework.persistence.user.entities.PFUserDO
 import org.slf4j.LoggerFactory
 import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.beans.factory.annotation.Value
 import org.springframework.stereotype.Service
 import org.springframework.transaction.annotation.Propagation
 import org.springframework.transaction.annotation.Transactional
@@ -52,10 +55,18 @@ open class DBQuery {
     @Autowired
     private lateinit var tenantService: TenantService
 
+    /**
+     * Number of entities loaded per batch while scrolling through the hits of a full text query.
+     */
+    @Value("\${projectforge.fullTextSearch.blockSize:$FULLTEXT_DEFAULT_BLOCK_SIZE}")
+    private var fullTextBlockSize: Int = FULLTEXT_DEFAULT_BLOCK_SIZE
+
     /**
      * Gets the list filtered by the given filter.
      *
      * @param filter
+     * @param statistics If given, the numbers of loaded and returned entities of this query are counted (e. g. for
+     * checking whether the data base query is selective enough).
      * @return
      */
     @JvmOverloads
@@ -63,7 +74,8 @@ open class DBQuery {
                                                filter: QueryFilter,
                                                customResultFilters: List<CustomResultFilter<O>>?,
                                                checkAccess: Boolean = true,
-                                               ignoreTenant: Boolean = false)
+                                               ignoreTenant: Boolean = false,
+                                               statistics: DBQueryStatistics? = null)
             : List<O> {
         if (checkAccess) {
             baseDao.checkLoggedInUserSelectAccess()
@@ -80,23 +92,62 @@ open class DBQuery {
         try {
             val begin = System.currentTimeMillis()
             val dbFilter = filter.createDBFilter()
+            val loggedInUser = ThreadLocalUserContext.getUser()
+            val superAdmin = TenantChecker.isSuperAdmin<ExtendedBaseDO<Int>>(loggedInUser)
+            // Row level select access (if supported by the dao) is part of the data base query. The access check of
+            // every result object in createList is still done as safety net.
+            val selectAccessPredicate = if (checkAccess && loggedInUser != null) baseDao.getSelectAccessPredicate(loggedInUser, superAdmin) else null
+            filter.nextCursor = null
+            val keysetAnchor = getKeysetAnchor(baseDao, filter, dbFilter)
+            if (filter.keysetPagination && filter.cursor != null && keysetAnchor == null) {
+                return listOf()
+            }
             return emgrFactory.runRoTrans { emgr ->
                 val em = emgr.entityManager
+                val historSearchParams = DBHistorySearchParams(filter.modifiedByUserId, filter.modifiedFrom, filter.modifiedTo, filter.searchHistory)
                 val queryBuilder = DBQueryBuilder(baseDao, em, tenantService, filter, dbFilter,
                         // Check here mixing fulltext and criteria searches in comparison to full text searches and DBResultMatchers.
-                        ignoreTenant = ignoreTenant)
+                        ignoreTenant = ignoreTenant,
+                        selectAccessPredicate = selectAccessPredicate,
+                        keysetPagination = filter.keysetPagination,
+                        keysetAnchor = keysetAnchor,
+                        historySearchParams = historSearchParams,
+                        fullTextBlockSize = fullTextBlockSize)
 
-                val dbResultIterator: DBResultIterator<O>
-                dbResultIterator = queryBuilder.result()
-                val historSearchParams = DBHistorySearchParams(filter.modifiedByUserId, filter.modifiedFrom, filter.modifiedTo, filter.searchHistory)
-                var list = createList(baseDao, em, dbResultIterator, customResultFilters, queryBuilder.resultPredicates, dbFilter, historSearchParams, checkAccess)
-                list = dbResultIterator.sort(list)
+                val queryStatistics = statistics ?: DBQueryStatistics()
+                val keysetPageSize = if (queryBuilder.keysetPaginationByResultList) filter.maxRows else null
+                if (keysetPageSize != null) {
+                    // Full text results are sorted after querying, so the page can't be limited while iterating: the
+                    // sort values aren't part of the index. Therefore every page scans (and loads) all hits up to
+                    // QUERY_FILTER_MAX_ROWS, only the kept entries are bounded by the page size.
+                    dbFilter.maxRows = QUERY_FILTER_MAX_ROWS
+                }
+                // Custom result filters get the list of all matching entries (e. g. for detecting doublets), so the
+                // list is trimmed to the page not until all filters are applied:
+                val keepKeysetPageSize = if (customResultFilters.isNullOrEmpty()) keysetPageSize else null
+                val list = queryBuilder.result().use { dbResultIterator ->
+                    val result = createList(baseDao, em, dbResultIterator, customResultFilters, queryBuilder.resultPredicates, dbFilter,
+                            if (queryBuilder.historyFilterApplied) null else historSearchParams, checkAccess, loggedInUser, superAdmin, queryStatistics,
+                            keepKeysetPageSize, keysetAnchor?.values)
+                    if (keysetPageSize != null) {
+                        val page = dbResultIterator.sortAfter(result, keysetAnchor?.values, keysetPageSize)
+                        queryStatistics.resultRows = page.size
+                        page
+                    } else {
+                        dbResultIterator.sort(result)
+                    }
+                }
+                if (filter.keysetPagination && list.size >= filter.maxRows) {
+                    filter.nextCursor = DBKeysetPagination.createCursor(queryBuilder.sortProperties, list.last())
+                }
 
                 val end = System.currentTimeMillis()
                 if (end - begin > 2000) {
                     // Show only slow requests.
                     log.info(
-                            "BaseDao.getList for entity class: " + baseDao.entityClass.simpleName + " took: " + (end - begin) + " ms (>2s).")
+                            "BaseDao.getList for entity class: " + baseDao.entityClass.simpleName + " took: " + (end - begin) + " ms (>2s, $queryStatistics).")
+                } else if (log.isDebugEnabled) {
+                    log.debug("BaseDao.getList for entity class: ${baseDao.entityClass.simpleName} took: ${end - begin} ms ($queryStatistics).")
                 }
                 list
             }
@@ -112,20 +163,19 @@ open class DBQuery {
                                                      customResultFilters: List<CustomResultFilter<O>>?,
                                                      resultPredicates: List<DBPredicate>,
                                                      filter: DBFilter,
-                                                     historSearchParams: DBHistorySearchParams,
-                                                     checkAccess: Boolean)
+                                                     historSearchParams: DBHistorySearchParams?, // null, if already part of the query.
+                                                     checkAccess: Boolean,
+                                                     loggedInUser: PFUserDO?,
+                                                     superAdmin: Boolean,
+                                                     statistics: DBQueryStatistics,
+                                                     keysetPageSize: Int? = null, // Only the best entries are kept for keyset pagination of full text results.
+                                                     keysetAnchorValues: List<Any?>? = null)
             : List<O> {
-        val superAdmin = TenantChecker.isSuperAdmin<ExtendedBaseDO<Int>>(ThreadLocalUserContext.getUser())
-        val loggedInUser = ThreadLocalUserContext.getUser()
-
         val list = mutableListOf<O>()
         var next: O? = dbResultIterator.next() ?: return list
         val ensureUniqueSet = mutableSetOf<Int>()
         var resultCounter = 0
-        if (historSearchParams.modifiedByUserId != null
-                || historSearchParams.modifiedFrom != null
-                || historSearchParams.modifiedTo != null
-                || !historSearchParams.searchHistory.isNullOrBlank()) {
+        if (historSearchParams != null && historSearchParams.isGiven) {
             // Search now all history entries which were modified by the given user and/or in the given time period.
             val idSet = if (historSearchParams.searchHistory.isNullOrBlank()) {
                 DBHistoryQuery.searchHistoryEntryByCriteria(em, baseDao.doClass, historSearchParams)
@@ -135,15 +185,19 @@ open class DBQuery {
                 //baseDao.getHistoryEntriesFullTextSearch(baseDao.entityManager, baseSearchFilter)
             }
             while (next != null) {
+                ++statistics.hydratedRows
                 if (!ensureUniqueSet.contains(next.id)) {
                     // Current result object wasn't yet proceeded.
                     ensureUniqueSet.add(next.id) // Mark current object as already proceeded (ensure uniqueness)
                     if ((!checkAccess || baseDao.hasSelectAccess(next, loggedInUser, superAdmin))
-                            && baseDao.containsLong(idSet, next)
+                            && idSet.get(next.id)
                             && match(list, customResultFilters, resultPredicates, next)) {
                         // Current result object fits the modified query:
                         baseDao.afterLoad(next)
                         list.add(next)
+                        if (keysetPageSize != null && list.size >= 2 * keysetPageSize) {
+                            keepKeysetPage(dbResultIterator, list, keysetPageSize, keysetAnchorValues)
+                        }
                         if (++resultCounter >= filter.maxRows) {
                             break
                         }
@@ -154,12 +208,17 @@ open class DBQuery {
         } else {
             // No modified query
             while (next != null) {
+                ++statistics.hydratedRows
                 if (!ensureUniqueSet.contains(next.id)) {
                     // Current result object wasn't yet proceeded.
                     ensureUniqueSet.add(next.id) // Mark current object as already proceeded (ensure uniqueness)
-                    if (!checkAccess || baseDao.hasSelectAccess(next, loggedInUser, superAdmin) && match(list, customResultFilters, resultPredicates, next)) {
+                    if ((!checkAccess || baseDao.hasSelectAccess(next, loggedInUser, superAdmin))
+                            && match(list, customResultFilters, resultPredicates, next)) {
                         baseDao.afterLoad(next)
                         list.add(next)
+                        if (keysetPageSize != null && list.size >= 2 * keysetPageSize) {
+                            keepKeysetPage(dbResultIterator, list, keysetPageSize, keysetAnchorValues)
+                        }
                         if (++resultCounter >= filter.maxRows) {
                             break
                         }
@@ -168,9 +227,34 @@ open class DBQuery {
                 next = dbResultIterator.next()
             }
         }
+        statistics.resultRows = list.size
         return list
     }
 
+    /**
+     * For keyset pagination: decodes the sort values of the last entry of the previous page given by [QueryFilter.cursor].
+     * @return The anchor or null, if no cursor is given or the cursor is invalid.
+     */
+    private fun <O : ExtendedBaseDO<Int>> getKeysetAnchor(baseDao: BaseDao<O>, filter: QueryFilter, dbFilter: DBFilter)
+            : DBKeysetPagination.Anchor? {
+        val cursor = filter.cursor
+        if (!filter.keysetPagination || cursor == null) {
+            return null
+        }
+        // An invalid cursor is logged by parseCursor and results in an empty page.
+        return DBKeysetPagination.parseCursor(cursor, DBKeysetPagination.getSortProperties(dbFilter.sortProperties), baseDao.doClass)
+    }
+
+    /**
+     * Reduces the collected full text results to the entries of the requested page, so the whole result hasn't to be
+     * kept and sorted at once. Not used with custom result filters, because they need the whole list.
+     */
+    private fun <O : ExtendedBaseDO<Int>> keepKeysetPage(dbResultIterator: DBResultIterator<O>, list: MutableList<O>, keysetPageSize: Int, keysetAnchorValues: List<Any?>?) {
+        val page = dbResultIterator.sortAfter(list, keysetAnchorValues, keysetPageSize)
+        list.clear()
+        list.addAll(page)
+    }
+
     /**
      * If predicates are definied (not used for data base query), they're checked with the given result object.
      * @return true, if no predicates are given or if all predicate matches, otherwise false.
@@ -33,13 +33,35 @@ import org.slf4j.LoggerFactory
 import javax.persistence.EntityManager
 
 
-class DBQueryBuilder<O : ExtendedBaseDO<Int>>(
+class DBQueryBuilder<O : ExtendedBaseDO<Int>> internal constructor(
         private val baseDao: BaseDao<O>,
         private val entityManager: EntityManager,
         tenantService: TenantService,
         private val queryFilter: QueryFilter,
         dbFilter: DBFilter,
-        ignoreTenant: Boolean = false) {
+        ignoreTenant: Boolean = false,
+        /**
+         * Optional predicate restricting the result to the objects the logged in user has select access to.
+         * @see BaseDao.getSelectAccessPredicate
+         */
+        selectAccessPredicate: DBPredicate? = null,
+        /**
+         * If true, the result is ordered by the sort properties and id (tie breaker) for keyset pagination.
+         * @see QueryFilter.keysetPagination
+         */
+        private val keysetPagination: Boolean = false,
+        /**
+         * The sort values of the last entry of the previous page for keyset pagination, or null for the first page.
+         */
+        keysetAnchor: DBKeysetPagination.Anchor? = null,
+        /**
+         * Optional filter by the history entries (modified by user and/or in a time period, search string).
+         */
+        historySearchParams: DBHistorySearchParams? = null,
+        /**
+         * Number of entities loaded per batch while scrolling through the hits of a full text query.
+         */
+        private val fullTextBlockSize: Int = FULLTEXT_DEFAULT_BLOCK_SIZE) {
 
     enum class Mode {
         /**
@@ -67,7 +89,7 @@ class DBQueryBuilder<O : ExtendedBaseDO<Int>>(
     private var _dbQueryBuilderByFullText: DBQueryBuilderByFullText<O>? = null
     private val dbQueryBuilderByFullText: DBQueryBuilderByFullText<O>
         get() {
-            if (_dbQueryBuilderByFullText == null) _dbQueryBuilderByFullText = DBQueryBuilderByFullText(baseDao, entityManager, queryFilter, useMultiFieldQueryParser = mode == Mode.MULTI_FIELD_FULLTEXT_QUERY)
+            if (_dbQueryBuilderByFullText == null) _dbQueryBuilderByFullText = DBQueryBuilderByFullText(baseDao, entityManager, queryFilter, useMultiFieldQueryParser = mode == Mode.MULTI_FIELD_FULLTEXT_QUERY, blockSize = fullTextBlockSize)
             return _dbQueryBuilderByFullText!!
         }
     private val mode: Mode
@@ -89,6 +111,25 @@ class DBQueryBuilder<O : ExtendedBaseDO<Int>>(
     private val fullTextSearch: Boolean
         get() = mode == Mode.FULLTEXT || mode == Mode.MULTI_FIELD_FULLTEXT_QUERY
 
+    /**
+     * True, if keyset pagination can't be done by the data base query (full text search). The page is selected
+     * afterwards by [DBResultIterator.sortAfter].
+     */
+    val keysetPaginationByResultList: Boolean
+        get() = keysetPagination && fullTextSearch
+
+    /**
+     * True, if the history search params are part of the criteria query. Otherwise, the matching entity ids have to be
+     * queried separately, see [DBHistoryQuery].
+     */
+    var historyFilterApplied: Boolean = false
+        private set
+
+    /**
+     * The sort properties used for ordering the result (for keyset pagination including the id as tie breaker).
+     */
+    val sortProperties: List<SortProperty>
+
     init {
         val stats = dbFilter.createStatistics(baseDao)
         mode =
@@ -110,15 +151,30 @@ class DBQueryBuilder<O : ExtendedBaseDO<Int>>(
                 }
             }
         }
+        selectAccessPredicate?.let {
+            if (log.isDebugEnabled) log.debug("Adding select access predicate: $it")
+            addMatcher(it)
+        }
         dbFilter.predicates.forEach {
             addMatcher(it)
         }
+        // Search strings in the history need the full text index, so they are still queried separately:
+        if (historySearchParams != null && historySearchParams.isGiven && historySearchParams.searchHistory.isNullOrBlank()
+                && criteriaSearchAvailable) {
+            dbQueryBuilderByCriteria.addHistoryFilter(historySearchParams)
+            historyFilterApplied = true
+        }
 
-        var maxOrder = 3
-        for (sortProperty in dbFilter.sortProperties) {
+        // Add only 3 orders (and the id as tie breaker for keyset pagination):
+        sortProperties = if (keysetPagination) DBKeysetPagination.getSortProperties(dbFilter.sortProperties) else dbFilter.sortProperties.take(3)
+        for (sortProperty in sortProperties) {
             addOrder(sortProperty)
-            if (--maxOrder <= 0)
-                break // Add only 3 orders.
+        }
+        if (keysetAnchor != null && keysetPagination && criteriaSearchAvailable) {
+            // The anchor was created for the same sort properties (see DBKeysetPagination.parseCursor).
+            val keysetPredicate = DBKeysetPagination.createPredicate(keysetAnchor)
+            if (log.isDebugEnabled) log.debug("Adding keyset predicate: $keysetPredicate")
+            dbQueryBuilderByCriteria.add(keysetPredicate)
         }
         // TODO setCacheRegion(baseDao, criteria)
 
@@ -155,7 +211,7 @@ class DBQueryBuilder<O : ExtendedBaseDO<Int>>(
         if (fullTextSearch) {
             dbQueryBuilderByFullText.addOrder(sortProperty)
         } else {
-            dbQueryBuilderByCriteria.addOrder(sortProperty)
+            dbQueryBuilderByCriteria.addOrder(sortProperty, nullsLast = keysetPagination)
         }
     }
 }
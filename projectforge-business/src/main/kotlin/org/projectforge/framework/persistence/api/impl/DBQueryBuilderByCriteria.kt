@@ -59,19 +59,35 @@ internal class DBQueryBuilderByCriteria<O : ExtendedBaseDO<Int>>(
         predicates.add(matcher.asPredicate(ctx))
     }
 
+    /**
+     * Restricts the result to entities with matching history entries (exists sub query).
+     */
+    fun addHistoryFilter(searchParams: DBHistorySearchParams) {
+        if (log.isDebugEnabled) log.debug("Adding criteria history filter (${ctx.entityName}): $searchParams")
+        predicates.add(DBHistoryQuery.createExistsPredicate(ctx, searchParams))
+    }
+
     fun createResultIterator(resultPredicates: List<DBPredicate>): DBResultIterator<O> {
         return DBCriteriaResultIterator(entityManager, ctx.cr.select(ctx.root).where(*predicates.toTypedArray()).orderBy(*order.toTypedArray()), resultPredicates)
     }
 
-    fun addOrder(sortProperty: SortProperty) {
+    /**
+     * @param nullsLast If true, null values are ordered last independent of the sort order and the data base (needed
+     * by keyset pagination).
+     */
+    fun addOrder(sortProperty: SortProperty, nullsLast: Boolean = false) {
         try {
+            val field = ctx.getField<Any>(sortProperty.property)
+            if (nullsLast) {
+                order.add(ctx.cb.asc(ctx.cb.selectCase<Int>().`when`(ctx.cb.isNull(field), 1).otherwise(0)))
+            }
             order.add(
                     if (sortProperty.ascending) {
                         if (log.isDebugEnabled) log.debug("Adding criteria orderBy (${ctx.entityName}): order by ${sortProperty.property}.")
-                        ctx.cb.asc(ctx.getField<Any>(sortProperty.property))
+                        ctx.cb.asc(field)
                     } else {
                         if (log.isDebugEnabled) log.debug("Adding criteria orderBy (${ctx.entityName}): order by ${sortProperty.property} desc.")
-                        ctx.cb.desc(ctx.getField<Any>(sortProperty.property))
+                        ctx.cb.desc(field)
                     }
             )
         } catch (ex: Exception) {
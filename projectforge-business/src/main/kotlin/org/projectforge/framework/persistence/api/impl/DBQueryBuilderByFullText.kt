@@ -44,7 +44,8 @@ internal class DBQueryBuilderByFullText<O : ExtendedBaseDO<Int>>(
          * Only for fall back to criteria search if no predicates found for full text search.
          */
         private val queryFilter: QueryFilter,
-        val useMultiFieldQueryParser: Boolean = false) {
+        val useMultiFieldQueryParser: Boolean = false,
+        private val blockSize: Int = FULLTEXT_DEFAULT_BLOCK_SIZE) {
 
     private val log = LoggerFactory.getLogger(DBQueryBuilderByFullText::class.java)
 
@@ -70,8 +71,7 @@ internal class DBQueryBuilderByFullText<O : ExtendedBaseDO<Int>>(
      */
     fun add(predicate: DBPredicate): Boolean {
         if (!predicate.fullTextSupport) return false
-        val field = predicate.field
-        if (field != null && !searchClassInfo.containsField(field)) return false
+        if (!predicate.fullTextFieldsSupported(this)) return false
         predicate.addTo(this)
         return true
     }
@@ -210,6 +210,30 @@ internal class DBQueryBuilderByFullText<O : ExtendedBaseDO<Int>>(
         return false
     }
 
+    /**
+     * @return true if the given field is indexed, otherwise false (dbMatcher should be used instead).
+     */
+    fun isIn(field: String, values: Array<out Any?>): Boolean {
+        val luceneField = searchClassInfo.get(field)?.luceneField
+        val nonNullValues = values.filterNotNull()
+        if (luceneField != null && nonNullValues.isNotEmpty()) {
+            if (useMultiFieldQueryParser) {
+                val valuesString = nonNullValues.joinToString(" ") { "$luceneField:${formatMultiParserValue(field, it)}" }
+                if (log.isDebugEnabled) log.debug("Adding multifieldQuery (${baseDao.doClass.simpleName}): [in] +($valuesString)")
+                multiFieldQuery.add("+($valuesString)")
+            } else {
+                if (log.isDebugEnabled) log.debug("Adding fulltext search (${baseDao.doClass.simpleName}): [in] boolJunction.must(qb.bool().should(qb.keyword().onField('$luceneField').matching(...))...): values:${nonNullValues.joinToString(", ")}")
+                var inJunction: BooleanJunction<*> = queryBuilder.bool()
+                nonNullValues.forEach {
+                    inJunction = inJunction.should(queryBuilder.keyword().onField(luceneField).matching(it).createQuery())
+                }
+                boolJunction = boolJunction.must(inJunction.createQuery())
+            }
+            return true
+        }
+        return false
+    }
+
     fun formatMultiParserValue(field: String, value: Any): String {
         return when (value) {
             is java.time.LocalDate -> {
@@ -257,6 +281,39 @@ internal class DBQueryBuilderByFullText<O : ExtendedBaseDO<Int>>(
         }
     }
 
+    /**
+     * Every given predicate is added as optional sub query (should), so at least one of them must match.
+     * All fields of the given predicates must be indexed (see [DBPredicate.fullTextFieldsSupported]), otherwise
+     * the result would be more restrictive than expected.
+     */
+    fun or(vararg predicates: DBPredicate) {
+        if (predicates.isNullOrEmpty()) return
+        if (useMultiFieldQueryParser) {
+            val outerQuery = multiFieldQuery.toList()
+            val subQueries = predicates.map {
+                multiFieldQuery.clear()
+                it.addTo(this)
+                "(${multiFieldQuery.joinToString(" ")})"
+            }
+            multiFieldQuery.clear()
+            multiFieldQuery.addAll(outerQuery)
+            if (log.isDebugEnabled) log.debug("Adding multifieldQuery (${baseDao.doClass.simpleName}): [or] +(${subQueries.joinToString(" ")})")
+            multiFieldQuery.add("+(${subQueries.joinToString(" ")})")
+        } else {
+            val outerJunction = boolJunction
+            var orJunction: BooleanJunction<*> = queryBuilder.bool()
+            predicates.forEach {
+                boolJunction = queryBuilder.bool()
+                it.addTo(this)
+                if (!boolJunction.isEmpty) {
+                    orJunction = orJunction.should(boolJunction.createQuery())
+                }
+            }
+            if (log.isDebugEnabled) log.debug("Adding fulltext search (${baseDao.doClass.simpleName}): [or] boolJunction.must(qb.bool().should(...)...)")
+            boolJunction = if (orJunction.isEmpty) outerJunction else outerJunction.must(orJunction.createQuery())
+        }
+    }
+
     fun fulltextSearch(searchString: String) {
         if (searchClassInfo.numericFieldNames.isNotEmpty() && NumberUtils.isCreatable(searchString)) {
             val number = NumberUtils.createNumber(searchString)
@@ -271,14 +328,14 @@ internal class DBQueryBuilderByFullText<O : ExtendedBaseDO<Int>>(
     fun createResultIterator(resultPredicates: List<DBPredicate>): DBResultIterator<O> {
         return when {
             useMultiFieldQueryParser -> {
-                DBFullTextResultIterator(baseDao, fullTextEntityManager, resultPredicates, queryFilter, sortOrders.toTypedArray(), multiFieldQuery = multiFieldQuery)
+                DBFullTextResultIterator(baseDao, fullTextEntityManager, resultPredicates, queryFilter, sortOrders.toTypedArray(), multiFieldQuery = multiFieldQuery, blockSize = blockSize)
             }
             boolJunction.isEmpty -> { // Shouldn't occur:
                 // No restrictions found, so use normal criteria search without where clause.
                 DBQueryBuilderByCriteria(baseDao, entityManager, queryFilter).createResultIterator(resultPredicates)
             }
             else -> {
-                DBFullTextResultIterator(baseDao, fullTextEntityManager, resultPredicates, queryFilter, sortOrders.toTypedArray(), fullTextQuery = boolJunction.createQuery())
+                DBFullTextResultIterator(baseDao, fullTextEntityManager, resultPredicates, queryFilter, sortOrders.toTypedArray(), fullTextQuery = boolJunction.createQuery(), blockSize = blockSize)
             }
         }
     }
@@ -0,0 +1,51 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2020 Micromata GmbH, Germany (www.micromata.com)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+
+package org.projectforge.framework.persistence.api.impl
+
+/**
+ * Counts the entities loaded from the data base (or full text index) and the entities returned after access checking
+ * and result filtering. A high ratio of hydrated rows per result row indicates missing query predicates, e. g. select
+ * access not pushed into the data base query.
+ */
+class DBQueryStatistics {
+    /**
+     * Number of entities got from the result iterator (criteria or full text query).
+     */
+    var hydratedRows: Int = 0
+        internal set
+
+    /**
+     * Number of entities returned to the caller.
+     */
+    var resultRows: Int = 0
+        internal set
+
+    val hydratedPerResultRow: Double
+        get() = if (resultRows > 0) hydratedRows.toDouble() / resultRows else hydratedRows.toDouble()
+
+    override fun toString(): String {
+        return "hydrated rows=$hydratedRows, result rows=$resultRows"
+    }
+}
@@ -26,16 +26,27 @@ package org.projectforge.framework.persistence.api.impl
 import org.hibernate.ScrollMode
 import org.hibernate.ScrollableResults
 import org.projectforge.framework.persistence.api.ExtendedBaseDO
+import java.io.Closeable
 import javax.persistence.EntityManager
 import javax.persistence.criteria.CriteriaQuery
 
 
 /**
  * Generic interface for iterating over database search results (after criteria search as well as after full text query).
+ * Should be closed after iterating for releasing the underlying scrollable results.
  */
-interface DBResultIterator<O : ExtendedBaseDO<Int>> {
+interface DBResultIterator<O : ExtendedBaseDO<Int>> : Closeable {
     fun next(): O?
     fun sort(list: List<O>): List<O>
+
+    /**
+     * For keyset pagination of full text queries: sorts the given list and returns only the first entries following the
+     * given anchor (the sort values of the last entry of the previous page). Criteria queries do this by the data base
+     * query itself.
+     * @param anchorValues The sort values of the anchor. If null, the first entries of the sorted list are returned.
+     * @param maxRows The maximum number of entries to return.
+     */
+    fun sortAfter(list: List<O>, anchorValues: List<Any?>?, maxRows: Int = Int.MAX_VALUE): List<O>
 }
 
 /**
@@ -53,6 +64,13 @@ internal class DBEmptyResultIterator<O : ExtendedBaseDO<Int>>
     override fun sort(list: List<O>): List<O> {
         return list
     }
+
+    override fun sortAfter(list: List<O>, anchorValues: List<Any?>?, maxRows: Int): List<O> {
+        return list
+    }
+
+    override fun close() {
+    }
 }
 
 internal class DBCriteriaResultIterator<O : ExtendedBaseDO<Int>>(
@@ -76,8 +94,16 @@ internal class DBCriteriaResultIterator<O : ExtendedBaseDO<Int>>(
         return scrollableResults.get(0) as O
     }
 
+    override fun close() {
+        scrollableResults.close()
+    }
+
     override fun sort(list: List<O>): List<O> {
         return list
     }
+
+    override fun sortAfter(list: List<O>, anchorValues: List<Any?>?, maxRows: Int): List<O> {
+        return list
+    }
 }
 
@@ -35,8 +35,11 @@ import org.projectforge.framework.time.DateTimeFormatter
 import org.projectforge.framework.time.DayHolder
 import org.slf4j.LoggerFactory
 import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.beans.factory.annotation.Value
 import org.springframework.stereotype.Repository
 import java.util.*
+import java.util.concurrent.*
+import java.util.concurrent.atomic.AtomicInteger
 import javax.persistence.EntityManager
 import javax.persistence.FlushModeType
 import javax.persistence.TypedQuery
@@ -50,13 +53,46 @@ import javax.persistence.TypedQuery
 // SELECT backend_start, query_start, state_change, wait_event_type, state, query  FROM pg_stat_activity where state <> 'idle';
 @Repository
 open class DatabaseDao {
-    private var currentReindexRun: Date? = null
+    /**
+     * Running re-index jobs by entity class. Different entities may be re-indexed concurrently, but only one job per
+     * entity is allowed.
+     */
+    private val currentReindexRuns = ConcurrentHashMap<Class<*>, ReindexStatus>()
+
     @Autowired
     private val emgrFactory: PfEmgrFactory? = null
 
+    /**
+     * Number of threads used for re-indexing one entity type. Each thread loads and indexes its own id range
+     * within its own transaction. 1 means sequential re-indexing in one transaction.
+     */
+    @Value("\${projectforge.search.reindex.threads:2}")
+    private var reindexThreads: Int = 2
+
+    /**
+     * Entities with fewer entries are re-indexed sequentially.
+     */
+    internal var parallelReindexThreshold = PARALLEL_REINDEX_THRESHOLD
+
+    private val reindexExecutor: ExecutorService by lazy {
+        val counter = AtomicInteger()
+        Executors.newFixedThreadPool(maxOf(1, reindexThreads)) { runnable ->
+            val thread = Thread(runnable, "Reindex-${counter.incrementAndGet()}")
+            thread.isDaemon = true
+            thread
+        }
+    }
+
+    /**
+     * Status of all currently running re-index jobs (for monitoring).
+     */
+    val reindexStatus: List<ReindexStatus>
+        get() = currentReindexRuns.values.sortedBy { it.started }
+
     fun <T> rebuildDatabaseSearchIndices(clazz: Class<T>, settings: ReindexSettings): String {
-        if (currentReindexRun != null) {
-            val otherJobStarted = DateTimeFormatter.instance().getFormattedDateTime(currentReindexRun, Locale.ENGLISH, DateHelper.UTC)
+        val running = currentReindexRuns[clazz]
+        if (running != null) {
+            val otherJobStarted = DateTimeFormatter.instance().getFormattedDateTime(running.started, Locale.ENGLISH, DateHelper.UTC)
             return ("Another re-index job is already running. The job was started at: $otherJobStarted (UTC)")
         }
         val buf = StringBuffer()
@@ -65,31 +101,38 @@ open class DatabaseDao {
     }
 
     fun <T> reindex(clazz: Class<T>, settings: ReindexSettings, buf: StringBuffer) {
-        if (currentReindexRun != null) {
+        val status = ReindexStatus(clazz.simpleName, Date())
+        if (currentReindexRuns.putIfAbsent(clazz, status) != null) {
             buf.append(" (cancelled due to another running index-job)")
             return
         }
-        synchronized(this) {
-            try {
-                currentReindexRun = Date()
-                buf.append(ClassUtils.getShortClassName(clazz))
-                reindex(clazz, settings)
-                buf.append(", ")
-            } finally {
-                currentReindexRun = null
-            }
+        try {
+            buf.append(ClassUtils.getShortClassName(clazz))
+            reindex(clazz, settings, status)
+            buf.append(", ")
+        } finally {
+            currentReindexRuns.remove(clazz)
         }
     }
 
     /**
      * @param clazz
      */
-    private fun <T> reindex(clazz: Class<T>, settings: ReindexSettings) {
+    private fun <T> reindex(clazz: Class<T>, settings: ReindexSettings, status: ReindexStatus) {
         if (settings.lastNEntries != null || settings.fromDate != null) { // OK, only partly re-index required:
-            reindexObjects(clazz, settings)
+            reindexObjects(clazz, settings, status)
             return
         }
-        reindexObjects(clazz, null)
+        if (reindexThreads > 1) {
+            val idRange = runInTrans(emgrFactory!!) { em: EntityManager ->
+                getIdRange(em, clazz)
+            }
+            if (idRange != null && idRange.count >= parallelReindexThreshold) {
+                reindexPartitioned(clazz, idRange, status)
+                return
+            }
+        }
+        reindexObjects(clazz, null, status)
     }
 
     private fun isIn(clazz: Class<*>, vararg classes: Class<*>): Boolean {
@@ -101,7 +144,7 @@ open class DatabaseDao {
         return false
     }
 
-    private fun <T> reindexObjects(clazz: Class<T>, settings: ReindexSettings?) {
+    private fun <T> reindexObjects(clazz: Class<T>, settings: ReindexSettings?, status: ReindexStatus) {
         runInTrans(emgrFactory!!) { em: EntityManager ->
             val number = getRowCount(em, clazz, settings) // Get number of objects to re-index (select count(*) from).
             if (number == 0L) {
@@ -116,6 +159,7 @@ open class DatabaseDao {
             val fullTextSession = Search.getFullTextSession(session)
             fullTextSession.flushMode = FlushModeType.COMMIT
             val monitor = IndexProgressMonitor("Reindexing [" + clazz.simpleName + "]", number)
+            status.attach(monitor)
             var blockCounter = 0
             val batchSize = 10000 // NumberUtils.createInteger(System.getProperty("hibernate.search.worker.batch_size")
             var index: Long = 0
@@ -153,6 +197,88 @@ open class DatabaseDao {
         }
     }
 
+    /**
+     * Splits the id range of the given entity into partitions, each partition is loaded and indexed by a thread of
+     * [reindexExecutor] in its own transaction. The index is optimized once after all partitions are done.
+     */
+    private fun <T> reindexPartitioned(clazz: Class<T>, idRange: IdRange, status: ReindexStatus) {
+        val number = idRange.count
+        val partitions = reindexThreads * 4 // More partitions than threads for balancing sparse id ranges.
+        log.info("Reindexing [${clazz.simpleName}]: Starting reindexing of $number entries with $reindexThreads threads (id range ${idRange.minId}-${idRange.maxId})...")
+        val monitor = IndexProgressMonitor("Reindexing [" + clazz.simpleName + "]", number, true)
+        status.attach(monitor)
+        val futures = splitIdRange(idRange.minId, idRange.maxId, partitions).map { range ->
+            reindexExecutor.submit(Callable { reindexIdRange(clazz, idRange, range.first, range.last, monitor) })
+        }
+        var total = 0L
+        try {
+            futures.forEach { total += it.get() }
+        } catch (ex: ExecutionException) {
+            futures.forEach { it.cancel(true) }
+            throw IllegalStateException("Reindexing [${clazz.simpleName}] failed: ${ex.cause?.message}", ex.cause ?: ex)
+        } catch (ex: InterruptedException) {
+            futures.forEach { it.cancel(true) }
+            Thread.currentThread().interrupt()
+            throw IllegalStateException("Reindexing [${clazz.simpleName}] interrupted.", ex)
+        }
+        if (total != number) {
+            log.warn("Reindexing [${clazz.simpleName}]: number of elements was $number, but indexed $total (modified while re-indexing?).")
+        }
+        log.info("Reindexing [${clazz.simpleName}]: optimizing of $total objects...")
+        runInTrans(emgrFactory!!) { em: EntityManager ->
+            Search.getFullTextSession(em.unwrap(Session::class.java)).searchFactory.optimize(clazz)
+        }
+        log.info("Reindexing [${clazz.simpleName}]: reindexing done.")
+    }
+
+    private fun <T> reindexIdRange(clazz: Class<T>, idRange: IdRange, fromId: Long, toId: Long, monitor: IndexProgressMonitor): Long {
+        return runInTrans(emgrFactory!!) { em: EntityManager ->
+            val strategy = ReindexerRegistry.get(clazz)
+            val idsQuery = em.createQuery("select t.${strategy.idProperty} from ${clazz.simpleName} as t where t.${strategy.idProperty} between :fromId and :toId", Number::class.java)
+            idsQuery.setParameter("fromId", idRange.toIdValue(fromId))
+            idsQuery.setParameter("toId", idRange.toIdValue(toId))
+            val session = em.unwrap(Session::class.java)
+            val bigResultSetHandler = BigResultSetHandler<T>(em, clazz, idsQuery)
+            val fullTextSession = Search.getFullTextSession(session)
+            fullTextSession.flushMode = FlushModeType.COMMIT
+            var blockCounter = 0
+            var index = 0L
+            while (true) {
+                val obj = bigResultSetHandler.next() ?: break
+                if (obj is ExtendedBaseDO<*>) {
+                    obj.recalculate()
+                }
+                fullTextSession.index(obj)
+                session.evict(obj)
+                monitor.documentsAdded(1)
+                if (++blockCounter >= PARTITION_BATCH_SIZE) {
+                    fullTextSession.flushToIndexes()
+                    blockCounter = 0
+                }
+                ++index
+            }
+            fullTextSession.flushToIndexes()
+            return@runInTrans index
+        }
+    }
+
+    /**
+     * @return The number of entries and the numeric id range of the given entity or null, if the entity has no
+     * numeric ids or no entries.
+     */
+    private fun getIdRange(em: EntityManager, clazz: Class<*>): IdRange? {
+        val idProperty = ReindexerRegistry.get(clazz).idProperty
+        val result = em.createQuery("select count(*), min(t.$idProperty), max(t.$idProperty) from ${clazz.simpleName} as t", Array<Any?>::class.java)
+                .singleResult
+        val count = result[0] as? Number ?: return null
+        val min = result[1] as? Number ?: return null
+        val max = result[2] as? Number ?: return null
+        if (min !is Int && min !is Long) {
+            return null
+        }
+        return IdRange(count.toLong(), min.toLong(), max.toLong(), min is Int)
+    }
+
     private fun <T> getRowCount(entityManager: EntityManager, clazz: Class<T>, settings: ReindexSettings?): Long {
         val result = createQuery(entityManager, clazz, Number::class.java, settings, QueryMode.ROW_COUNT)
                 .singleResult as Long
@@ -186,6 +312,33 @@ open class DatabaseDao {
 
     companion object {
         private val log = LoggerFactory.getLogger(DatabaseDao::class.java)
+
+        /**
+         * Entities with fewer entries are re-indexed sequentially.
+         */
+        private const val PARALLEL_REINDEX_THRESHOLD = 10000L
+
+        private const val PARTITION_BATCH_SIZE = 1000
+
+        /**
+         * Splits the given id range (both inclusive) into the given number of contiguous partitions (fewer, if the range
+         * is too small).
+         */
+        internal fun splitIdRange(minId: Long, maxId: Long, partitions: Int): List<LongRange> {
+            val step = maxOf(1L, (maxId - minId) / partitions + 1)
+            val result = mutableListOf<LongRange>()
+            var from = minId
+            while (from <= maxId) {
+                val to = if (maxId - from < step) maxId else from + step - 1
+                result.add(from..to)
+                if (to == maxId) {
+                    break
+                }
+                from = to + 1
+            }
+            return result
+        }
+
         /**
          * Since yesterday and 1,000 newest entries at maximimum.
          */
@@ -202,4 +355,28 @@ open class DatabaseDao {
     }
 
     enum class QueryMode { NORMAL, ROW_COUNT, SELECT_IDS_ONLY }
+
+    private class IdRange(val count: Long, val minId: Long, val maxId: Long, val intIds: Boolean) {
+        fun toIdValue(id: Long): Any {
+            return if (intIds) id.toInt() else id
+        }
+    }
+
+    /**
+     * Progress of a running re-index job.
+     */
+    class ReindexStatus(val entity: String, val started: Date) {
+        @Volatile
+        private var monitor: IndexProgressMonitor? = null
+
+        internal fun attach(monitor: IndexProgressMonitor) {
+            this.monitor = monitor
+        }
+
+        val total: Long
+            get() = monitor?.totalNumber ?: 0
+
+        val done: Long
+            get() = monitor?.done ?: 0
+    }
 }
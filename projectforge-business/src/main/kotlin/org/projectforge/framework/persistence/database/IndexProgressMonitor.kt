@@ -34,9 +34,10 @@ import java.util.*
 /**
  * @author Kai Reinhard (k.reinhard@micromata.de)
  */
-class IndexProgressMonitor(private val logPrefix: String, private val totalNumber: Long, private val synchronizedMode: Boolean = false) : SimpleIndexingProgressMonitor() {
+class IndexProgressMonitor(private val logPrefix: String, val totalNumber: Long, private val synchronizedMode: Boolean = false) : SimpleIndexingProgressMonitor() {
     @Volatile
-    private var done: Long = 0
+    var done: Long = 0
+        private set
     private var blockCounter: Long = 0
     private var progressSteps: Long = 0
     private var lastTime = System.currentTimeMillis()
@@ -32,29 +32,32 @@ import javax.persistence.EntityManager
  * @author Kai Reinhard (k.reinhard@micromata.de)
  */
 object PFTransactionTemplate {
+    /**
+     * Runs the given block in a new transaction. The transaction is rolled back and the exception is rethrown, if the
+     * block fails.
+     * @return The result of the given block.
+     */
     @JvmStatic
-    fun runInTrans(emf: PfEmgrFactory, run: (em: EntityManager) -> Any): Any? {
-        var cause: java.lang.Exception? = null
-        var em: EntityManager? = null
-        var result: Any? = null
+    fun <T> runInTrans(emf: PfEmgrFactory, run: (em: EntityManager) -> T): T {
+        val em = emf.entityManagerFactory.createEntityManager()
         try {
-            em = emf.entityManagerFactory.createEntityManager()
             em.transaction.begin()
-            result = run(em)
+            val result = run(em)
             em.transaction.commit()
+            return result
         } catch (ex: Exception) {
-            cause = ex
-            em?.transaction?.rollback()
-        } finally {
             try {
-                if (em?.isOpen == true) {
-                    em.close()
+                if (em.transaction.isActive) {
+                    em.transaction.rollback()
                 }
-            } catch (ex: Exception) {
-                cause = ex
+            } catch (rollbackEx: Exception) {
+                ex.addSuppressed(rollbackEx)
+            }
+            throw ex
+        } finally {
+            if (em.isOpen) {
+                em.close()
             }
-            if (cause != null) throw cause
-            return result
         }
     }
 }
@@ -187,31 +187,14 @@ class PFDayUtils {
         fun <T : IPFDate<T>> getNumberOfWorkingDays(from: T, to: T): BigDecimal {
             Validate.notNull(from)
             Validate.notNull(to)
-            val holidays = Holidays.instance
             if (to.isBefore(from)) {
                 return BigDecimal.ZERO
             }
-            var numberOfWorkingDays = BigDecimal.ZERO
-            var numberOfFullWorkingDays = 0
-            var dayCounter = 1
-            var day = from
-            do {
-                if (dayCounter++ > 740) { // Endless loop protection, time period greater 2 years.
-                    throw UserException(
-                            "getNumberOfWorkingDays does not support calculation of working days for a time period greater than two years!")
-                }
-                if (holidays.isWorkingDay(day)) {
-                    val workFraction = holidays.getWorkFraction(day)
-                    if (workFraction != null) {
-                        numberOfWorkingDays = numberOfWorkingDays.add(workFraction)
-                    } else {
-                        numberOfFullWorkingDays++
-                    }
-                }
-                day = day.plusDays(1)
-            } while (!day.isAfter(to))
-            numberOfWorkingDays = numberOfWorkingDays.add(BigDecimal(numberOfFullWorkingDays))
-            return numberOfWorkingDays
+            if (from.daysBetween(to) >= 740) { // Protection, time period greater 2 years.
+                throw UserException(
+                        "getNumberOfWorkingDays does not support calculation of working days for a time period greater than two years!")
+            }
+            return Holidays.instance.getNumberOfWorkingDays(from.localDate, to.localDate)
         }
 
         @JvmStatic
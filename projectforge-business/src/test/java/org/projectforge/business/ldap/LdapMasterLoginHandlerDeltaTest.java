@@ -0,0 +1,90 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2020 Micromata GmbH, Germany (www.micromata.com)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+
+package org.projectforge.business.ldap;
+
+import org.junit.jupiter.api.Test;
+import org.projectforge.framework.persistence.user.entities.GroupDO;
+import org.projectforge.framework.persistence.user.entities.PFUserDO;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class LdapMasterLoginHandlerDeltaTest
+{
+  private static final long WATERMARK = 1_000_000;
+
+  @Test
+  void modifiedUsersTest()
+  {
+    final PFUserDO unmodified = createUser(1, WATERMARK - 1);
+    final PFUserDO modified = createUser(2, WATERMARK);
+    final PFUserDO withoutTimestamp = createUser(3, null);
+    final List<PFUserDO> result = LdapMasterLoginHandler
+        .getModifiedUsers(Arrays.asList(unmodified, modified, withoutTimestamp), WATERMARK);
+    assertEquals(Arrays.asList(modified, withoutTimestamp), result);
+  }
+
+  @Test
+  void modifiedGroupsTest()
+  {
+    final PFUserDO user1 = createUser(1, WATERMARK - 1);
+    final PFUserDO user2 = createUser(2, WATERMARK + 1);
+    final GroupDO unmodified = createGroup("unmodified", WATERMARK - 1, user1);
+    final GroupDO modified = createGroup("modified", WATERMARK + 1, user1);
+    final GroupDO modifiedMember = createGroup("modifiedMember", WATERMARK - 1, user1, user2);
+    final GroupDO empty = createGroup("empty", WATERMARK - 1);
+    final List<GroupDO> groups = Arrays.asList(unmodified, modified, modifiedMember, empty);
+    assertEquals(Arrays.asList(modified, modifiedMember),
+        LdapMasterLoginHandler.getModifiedGroups(groups, Collections.singletonList(user2), WATERMARK));
+    assertEquals(Collections.singletonList(modified),
+        LdapMasterLoginHandler.getModifiedGroups(groups, Collections.emptyList(), WATERMARK));
+    assertTrue(LdapMasterLoginHandler.getModifiedGroups(groups, Collections.emptyList(), WATERMARK + 2).isEmpty());
+  }
+
+  private PFUserDO createUser(final int id, final Long lastUpdate)
+  {
+    final PFUserDO user = new PFUserDO();
+    user.setId(id);
+    user.setUsername("user" + id);
+    user.setLastUpdate(lastUpdate != null ? new Date(lastUpdate) : null);
+    return user;
+  }
+
+  private GroupDO createGroup(final String name, final long lastUpdate, final PFUserDO... users)
+  {
+    final GroupDO group = new GroupDO();
+    group.setName(name);
+    group.setLastUpdate(new Date(lastUpdate));
+    for (final PFUserDO user : users) {
+      group.addUser(user);
+    }
+    return group;
+  }
+}
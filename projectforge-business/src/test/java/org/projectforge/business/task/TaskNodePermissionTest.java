@@ -0,0 +1,104 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2020 Micromata GmbH, Germany (www.micromata.com)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+
+package org.projectforge.business.task;
+
+import org.junit.jupiter.api.Test;
+import org.projectforge.framework.access.AccessType;
+import org.projectforge.framework.access.GroupTaskAccessDO;
+import org.projectforge.framework.access.OperationType;
+import org.projectforge.framework.persistence.user.entities.GroupDO;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TaskNodePermissionTest
+{
+  @Test
+  void inheritedPermissions()
+  {
+    final TaskNode root = createNode(1, null);
+    final TaskNode child = createNode(2, root);
+    final TaskNode grandChild = createNode(3, child);
+    final GroupDO group = createGroup(10);
+    final GroupDO otherGroup = createGroup(11);
+
+    assertFalse(grandChild.hasPermission(group.getId(), AccessType.TASKS, OperationType.SELECT));
+
+    final GroupTaskAccessDO access = createAccess(root, group);
+    access.guest();
+    setAccess(root, access);
+    assertTrue(grandChild.hasPermission(group.getId(), AccessType.TASKS, OperationType.SELECT));
+    assertFalse(grandChild.hasPermission(group.getId(), AccessType.TASKS, OperationType.UPDATE));
+    assertFalse(grandChild.hasPermission(otherGroup.getId(), AccessType.TASKS, OperationType.SELECT));
+
+    final GroupTaskAccessDO childAccess = createAccess(child, group);
+    childAccess.employee();
+    childAccess.setRecursive(false);
+    setAccess(child, childAccess);
+    assertTrue(child.hasPermission(group.getId(), AccessType.TASKS, OperationType.UPDATE));
+    assertTrue(child.hasPermission(group.getId(), AccessType.OWN_TIMESHEETS, OperationType.DELETE));
+    // Not recursive, so the grand child doesn't inherit any permission:
+    assertFalse(grandChild.hasPermission(group.getId(), AccessType.TASKS, OperationType.SELECT));
+
+    child.removeGroupTaskAccess(group.getId());
+    child.invalidatePermissions(group.getId());
+    assertFalse(child.hasPermission(group.getId(), AccessType.TASKS, OperationType.UPDATE));
+    assertTrue(grandChild.hasPermission(group.getId(), AccessType.TASKS, OperationType.SELECT));
+  }
+
+  private static void setAccess(final TaskNode node, final GroupTaskAccessDO access)
+  {
+    node.setGroupTaskAccess(access);
+    node.invalidatePermissions(access.getGroupId());
+  }
+
+  private static TaskNode createNode(final int id, final TaskNode parent)
+  {
+    final TaskDO task = new TaskDO();
+    task.setId(id);
+    final TaskNode node = new TaskNode();
+    node.setTask(task);
+    if (parent != null) {
+      node.setParent(parent);
+      parent.addChild(node);
+    }
+    return node;
+  }
+
+  private static GroupDO createGroup(final int id)
+  {
+    final GroupDO group = new GroupDO();
+    group.setId(id);
+    return group;
+  }
+
+  private static GroupTaskAccessDO createAccess(final TaskNode node, final GroupDO group)
+  {
+    final GroupTaskAccessDO access = new GroupTaskAccessDO();
+    access.setTask(node.getTask());
+    access.setGroup(group);
+    return access;
+  }
+}
@@ -34,8 +34,10 @@ import org.projectforge.business.tasktree.TaskTreeHelper;
 import org.projectforge.business.timesheet.TimesheetDO;
 import org.projectforge.business.timesheet.TimesheetDao;
 import org.projectforge.common.task.TimesheetBookingStatus;
+import org.projectforge.framework.access.AccessDao;
 import org.projectforge.framework.access.AccessException;
 import org.projectforge.framework.access.AccessType;
+import org.projectforge.framework.access.GroupTaskAccessDO;
 import org.projectforge.framework.access.OperationType;
 import org.projectforge.framework.i18n.UserException;
 import org.projectforge.framework.persistence.user.entities.GroupDO;
@@ -69,6 +71,9 @@ public class TaskTest extends AbstractTestBase {
   @Autowired
   private TimesheetDao timesheetDao;
 
+  @Autowired
+  private AccessDao accessDao;
+
   @Test
   public void testTaskDO() {
     final List<TaskDO> list = taskDao.internalLoadAll();
@@ -188,8 +193,12 @@ public class TaskTest extends AbstractTestBase {
     logon(AbstractTestBase.ADMIN);
     taskDao.setParentTask(tu_2_3, getTask("u.1").getId());
     taskDao.internalUpdate(tu_2_3);
-    assertEquals(2, u2.getChildren().size(), "Should have exact 2 children");
-    assertEquals(1, u1.getChildren().size(), "Should have exact 1 child");
+    // The move is published as a new snapshot, so the nodes read before are unchanged:
+    assertEquals(3, u2.getChildren().size(), "Previous snapshot shouldn't be modified");
+    assertEquals(false, u1.hasChildren(), "Previous snapshot shouldn't be modified");
+    assertEquals(u2.getId(), u2.getChildren().get(2).getParent().getId(), "Previous snapshot shouldn't be modified");
+    assertEquals(2, tree.getTaskNodeById(u2.getId()).getChildren().size(), "Should have exact 2 children");
+    assertEquals(1, tree.getTaskNodeById(u1.getId()).getChildren().size(), "Should have exact 1 child");
     final TaskDO tu_1_1 = taskDao.internalGetById(getTask("u.2.3").getId());
     assertEquals("u.1.1", tu_1_1.getTitle());
     assertEquals(getTask("u.1").getId(), tu_1_1.getParentTaskId());
@@ -198,6 +207,34 @@ public class TaskTest extends AbstractTestBase {
     assertEquals(getTask("u.1").getId(), u_1_1.getParent().getId());
   }
 
+  @Test
+  public void testAddTaskWhileRefreshing() {
+    final TaskTree tree = taskDao.getTaskTree();
+    initTestDB.addTask("refreshTest", "root");
+    tree.setAccessDao(new AccessDao() {
+      @Override
+      public List<GroupTaskAccessDO> internalLoadAll() {
+        // The tasks are already loaded by the running refresh:
+        initTestDB.addTask("refreshTest.1", "refreshTest");
+        return accessDao.internalLoadAll();
+      }
+    });
+    try {
+      tree.forceReload();
+    } finally {
+      tree.setAccessDao(accessDao);
+    }
+    final TaskNode node = tree.getTaskNodeById(getTask("refreshTest.1").getId());
+    assertNotNull(node, "Task added while refreshing shouldn't get lost.");
+    final TaskNode parent = tree.getTaskNodeById(getTask("refreshTest").getId());
+    assertEquals(parent.getId(), node.getParent().getId());
+    assertEquals(1, parent.getChildren().size());
+    // Mustn't fail:
+    initTestDB.createGroupTaskAccess(initTestDB.addGroup("refreshTestGroup"), getTask("refreshTest.1"),
+        AccessType.TASKS, true, true, true, true);
+    assertNotNull(node.getGroupTaskAccess(getGroup("refreshTestGroup").getId()));
+  }
+
   /**
    * Checks task movements: Does the user has access to delete the task in the old hierarchy and the access to insert
    * the task in the new hierarchy?
@@ -508,6 +545,27 @@ public class TaskTest extends AbstractTestBase {
     assertEquals(4 * 3600, getDuration(taskTree, subTask1.getId()));
     assertEquals(0, getTotalDuration(taskTree, subTask2.getId()));
     assertEquals(0, getDuration(taskTree, subTask2.getId()));
+    timesheetDao.markAsDeleted(ts);
+    assertEquals(8 * 3600, getTotalDuration(taskTree, task.getId()));
+    assertEquals(0, taskDao.readTotalDuration(subTask1.getId()));
+    timesheetDao.markAsDeleted(ts); // Already deleted, durations shouldn't be subtracted twice.
+    assertEquals(8 * 3600, getTotalDuration(taskTree, task.getId()));
+    assertEquals(0, getTotalDuration(taskTree, subTask1.getId()));
+    timesheetDao.undelete(ts);
+    assertEquals(12 * 3600, getTotalDuration(taskTree, task.getId()));
+    timesheetDao.undelete(ts); // Not deleted, durations shouldn't be added twice.
+    assertEquals(12 * 3600, getTotalDuration(taskTree, task.getId()));
+    assertEquals(4 * 3600, taskDao.readTotalDuration(subTask1.getId()));
+    // Unsaved changes are stored by mark as deleted and undelete, the durations must follow the persisted values:
+    ts.setStopTime(dt.plus(13, ChronoUnit.HOURS).getSqlTimestamp());
+    timesheetDao.markAsDeleted(ts);
+    assertEquals(8 * 3600, getTotalDuration(taskTree, task.getId()));
+    assertEquals(0, getTotalDuration(taskTree, subTask1.getId()));
+    ts.setStopTime(dt.plus(12, ChronoUnit.HOURS).getSqlTimestamp());
+    timesheetDao.undelete(ts);
+    assertEquals(10 * 3600, getTotalDuration(taskTree, task.getId()));
+    assertEquals(2 * 3600, getTotalDuration(taskTree, subTask1.getId()));
+    assertEquals(2 * 3600, taskDao.readTotalDuration(subTask1.getId()));
   }
 
   private long getTotalDuration(final TaskTree taskTree, final Integer taskId) {
@@ -0,0 +1,162 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2020 Micromata GmbH, Germany (www.micromata.com)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+
+package org.projectforge.business.teamcal.event;
+
+import net.fortuna.ical4j.model.Recur;
+import org.junit.jupiter.api.Test;
+import org.projectforge.business.teamcal.event.model.TeamEventDO;
+import org.projectforge.framework.access.OperationType;
+import org.projectforge.framework.time.DateFormats;
+import org.projectforge.framework.time.DateHelper;
+
+import java.text.DateFormat;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.TimeZone;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TeamEventRecurrenceCacheTest
+{
+  private static final TimeZone BERLIN = DateHelper.EUROPE_BERLIN;
+
+  @Test
+  public void bucketBoundariesTest() throws ParseException
+  {
+    final TeamEventRecurrenceCache cache = new TeamEventRecurrenceCache();
+    final Recur recur = new Recur("FREQ=DAILY");
+    final TeamEventDO event = createEvent(1, "2020-01-25 08:00", BERLIN);
+    // Range spans two month buckets:
+    assertDates(cache.getOccurrences(event, recur, getDate("2020-01-30 00:00", BERLIN), getDate("2020-02-02 23:59", BERLIN), BERLIN),
+        "2020-01-30 08:00", "2020-01-31 08:00", "2020-02-01 08:00", "2020-02-02 08:00");
+    // Start and end date are inclusive:
+    assertDates(cache.getOccurrences(event, recur, getDate("2020-01-31 08:00", BERLIN), getDate("2020-02-01 08:00", BERLIN), BERLIN),
+        "2020-01-31 08:00", "2020-02-01 08:00");
+    assertDates(cache.getOccurrences(event, recur, getDate("2020-02-01 09:00", BERLIN), getDate("2020-02-01 10:00", BERLIN), BERLIN));
+    // Range before the first occurrence:
+    assertDates(cache.getOccurrences(event, recur, getDate("2019-12-01 00:00", BERLIN), getDate("2020-01-25 07:59", BERLIN), BERLIN));
+    // Cached buckets of several months (including the change to daylight saving time) match the uncached roll out:
+    final Date startDate = getDate("2020-01-15 12:00", BERLIN);
+    final Date endDate = getDate("2020-04-15 12:00", BERLIN);
+    final long[] expected = TeamEventRecurrenceCache.expand(event, recur, startDate, endDate, BERLIN, new long[0]);
+    assertEquals(91, expected.length);
+    assertArrayEquals(expected, cache.getOccurrences(event, recur, startDate, endDate, BERLIN));
+    assertArrayEquals(expected, cache.getOccurrences(event, recur, startDate, endDate, BERLIN));
+  }
+
+  @Test
+  public void exDatesTest() throws ParseException
+  {
+    final TeamEventRecurrenceCache cache = new TeamEventRecurrenceCache();
+    final Recur recur = new Recur("FREQ=DAILY");
+    final TeamEventDO event = createEvent(1, "2020-01-25 08:00", BERLIN);
+    event.addRecurrenceExDate(getDate("2020-01-31 08:00", BERLIN));
+    final Date startDate = getDate("2020-01-30 00:00", BERLIN);
+    final Date endDate = getDate("2020-02-02 23:59", BERLIN);
+    assertDates(cache.getOccurrences(event, recur, startDate, endDate, BERLIN),
+        "2020-01-30 08:00", "2020-02-01 08:00", "2020-02-02 08:00");
+
+    // Modified event (new last update):
+    event.setRecurrenceExDate(null);
+    event.setLastUpdate(new Date(event.getLastUpdate().getTime() + 1000));
+    assertEquals(4, cache.getOccurrences(event, recur, startDate, endDate, BERLIN).length);
+
+    // Modified event evicted by the listener:
+    event.addRecurrenceExDate(getDate("2020-02-01 08:00", BERLIN));
+    assertEquals(4, cache.getOccurrences(event, recur, startDate, endDate, BERLIN).length);
+    cache.afterSaveOrModifify(event, OperationType.UPDATE);
+    assertDates(cache.getOccurrences(event, recur, startDate, endDate, BERLIN),
+        "2020-01-30 08:00", "2020-01-31 08:00", "2020-02-02 08:00");
+
+    // All day events: ex dates are compared by day.
+    final TimeZone utc = DateHelper.UTC;
+    final TeamEventDO allDayEvent = createEvent(2, "2020-01-25 00:00", utc);
+    allDayEvent.setAllDay(true);
+    allDayEvent.addRecurrenceExDate(getDate("2020-01-31 00:00", utc));
+    assertDates(cache.getOccurrences(allDayEvent, recur, getDate("2020-01-30 00:00", utc), getDate("2020-02-02 00:00", utc), utc), utc,
+        "2020-01-30 00:00", "2020-02-01 00:00", "2020-02-02 00:00");
+  }
+
+  @Test
+  public void timeZoneTest() throws ParseException
+  {
+    final TeamEventRecurrenceCache cache = new TeamEventRecurrenceCache();
+    final Recur recur = new Recur("FREQ=DAILY");
+    final TimeZone newYork = TimeZone.getTimeZone("America/New_York");
+    final TeamEventDO event = createEvent(1, "2020-03-01 08:00", BERLIN);
+    // Daylight saving time starts in New York on March 8th and in Berlin on March 29th:
+    final Date startDate = getDate("2020-03-09 00:00", DateHelper.UTC);
+    final Date endDate = getDate("2020-03-20 00:00", DateHelper.UTC);
+    final long[] berlin = cache.getOccurrences(event, recur, startDate, endDate, BERLIN);
+    final long[] nyc = cache.getOccurrences(event, recur, startDate, endDate, newYork);
+    assertArrayEquals(TeamEventRecurrenceCache.expand(event, recur, startDate, endDate, BERLIN, new long[0]), berlin);
+    assertArrayEquals(TeamEventRecurrenceCache.expand(event, recur, startDate, endDate, newYork, new long[0]), nyc);
+    assertEquals(11, berlin.length);
+    assertEquals(11, nyc.length);
+    assertFalse(Arrays.equals(berlin, nyc), "Buckets of different time zones shouldn't be mixed up.");
+    assertDates(Arrays.copyOf(berlin, 1), "2020-03-09 08:00");
+    assertDates(Arrays.copyOf(nyc, 1), newYork, "2020-03-09 02:00");
+    // Cached buckets:
+    assertArrayEquals(berlin, cache.getOccurrences(event, recur, startDate, endDate, BERLIN));
+    assertArrayEquals(nyc, cache.getOccurrences(event, recur, startDate, endDate, newYork));
+  }
+
+  private TeamEventDO createEvent(final int id, final String startDate, final TimeZone timeZone)
+  {
+    final TeamEventDO event = new TeamEventDO();
+    event.setId(id);
+    event.setStartDate(getDate(startDate, timeZone));
+    event.setEndDate(new Date(event.getStartDate().getTime() + 30 * 60 * 1000));
+    event.setLastUpdate(new Date());
+    return event;
+  }
+
+  private void assertDates(final long[] occurrences, final String... expected)
+  {
+    assertDates(occurrences, BERLIN, expected);
+  }
+
+  private void assertDates(final long[] occurrences, final TimeZone timeZone, final String... expected)
+  {
+    final DateFormat df = new SimpleDateFormat(DateFormats.ISO_TIMESTAMP_MINUTES);
+    df.setTimeZone(timeZone);
+    final String[] actual = Arrays.stream(occurrences).mapToObj(millis -> df.format(new Date(millis))).toArray(String[]::new);
+    assertArrayEquals(expected, actual);
+  }
+
+  private Date getDate(final String dateString, final TimeZone timeZone)
+  {
+    final DateFormat df = new SimpleDateFormat(DateFormats.ISO_TIMESTAMP_MINUTES);
+    df.setTimeZone(timeZone);
+    try {
+      return df.parse(dateString);
+    } catch (final ParseException ex) {
+      fail("Can't parse date '" + dateString + "': " + ex.getMessage());
+      return null;
+    }
+  }
+}
@@ -0,0 +1,89 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2020 Micromata GmbH, Germany (www.micromata.com)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+
+package org.projectforge.business.teamcal.externalsubscription;
+
+import org.junit.jupiter.api.Test;
+import org.projectforge.business.teamcal.event.model.TeamEventDO;
+
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+public class SubscriptionHolderTest
+{
+  private static final long HOUR = 3600000L;
+
+  private static final long DAY = 24 * HOUR;
+
+  @Test
+  void resultList()
+  {
+    final SubscriptionHolder holder = new SubscriptionHolder();
+    // Many short events in the past:
+    for (int i = 0; i < 1000; i++) {
+      holder.add(createEvent("past-" + i, i * DAY, i * DAY + HOUR));
+    }
+    final TeamEventDO longEvent = createEvent("long", 10 * DAY, 2000 * DAY);
+    holder.add(longEvent);
+    final TeamEventDO weekEvent = createEvent("week", 1502 * DAY, 1502 * DAY + HOUR);
+    holder.add(weekEvent);
+    holder.add(createEvent("future", 1600 * DAY, 1600 * DAY + HOUR));
+
+    List<TeamEventDO> result = holder.getResultList(1500 * DAY, 1507 * DAY, false);
+    assertEquals(2, result.size());
+    assertSame(longEvent, result.get(0));
+    assertSame(weekEvent, result.get(1));
+
+    // Period extension of one day (all day events):
+    result = holder.getResultList(500 * DAY + 2 * HOUR, 501 * DAY - 2 * HOUR, false);
+    assertEquals(2, result.size());
+    assertSame(longEvent, result.get(0));
+    assertEquals("past-500", result.get(1).getUid());
+    result = holder.getResultList(500 * DAY - 2 * HOUR, 500 * DAY - HOUR, false);
+    assertEquals(2, result.size());
+    assertEquals("long", result.get(0).getUid());
+    assertEquals("past-499", result.get(1).getUid());
+
+    assertSame(weekEvent, holder.getEvent("week"));
+    assertNull(holder.getEvent("unknown"));
+
+    // Index is rebuilt after modifications:
+    holder.add(createEvent("added", 1503 * DAY, 1503 * DAY + HOUR));
+    assertEquals(3, holder.getResultList(1500 * DAY, 1507 * DAY, false).size());
+    assertEquals("added", holder.getEvent("added").getUid());
+  }
+
+  private static TeamEventDO createEvent(final String uid, final long start, final long end)
+  {
+    final TeamEventDO event = new TeamEventDO();
+    event.setUid(uid);
+    event.setStartDate(new Date(start));
+    event.setEndDate(new Date(end));
+    return event;
+  }
+}
@@ -0,0 +1,161 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2020 Micromata GmbH, Germany (www.micromata.com)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+
+package org.projectforge.business.teamcal.externalsubscription;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.projectforge.business.teamcal.admin.TeamCalDao;
+import org.projectforge.business.teamcal.admin.model.TeamCalDO;
+import org.projectforge.test.AbstractTestBase;
+
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.TimeZone;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class TeamEventSubscriptionTest extends AbstractTestBase
+{
+  private static final String ETAG = "\"v1\"";
+
+  private HttpServer server;
+
+  private final AtomicInteger fullResponses = new AtomicInteger();
+
+  private final AtomicInteger notModifiedResponses = new AtomicInteger();
+
+  private volatile byte[] content;
+
+  private volatile String eTag = ETAG;
+
+  @BeforeEach
+  void startServer() throws Exception
+  {
+    content = createIcs().getBytes(StandardCharsets.UTF_8);
+    server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    server.createContext("/calendar.ics", exchange -> {
+      final byte[] ics = content;
+      if (eTag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+        notModifiedResponses.incrementAndGet();
+        exchange.sendResponseHeaders(304, -1);
+      } else {
+        fullResponses.incrementAndGet();
+        exchange.getResponseHeaders().add("ETag", eTag);
+        exchange.sendResponseHeaders(200, ics.length);
+        try (final OutputStream out = exchange.getResponseBody()) {
+          out.write(ics);
+        }
+      }
+      exchange.close();
+    });
+    server.start();
+  }
+
+  @AfterEach
+  void stopServer()
+  {
+    server.stop(0);
+  }
+
+  @Test
+  void conditionalUpdate()
+  {
+    final TeamCalDao teamCalDao = Mockito.mock(TeamCalDao.class);
+    final TeamCalDO calendar = new TeamCalDO();
+    calendar.setId(42);
+    calendar.setExternalSubscription(true);
+    calendar.setExternalSubscriptionUrl("http://localhost:" + server.getAddress().getPort() + "/calendar.ics");
+
+    final TeamEventSubscription subscription = new TeamEventSubscription();
+    subscription.update(teamCalDao, calendar);
+    assertEquals(1, fullResponses.get());
+    assertNull(subscription.getLastErrorMessage());
+    assertNotNull(subscription.getEvent("event-1@projectforge.org"));
+    Mockito.verify(teamCalDao, Mockito.times(1)).internalUpdate(calendar);
+
+    subscription.update(teamCalDao, calendar);
+    assertEquals(1, fullResponses.get());
+    assertEquals(1, notModifiedResponses.get());
+    assertNull(subscription.getLastErrorMessage());
+    assertNotNull(subscription.getLastUpdated());
+    assertNotNull(subscription.getEvent("event-1@projectforge.org"));
+    Mockito.verify(teamCalDao, Mockito.times(1)).internalUpdate(calendar);
+  }
+
+  @Test
+  void noValidatorsOfFailedUpdates()
+  {
+    final TeamCalDao teamCalDao = Mockito.mock(TeamCalDao.class);
+    final TeamCalDO calendar = new TeamCalDO();
+    calendar.setId(43);
+    calendar.setExternalSubscription(true);
+    calendar.setExternalSubscriptionUrl("http://localhost:" + server.getAddress().getPort() + "/calendar.ics");
+
+    final TeamEventSubscription subscription = new TeamEventSubscription();
+    subscription.update(teamCalDao, calendar);
+    assertEquals(1, fullResponses.get());
+    assertNull(subscription.getLastErrorMessage());
+
+    content = "no calendar".getBytes(StandardCharsets.UTF_8);
+    eTag = "\"v2\"";
+    subscription.update(teamCalDao, calendar);
+    assertEquals(2, fullResponses.get());
+    assertNotNull(subscription.getLastErrorMessage());
+    assertNotNull(subscription.getEvent("event-1@projectforge.org"), "Events of the last successful update expected.");
+
+    // The new content wasn't applied, so its validators mustn't be used (no 304 not modified):
+    subscription.update(teamCalDao, calendar);
+    assertEquals(3, fullResponses.get());
+    assertEquals(0, notModifiedResponses.get());
+    assertEquals(2, subscription.getNumberOfFailedUpdates());
+  }
+
+  private static String createIcs()
+  {
+    final SimpleDateFormat format = new SimpleDateFormat("yyyyMMdd'T'HHmmss'Z'");
+    format.setTimeZone(TimeZone.getTimeZone("UTC"));
+    final long start = System.currentTimeMillis() + 24 * 3600 * 1000L;
+    return "BEGIN:VCALENDAR\r\n"
+        + "VERSION:2.0\r\n"
+        + "PRODID:-//ProjectForge//Test//EN\r\n"
+        + "BEGIN:VEVENT\r\n"
+        + "UID:event-1@projectforge.org\r\n"
+        + "DTSTAMP:" + format.format(new Date()) + "\r\n"
+        + "DTSTART:" + format.format(new Date(start)) + "\r\n"
+        + "DTEND:" + format.format(new Date(start + 3600 * 1000L)) + "\r\n"
+        + "SUMMARY:Subscribed event\r\n"
+        + "END:VEVENT\r\n"
+        + "END:VCALENDAR\r\n";
+  }
+}
@@ -23,6 +23,9 @@
 
 package org.projectforge.export;
 
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.projectforge.business.excel.ContentProvider;
@@ -36,6 +39,7 @@ import org.projectforge.framework.time.PFDateTime;
 import org.projectforge.test.TestSetup;
 import org.projectforge.test.WorkFileHelper;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
@@ -62,6 +66,30 @@ public class ExportWorkbookTest {
     writeExcel("TestExcel_en.xls", Locale.ENGLISH, "DD/MM/YYYY");
   }
 
+  @Test
+  public void exportStreaming() throws IOException {
+    final ExportWorkbook workbook = ExportWorkbook.createStreamingWorkbook(10);
+    final ExportSheet sheet = workbook.addSheet("Test");
+    sheet.addRow().setValues("Number", "Text");
+    for (int i = 1; i <= 100; i++) {
+      sheet.addRow().setValues(i, "Row " + i);
+    }
+    Assertions.assertTrue(sheet.getRows().size() <= 20, "Only the last rows should be held in memory.");
+    Assertions.assertThrows(IllegalStateException.class, () -> sheet.getRow(0));
+    Assertions.assertEquals("Row 100", sheet.getRow(100).getCell(1).getStringCellValue());
+    sheet.setAutoFilter();
+    final byte[] bytes = workbook.getAsByteArray();
+    try (final XSSFWorkbook xssfWorkbook = new XSSFWorkbook(new ByteArrayInputStream(bytes))) {
+      final Sheet poiSheet = xssfWorkbook.getSheetAt(0);
+      Assertions.assertEquals(100, poiSheet.getLastRowNum());
+      Assertions.assertEquals("Number", poiSheet.getRow(0).getCell(0).getStringCellValue());
+      Assertions.assertEquals(42, poiSheet.getRow(42).getCell(0).getNumericCellValue(), 0.0001);
+      Assertions.assertEquals("Row 99", poiSheet.getRow(99).getCell(1).getStringCellValue());
+      // Styles of flushed and not flushed rows are shared:
+      Assertions.assertEquals(poiSheet.getRow(2).getCell(1).getCellStyle().getIndex(), poiSheet.getRow(98).getCell(1).getCellStyle().getIndex());
+    }
+  }
+
   private void writeExcel(final String filename, final Locale locale, final String excelDateFormat) throws IOException {
     final PFUserDO user = new PFUserDO();
     user.setLocale(locale);
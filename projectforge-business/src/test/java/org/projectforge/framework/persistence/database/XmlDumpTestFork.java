@@ -23,9 +23,34 @@
 
 package org.projectforge.framework.persistence.database;
 
+import de.micromata.genome.db.jpa.history.api.DiffEntry;
+import de.micromata.genome.db.jpa.history.api.HistProp;
+import de.micromata.genome.db.jpa.history.entities.EntityOpType;
+import de.micromata.genome.db.jpa.history.entities.PropertyOpType;
+import de.micromata.genome.db.jpa.history.impl.HistoryServiceImpl;
+import org.junit.jupiter.api.Test;
+import org.projectforge.business.task.TaskDO;
+import org.projectforge.framework.persistence.history.entities.PfHistoryMasterDO;
+import org.projectforge.framework.persistence.xstream.XStreamSavingConverter;
 import org.projectforge.test.AbstractTestBase;
 import org.springframework.beans.factory.annotation.Autowired;
 
+import javax.persistence.EntityManager;
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
 public class XmlDumpTestFork extends AbstractTestBase
 {
   private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(XmlDumpTestFork.class);
@@ -36,6 +61,11 @@ public class XmlDumpTestFork extends AbstractTestBase
   @Autowired
   private XmlDump xmlDump;
 
+  /**
+   * Property names of the attributes of the created history entries.
+   */
+  private final List<Set<String>> historyAttributes = new ArrayList<>();
+
   @Override
   protected void initDb()
   {
@@ -43,4 +73,84 @@ public class XmlDumpTestFork extends AbstractTestBase
     init(false);
   }
 
+  @Test
+  public void dumpAndRestore()
+  {
+    emf.runInTrans(emgr -> {
+      final EntityManager em = emgr.getEntityManager();
+      final TaskDO root = createTask(null, "xmlDumpRoot");
+      em.persist(root);
+      final TaskDO child = createTask(root, "xmlDumpChild");
+      em.persist(child);
+      final TaskDO parent = createTask(root, "xmlDumpParent");
+      em.persist(parent);
+      // Forward reference: the child is dumped before its parent (ordered by id).
+      child.setParentTask(parent);
+      em.flush();
+      em.persist(createHistoryEntry(child, EntityOpType.Insert, "title", null, "xmlDumpChild"));
+      em.persist(createHistoryEntry(child, EntityOpType.Update, "description", "old description", "new description"));
+      return null;
+    });
+    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+    xmlDump.dumpDatabase("dump.xml", out);
+    clearDatabase();
+    final XStreamSavingConverter converter = xmlDump
+        .restoreDatabase(new StringReader(new String(out.toByteArray(), StandardCharsets.UTF_8)));
+    assertTrue(xmlDump.verifyDump(converter) > 0, "Restore without errors expected.");
+    emf.runInTrans(emgr -> {
+      final Map<String, TaskDO> tasks = emgr.getEntityManager()
+          .createQuery("select t from TaskDO t where t.title like 'xmlDump%'", TaskDO.class)
+          .getResultList().stream().collect(Collectors.toMap(TaskDO::getTitle, Function.identity()));
+      assertEquals(3, tasks.size());
+      assertEquals("xmlDumpParent", tasks.get("xmlDumpChild").getParentTask().getTitle());
+      assertEquals("xmlDumpRoot", tasks.get("xmlDumpParent").getParentTask().getTitle());
+      // History entries of the child with their attributes:
+      final List<PfHistoryMasterDO> history = emgr.getEntityManager()
+          .createQuery("select h from PfHistoryMasterDO h where h.entityName = :entityName and h.entityId = :entityId order by h.pk",
+              PfHistoryMasterDO.class)
+          .setParameter("entityName", TaskDO.class.getName())
+          .setParameter("entityId", tasks.get("xmlDumpChild").getId().longValue())
+          .getResultList();
+      assertEquals(2, history.size());
+      assertEquals(EntityOpType.Insert, history.get(0).getEntityOpType());
+      assertEquals(EntityOpType.Update, history.get(1).getEntityOpType());
+      for (final PfHistoryMasterDO entry : history) {
+        assertTrue(entry.getAttributes().size() > 0, "History attributes expected.");
+      }
+      assertEquals(historyAttributes.get(0), new HashSet<>(history.get(0).getAttributes().keySet()));
+      assertEquals(historyAttributes.get(1), new HashSet<>(history.get(1).getAttributes().keySet()));
+      return null;
+    });
+  }
+
+  private PfHistoryMasterDO createHistoryEntry(final TaskDO task, final EntityOpType opType, final String propertyName,
+      final String oldValue, final String newValue)
+  {
+    final PfHistoryMasterDO entry = new PfHistoryMasterDO();
+    final Date now = new Date();
+    entry.setCreatedBy("anon");
+    entry.setModifiedBy("anon");
+    entry.setCreatedAt(now);
+    entry.setModifiedAt(now);
+    entry.setEntityOpType(opType);
+    entry.setEntityName(TaskDO.class.getName());
+    entry.setEntityId(task.getId().longValue());
+    entry.setTransactionId("xmlDump" + propertyName);
+    final DiffEntry diffEntry = new DiffEntry();
+    diffEntry.setPropertyName(propertyName);
+    diffEntry.setNewProp(new HistProp(propertyName, String.class.getName(), newValue));
+    diffEntry.setOldProp(new HistProp(propertyName, String.class.getName(), oldValue));
+    diffEntry.setPropertyOpType(opType == EntityOpType.Insert ? PropertyOpType.Insert : PropertyOpType.Update);
+    HistoryServiceImpl.putHistProp(entry, diffEntry);
+    historyAttributes.add(new HashSet<>(entry.getAttributes().keySet()));
+    return entry;
+  }
+
+  private TaskDO createTask(final TaskDO parent, final String title)
+  {
+    final TaskDO task = new TaskDO();
+    task.setParentTask(parent);
+    task.setTitle(title);
+    return task;
+  }
 }
@@ -29,9 +29,14 @@ import org.projectforge.business.task.TaskDO;
 import org.projectforge.business.task.TaskDao;
 import org.projectforge.business.timesheet.TimesheetDO;
 import org.projectforge.business.timesheet.TimesheetDao;
+import org.projectforge.business.timesheet.TimesheetFilter;
 import org.projectforge.common.task.TaskStatus;
 import org.projectforge.framework.access.AccessException;
+import org.projectforge.framework.access.AccessType;
 import org.projectforge.framework.i18n.UserException;
+import org.projectforge.framework.persistence.api.impl.DBQuery;
+import org.projectforge.framework.persistence.api.impl.DBQueryStatistics;
+import org.projectforge.framework.persistence.user.entities.PFUserDO;
 import org.projectforge.framework.time.DatePrecision;
 import org.projectforge.framework.time.PFDateTime;
 import org.projectforge.test.AbstractTestBase;
@@ -40,6 +45,7 @@ import org.springframework.beans.factory.annotation.Autowired;
 import java.io.Serializable;
 import java.time.Month;
 import java.util.Date;
+import java.util.List;
 import java.util.Locale;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
@@ -53,6 +59,9 @@ public class TimesheetTestFork extends AbstractTestBase {
   @Autowired
   TaskDao taskDao;
 
+  @Autowired
+  DBQuery dbQuery;
+
   PFDateTime date;
 
   @BeforeEach
@@ -290,6 +299,51 @@ public class TimesheetTestFork extends AbstractTestBase {
     }
   }
 
+  /**
+   * Benchmark of the select access predicate: foreign time sheets of tasks without select access shouldn't be loaded
+   * from the data base at all (number of hydrated rows per returned row).
+   */
+  @Test
+  public void selectAccessPredicate() {
+    initTestDB.addTask("ts-selectAccess", "root");
+    initTestDB.addTask("ts-selectAccess-open", "ts-selectAccess");
+    initTestDB.addTask("ts-selectAccess-closed", "ts-selectAccess");
+    initTestDB.addUser("ts-selectAccess-user");
+    initTestDB.addUser("ts-selectAccess-foreign");
+    initTestDB.addGroup("ts-selectAccess-group", "ts-selectAccess-user");
+    initTestDB.createGroupTaskAccess(getGroup("ts-selectAccess-group"), getTask("ts-selectAccess-open"),
+            AccessType.TIMESHEETS, true, false, false, false);
+    final PFUserDO foreignUser = getUser("ts-selectAccess-foreign");
+    final long hour = 60 * 60 * 1000;
+    final long start = PFDateTime.withDate(2019, Month.MARCH, 1, 8, 0).getUtilDate().getTime();
+    for (int i = 0; i < 205; i++) {
+      final TaskDO task = i < 5 ? getTask("ts-selectAccess-open") : getTask("ts-selectAccess-closed");
+      initTestDB.addTimesheet(foreignUser, task, new Date(start + 2 * i * hour), new Date(start + (2 * i + 1) * hour),
+              "selectAccessPredicate #" + i);
+    }
+    final TimesheetFilter filter = new TimesheetFilter();
+    filter.setUserId(foreignUser.getId());
+    filter.setTaskId(getTask("ts-selectAccess").getId());
+    filter.setRecursive(true);
+
+    logon(getUser("ts-selectAccess-user"));
+    // Without select access predicate (internal list), every candidate is loaded:
+    final DBQueryStatistics before = new DBQueryStatistics();
+    assertEquals(205, dbQuery.getList(timesheetDao, timesheetDao.buildQueryFilter(filter), null, false, false, before).size());
+    final DBQueryStatistics after = new DBQueryStatistics();
+    final List<TimesheetDO> list = dbQuery.getList(timesheetDao, timesheetDao.buildQueryFilter(filter), null, true, false, after);
+    log.info("Hydrated rows per result row without select access predicate: " + (before.getHydratedRows() / (double) list.size())
+            + " (" + before + "), with select access predicate: " + after.getHydratedPerResultRow() + " (" + after + ").");
+    assertEquals(5, list.size());
+    assertEquals(205, before.getHydratedRows());
+    assertEquals(5, after.getHydratedRows(), "Time sheets without select access shouldn't be loaded.");
+
+    // The task ids with select access are cached by the task tree until the group task accesses are modified:
+    initTestDB.createGroupTaskAccess(getGroup("ts-selectAccess-group"), getTask("ts-selectAccess-closed"),
+            AccessType.TIMESHEETS, true, false, false, false);
+    assertEquals(205, timesheetDao.getList(filter).size());
+  }
+
   private void setTimeperiod(final TimesheetDO timesheet, final int fromDay, final int fromHour, final int fromMinute,
                              final int toDay, final int toHour, final int toMinute) {
     setTimeperiod(timesheet, 1970, Month.NOVEMBER, fromDay, fromHour, fromMinute, toDay, toHour, toMinute);
@@ -0,0 +1,71 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2020 Micromata GmbH, Germany (www.micromata.com)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+
+package org.projectforge.business.address
+
+import org.junit.jupiter.api.Assertions
+import org.junit.jupiter.api.Test
+
+class AddressPhoneNumberIndexTest {
+    @Test
+    fun canonicalizeTest() {
+        Assertions.assertEquals("5613167930", AddressPhoneNumberIndex.canonicalize("+49 561 / 316793-0", "+49"))
+        Assertions.assertEquals("5613167930", AddressPhoneNumberIndex.canonicalize("0561 316793-0", "+49"))
+        Assertions.assertEquals("39123456", AddressPhoneNumberIndex.canonicalize("+39 123456", "+49"))
+        Assertions.assertNull(AddressPhoneNumberIndex.canonicalize("0123", "+49"))
+        Assertions.assertNull(AddressPhoneNumberIndex.canonicalize(null, "+49"))
+    }
+
+    @Test
+    fun findTest() {
+        val data = AddressPhoneNumberIndex.Data()
+        data.put(1, listOf(canonicalize("+49 561 316793-0")))
+        data.put(2, listOf(canonicalize("316793-0"))) // Without area code.
+        data.put(3, listOf(canonicalize("0049 561 316793-0"), canonicalize("0171 1234567")))
+        data.put(4, listOf(canonicalize("+39 123456")))
+
+        assertIds(data, "+49 561 316793-0", 1, 2, 3)
+        assertIds(data, "0561 3167930", 1, 2, 3)
+        assertIds(data, "3167930", 1, 2, 3) // Incoming call without area code.
+        assertIds(data, "0171/1234567", 3)
+        assertIds(data, "0561 3167931")
+        assertIds(data, "+39 123456", 4)
+
+        data.put(3, listOf(canonicalize("0171 1234567"))) // Update
+        assertIds(data, "0561 3167930", 1, 2)
+        assertIds(data, "0171/1234567", 3)
+        data.remove(1)
+        assertIds(data, "0561 3167930", 2)
+        data.remove(3)
+        assertIds(data, "0171/1234567")
+    }
+
+    private fun assertIds(data: AddressPhoneNumberIndex.Data, number: String, vararg expectedIds: Int) {
+        Assertions.assertEquals(expectedIds.toSet(), data.find(canonicalize(number)), "Look-up of number '$number'.")
+    }
+
+    private fun canonicalize(number: String): String {
+        return AddressPhoneNumberIndex.canonicalize(number, "+49")!!
+    }
+}
@@ -0,0 +1,77 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2020 Micromata GmbH, Germany (www.micromata.com)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+
+package org.projectforge.business.scripting
+
+import org.junit.jupiter.api.Assertions
+import org.junit.jupiter.api.Test
+
+class CompiledScriptCacheTest {
+    @Test
+    fun lruTest() {
+        val disposed = mutableListOf<String>()
+        val cache = CompiledScriptCache<String>("test", 2) { disposed.add(it) }
+        Assertions.assertEquals(Pair("compiled-a", false), get(cache, "a", "compiled-a"))
+        Assertions.assertEquals(Pair("compiled-a", true), get(cache, "a", "other"))
+        get(cache, "b", "compiled-b")
+        get(cache, "a", "other") // a is now the most recently used entry.
+        get(cache, "c", "compiled-c")
+        Assertions.assertEquals(listOf("compiled-b"), disposed)
+        Assertions.assertEquals(2, cache.size)
+
+        Assertions.assertNull(cache.acquire("d") { null })
+        Assertions.assertEquals(2, cache.size)
+
+        cache.remove("a")
+        Assertions.assertEquals(listOf("compiled-b", "compiled-a"), disposed)
+        Assertions.assertEquals(Pair("compiled-a2", false), get(cache, "a", "compiled-a2"))
+    }
+
+    @Test
+    fun referenceCountTest() {
+        val disposed = mutableListOf<String>()
+        val cache = CompiledScriptCache<String>("test", 1) { disposed.add(it) }
+        val handle1 = cache.acquire("a") { "compiled-a" }!!
+        val handle2 = cache.acquire("a") { "other" }!!
+        Assertions.assertTrue(handle2.fromCache)
+        get(cache, "b", "compiled-b") // Evicts a, but a is still in use.
+        Assertions.assertTrue(disposed.isEmpty())
+        handle1.close()
+        handle1.close() // Closing twice doesn't release twice.
+        Assertions.assertTrue(disposed.isEmpty())
+        Assertions.assertEquals("compiled-a", handle2.compiled)
+        handle2.close()
+        Assertions.assertEquals(listOf("compiled-a"), disposed)
+
+        val handle3 = cache.acquire("b") { "other" }!!
+        cache.remove("b")
+        Assertions.assertEquals(listOf("compiled-a"), disposed)
+        handle3.close()
+        Assertions.assertEquals(listOf("compiled-a", "compiled-b"), disposed)
+    }
+
+    private fun get(cache: CompiledScriptCache<String>, source: String, compiled: String): Pair<String, Boolean>? {
+        return cache.acquire(source) { compiled }?.use { Pair(it.compiled, it.fromCache) }
+    }
+}
@@ -0,0 +1,74 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2020 Micromata GmbH, Germany (www.micromata.com)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+package org.projectforge.business.scripting
+
+import org.junit.jupiter.api.Assertions
+import org.junit.jupiter.api.Test
+import org.projectforge.test.AbstractTestBase
+import org.springframework.beans.factory.annotation.Autowired
+
+class KotlinScriptExecutorTest : AbstractTestBase() {
+    @Autowired
+    private lateinit var scriptDao: ScriptDao
+
+    @Test
+    fun cacheHitTest() {
+        val script = "val a = 6\na * 7"
+        KotlinScriptExecutor.removeFromCache(script)
+        var result = KotlinScriptExecutor.execute(script, emptyMap())
+        Assertions.assertNull(result.exception)
+        Assertions.assertEquals(42, result.result)
+        Assertions.assertTrue(KotlinScriptExecutor.isCached(script))
+        result = KotlinScriptExecutor.execute(script, mapOf("unused" to "value"))
+        Assertions.assertNull(result.exception)
+        Assertions.assertEquals(42, result.result)
+        Assertions.assertEquals(0L, result.compileTimeMillis, "Compiled script should be taken from the cache.")
+    }
+
+    @Test
+    fun scriptDaoInvalidationTest() {
+        logon(TEST_FINANCE_USER)
+        val script = ScriptDO()
+        script.name = "kotlinScriptExecutorTest"
+        script.type = ScriptDO.ScriptType.KOTLIN
+        script.scriptAsString = "\"version 1\""
+        scriptDao.save(script)
+        Assertions.assertEquals("version 1", scriptDao.execute(script, emptyList()).result)
+        Assertions.assertTrue(KotlinScriptExecutor.isCached("\"version 1\""))
+
+        // Modified script: the old compiled script is removed, the new one compiled on next execution.
+        val dbScript = scriptDao.getById(script.id)
+        dbScript.scriptAsString = "\"version 2\""
+        scriptDao.update(dbScript)
+        Assertions.assertFalse(KotlinScriptExecutor.isCached("\"version 1\""))
+        Assertions.assertFalse(KotlinScriptExecutor.isCached("\"version 2\""))
+        val result = scriptDao.execute(dbScript, emptyList())
+        Assertions.assertEquals("version 2", result.result)
+        Assertions.assertTrue(result.compileTimeMillis!! > 0, "Modified script should be recompiled.")
+        Assertions.assertTrue(KotlinScriptExecutor.isCached("\"version 2\""))
+
+        scriptDao.delete(dbScript)
+        Assertions.assertFalse(KotlinScriptExecutor.isCached("\"version 2\""))
+    }
+}
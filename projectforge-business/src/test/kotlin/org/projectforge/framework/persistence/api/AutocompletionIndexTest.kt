@@ -0,0 +1,130 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2020 Micromata GmbH, Germany (www.micromata.com)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+
+package org.projectforge.framework.persistence.api
+
+import org.junit.jupiter.api.Assertions
+import org.junit.jupiter.api.Test
+import org.mockito.Mockito
+import org.projectforge.business.address.AddressDO
+import org.projectforge.business.address.AddressDao
+import org.projectforge.framework.access.OperationType
+import org.projectforge.framework.cache.AbstractCache
+import org.projectforge.framework.persistence.jpa.PfEmgrFactory
+import java.util.*
+
+class AutocompletionIndexTest {
+    private val now = System.currentTimeMillis()
+
+    /**
+     * Result of the rebuild query: partition, value, count and last update.
+     */
+    private var rows = listOf<Array<Any?>>()
+
+    /**
+     * Called while rebuilding the index.
+     */
+    private var onRebuild: (() -> Unit)? = null
+
+    @Test
+    fun matchingAndRankingTest() {
+        rows = listOf(
+                row("Kassel", "Micromata GmbH", 3, now - 1000),
+                row("Kassel", "ProjectForge Org", 1, now),
+                row("Kassel", "Micro Systems", 3, now - 500),
+                row("Kassel", "Old Micromata", 5, now - 800 * AbstractCache.TICKS_PER_DAY),
+                row("Berlin", "Micromata Berlin", 1, now))
+        val index = createIndex()
+        // Same count, the most recent first. Values older than 730 days are ignored:
+        Assertions.assertEquals(listOf("Micro Systems", "Micromata GmbH"), index.getAutocompletion("micro", listOf("Kassel")))
+        Assertions.assertEquals(listOf("Micromata GmbH", "Micromata Berlin"), index.getAutocompletion("MATA", listOf("Kassel", "Berlin")))
+        // Search strings shorter than a trigram:
+        Assertions.assertEquals(listOf("ProjectForge Org"), index.getAutocompletion("pr", listOf("Kassel")))
+        Assertions.assertEquals(listOf("Micro Systems", "Micromata GmbH", "ProjectForge Org"), index.getAutocompletion(null, listOf("Kassel")))
+        Assertions.assertTrue(index.getAutocompletion("mat", listOf("Hamburg")).isEmpty())
+        Assertions.assertTrue(index.getAutocompletion("xyz", listOf("Kassel")).isEmpty())
+        Assertions.assertTrue(index.getAutocompletion("Systems GmbH", listOf("Kassel")).isEmpty())
+    }
+
+    @Test
+    fun changesTest() {
+        rows = listOf(row("Kassel", "Micromata GmbH", 1, now))
+        lateinit var index: AutocompletionIndex<AddressDO>
+        onRebuild = { index.afterSaveOrModifify(createAddress("Kassel", "Replayed Org"), OperationType.INSERT) }
+        index = createIndex()
+        Assertions.assertEquals(listOf("Replayed Org"), index.getAutocompletion("replayed", listOf("Kassel")))
+        onRebuild = null
+
+        val address = createAddress("Kassel", "Micromata AG")
+        index.afterSaveOrModifify(address, OperationType.INSERT)
+        index.afterSaveOrModifify(address, OperationType.INSERT)
+        Assertions.assertEquals(listOf("Micromata AG", "Micromata GmbH"), index.getAutocompletion("micromata", listOf("Kassel")))
+        index.afterSaveOrModifify(address, OperationType.DELETE)
+        index.afterSaveOrModifify(address, OperationType.DELETE)
+        Assertions.assertEquals(listOf("Micromata GmbH"), index.getAutocompletion("micromata", listOf("Kassel")))
+        index.afterSaveOrModifify(address, OperationType.UNDELETE)
+        Assertions.assertEquals(listOf("Micromata AG", "Micromata GmbH"), index.getAutocompletion("micromata", listOf("Kassel")))
+    }
+
+    @Test
+    fun evictionTest() {
+        rows = (1..11).map { row("Kassel", "value%02d".format(it), it, now) }
+        var index = createIndex(maxValuesPerPartition = 10)
+        var result = index.getAutocompletion("value", listOf("Kassel"))
+        Assertions.assertEquals(9, result.size)
+        Assertions.assertEquals("value11", result[0])
+        Assertions.assertFalse(result.contains("value01"))
+        Assertions.assertFalse(result.contains("value02"))
+
+        // Memory limit of all partitions:
+        rows = (1..6).map { row("Kassel", "value-k$it", 10 + it, now) } + (1..5).map { row("Berlin", "value-b$it", it, now) }
+        index = createIndex(maxValues = 10)
+        result = index.getAutocompletion("value", listOf("Kassel", "Berlin"))
+        Assertions.assertEquals(9, result.size)
+        Assertions.assertEquals(listOf("value-k6", "value-k5", "value-k4", "value-k3", "value-k2", "value-k1", "value-b5", "value-b4", "value-b3"), result)
+    }
+
+    private fun createIndex(maxValuesPerPartition: Int = 10000, maxValues: Int = 100000): AutocompletionIndex<AddressDO> {
+        val emgrFactory = Mockito.mock(PfEmgrFactory::class.java)
+        Mockito.`when`(emgrFactory.runRoTrans<Any>(Mockito.any())).thenAnswer {
+            onRebuild?.invoke()
+            rows
+        }
+        val addressDao = AddressDao()
+        addressDao.emgrFactory = emgrFactory
+        return AutocompletionIndex(addressDao, "organization", "city", { it.city }, 730, maxValuesPerPartition, maxValues)
+    }
+
+    private fun createAddress(city: String, organization: String): AddressDO {
+        val address = AddressDO()
+        address.city = city
+        address.organization = organization
+        address.lastUpdate = Date(now)
+        return address
+    }
+
+    private fun row(partition: String, value: String, count: Int, lastUpdate: Long): Array<Any?> {
+        return arrayOf(partition, value, count.toLong(), Date(lastUpdate))
+    }
+}
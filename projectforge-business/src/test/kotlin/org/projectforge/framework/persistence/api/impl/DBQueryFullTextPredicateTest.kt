@@ -0,0 +1,79 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2020 Micromata GmbH, Germany (www.micromata.com)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+package org.projectforge.framework.persistence.api.impl
+
+import org.junit.jupiter.api.Assertions
+import org.junit.jupiter.api.Test
+import org.projectforge.business.address.AddressDO
+import org.projectforge.business.address.AddressDao
+import org.projectforge.framework.persistence.api.QueryFilter
+import org.projectforge.test.AbstractTestBase
+import org.springframework.beans.factory.annotation.Autowired
+
+/**
+ * In and or predicates are part of the full text query, if all fields are indexed. Otherwise they are checked as
+ * result predicates. Both ways must give the same result as the criteria search.
+ */
+class DBQueryFullTextPredicateTest : AbstractTestBase() {
+    @Autowired
+    private lateinit var addressDao: AddressDao
+
+    @Test
+    fun isInAndOrTest() {
+        logon(ADMIN)
+        listOf("a", "b", "c").forEach {
+            val address = AddressDO()
+            address.name = "ftpredicate$it"
+            address.organization = "ftorganization$it"
+            address.uid = "ftpredicate-uid-$it" // Not indexed.
+            addressDao.save(address)
+        }
+        // In on indexed field (part of the full text query):
+        assertNames(listOf("ftpredicatea", "ftpredicatec"), QueryFilter.isIn("name", "ftpredicatea", "ftpredicatec"))
+        assertNames(listOf("ftpredicateb"), QueryFilter.isIn<String>("name", listOf("ftpredicateb", "unknown")))
+        // In on field without index (result predicate):
+        assertNames(listOf("ftpredicateb", "ftpredicatec"), QueryFilter.isIn("uid", "ftpredicate-uid-b", "ftpredicate-uid-c"))
+        // Empty in (result predicate, isNull for criteria search):
+        assertNames(listOf(), QueryFilter.isIn<String>("name", listOf<String>()))
+        // Or of indexed fields (part of the full text query):
+        assertNames(listOf("ftpredicatea", "ftpredicateb"), QueryFilter.or(QueryFilter.eq("name", "ftpredicatea"),
+                QueryFilter.isIn("organization", "ftorganizationb")))
+        // Or with field without index (result predicate):
+        assertNames(listOf("ftpredicatea", "ftpredicatec"), QueryFilter.or(QueryFilter.eq("name", "ftpredicatea"),
+                QueryFilter.eq("uid", "ftpredicate-uid-c")))
+    }
+
+    private fun assertNames(expected: List<String>, predicate: DBPredicate) {
+        // Full text search:
+        var filter = QueryFilter()
+        filter.addFullTextSearch("ftpredicate*")
+        filter.add(predicate)
+        Assertions.assertEquals(expected, addressDao.getList(filter).map { it.name }.sorted(), "Full text search: $predicate")
+        // Criteria search:
+        filter = QueryFilter()
+        filter.add(QueryFilter.like("name", "ftpredicate%"))
+        filter.add(predicate)
+        Assertions.assertEquals(expected, addressDao.getList(filter).map { it.name }.sorted(), "Criteria search: $predicate")
+    }
+}
@@ -0,0 +1,99 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2020 Micromata GmbH, Germany (www.micromata.com)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+
+package org.projectforge.framework.persistence.api.impl
+
+import org.junit.jupiter.api.Assertions
+import org.junit.jupiter.api.Test
+import org.projectforge.business.address.AddressDO
+import org.projectforge.business.address.AddressDao
+import org.projectforge.framework.persistence.api.QueryFilter
+import org.projectforge.framework.persistence.user.api.ThreadLocalUserContext
+import org.projectforge.framework.time.PFDateTime
+import org.projectforge.test.AbstractTestBase
+import org.springframework.beans.factory.annotation.Autowired
+import java.util.*
+
+class DBQueryHistoryFilterTest : AbstractTestBase() {
+    @Autowired
+    private lateinit var addressDao: AddressDao
+
+    @Test
+    fun historyFilterTest() {
+        logon(ADMIN)
+        val loggedInUserId = ThreadLocalUserContext.getUserId()
+        val beforeInsert = PFDateTime.from(Date(System.currentTimeMillis() - 1000))
+        listOf("historya", "historyb", "historyc").forEach {
+            val address = AddressDO()
+            address.name = it
+            addressDao.save(address)
+        }
+        Thread.sleep(50)
+        val beforeUpdate = PFDateTime.from(Date())
+        Thread.sleep(50)
+        val address = getList { it.add(QueryFilter.eq("name", "historyb")) }.first()
+        address.name = "historyb2"
+        addressDao.update(address)
+        val afterUpdate = PFDateTime.from(Date(System.currentTimeMillis() + 1000))
+
+        assertNames(listOf("historya", "historyb2", "historyc")) { it.modifiedByUserId = loggedInUserId }
+        assertNames(listOf()) { it.modifiedByUserId = getUser(TEST_USER).id }
+        assertNames(listOf("historya", "historyb2", "historyc")) { it.modifiedFrom = beforeInsert }
+        assertNames(listOf("historyb2")) { it.modifiedFrom = beforeUpdate }
+        assertNames(listOf()) { it.modifiedFrom = afterUpdate }
+        assertNames(listOf()) { it.modifiedTo = beforeInsert }
+        assertNames(listOf("historya", "historyb2", "historyc")) { it.modifiedTo = beforeUpdate }
+        assertNames(listOf("historya", "historyb2", "historyc")) {
+            it.modifiedFrom = beforeInsert
+            it.modifiedTo = beforeUpdate
+        }
+        assertNames(listOf("historyb2")) {
+            it.modifiedFrom = beforeUpdate
+            it.modifiedTo = afterUpdate
+            it.modifiedByUserId = loggedInUserId
+        }
+    }
+
+    /**
+     * Asserts the result of the criteria search (exists sub query) and of the full text search (history queried
+     * separately).
+     */
+    private fun assertNames(expected: List<String>, historyFilter: (QueryFilter) -> Unit) {
+        Assertions.assertEquals(expected, getList {
+            it.add(QueryFilter.like("name", "history%"))
+            historyFilter(it)
+        }.map { it.name }.sorted(), "Criteria search")
+        Assertions.assertEquals(expected, getList {
+            it.addFullTextSearch("history*")
+            historyFilter(it)
+        }.map { it.name }.sorted(), "Full text search")
+    }
+
+    private fun getList(init: (QueryFilter) -> Unit): List<AddressDO> {
+        val filter = QueryFilter()
+        filter.deleted = false
+        init(filter)
+        return addressDao.getList(filter)
+    }
+}
@@ -0,0 +1,154 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2020 Micromata GmbH, Germany (www.micromata.com)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+
+package org.projectforge.framework.persistence.api.impl
+
+import org.junit.jupiter.api.Assertions
+import org.junit.jupiter.api.Test
+import org.projectforge.business.address.AddressDO
+import org.projectforge.business.address.AddressDao
+import org.projectforge.framework.persistence.api.QueryFilter
+import org.projectforge.framework.persistence.api.SortProperty
+import org.projectforge.test.AbstractTestBase
+import org.springframework.beans.factory.annotation.Autowired
+
+class DBQueryKeysetPaginationTest : AbstractTestBase() {
+    @Autowired
+    private lateinit var addressDao: AddressDao
+
+    @Test
+    fun keysetPaginationTest() {
+        logon(ADMIN)
+        val names = listOf("keyseta", "keysetc", "keysetb", "keysetb", "keysetd", "keysetb", "keysete")
+        val organizations = listOf("x", null, "y", null, "x", "x", null)
+        val ids = names.mapIndexed { idx, name ->
+            val address = AddressDO()
+            address.name = name
+            address.organization = organizations[idx]
+            addressDao.save(address)
+        }
+
+        // Criteria search:
+        var list = getAllPages { it.add(QueryFilter.like("name", "keyset%")) }
+        Assertions.assertEquals(ids.sorted(), list.map { it.id }.sorted(), "Every entry expected exactly once.")
+        Assertions.assertEquals(listOf("keyseta", "keysetb", "keysetb", "keysetb", "keysetc", "keysetd", "keysete"), list.map { it.name })
+        // keysetb: organization descending with nulls last, id as tie breaker:
+        Assertions.assertEquals(listOf("y", "x", null), list.subList(1, 4).map { it.organization })
+
+        // Full text search:
+        list = getAllPages { it.addFullTextSearch("keyset*") }
+        Assertions.assertEquals(ids.sorted(), list.map { it.id }.sorted(), "Every entry expected exactly once.")
+        Assertions.assertEquals(listOf("keyseta", "keysetb", "keysetb", "keysetb", "keysetc", "keysetd", "keysete"), list.map { it.name })
+        Assertions.assertEquals(listOf("y", "x", null), list.subList(1, 4).map { it.organization })
+    }
+
+    @Test
+    fun modifiedAnchorTest() {
+        logon(ADMIN)
+        listOf("anchor0", "anchor1").forEach { prefix ->
+            listOf("a", "b", "c", "d", "e").forEach {
+                val address = AddressDO()
+                address.name = "$prefix$it"
+                addressDao.save(address)
+            }
+        }
+        listOf(false, true).forEach { fullText ->
+            val prefix = if (fullText) "anchor1" else "anchor0"
+            var filter = createFilter(fullText, prefix, null)
+            var page = addressDao.getList(filter)
+            Assertions.assertEquals(listOf("a", "b", "c").map { "$prefix$it" }, page.map { it.name })
+            val cursor = filter.nextCursor
+            Assertions.assertNotNull(cursor)
+            // Sort value of the anchor changed: the cursor holds the old sort values.
+            val anchor = addressDao.getById(page.last().id)
+            anchor.name = "${prefix}z"
+            addressDao.update(anchor)
+            filter = createFilter(fullText, prefix, cursor)
+            page = addressDao.getList(filter)
+            Assertions.assertEquals(listOf("d", "e", "z").map { "$prefix$it" }, page.map { it.name })
+            // Anchor deleted: the next page is still found.
+            addressDao.markAsDeleted(anchor)
+            filter = createFilter(fullText, prefix, cursor)
+            page = addressDao.getList(filter)
+            Assertions.assertEquals(listOf("d", "e").map { "$prefix$it" }, page.map { it.name })
+            Assertions.assertNull(filter.nextCursor, "Last page expected.")
+        }
+        val filter = createFilter(false, "anchor0", "invalid")
+        Assertions.assertTrue(addressDao.getList(filter).isEmpty(), "Empty page expected for invalid cursor.")
+    }
+
+    @Test
+    fun customResultFilterTest() {
+        logon(ADMIN)
+        val names = listOf("customh", "customb", "customg", "customa", "customf", "customc", "custome", "customd")
+        names.forEach {
+            val address = AddressDO()
+            address.name = it
+            addressDao.save(address)
+        }
+        var maxListSize = 0
+        val customResultFilter = object : CustomResultFilter<AddressDO> {
+            override fun match(list: MutableList<AddressDO>, element: AddressDO): Boolean {
+                maxListSize = maxOf(maxListSize, list.size)
+                return true
+            }
+        }
+        val filter = createFilter(true, "custom", null)
+        val page = addressDao.getList(filter, listOf(customResultFilter))
+        Assertions.assertEquals(listOf("customa", "customb", "customc"), page.map { it.name })
+        // The custom filter sees all previous matches, the list isn't trimmed to the page before:
+        Assertions.assertEquals(names.size - 1, maxListSize)
+    }
+
+    private fun createFilter(fullText: Boolean, prefix: String, cursor: String?): QueryFilter {
+        val filter = QueryFilter()
+        if (fullText) filter.addFullTextSearch("$prefix*") else filter.add(QueryFilter.like("name", "$prefix%"))
+        filter.addOrder(SortProperty.asc("name"))
+        filter.deleted = false
+        filter.keysetPagination = true
+        filter.maxRows = 3
+        filter.cursor = cursor
+        return filter
+    }
+
+    private fun getAllPages(addSearch: (QueryFilter) -> Unit): List<AddressDO> {
+        val result = mutableListOf<AddressDO>()
+        var cursor: String? = null
+        var pages = 0
+        do {
+            val filter = QueryFilter()
+            addSearch(filter)
+            filter.addOrder(SortProperty.asc("name"), SortProperty.desc("organization"))
+            filter.keysetPagination = true
+            filter.maxRows = 3
+            filter.cursor = cursor
+            val page = addressDao.getList(filter)
+            Assertions.assertTrue(page.size <= 3)
+            result.addAll(page)
+            cursor = filter.nextCursor
+            Assertions.assertTrue(++pages <= 3, "Only 3 pages expected.")
+        } while (cursor != null)
+        return result
+    }
+}
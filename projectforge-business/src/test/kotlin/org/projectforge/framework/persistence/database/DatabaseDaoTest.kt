@@ -0,0 +1,85 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2020 Micromata GmbH, Germany (www.micromata.com)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+
+package org.projectforge.framework.persistence.database
+
+import org.hibernate.search.jpa.Search
+import org.junit.jupiter.api.Assertions
+import org.junit.jupiter.api.Test
+import org.projectforge.business.task.TaskDO
+import org.projectforge.framework.persistence.api.ReindexSettings
+import org.projectforge.test.AbstractTestBase
+import org.springframework.beans.factory.annotation.Autowired
+
+class DatabaseDaoTest : AbstractTestBase() {
+    @Autowired
+    private lateinit var databaseDao: DatabaseDao
+
+    @Test
+    fun splitIdRangeTest() {
+        Assertions.assertEquals(listOf(1L..3L, 4L..6L, 7L..9L, 10L..10L), DatabaseDao.splitIdRange(1, 10, 4))
+        Assertions.assertEquals(listOf(5L..5L), DatabaseDao.splitIdRange(5, 5, 8))
+        Assertions.assertEquals(listOf(1L..1L, 2L..2L, 3L..3L), DatabaseDao.splitIdRange(1, 3, 8))
+        Assertions.assertEquals(listOf(Long.MAX_VALUE - 1..Long.MAX_VALUE), DatabaseDao.splitIdRange(Long.MAX_VALUE - 1, Long.MAX_VALUE, 1))
+        // Partitions are contiguous and cover the whole range:
+        val ranges = DatabaseDao.splitIdRange(17, 100_003, 8)
+        Assertions.assertEquals(8, ranges.size)
+        Assertions.assertEquals(17L, ranges.first().first)
+        Assertions.assertEquals(100_003L, ranges.last().last)
+        for (i in 1 until ranges.size) {
+            Assertions.assertEquals(ranges[i - 1].last + 1, ranges[i].first)
+        }
+    }
+
+    @Test
+    fun reindexByIdRangeTest() {
+        val numberOfTasks = emf.runInTrans { emgr ->
+            emgr.entityManager.createQuery("select count(*) from TaskDO", Number::class.java).singleResult.toInt()
+        }
+        Assertions.assertTrue(numberOfTasks > 1, "Test data with tasks expected.")
+        emf.runInTrans { emgr ->
+            val fullTextEntityManager = Search.getFullTextEntityManager(emgr.entityManager)
+            fullTextEntityManager.purgeAll(TaskDO::class.java)
+            fullTextEntityManager.flushToIndexes()
+        }
+        Assertions.assertEquals(0, getNumberOfIndexedTasks())
+        val threshold = databaseDao.parallelReindexThreshold
+        try {
+            databaseDao.parallelReindexThreshold = 1 // Force re-indexing in id range partitions.
+            Assertions.assertEquals("TaskDO, ", databaseDao.rebuildDatabaseSearchIndices(TaskDO::class.java, ReindexSettings()))
+        } finally {
+            databaseDao.parallelReindexThreshold = threshold
+        }
+        Assertions.assertEquals(numberOfTasks, getNumberOfIndexedTasks())
+        Assertions.assertTrue(databaseDao.reindexStatus.isEmpty())
+    }
+
+    private fun getNumberOfIndexedTasks(): Int {
+        return emf.runInTrans { emgr ->
+            val fullTextEntityManager = Search.getFullTextEntityManager(emgr.entityManager)
+            val queryBuilder = fullTextEntityManager.searchFactory.buildQueryBuilder().forEntity(TaskDO::class.java).get()
+            fullTextEntityManager.createFullTextQuery(queryBuilder.all().createQuery(), TaskDO::class.java).resultSize
+        }
+    }
+}
@@ -27,6 +27,7 @@ import org.junit.jupiter.api.Assertions
 import org.junit.jupiter.api.Assertions.assertEquals
 import org.junit.jupiter.api.BeforeAll
 import org.junit.jupiter.api.Test
+import org.projectforge.framework.calendar.Holidays
 import org.projectforge.test.TestSetup
 import java.math.BigDecimal
 import java.time.LocalDate
@@ -40,6 +41,19 @@ class PFDayUtilsTest {
         assertBigDecimal(0.5, PFDayUtils.getNumberOfWorkingDays(LocalDate.of(2019, Month.DECEMBER, 31), LocalDate.of(2019, Month.DECEMBER, 31)))
         assertBigDecimal(1.0, PFDayUtils.getNumberOfWorkingDays(LocalDate.of(2019, Month.DECEMBER, 30), LocalDate.of(2019, Month.DECEMBER, 30)))
         assertBigDecimal(3.0, PFDayUtils.getNumberOfWorkingDays(LocalDate.of(2019, Month.DECEMBER, 24), LocalDate.of(2019, Month.DECEMBER, 31)))
+        assertBigDecimal(0.0, PFDayUtils.getNumberOfWorkingDays(LocalDate.of(2019, Month.DECEMBER, 31), LocalDate.of(2019, Month.DECEMBER, 30)))
+        // Periods over the turn of the year are summed up from the tables of both years:
+        var from = LocalDate.of(2019, Month.NOVEMBER, 15)
+        val to = LocalDate.of(2020, Month.FEBRUARY, 29)
+        var expected = BigDecimal.ZERO
+        while (!from.isAfter(to)) {
+            val day = PFDay.from(from)
+            if (PFDayUtils.isWorkingDay(day)) {
+                expected += Holidays.instance.getWorkFraction(day) ?: BigDecimal.ONE
+            }
+            from = from.plusDays(1)
+        }
+        assertBigDecimal(expected.toDouble(), PFDayUtils.getNumberOfWorkingDays(LocalDate.of(2019, Month.NOVEMBER, 15), to))
     }
 
     @Test
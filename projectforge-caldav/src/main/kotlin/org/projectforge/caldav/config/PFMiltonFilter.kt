@@ -28,15 +28,21 @@ import mu.KotlinLogging
 import org.projectforge.business.user.UserAuthenticationsService
 import org.projectforge.business.user.UserTokenType
 import org.projectforge.caldav.service.SslSessionCache
+import org.projectforge.caldav.service.SyncCollectionService
 import org.projectforge.rest.utils.RequestLog
 import org.projectforge.web.rest.RestAuthenticationInfo
 import org.projectforge.web.rest.RestAuthenticationUtils
 import org.springframework.beans.factory.annotation.Autowired
 import org.springframework.web.context.WebApplicationContext
 import org.springframework.web.context.support.WebApplicationContextUtils
+import java.io.BufferedReader
+import java.io.ByteArrayInputStream
 import java.io.IOException
+import java.io.InputStreamReader
 import javax.servlet.*
 import javax.servlet.http.HttpServletRequest
+import javax.servlet.http.HttpServletRequestWrapper
+import javax.servlet.http.HttpServletResponse
 
 private val log = KotlinLogging.logger {}
 
@@ -55,6 +61,9 @@ class PFMiltonFilter : MiltonFilter() {
     @Autowired
     private lateinit var sslSessionCache: SslSessionCache
 
+    @Autowired
+    private lateinit var syncCollectionService: SyncCollectionService
+
     @Throws(ServletException::class)
     override fun init(filterConfig: FilterConfig) {
         super.init(filterConfig)
@@ -101,8 +110,51 @@ class PFMiltonFilter : MiltonFilter() {
                     response,
                     UserTokenType.DAV_TOKEN,
                     authenticate = { authInfo -> authenticate(authInfo) },
-                    doFilter = { -> super.doFilter(request, response, chain) }
+                    doFilter = { -> doMiltonFilter(request, response, chain) }
             )
         }
     }
+
+    /**
+     * REPORT sync-collection isn't supported by Milton, so it's handled by [SyncCollectionService]. All other
+     * reports are processed by Milton with the already read body.
+     */
+    private fun doMiltonFilter(request: HttpServletRequest, response: ServletResponse, chain: FilterChain) {
+        if (request.method != "REPORT") {
+            super.doFilter(request, response, chain)
+            return
+        }
+        val body = request.inputStream.readBytes()
+        if (syncCollectionService.handle(request, response as HttpServletResponse, body)) {
+            return
+        }
+        super.doFilter(CachedBodyRequest(request, body), response, chain)
+    }
+
+    private class CachedBodyRequest(request: HttpServletRequest, private val body: ByteArray) : HttpServletRequestWrapper(request) {
+        override fun getInputStream(): ServletInputStream {
+            val input = ByteArrayInputStream(body)
+            return object : ServletInputStream() {
+                override fun read(): Int = input.read()
+                override fun read(b: ByteArray, off: Int, len: Int): Int = input.read(b, off, len)
+                override fun isFinished(): Boolean = input.available() == 0
+                override fun isReady(): Boolean = true
+                /**
+                 * The body is already read, so all data is available at once.
+                 */
+                override fun setReadListener(readListener: ReadListener) {
+                    try {
+                        readListener.onDataAvailable()
+                        readListener.onAllDataRead()
+                    } catch (ex: IOException) {
+                        readListener.onError(ex)
+                    }
+                }
+            }
+        }
+
+        override fun getReader(): BufferedReader {
+            return BufferedReader(InputStreamReader(inputStream, characterEncoding ?: "UTF-8"))
+        }
+    }
 }
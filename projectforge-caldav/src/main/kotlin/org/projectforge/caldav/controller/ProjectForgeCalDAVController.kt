@@ -71,6 +71,14 @@ open class ProjectForgeCalDAVController : BaseDAVController() {
         return calendarService.getCalendarList(cal.user)
     }
 
+    /**
+     * Clients download the events of a calendar only if its CTag was changed since the last sync.
+     */
+    @CTag
+    fun getCalendarCTag(cal: Calendar): String? {
+        return calendarService.getCTag(cal)
+    }
+
     @ChildrenOf
     fun getCalendarEvents(cal: Calendar?): List<Meeting> {
         log.info("getCalendarEvents '${cal?.name}'.")
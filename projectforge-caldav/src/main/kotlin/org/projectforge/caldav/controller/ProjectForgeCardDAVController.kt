@@ -71,6 +71,14 @@ open class ProjectForgeCardDAVController : BaseDAVController() {
         return AddressBook(cons.user)
     }
 
+    /**
+     * Clients download the contacts of an address book only if its CTag was changed since the last sync.
+     */
+    @CTag
+    fun getAddressBookCTag(ab: AddressBook): String {
+        return addressService.getCTag(ab)
+    }
+
     @ChildrenOf
     fun getContacts(ab: AddressBook): List<Contact> {
         log.info("getContacts for address book '${ab.name}' and user '${ab.user.username}'.")
@@ -57,6 +57,16 @@ class AddressService {
         return addressCache.getContacts(addressBook, favorites)
     }
 
+    /**
+     * The CTag changes on every modification of a contact as well as on adding or removing favorites.
+     */
+    fun getCTag(addressBook: AddressBook): String {
+        val contacts = getContactList(addressBook)
+        val lastUpdate = contacts.map { it.modifiedDate?.time ?: 0L }.max() ?: 0L
+        val idsHash = contacts.map { it.id }.sorted().hashCode()
+        return "${contacts.size}-$lastUpdate-${Integer.toHexString(idsHash)}"
+    }
+
     @Suppress("UNUSED_PARAMETER")
     fun createContact(ab: AddressBook, vcardBytearray: ByteArray): Contact {
         log.warn("Creation of contacts not supported.")
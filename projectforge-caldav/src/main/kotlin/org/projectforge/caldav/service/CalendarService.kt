@@ -24,6 +24,7 @@
 package org.projectforge.caldav.service
 
 import mu.KotlinLogging
+import org.projectforge.business.teamcal.admin.TeamCalCache
 import org.projectforge.business.teamcal.admin.TeamCalDao
 import org.projectforge.business.teamcal.event.TeamEventDao
 import org.projectforge.business.teamcal.event.TeamEventFilter
@@ -34,16 +35,28 @@ import org.projectforge.caldav.model.Calendar
 import org.projectforge.caldav.model.Meeting
 import org.projectforge.caldav.model.User
 import org.projectforge.framework.access.AccessException
+import org.projectforge.framework.access.OperationType
+import org.projectforge.framework.persistence.api.BaseDOChangedListener
 import org.projectforge.framework.persistence.api.BaseSearchFilter
+import org.projectforge.framework.persistence.jpa.PfEmgrFactory
 import org.projectforge.framework.persistence.user.api.ThreadLocalUserContext
 import org.projectforge.framework.time.PFDateTime.Companion.now
 import org.springframework.beans.factory.annotation.Autowired
 import org.springframework.stereotype.Service
+import java.util.*
+import java.util.concurrent.ConcurrentHashMap
+import javax.annotation.PostConstruct
 
 private val log = KotlinLogging.logger {}
 
 @Service
-class CalendarService {
+class CalendarService : BaseDOChangedListener<TeamEventDO> {
+    @Autowired
+    private lateinit var emgrFactory: PfEmgrFactory
+
+    @Autowired
+    private lateinit var teamCalCache: TeamCalCache
+
     @Autowired
     private lateinit var teamCalDao: TeamCalDao
 
@@ -53,13 +66,41 @@ class CalendarService {
     @Autowired
     private lateinit var teamEventService: TeamEventService
 
+    /**
+     * Generated iCal data by event id and user id (time zone and product id depend on the user). Clients poll
+     * frequently, so the iCal data is generated only once per modification of an event. The least recently used
+     * events are evicted, if more than [MAX_CACHED_EVENTS] events are cached.
+     */
+    private val icalDataCache = Collections.synchronizedMap(object : LinkedHashMap<Int, MutableMap<Int, ICalData>>(16, 0.75f, true) {
+        override fun removeEldestEntry(eldest: MutableMap.MutableEntry<Int, MutableMap<Int, ICalData>>?): Boolean {
+            return size > MAX_CACHED_EVENTS
+        }
+    })
+
+    private class ICalData(val lastUpdate: Long, val data: ByteArray)
+
+    /**
+     * Time stamp of the last modification of a calendar, number and sum of the ids of the events (including deleted
+     * ones) created until then. Events moved to other calendars, removed from the data base or committed late (with an
+     * earlier time stamp) change the number or the sum of ids of the events created until the given time stamp.
+     */
+    data class SyncState(val lastUpdate: Long, val count: Long, val idSum: Long)
+
+    @PostConstruct
+    private fun postConstruct() {
+        teamEventDao.register(this)
+    }
+
     fun getCalendarList(user: User): List<Calendar> {
         if (user.id != ThreadLocalUserContext.getUserId().toLong()) {
             throw AccessException("Logged-in user differs from the user requested.")
         }
         val calendars = teamCalDao.getList(BaseSearchFilter())
+        val titleCount = calendars.groupingBy { it.title ?: "untitled" }.eachCount()
         val result = calendars.map { cal ->
-            Calendar(user, cal.id, cal.title ?: "untitled")
+            val title = cal.title ?: "untitled"
+            // Calendars are addressed by name, so the name must be unique.
+            Calendar(user, cal.id, if ((titleCount[title] ?: 0) > 1) "$title (${cal.id})" else title)
         }
         return result
     }
@@ -77,6 +118,82 @@ class CalendarService {
         return result
     }
 
+    /**
+     * Finds the calendar (with select access of the logged-in user) by its name used in the urls: the name is the title
+     * of the calendar, followed by its id if the title isn't unique (see [getCalendarList]).
+     */
+    fun getCalendar(user: User, name: String): Calendar? {
+        return getCalendarList(user).find { it.name == name }
+    }
+
+    /**
+     * The CTag of a calendar changes on every modification, creation or deletion of any of its events, so clients
+     * don't need to download unmodified calendars.
+     */
+    fun getCTag(cal: Calendar): String? {
+        val teamCal = teamCalCache.getCalendar(cal.id ?: return null) ?: return null
+        if (teamCal.externalSubscription) {
+            return "ext-${teamCal.externalSubscriptionHash}"
+        }
+        val state = getSyncState(cal) ?: return null
+        return "${state.lastUpdate}-${state.count}-${state.idSum}"
+    }
+
+    /**
+     * @param until If given, the state of the events created until this time stamp, otherwise the current state.
+     * @return null for unknown calendars and calendars of external subscriptions (no sync support).
+     */
+    fun getSyncState(cal: Calendar, until: Long? = null): SyncState? {
+        val teamCal = teamCalCache.getCalendar(cal.id ?: return null) ?: return null
+        if (teamCal.externalSubscription) {
+            return null
+        }
+        return emgrFactory.runRoTrans { emgr ->
+            val em = emgr.entityManager
+            val lastUpdate = until ?: em
+                    .createQuery("select max(e.lastUpdate) from TeamEventDO e where e.calendar.id = :calendarId", Date::class.java)
+                    .setParameter("calendarId", cal.id)
+                    .singleResult?.time ?: 0L
+            val row = em
+                    .createQuery("select count(e.id), sum(e.id) from TeamEventDO e where e.calendar.id = :calendarId and e.created <= :until", Array<Any?>::class.java)
+                    .setParameter("calendarId", cal.id)
+                    .setParameter("until", Date(lastUpdate))
+                    .singleResult
+            SyncState(lastUpdate, (row[0] as Number?)?.toLong() ?: 0L, (row[1] as Number?)?.toLong() ?: 0L)
+        }
+    }
+
+    /**
+     * Events of the given calendar modified at or after the given time stamp (including deleted events). Events modified
+     * in the same millisecond as the time stamp are included, because they may be committed after the sync token was
+     * created. Only one event per uid (the not deleted one, if any) and only events with select access of the logged-in
+     * user are returned.
+     */
+    fun getModifiedEvents(cal: Calendar, since: Long): List<TeamEventDO> {
+        cal.id ?: return emptyList()
+        val list = emgrFactory.runRoTrans { emgr ->
+            emgr.entityManager
+                    .createQuery("select e from TeamEventDO e where e.calendar.id = :calendarId and e.lastUpdate >= :since", TeamEventDO::class.java)
+                    .setParameter("calendarId", cal.id)
+                    .setParameter("since", Date(since))
+                    .resultList
+        }
+        return list.filter { teamEventDao.hasLoggedInUserSelectAccess(it, false) }
+                .groupBy { it.uid }
+                .map { (_, events) -> events.find { !it.isDeleted } ?: events.first() }
+    }
+
+    fun getMeetingName(event: TeamEventDO): String {
+        return event.uid + ".ics"
+    }
+
+    /**
+     * Cached iCal data of the event are removed after any modification.
+     */
+    override fun afterSaveOrModifify(changedObject: TeamEventDO, operationType: OperationType) {
+        changedObject.id?.let { icalDataCache.remove(it) }
+    }
+
     @Suppress("UNUSED_PARAMETER")
     fun createCalendarEvent(meeting: Meeting): Meeting? {
         log.warn { "Creating of meetings not supported." }
@@ -99,11 +216,29 @@ class CalendarService {
         result.uniqueId = event.uid
         result.createDate = event.created
         result.modifiedDate = event.lastUpdate
-        result.name = event.uid + ".ics"
-        result.icalData = generator.calendarAsByteStream.toByteArray()
+        result.name = getMeetingName(event)
+        result.icalData = getICalData(generator, event)
         return result
     }
 
+    private fun getICalData(generator: ICalGenerator, event: TeamEventDO): ByteArray {
+        val id = event.id
+        val lastUpdate = event.lastUpdate?.time
+        if (id == null || id <= 0 || lastUpdate == null) {
+            // Events of external subscriptions aren't cached.
+            return generator.reset().addEvent(event).calendarAsByteStream.toByteArray()
+        }
+        val userMap = icalDataCache.computeIfAbsent(id) { ConcurrentHashMap() }
+        val userId = ThreadLocalUserContext.getUserId()
+        val cached = userMap[userId]
+        if (cached != null && cached.lastUpdate == lastUpdate) {
+            return cached.data
+        }
+        val data = generator.reset().addEvent(event).calendarAsByteStream.toByteArray()
+        userMap[userId] = ICalData(lastUpdate, data)
+        return data
+    }
+
     private fun convertRestRequest(meeting: Meeting): TeamEventDO {
         val event = TeamEventDO()
         event.uid = meeting.uniqueId
@@ -113,4 +248,8 @@ class CalendarService {
         event.lastUpdate = meeting.modifiedDate
         return event
     }
+
+    companion object {
+        private const val MAX_CACHED_EVENTS = 10_000
+    }
 }
@@ -0,0 +1,231 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2020 Micromata GmbH, Germany (www.micromata.com)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+
+package org.projectforge.caldav.service
+
+import mu.KotlinLogging
+import org.projectforge.caldav.model.AddressBook
+import org.projectforge.caldav.model.User
+import org.projectforge.framework.persistence.user.api.ThreadLocalUserContext
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.stereotype.Service
+import org.w3c.dom.Document
+import org.w3c.dom.Element
+import java.io.ByteArrayInputStream
+import java.net.URLDecoder
+import java.nio.charset.StandardCharsets
+import javax.servlet.http.HttpServletRequest
+import javax.servlet.http.HttpServletResponse
+import javax.xml.parsers.DocumentBuilderFactory
+
+private val log = KotlinLogging.logger {}
+
+/**
+ * Handles REPORT sync-collection requests (RFC 6578), so clients only download events modified or deleted since
+ * their last sync. The sync token is the [CalendarService.SyncState] of the calendar: the time stamp of its last
+ * modification, the number and the sum of ids of its events. Changes not detectable by the time stamp (events moved to
+ * other calendars, removed from the data base or committed late) force the client to a full resync (403 with
+ * DAV:valid-sync-token).
+ *
+ * Deleted favorites of address books aren't tracked, so address books only answer unchanged states incrementally,
+ * otherwise the client is forced to a full resync.
+ */
+@Service
+class SyncCollectionService {
+    @Autowired
+    private lateinit var addressService: AddressService
+
+    @Autowired
+    private lateinit var calendarService: CalendarService
+
+    /**
+     * @return false, if the given body isn't a sync-collection report (request should be processed by Milton).
+     */
+    fun handle(request: HttpServletRequest, response: HttpServletResponse, body: ByteArray): Boolean {
+        val root = parse(body)?.documentElement ?: return false
+        if (root.localName != "sync-collection" || root.namespaceURI != DAV_NS) {
+            return false
+        }
+        val contextUser = ThreadLocalUserContext.getUser()
+        val path = request.requestURI.removePrefix(request.contextPath ?: "")
+        val segments = path.split('/').filter { it.isNotEmpty() }.map { URLDecoder.decode(it, "UTF-8") }
+        if (contextUser == null || segments.size != 4 || segments[0] != "users" || segments[1] != contextUser.username) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND)
+            return true
+        }
+        val user = User()
+        user.id = contextUser.id.toLong()
+        user.username = contextUser.username
+        val since = parseToken(getChildText(root, "sync-token"))
+        val href = if (path.endsWith("/")) path else "$path/"
+        when (segments[2]) {
+            "cals" -> handleCalendar(user, segments[3], since, href, response)
+            "addressBooks" -> handleAddressBook(user, since, response)
+            else -> response.sendError(HttpServletResponse.SC_NOT_FOUND)
+        }
+        return true
+    }
+
+    private fun handleCalendar(user: User, name: String, since: CalendarService.SyncState?, href: String, response: HttpServletResponse) {
+        val cal = calendarService.getCalendar(user, name)
+        if (cal == null) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND)
+            return
+        }
+        val state = calendarService.getSyncState(cal)
+        if (state == null) {
+            // External subscriptions: full resync required.
+            writeInvalidToken(response)
+            return
+        }
+        val sb = StringBuilder()
+        if (since == null) {
+            // Initial sync: all events.
+            calendarService.getCalendarEvents(cal).forEach {
+                appendResponse(sb, "$href${encode(it.name)}", getETag(it.uniqueId, it.modifiedDate?.time))
+            }
+        } else if (since.lastUpdate < 0 || since.lastUpdate > state.lastUpdate
+                || calendarService.getSyncState(cal, since.lastUpdate) != since) {
+            writeInvalidToken(response)
+            return
+        } else {
+            calendarService.getModifiedEvents(cal, since.lastUpdate).forEach {
+                val eventHref = "$href${encode(calendarService.getMeetingName(it))}"
+                if (it.isDeleted) {
+                    appendResponse(sb, eventHref, null)
+                } else {
+                    appendResponse(sb, eventHref, getETag(it.uid, it.lastUpdate?.time))
+                }
+            }
+        }
+        writeMultiStatus(response, sb, state)
+    }
+
+    private fun handleAddressBook(user: User, since: CalendarService.SyncState?, response: HttpServletResponse) {
+        val contacts = addressService.getContactList(AddressBook(user))
+        val state = CalendarService.SyncState(contacts.map { it.modifiedDate?.time ?: 0L }.max() ?: 0L,
+                contacts.size.toLong(), contacts.map { it.id }.sum())
+        if (since != state) {
+            writeInvalidToken(response)
+            return
+        }
+        writeMultiStatus(response, StringBuilder(), state)
+    }
+
+    private fun appendResponse(sb: StringBuilder, href: String, etag: String?) {
+        sb.append("<d:response><d:href>").append(escape(href)).append("</d:href>")
+        if (etag == null) {
+            sb.append("<d:status>HTTP/1.1 404 Not Found</d:status>")
+        } else {
+            sb.append("<d:propstat><d:prop><d:getetag>").append(escape(etag)).append("</d:getetag></d:prop>")
+                    .append("<d:status>HTTP/1.1 200 OK</d:status></d:propstat>")
+        }
+        sb.append("</d:response>")
+    }
+
+    private fun writeMultiStatus(response: HttpServletResponse, responses: StringBuilder, state: CalendarService.SyncState) {
+        write(response, 207, "<?xml version=\"1.0\" encoding=\"utf-8\"?><d:multistatus xmlns:d=\"DAV:\">$responses<d:sync-token>${createToken(state)}</d:sync-token></d:multistatus>")
+    }
+
+    private fun writeInvalidToken(response: HttpServletResponse) {
+        write(response, HttpServletResponse.SC_FORBIDDEN, "<?xml version=\"1.0\" encoding=\"utf-8\"?><d:error xmlns:d=\"DAV:\"><d:valid-sync-token/></d:error>")
+    }
+
+    private fun write(response: HttpServletResponse, status: Int, xml: String) {
+        val bytes = xml.toByteArray(StandardCharsets.UTF_8)
+        response.status = status
+        response.contentType = "application/xml; charset=utf-8"
+        response.setContentLength(bytes.size)
+        response.outputStream.write(bytes)
+    }
+
+    private fun parse(body: ByteArray): Document? {
+        if (body.isEmpty()) {
+            return null
+        }
+        return try {
+            val factory = DocumentBuilderFactory.newInstance()
+            factory.isNamespaceAware = true
+            factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true)
+            factory.newDocumentBuilder().parse(ByteArrayInputStream(body))
+        } catch (ex: Exception) {
+            log.warn { "Can't parse body of REPORT request: ${ex.message}" }
+            null
+        }
+    }
+
+    private fun getChildText(element: Element, localName: String): String? {
+        val nodes = element.getElementsByTagNameNS(DAV_NS, localName)
+        return if (nodes.length > 0) nodes.item(0).textContent?.trim() else null
+    }
+
+    companion object {
+        private const val DAV_NS = "DAV:"
+
+        internal const val TOKEN_PREFIX = "http://projectforge.org/ns/sync/"
+
+        private val INVALID_TOKEN = CalendarService.SyncState(-1, -1, -1)
+
+        internal fun createToken(state: CalendarService.SyncState): String {
+            return "$TOKEN_PREFIX${state.lastUpdate}-${state.count}-${state.idSum}"
+        }
+
+        /**
+         * @return null for an empty token (initial sync) and a state with last update -1 for unknown tokens (forces a
+         * full resync).
+         */
+        internal fun parseToken(token: String?): CalendarService.SyncState? {
+            if (token.isNullOrBlank()) {
+                return null
+            }
+            if (!token.startsWith(TOKEN_PREFIX)) {
+                return INVALID_TOKEN
+            }
+            val values = token.removePrefix(TOKEN_PREFIX).split('-').map { it.toLongOrNull() ?: return INVALID_TOKEN }
+            if (values.size != 3) {
+                return INVALID_TOKEN
+            }
+            return CalendarService.SyncState(values[0], values[1], values[2])
+        }
+
+        /**
+         * Same format as the ETags generated by Milton for annotated resources (unique id and hash of modified date).
+         */
+        internal fun getETag(uniqueId: String?, modifiedDate: Long?): String? {
+            uniqueId ?: return null
+            if (modifiedDate == null) {
+                return "\"$uniqueId\""
+            }
+            return "\"${uniqueId}_${java.util.Date(modifiedDate).hashCode()}\""
+        }
+
+        private fun encode(name: String?): String {
+            return java.net.URLEncoder.encode(name ?: "", "UTF-8").replace("+", "%20")
+        }
+
+        private fun escape(str: String): String {
+            return str.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;")
+        }
+    }
+}
@@ -0,0 +1,148 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2020 Micromata GmbH, Germany (www.micromata.com)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+package org.projectforge.caldav.service
+
+import org.junit.jupiter.api.Assertions
+import org.junit.jupiter.api.Test
+import org.projectforge.business.teamcal.admin.TeamCalDao
+import org.projectforge.business.teamcal.admin.model.TeamCalDO
+import org.projectforge.business.teamcal.event.TeamEventDao
+import org.projectforge.business.teamcal.event.model.TeamEventDO
+import org.projectforge.caldav.model.User
+import org.projectforge.test.AbstractTestBase
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.mock.web.MockHttpServletRequest
+import org.springframework.mock.web.MockHttpServletResponse
+import java.util.*
+
+class CalendarSyncTest : AbstractTestBase() {
+    @Autowired
+    private lateinit var calendarService: CalendarService
+
+    @Autowired
+    private lateinit var syncCollectionService: SyncCollectionService
+
+    @Autowired
+    private lateinit var teamCalDao: TeamCalDao
+
+    @Autowired
+    private lateinit var teamEventDao: TeamEventDao
+
+    @Test
+    fun syncTest() {
+        logon(TEST_USER)
+        val teamCal = TeamCalDO()
+        teamCal.title = CALENDAR
+        teamCal.owner = getUser(TEST_USER)
+        teamCalDao.save(teamCal)
+        val user = User()
+        user.id = getUser(TEST_USER).id.toLong()
+        user.username = TEST_USER
+        val cal = calendarService.getCalendar(user, CALENDAR)!!
+
+        val time1 = System.currentTimeMillis() - 60_000
+        val time2 = time1 + 30_000
+        val event1 = createEvent(teamCal, "event 1", time1)
+        val event2 = createEvent(teamCal, "event 2", time2)
+
+        val state = calendarService.getSyncState(cal)!!
+        Assertions.assertEquals(CalendarService.SyncState(time2, 2, (event1.id + event2.id).toLong()), state)
+        Assertions.assertEquals(state, calendarService.getSyncState(cal, time2))
+        // Events modified in the same millisecond as the token are included:
+        Assertions.assertEquals(listOf(event2.id), calendarService.getModifiedEvents(cal, time2).map { it.id })
+        Assertions.assertTrue(calendarService.getModifiedEvents(cal, time2 + 1).isEmpty())
+
+        // Initial sync: all events.
+        var response = sync(null)
+        Assertions.assertEquals(207, response.status)
+        Assertions.assertEquals(2, countResponses(response))
+        val token = SyncCollectionService.createToken(state)
+        Assertions.assertTrue(response.contentAsString.contains(token))
+
+        // Modification committed after the token was created, but in the same millisecond:
+        setTimestamps(event1, time1, time2)
+        response = sync(token)
+        Assertions.assertEquals(207, response.status)
+        Assertions.assertEquals(2, countResponses(response))
+        Assertions.assertFalse(response.contentAsString.contains("404 Not Found"))
+
+        // Deleted event:
+        teamEventDao.markAsDeleted(teamEventDao.getById(event2.id))
+        val modified = calendarService.getModifiedEvents(cal, time2 + 1)
+        Assertions.assertEquals(listOf(event2.id), modified.map { it.id })
+        Assertions.assertTrue(modified[0].isDeleted)
+        response = sync(token)
+        Assertions.assertEquals(207, response.status)
+        Assertions.assertEquals(2, countResponses(response))
+        Assertions.assertTrue(response.contentAsString.contains("404 Not Found"))
+        Assertions.assertFalse(response.contentAsString.contains(token), "New sync token expected.")
+
+        // Event created before the token, but committed later: full resync required.
+        val event3 = createEvent(teamCal, "event 3", time2)
+        Assertions.assertNotEquals(state, calendarService.getSyncState(cal, time2))
+        response = sync(token)
+        Assertions.assertEquals(403, response.status)
+        Assertions.assertTrue(response.contentAsString.contains("valid-sync-token"))
+        Assertions.assertNotNull(event3.id)
+    }
+
+    private fun createEvent(teamCal: TeamCalDO, subject: String, time: Long): TeamEventDO {
+        val event = TeamEventDO()
+        event.calendar = teamCal
+        event.subject = subject
+        event.startDate = Date()
+        event.endDate = Date(event.startDate!!.time + 3_600_000)
+        teamEventDao.save(event)
+        setTimestamps(event, time, time)
+        return event
+    }
+
+    private fun setTimestamps(event: TeamEventDO, created: Long, lastUpdate: Long) {
+        emf.runInTrans { emgr ->
+            emgr.entityManager
+                    .createQuery("update TeamEventDO e set e.created = :created, e.lastUpdate = :lastUpdate where e.id = :id")
+                    .setParameter("created", Date(created))
+                    .setParameter("lastUpdate", Date(lastUpdate))
+                    .setParameter("id", event.id)
+                    .executeUpdate()
+        }
+    }
+
+    private fun sync(token: String?): MockHttpServletResponse {
+        val request = MockHttpServletRequest("REPORT", "/users/$TEST_USER/cals/$CALENDAR")
+        val response = MockHttpServletResponse()
+        val body = "<d:sync-collection xmlns:d=\"DAV:\"><d:sync-token>${token ?: ""}</d:sync-token>" +
+                "<d:sync-level>1</d:sync-level><d:prop><d:getetag/></d:prop></d:sync-collection>"
+        Assertions.assertTrue(syncCollectionService.handle(request, response, body.toByteArray()))
+        return response
+    }
+
+    private fun countResponses(response: MockHttpServletResponse): Int {
+        return response.contentAsString.split("<d:response>").size - 1
+    }
+
+    companion object {
+        private const val CALENDAR = "syncTest"
+    }
+}
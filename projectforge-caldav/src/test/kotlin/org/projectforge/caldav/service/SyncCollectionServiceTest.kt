@@ -0,0 +1,56 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2020 Micromata GmbH, Germany (www.micromata.com)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+
+package org.projectforge.caldav.service
+
+import org.junit.jupiter.api.Assertions
+import org.junit.jupiter.api.Test
+import org.mockito.Mockito
+import javax.servlet.http.HttpServletRequest
+import javax.servlet.http.HttpServletResponse
+
+class SyncCollectionServiceTest {
+    @Test
+    fun parseTokenTest() {
+        Assertions.assertNull(SyncCollectionService.parseToken(null))
+        Assertions.assertNull(SyncCollectionService.parseToken(" "))
+        val state = CalendarService.SyncState(1585000000000L, 42, 4711)
+        Assertions.assertEquals(state, SyncCollectionService.parseToken(SyncCollectionService.createToken(state)))
+        Assertions.assertEquals(-1L, SyncCollectionService.parseToken("${SyncCollectionService.TOKEN_PREFIX}1585000000000")?.lastUpdate)
+        Assertions.assertEquals(-1L, SyncCollectionService.parseToken("http://example.org/sync/42-1-1")?.lastUpdate)
+        Assertions.assertEquals(-1L, SyncCollectionService.parseToken("${SyncCollectionService.TOKEN_PREFIX}abc-1-1")?.lastUpdate)
+    }
+
+    @Test
+    fun otherReportsTest() {
+        val service = SyncCollectionService()
+        val request = Mockito.mock(HttpServletRequest::class.java)
+        val response = Mockito.mock(HttpServletResponse::class.java)
+        Assertions.assertFalse(service.handle(request, response, ByteArray(0)))
+        Assertions.assertFalse(service.handle(request, response, "no xml".toByteArray()))
+        val calendarQuery = "<c:calendar-query xmlns:d=\"DAV:\" xmlns:c=\"urn:ietf:params:xml:ns:caldav\"><d:prop><d:getetag/></d:prop></c:calendar-query>"
+        Assertions.assertFalse(service.handle(request, response, calendarQuery.toByteArray()))
+        Mockito.verifyZeroInteractions(response)
+    }
+}
@@ -0,0 +1,165 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2020 Micromata GmbH, Germany (www.micromata.com)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+
+package org.projectforge.common;
+
+import org.apache.commons.lang3.StringUtils;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Cache of compiled getters per class and property. Use this class instead of {@link BeanHelper#getProperty(Object, String)}
+ * and {@link BeanHelper#getNestedProperty(Object, String)} for hot paths (e. g. filtering and sorting of result lists),
+ * because BeanHelper determines the getter by reflection on every call.
+ * <br/>
+ * Getters are compiled via {@link LambdaMetafactory}. If the declaring class isn't visible by the class loader of this
+ * class (e. g. for proxies generated at runtime), a {@link MethodHandle} is used instead.
+ */
+public class PropertyAccessors {
+  private static final org.slf4j.Logger log = org.slf4j.LoggerFactory.getLogger(PropertyAccessors.class);
+
+  /**
+   * The compiled getters are attached to the classes by {@link ClassValue}, so classes (and their class loaders, e. g.
+   * of plugins or scripts) aren't pinned by this cache.
+   */
+  private static final ClassValue<Map<String, Function<Object, Object>>> accessors = new ClassValue<Map<String, Function<Object, Object>>>() {
+    @Override
+    protected Map<String, Function<Object, Object>> computeValue(final Class<?> type) {
+      return new ConcurrentHashMap<>();
+    }
+  };
+
+  private static final Map<String, String[]> paths = new ConcurrentHashMap<>();
+
+  /**
+   * Same as {@link BeanHelper#getProperty(Object, String)}, but the getter is compiled only once per class.
+   *
+   * @throws RuntimeException if no getter for the given property exists.
+   */
+  public static Object getProperty(final Object bean, final String property) {
+    return getAccessor(bean.getClass(), property).apply(bean);
+  }
+
+  /**
+   * Same as {@link BeanHelper#getNestedProperty(Object, String)}, but the getters of the path are compiled only once
+   * per class. Indexed properties (xxx[#]) are delegated to BeanHelper.
+   *
+   * @return The value or null, if any property of the path is null.
+   */
+  public static Object getNestedProperty(final Object bean, final String property) {
+    if (bean == null || StringUtils.isEmpty(property)) {
+      return null;
+    }
+    if (property.indexOf('[') >= 0) {
+      return BeanHelper.getNestedProperty(bean, property);
+    }
+    Object value = bean;
+    for (final String prop : getPath(property)) {
+      value = getProperty(value, prop);
+      if (value == null) {
+        return null;
+      }
+    }
+    return value;
+  }
+
+  /**
+   * @return The cached path of the given nested property, e. g. ["kost2", "projekt", "kunde", "name"] for
+   * "kost2.projekt.kunde.name". Don't modify the returned array.
+   */
+  public static String[] getPath(final String property) {
+    return paths.computeIfAbsent(property, p -> StringUtils.split(p, '.'));
+  }
+
+  /**
+   * @return The compiled getter of the given property of the given class.
+   * @throws RuntimeException if no getter for the given property exists.
+   */
+  public static Function<Object, Object> getAccessor(final Class<?> clazz, final String property) {
+    final Map<String, Function<Object, Object>> classAccessors = accessors.get(clazz);
+    Function<Object, Object> accessor = classAccessors.get(property);
+    if (accessor == null) {
+      accessor = compile(clazz, property);
+      classAccessors.put(property, accessor);
+    }
+    return accessor;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static Function<Object, Object> compile(final Class<?> clazz, final String property) {
+    final Method getter = BeanHelper.determineGetter(clazz, property);
+    if (getter == null) {
+      throw new RuntimeException("Getter for property '" + clazz + "." + property + "' not found.");
+    }
+    final Class<?> declaringClass = getter.getDeclaringClass();
+    if (isVisible(declaringClass)) {
+      try {
+        final MethodHandles.Lookup lookup = MethodHandles.lookup();
+        final CallSite site = LambdaMetafactory.metafactory(lookup, "apply",
+                MethodType.methodType(Function.class),
+                MethodType.methodType(Object.class, Object.class),
+                lookup.unreflect(getter),
+                MethodType.methodType(Object.class, declaringClass));
+        return (Function<Object, Object>) site.getTarget().invokeExact();
+      } catch (final Throwable ex) {
+        log.warn("Can't compile getter '" + getter + "', using method handle instead: " + ex.getMessage());
+      }
+    }
+    final MethodHandle handle;
+    try {
+      handle = MethodHandles.publicLookup().unreflect(getter).asType(MethodType.methodType(Object.class, Object.class));
+    } catch (final IllegalAccessException ex) {
+      throw new RuntimeException("For property '" + property + "'.", ex);
+    }
+    return bean -> {
+      try {
+        return handle.invokeExact(bean);
+      } catch (final RuntimeException | Error ex) {
+        throw ex;
+      } catch (final Throwable ex) {
+        throw new RuntimeException("For property '" + property + "'.", ex);
+      }
+    };
+  }
+
+  /**
+   * The generated lambda class is defined by the class loader of this class, so the declaring class of the getter has
+   * to be visible by this class loader.
+   */
+  private static boolean isVisible(final Class<?> clazz) {
+    try {
+      return Class.forName(clazz.getName(), false, PropertyAccessors.class.getClassLoader()) == clazz;
+    } catch (final ClassNotFoundException ex) {
+      return false;
+    }
+  }
+}
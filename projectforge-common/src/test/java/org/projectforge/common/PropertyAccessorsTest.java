@@ -0,0 +1,81 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2020 Micromata GmbH, Germany (www.micromata.com)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+package org.projectforge.common;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PropertyAccessorsTest {
+  @Test
+  void getProperty() {
+    final Person person = new Person("Kai", 42, null);
+    assertEquals("Kai", PropertyAccessors.getProperty(person, "name"));
+    assertEquals(42, PropertyAccessors.getProperty(person, "age"));
+    assertEquals(Boolean.TRUE, PropertyAccessors.getProperty(person, "adult"));
+    assertNull(PropertyAccessors.getProperty(person, "manager"));
+    assertSame(PropertyAccessors.getAccessor(Person.class, "name"), PropertyAccessors.getAccessor(Person.class, "name"));
+    assertThrows(RuntimeException.class, () -> PropertyAccessors.getProperty(person, "unknown"));
+  }
+
+  @Test
+  void getNestedProperty() {
+    final Person boss = new Person("Berta", 50, null);
+    final Person person = new Person("Kai", 42, boss);
+    assertEquals("Berta", PropertyAccessors.getNestedProperty(person, "manager.name"));
+    assertEquals(50, PropertyAccessors.getNestedProperty(person, "manager.age"));
+    assertNull(PropertyAccessors.getNestedProperty(boss, "manager.name"));
+    assertNull(PropertyAccessors.getNestedProperty(null, "manager.name"));
+    assertNull(PropertyAccessors.getNestedProperty(person, ""));
+    assertArrayEquals(new String[]{"manager", "name"}, PropertyAccessors.getPath("manager.name"));
+  }
+
+  public static class Person {
+    private final String name;
+    private final int age;
+    private final Person manager;
+
+    Person(final String name, final int age, final Person manager) {
+      this.name = name;
+      this.age = age;
+      this.manager = manager;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public int getAge() {
+      return age;
+    }
+
+    public boolean isAdult() {
+      return age >= 18;
+    }
+
+    public Person getManager() {
+      return manager;
+    }
+  }
+}
@@ -24,12 +24,17 @@
 package org.projectforge.rest.config;
 
 import org.glassfish.jersey.servlet.ServletContainer;
+import org.projectforge.framework.persistence.user.api.ThreadLocalUserContext;
+import org.projectforge.framework.persistence.user.api.UserContext;
 import org.projectforge.model.rest.RestPaths;
 import org.projectforge.web.rest.RestUserFilter;
 import org.springframework.boot.web.servlet.FilterRegistrationBean;
 import org.springframework.boot.web.servlet.ServletRegistrationBean;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.ThreadPoolExecutor;
 
 @Configuration
 public class ProjectForgeRestConfiguration {
@@ -72,4 +77,37 @@ public class ProjectForgeRestConfiguration {
     registrationBean.addUrlPatterns(Rest.URL + "*");
     return registrationBean;
   }
+
+  /**
+   * Runs the event providers of the calendar in parallel. The tasks run with the user context of the submitting
+   * thread. If all threads are busy and the queue is full, the tasks are run by the submitting thread itself.
+   */
+  @Bean
+  public ThreadPoolTaskExecutor calendarEventsExecutor() {
+    final ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+    executor.setCorePoolSize(8);
+    executor.setMaxPoolSize(8);
+    executor.setQueueCapacity(200);
+    executor.setThreadNamePrefix("Calendar-events-");
+    executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+    executor.setWaitForTasksToCompleteOnShutdown(false);
+    executor.setTaskDecorator(runnable -> {
+      final UserContext userContext = ThreadLocalUserContext.getUserContext();
+      final Thread caller = Thread.currentThread();
+      return () -> {
+        if (Thread.currentThread() == caller) {
+          // Run by the submitting thread (executor is saturated), the user context is already there.
+          runnable.run();
+          return;
+        }
+        try {
+          ThreadLocalUserContext.setUserContext(userContext);
+          runnable.run();
+        } finally {
+          ThreadLocalUserContext.clear();
+        }
+      };
+    });
+    return executor;
+  }
 }
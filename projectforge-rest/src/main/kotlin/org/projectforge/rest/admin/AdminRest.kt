@@ -26,11 +26,13 @@ package org.projectforge.rest.admin
 import org.projectforge.business.user.UserXmlPreferencesDO
 import org.projectforge.business.user.UserXmlPreferencesDao
 import org.projectforge.framework.access.AccessChecker
+import org.projectforge.framework.persistence.database.DatabaseDao
 import org.projectforge.framework.persistence.user.api.ThreadLocalUserContext
 import org.projectforge.framework.utils.GZIPHelper
 import org.projectforge.rest.JsonUtils
 import org.projectforge.rest.config.Rest
 import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.web.bind.annotation.GetMapping
 import org.springframework.web.bind.annotation.PostMapping
 import org.springframework.web.bind.annotation.RequestBody
 import org.springframework.web.bind.annotation.RequestMapping
@@ -44,6 +46,8 @@ class AdminRest() {
     private lateinit var accessChecker: AccessChecker
     @Autowired
     private lateinit var userXmlPreferencesDao: UserXmlPreferencesDao
+    @Autowired
+    private lateinit var databaseDao: DatabaseDao
 
     /**
      * Helper for reading compressed serialized settings of user's in the data base.
@@ -56,6 +60,15 @@ class AdminRest() {
         val result = userXmlPreferencesDao.deserialize(ThreadLocalUserContext.getUserId(), userPref, true)
         return JsonUtils.toJson(result)
     }
+
+    /**
+     * Progress of currently running re-index jobs of the search index.
+     */
+    @GetMapping("reindexStatus")
+    fun getReindexStatus(): List<DatabaseDao.ReindexStatus> {
+        accessChecker.checkIsLoggedInUserMemberOfAdminGroup()
+        return databaseDao.reindexStatus
+    }
 }
 
 /**
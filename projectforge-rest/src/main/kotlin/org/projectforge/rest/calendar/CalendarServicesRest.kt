@@ -25,6 +25,7 @@
 
 package org.projectforge.rest.calendar
 
+import org.projectforge.SystemStatus
 import org.projectforge.business.address.AddressDao
 import org.projectforge.business.calendar.CalendarView
 import org.projectforge.business.calendar.TeamCalendar
@@ -37,14 +38,18 @@ import org.projectforge.framework.utils.NumberHelper
 import org.projectforge.rest.config.Rest
 import org.projectforge.rest.core.RestHelper
 import org.projectforge.ui.ResponseAction
+import org.slf4j.LoggerFactory
 import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.beans.factory.annotation.Qualifier
 import org.springframework.beans.factory.annotation.Value
 import org.springframework.http.HttpStatus
+import org.springframework.core.task.AsyncTaskExecutor
 import org.springframework.http.ResponseEntity
 import org.springframework.web.bind.annotation.*
 import java.net.URLEncoder
 import java.time.LocalDate
 import java.util.*
+import java.util.concurrent.*
 import javax.ws.rs.BadRequestException
 
 /**
@@ -57,7 +62,11 @@ class CalendarServicesRest {
 
     internal class CalendarData(val date: LocalDate,
                                 @Suppress("unused") val events: List<BigCalendarEvent>,
-                                @Suppress("unused") val specialDays: Map<LocalDate, HolidayAndWeekendProvider.SpecialDayInfo>)
+                                @Suppress("unused") val specialDays: Map<LocalDate, HolidayAndWeekendProvider.SpecialDayInfo>,
+                                /**
+                                 * Duration in millis of each event provider (only in development mode).
+                                 */
+                                @Suppress("unused") val timings: Map<String, Long>? = null)
 
     private class DateTimeRange(var start: PFDateTime,
                                 var end: PFDateTime? = null)
@@ -89,6 +98,13 @@ class CalendarServicesRest {
     @Autowired
     private lateinit var userPrefService: UserPrefService
 
+    /**
+     * Shared by all requests, see [org.projectforge.rest.config.ProjectForgeRestConfiguration.calendarEventsExecutor].
+     */
+    @Autowired
+    @Qualifier("calendarEventsExecutor")
+    private lateinit var providerExecutor: AsyncTaskExecutor
+
     @PostMapping("events")
     fun getEvents(@RequestBody filter: CalendarRestFilter): ResponseEntity<Any> {
         filter.afterDeserialization()
@@ -180,7 +196,12 @@ class CalendarServicesRest {
         val range = DateTimeRange(PFDateTime.fromOrNow(filter.start, timeZone = timeZone),
                 PFDateTime.fromOrNull(filter.end, timeZone = timeZone))
         adjustRange(range, view)
-        timesheetsProvider.addTimesheetEvents(range.start, range.end!!, filter.timesheetUserId, events)
+        val start = range.start
+        val end = range.end!!
+        val timings = ConcurrentHashMap<String, Long>()
+        val timesheetEvents = submit("timesheets", timings) {
+            mutableListOf<BigCalendarEvent>().also { timesheetsProvider.addTimesheetEvents(start, end, filter.timesheetUserId, it) }
+        }
         var visibleCalendarIds = filter.activeCalendarIds
         if (filter.useVisibilityState == true && !visibleCalendarIds.isNullOrEmpty()) {
             val currentFilter = CalendarFilterServicesRest.getCurrentFilter(userPrefService)
@@ -195,26 +216,45 @@ class CalendarServicesRest {
 
         }
         val visibleTeamCalendarIds = visibleCalendarIds?.filter { it >= 0 } // calendars with id < 0 are pseudo calendars (such as birthdays etc.)
-        if (useNewCalendarEvents) {
-            calendarEventsProvider.addEvents(range.start, range.end!!, events, visibleTeamCalendarIds, calendarFilterServicesRest.getStyleMap())
-        } else {
-            teamCalEventsProvider.addEvents(range.start, range.end!!, events, visibleTeamCalendarIds, calendarFilterServicesRest.getStyleMap())
+        val styleMap = calendarFilterServicesRest.getStyleMap()
+        val calendarEvents = submit("calendars", timings) {
+            mutableListOf<BigCalendarEvent>().also {
+                if (useNewCalendarEvents) {
+                    calendarEventsProvider.addEvents(start, end, it, visibleTeamCalendarIds, styleMap)
+                } else {
+                    teamCalEventsProvider.addEvents(start, end, it, visibleTeamCalendarIds, styleMap)
+                }
+            }
         }
 
         val showFavoritesBirthdays = visibleCalendarIds?.contains(TeamCalendar.BIRTHDAYS_FAVS_CAL_ID) ?: false
         val showAllBirthdays = visibleCalendarIds?.contains(TeamCalendar.BIRTHDAYS_ALL_CAL_ID) ?: false
-        if (showAllBirthdays || showFavoritesBirthdays) {
-            BirthdaysProvider.addEvents(addressDao, range.start, range.end!!, events, calendarFilterServicesRest.getStyleMap(),
-                    showFavoritesBirthdays,
-                    showAllBirthdays,
-                    !accessChecker.isLoggedInUserMemberOfGroup(
-                            ProjectForgeGroup.FINANCE_GROUP,
-                            ProjectForgeGroup.HR_GROUP,
-                            ProjectForgeGroup.ORGA_TEAM))
+        val birthdayEvents = if (showAllBirthdays || showFavoritesBirthdays) {
+            val dataProtection = !accessChecker.isLoggedInUserMemberOfGroup(
+                    ProjectForgeGroup.FINANCE_GROUP,
+                    ProjectForgeGroup.HR_GROUP,
+                    ProjectForgeGroup.ORGA_TEAM)
+            submit("birthdays", timings) {
+                mutableListOf<BigCalendarEvent>().also {
+                    BirthdaysProvider.addEvents(addressDao, start, end, it, styleMap,
+                            showFavoritesBirthdays,
+                            showAllBirthdays,
+                            dataProtection)
+                }
+            }
+        } else null
+        val vacationEvents = submit("vacations", timings) {
+            mutableListOf<BigCalendarEvent>().also { vacationProvider.addEvents(start, end, it, filter.vacationGroupIds, filter.vacationUserIds) }
+        }
+        val specialDaysFuture = submit("specialDays", timings) {
+            HolidayAndWeekendProvider.getSpecialDayInfos(start, end)
         }
-        vacationProvider.addEvents(range.start, range.end!!, events, filter.vacationGroupIds, filter.vacationUserIds)
 
-        val specialDays = HolidayAndWeekendProvider.getSpecialDayInfos(range.start, range.end!!)
+        getResult("timesheets", timesheetEvents)?.let { events.addAll(it) }
+        getResult("calendars", calendarEvents)?.let { events.addAll(it) }
+        birthdayEvents?.let { future -> getResult("birthdays", future)?.let { events.addAll(it) } }
+        getResult("vacations", vacationEvents)?.let { events.addAll(it) }
+        val specialDays = getResult("specialDays", specialDaysFuture) ?: emptyMap()
         if (view != CalendarView.MONTH) {
             specialDays.forEach { entry ->
                 val date = entry.key
@@ -236,7 +276,37 @@ class CalendarServicesRest {
         events.forEach {
             it.key = "e-${counter++}"
         }
-        return CalendarData(range.start.localDate, events, specialDays)
+        return CalendarData(range.start.localDate, events, specialDays, if (SystemStatus.isDevelopmentMode()) timings else null)
+    }
+
+    /**
+     * Runs the given event provider in [providerExecutor] (with the user context of the caller).
+     */
+    private fun <T> submit(name: String, timings: MutableMap<String, Long>, provider: () -> T): Future<T> {
+        return providerExecutor.submit(Callable {
+            val started = System.currentTimeMillis()
+            try {
+                provider()
+            } finally {
+                timings[name] = System.currentTimeMillis() - started
+            }
+        })
+    }
+
+    /**
+     * @return The result of the provider or null, if the provider didn't finish in time (the calendar is shown without
+     * these events).
+     */
+    private fun <T> getResult(name: String, future: Future<T>): T? {
+        try {
+            return future.get(PROVIDER_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+        } catch (ex: TimeoutException) {
+            future.cancel(true)
+            log.warn("Event provider '$name' didn't finish within $PROVIDER_TIMEOUT_SECONDS seconds, its events are ignored.")
+            return null
+        } catch (ex: ExecutionException) {
+            throw ex.cause ?: ex
+        }
     }
 
     /**
@@ -269,5 +339,10 @@ class CalendarServicesRest {
             }
         }
     }
-}
 
+    companion object {
+        private val log = LoggerFactory.getLogger(CalendarServicesRest::class.java)
+
+        private const val PROVIDER_TIMEOUT_SECONDS = 20L
+    }
+}
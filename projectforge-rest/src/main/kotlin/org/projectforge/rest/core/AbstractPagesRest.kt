@@ -314,7 +314,9 @@ constructor(private val baseDaoClazz: Class<B>,
 
     protected fun getInitialList(filter: MagicFilter): InitialListData {
         val favorites = getFilterFavorites()
-        val resultSet = processResultSetBeforeExport(getList(this, baseDao, filter))
+        val list = getList(this, baseDao, filter)
+        val resultSet = processResultSetBeforeExport(list)
+        resultSet.nextCursor = list.nextCursor
         resultSet.highlightRowId = userPrefService.getEntry(getCategory(), USER_PREF_PARAM_HIGHLIGHT_ROW, Int::class.java)
         val ui = createListLayout()
                 .addTranslations("table.showing",
@@ -371,8 +373,10 @@ constructor(private val baseDaoClazz: Class<B>,
         filter.autoWildcardSearch = true
         fixMagicFilterFromClient(filter)
         val list = getList(this, baseDao, filter)
+        filter.cursor = null // The cursor of a page shouldn't be stored in the user's current filter.
         saveCurrentFilter(filter)
         val resultSet = processResultSetBeforeExport(list)
+        resultSet.nextCursor = list.nextCursor
         resultSet.highlightRowId = userPrefService.getEntry(getCategory(), USER_PREF_PARAM_HIGHLIGHT_ROW, Int::class.java)
         return resultSet
     }
@@ -49,6 +49,7 @@ fun <O : ExtendedBaseDO<Int>, DTO : Any, B : BaseDao<O>>
     pagesRest.postProcessMagicFilter(queryFilter, magicFilter)
     val list = baseDao.getList(queryFilter, customResultFilters)
     val resultSet = ResultSet(pagesRest.filterList(list, magicFilter), list.size)
+    resultSet.nextCursor = queryFilter.nextCursor
     return resultSet
 }
 
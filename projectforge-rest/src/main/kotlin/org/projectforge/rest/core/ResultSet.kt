@@ -28,6 +28,10 @@ package org.projectforge.rest.core
  */
 class ResultSet<O : Any>(var resultSet: List<O>,
                          var totalSize: Int? = null,
-                         var highlightRowId: Int? = null) {
+                         var highlightRowId: Int? = null,
+                         /**
+                          * For keyset pagination: the cursor for querying the next page or null, if this is the last page.
+                          */
+                         var nextCursor: String? = null) {
     val size = resultSet.size
 }
@@ -0,0 +1,165 @@
+/////////////////////////////////////////////////////////////////////////////
+//
+// Project ProjectForge Community Edition
+//         www.projectforge.org
+//
+// Copyright (C) 2001-2020 Micromata GmbH, Germany (www.micromata.com)
+//
+// ProjectForge is dual-licensed.
+//
+// This community edition is free software; you can redistribute it and/or
+// modify it under the terms of the GNU General Public License as published
+// by the Free Software Foundation; version 3 of the License.
+//
+// This community edition is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU General
+// Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, see http://www.gnu.org/licenses/.
+//
+/////////////////////////////////////////////////////////////////////////////
+
+
+package org.projectforge.rest.pub
+
+import org.projectforge.business.teamcal.admin.TeamCalDao
+import org.projectforge.business.teamcal.admin.model.TeamCalDO
+import org.projectforge.business.teamcal.event.TeamEventDao
+import org.projectforge.business.teamcal.event.model.TeamEventDO
+import org.projectforge.business.timesheet.TimesheetDO
+import org.projectforge.business.timesheet.TimesheetDao
+import org.projectforge.business.vacation.model.VacationDO
+import org.projectforge.business.vacation.repository.VacationDao
+import org.projectforge.framework.access.OperationType
+import org.projectforge.framework.cache.AbstractCache
+import org.projectforge.framework.persistence.api.BaseDOChangedListener
+import org.slf4j.LoggerFactory
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.stereotype.Service
+import java.io.ByteArrayOutputStream
+import java.io.OutputStream
+import java.security.DigestOutputStream
+import java.security.MessageDigest
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicLong
+import java.util.zip.GZIPOutputStream
+import javax.annotation.PostConstruct
+
+/**
+ * Generated ics feeds of calendar subscriptions. Clients poll the feeds very often, so the feeds are only re-generated
+ * after modifications of the underlying calendars, events, vacations or time sheets. Feeds are held gzipped.
+ *
+ * All feeds are cleared every hour, because the exported periods are relative to the current date (and external
+ * subscriptions are refreshed without any notification).
+ */
+@Service
+open class CalendarFeedCache : AbstractCache(TICKS_PER_HOUR) {
+    @Autowired
+    private lateinit var teamCalDao: TeamCalDao
+
+    @Autowired
+    private lateinit var teamEventDao: TeamEventDao
+
+    @Autowired
+    private lateinit var timesheetDao: TimesheetDao
+
+    @Autowired
+    private lateinit var vacationDao: VacationDao
+
+    private val feedMap = ConcurrentHashMap<FeedKey, Feed>()
+
+    /**
+     * Incremented on every invalidation. Feeds generated concurrently to an invalidation aren't cached.
+     */
+    private val modificationCounter = AtomicLong()
+
+    /**
+     * @param params The decrypted request params (without the authentication token).
+     */
+    data class FeedKey(val userId: Int, val params: String)
+
+    class Feed(
+            /** Quoted strong ETag (SHA-256 of the uncompressed feed) of the uncompressed representation. */
+            val etag: String,
+            /** Time of generation in millis (seconds precision as used by http headers). */
+            val lastModified: Long,
+            val filename: String,
+            val gzippedData: ByteArray,
+            val calendarIds: Set<Int>,
+            val timesheetUserId: Int?,
+            val includesVacations: Boolean)
+
+    val modificationCount: Long
+        get() = modificationCounter.get()
+
+    fun getFeed(key: FeedKey): Feed? {
+        checkRefresh()
+        return feedMap[key]
+    }
+
+    /**
+     * Stores the given feed only if no invalidation occurred since [modificationCount] was read before generating.
+     */
+    fun putFeed(key: FeedKey, feed: Feed, modificationCount: Long) {
+        if (modificationCounter.get() == modificationCount) {
+            feedMap[key] = feed
+        }
+    }
+
+    @PostConstruct
+    private fun postConstruct() {
+        teamCalDao.register(object : BaseDOChangedListener<TeamCalDO> {
+            override fun afterSaveOrModifify(changedObject: TeamCalDO, operationType: OperationType) {
+                invalidate { it.calendarIds.contains(changedObject.id) }
+            }
+        })
+        // Events moved to another calendar are announced by TeamEventDao as deleted from the previous calendar:
+        teamEventDao.register(object : BaseDOChangedListener<TeamEventDO> {
+            override fun afterSaveOrModifify(changedObject: TeamEventDO, operationType: OperationType) {
+                val calendarId = changedObject.calendarId
+                invalidate { calendarId == null || it.calendarIds.contains(calendarId) }
+            }
+        })
+        timesheetDao.register(object : BaseDOChangedListener<TimesheetDO> {
+            override fun afterSaveOrModifify(changedObject: TimesheetDO, operationType: OperationType) {
+                val userId = changedObject.userId
+                invalidate { it.timesheetUserId != null && (userId == null || it.timesheetUserId == userId) }
+            }
+        })
+        vacationDao.register(object : BaseDOChangedListener<VacationDO> {
+            override fun afterSaveOrModifify(changedObject: VacationDO, operationType: OperationType) {
+                invalidate { it.includesVacations }
+            }
+        })
+    }
+
+    private fun invalidate(predicate: (Feed) -> Boolean) {
+        modificationCounter.incrementAndGet()
+        feedMap.values.removeIf(predicate)
+    }
+
+    override fun refresh() {
+        log.info("Clearing cache ${this::class.java.simpleName}.")
+        modificationCounter.incrementAndGet()
+        feedMap.clear()
+    }
+
+    companion object {
+        private val log = LoggerFactory.getLogger(CalendarFeedCache::class.java)
+
+        /**
+         * Writes the feed gzipped and computes its ETag on the fly, so the uncompressed feed is never held in memory.
+         */
+        fun createFeed(filename: String, calendarIds: Set<Int>, timesheetUserId: Int?, includesVacations: Boolean,
+                       writer: (OutputStream) -> Unit): Feed {
+            val digest = MessageDigest.getInstance("SHA-256")
+            val baos = ByteArrayOutputStream()
+            DigestOutputStream(GZIPOutputStream(baos), digest).use { writer(it) }
+            val etag = "\"${digest.digest().joinToString("") { "%02x".format(it) }}\""
+            val lastModified = System.currentTimeMillis() / 1000 * 1000
+            return Feed(etag, lastModified, filename, baos.toByteArray(), calendarIds, timesheetUserId, includesVacations)
+        }
+    }
+}
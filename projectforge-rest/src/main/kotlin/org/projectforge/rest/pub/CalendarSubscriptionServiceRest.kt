@@ -28,7 +28,6 @@ import net.fortuna.ical4j.model.Date
 import net.fortuna.ical4j.model.component.VEvent
 import net.fortuna.ical4j.model.property.Description
 import net.fortuna.ical4j.model.property.Location
-import org.apache.commons.io.output.ByteArrayOutputStream
 import org.apache.commons.lang3.StringUtils
 import org.projectforge.SystemStatus
 import org.projectforge.business.configuration.ConfigurationService
@@ -67,6 +66,8 @@ import org.slf4j.LoggerFactory
 import org.slf4j.MDC
 import org.springframework.beans.factory.annotation.Autowired
 import org.springframework.core.io.ByteArrayResource
+import org.springframework.core.io.InputStreamResource
+import org.springframework.http.CacheControl
 import org.springframework.http.HttpHeaders
 import org.springframework.http.HttpStatus
 import org.springframework.http.MediaType
@@ -76,7 +77,9 @@ import org.springframework.web.bind.annotation.RequestMapping
 import org.springframework.web.bind.annotation.RequestParam
 import org.springframework.web.bind.annotation.RestController
 import org.springframework.web.context.WebApplicationContext
+import java.io.ByteArrayInputStream
 import java.time.LocalDate
+import java.util.zip.GZIPInputStream
 import javax.servlet.http.HttpServletRequest
 import javax.servlet.http.HttpServletResponse
 
@@ -112,6 +115,9 @@ class CalendarSubscriptionServiceRest {
     @Autowired
     private lateinit var vacationCache: VacationCache
 
+    @Autowired
+    private lateinit var calendarFeedCache: CalendarFeedCache
+
     @GetMapping
     fun exportCalendar(request: HttpServletRequest): ResponseEntity<Any> {
         var logMessage: String? = null
@@ -133,39 +139,18 @@ class CalendarSubscriptionServiceRest {
                     return ResponseEntity(HttpStatus.BAD_REQUEST)
                 }
             }
-            // create ical generator
-            val generator = ICalGenerator.exportAllFields()
-            generator.exportVEventAlarm("true" == params[PARAM_EXPORT_REMINDER])
-            // read events
-            val processCalendars = readEventsFromCalendars(generator, params)
-            readTimesheets(generator, timesheetUser)
-            val holidaysProecessed = readHolidays(generator, params)
-            val weeksOfYearProcessed = readWeeksOfYear(generator, params)
-            // setup event is needed for empty calendars
-            if (generator.isEmpty) {
-                generator.addEvent(VEvent(Date(0), TeamCalConfig.SETUP_EVENT))
-            }
             logMessage = params.filter { it.key != "token" }.map { "${it.key}=${it.value}" }.joinToString(", ")
-            log.info("Read calendar entries for: $logMessage")
-            val baos = ByteArrayOutputStream()
-            generator.writeCalendarToOutputStream(baos)
-
-            val resource = ByteArrayResource(baos.toByteArray())
-            val sb = StringBuilder()
-            sb.append(processCalendars?.joinToString { StringUtils.abbreviate(it.title, 25) }
-                    ?: "")
-            timesheetUser?.let { sb.append(translate("timesheet.timesheets")).append("-").append(it.username) }
-            if (holidaysProecessed) {
-                sb.append(translate("holidays"))
-            }
-            if (weeksOfYearProcessed) {
-                sb.append(translate("weekOfYear"))
+            val key = CalendarFeedCache.FeedKey(userId, params.filter { it.key != "token" }.toSortedMap().toString())
+            var feed = calendarFeedCache.getFeed(key)
+            if (feed == null) {
+                val modificationCount = calendarFeedCache.modificationCount
+                feed = createFeed(params, timesheetUser)
+                calendarFeedCache.putFeed(key, feed, modificationCount)
+                log.info("Read calendar entries for: $logMessage")
+            } else if (log.isDebugEnabled) {
+                log.debug("Using cached calendar entries for: $logMessage")
             }
-            val safeFilename = "projectforge-${ReplaceUtils.encodeFilename(sb.toString(), false)}.ics"
-            return ResponseEntity.ok()
-                    .contentType(MediaType.APPLICATION_OCTET_STREAM)
-                    .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=$safeFilename")
-                    .body(resource)
+            return createResponse(request, feed)
         } finally {
             log.info("Finished request: $logMessage")
             ThreadLocalUserContext.setUser(getUserGroupCache(), null)
@@ -175,6 +160,78 @@ class CalendarSubscriptionServiceRest {
         }
     }
 
+    private fun createFeed(params: Map<String, String>, timesheetUser: PFUserDO?): CalendarFeedCache.Feed {
+        // create ical generator
+        val generator = ICalGenerator.exportAllFields()
+        generator.exportVEventAlarm("true" == params[PARAM_EXPORT_REMINDER])
+        // read events
+        val processCalendars = readEventsFromCalendars(generator, params)
+        readTimesheets(generator, timesheetUser)
+        val holidaysProecessed = readHolidays(generator, params)
+        val weeksOfYearProcessed = readWeeksOfYear(generator, params)
+        // setup event is needed for empty calendars
+        if (generator.isEmpty) {
+            generator.addEvent(VEvent(Date(0), TeamCalConfig.SETUP_EVENT))
+        }
+        val sb = StringBuilder()
+        sb.append(processCalendars?.joinToString { StringUtils.abbreviate(it.title, 25) }
+                ?: "")
+        timesheetUser?.let { sb.append(translate("timesheet.timesheets")).append("-").append(it.username) }
+        if (holidaysProecessed) {
+            sb.append(translate("holidays"))
+        }
+        if (weeksOfYearProcessed) {
+            sb.append(translate("weekOfYear"))
+        }
+        val safeFilename = "projectforge-${ReplaceUtils.encodeFilename(sb.toString(), false)}.ics"
+        val calendarIds = params["teamCals"]?.split(";")?.mapNotNull { parseInteger(it) }?.toSet() ?: emptySet()
+        val includesVacations = processCalendars?.any { !it.includeLeaveDaysForGroups.isNullOrBlank() || !it.includeLeaveDaysForUsers.isNullOrBlank() } == true
+        return CalendarFeedCache.createFeed(safeFilename, calendarIds, timesheetUser?.id, includesVacations) {
+            generator.writeCalendarToOutputStream(it)
+        }
+    }
+
+    /**
+     * Answers conditional requests with 304 (not modified). The gzipped feed is sent as it is, if the client accepts
+     * gzip, otherwise it's streamed uncompressed. Both representations have their own strong ETag (suffix -gzip).
+     */
+    private fun createResponse(request: HttpServletRequest, feed: CalendarFeedCache.Feed): ResponseEntity<Any> {
+        val gzip = request.getHeader(HttpHeaders.ACCEPT_ENCODING)?.contains("gzip", ignoreCase = true) == true
+        val etag = if (gzip) "${feed.etag.removeSuffix("\"")}-gzip\"" else feed.etag
+        val ifNoneMatch = request.getHeader(HttpHeaders.IF_NONE_MATCH)
+        val notModified = if (ifNoneMatch != null) {
+            ifNoneMatch.split(",").map { it.trim().removePrefix("W/") }.any { it == "*" || it == etag }
+        } else {
+            val ifModifiedSince = try {
+                request.getDateHeader(HttpHeaders.IF_MODIFIED_SINCE)
+            } catch (ex: IllegalArgumentException) {
+                -1L
+            }
+            ifModifiedSince >= feed.lastModified
+        }
+        if (notModified) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                    .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING)
+                    .eTag(etag)
+                    .lastModified(feed.lastModified)
+                    .build()
+        }
+        val builder = ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=${feed.filename}")
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING)
+                .cacheControl(CacheControl.noCache().cachePrivate())
+                .eTag(etag)
+                .lastModified(feed.lastModified)
+        if (gzip) {
+            return builder
+                    .header(HttpHeaders.CONTENT_ENCODING, "gzip")
+                    .contentLength(feed.gzippedData.size.toLong())
+                    .body(ByteArrayResource(feed.gzippedData))
+        }
+        return builder.body(InputStreamResource(GZIPInputStream(ByteArrayInputStream(feed.gzippedData))))
+    }
+
     private fun getTimesheetUser(userId: Int, timesheetUserParam: String): PFUserDO? {
         var timesheetUser: PFUserDO? = null
         if (StringUtils.isNotBlank(timesheetUserParam)) {
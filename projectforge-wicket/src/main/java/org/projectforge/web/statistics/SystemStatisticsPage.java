@@ -32,6 +32,7 @@ import org.projectforge.business.task.TaskDO;
 import org.projectforge.business.task.TaskTree;
 import org.projectforge.business.tasktree.TaskTreeHelper;
 import org.projectforge.business.timesheet.TimesheetDO;
+import org.projectforge.framework.cache.AbstractCache;
 import org.projectforge.framework.persistence.api.HibernateUtils;
 import org.projectforge.framework.persistence.history.entities.PfHistoryMasterDO;
 import org.projectforge.framework.persistence.user.entities.PFUserDO;
@@ -84,6 +85,16 @@ public class SystemStatisticsPage extends AbstractSecuredPage {
       }
     }
 
+    // Metrics of the caches:
+    for (final AbstractCache cache : AbstractCache.getAllCaches()) {
+      final String statistics = cache.getStatistics();
+      WebMarkupContainer row = new WebMarkupContainer(listItems.newChildId());
+      listItems.add(row);
+      row.add(new Label("memoryType", "Cache " + cache.getClass().getSimpleName()));
+      row.add(new Label("memoryStatistics", statistics));
+      log.info("Cache " + cache.getClass().getSimpleName() + ": " + statistics);
+    }
+
     // Finally, the database statistics.
     final JdbcTemplate jdbc = new JdbcTemplate(dataSource);
     body.add(new Label("totalNumberOfTimesheets", NumberFormatter.format(getTableCount(jdbc, TimesheetDO.class))));
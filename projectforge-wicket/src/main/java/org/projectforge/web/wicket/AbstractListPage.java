@@ -751,21 +751,26 @@ public abstract class AbstractListPage<F extends AbstractListForm<?, ?>, D exten
       form.addError("validation.error.nothingToExport");
       return;
     }
-    final List<?> list = getList();
-    if (list != null && list.size() > 0) {
-      final ExportSheet sheet = exporter.addSheet(sheetTitle != null ? sheetTitle : "data");
-      exporter.addList(sheet, list);
-      if (exporter.isExcelAutoFilter() == true) {
-        sheet.setAutoFilter();
+    try {
+      final List<?> list = getList();
+      if (list != null && list.size() > 0) {
+        final ExportSheet sheet = exporter.addSheet(sheetTitle != null ? sheetTitle : "data");
+        exporter.addList(sheet, list.iterator());
+        if (exporter.isExcelAutoFilter() == true) {
+          sheet.setAutoFilter();
+        }
       }
+      exporter.onBeforeDownload();
+      if (exporter.getWorkbook().getNumberOfSheets() == 0) {
+        // Nothing to export.
+        form.addError("validation.error.nothingToExport");
+        return;
+      }
+      DownloadUtils.setDownloadTarget(exporter.getWorkbook().getAsByteArray(), exporter.getFilename());
+    } finally {
+      // Temporary files of the streaming workbook, if not already written.
+      exporter.getWorkbook().dispose();
     }
-    exporter.onBeforeDownload();
-    if (exporter.getWorkbook().getNumberOfSheets() == 0) {
-      // Nothing to export.
-      form.addError("validation.error.nothingToExport");
-      return;
-    }
-    DownloadUtils.setDownloadTarget(exporter.getWorkbook().getAsByteArray(), exporter.getFilename());
   }
 
   /**